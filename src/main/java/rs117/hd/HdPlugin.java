@@ -80,6 +80,8 @@ import org.lwjgl.opengl.*;
 import org.lwjgl.system.Callback;
 import org.lwjgl.system.Configuration;
 import rs117.hd.config.ColorFilter;
+import rs117.hd.config.ConfigDependencies;
+import rs117.hd.config.ConfigDependencies.Artifact;
 import rs117.hd.config.DynamicLights;
 import rs117.hd.config.SeasonalHemisphere;
 import rs117.hd.config.SeasonalTheme;
@@ -88,6 +90,7 @@ import rs117.hd.config.ShadowMode;
 import rs117.hd.config.VanillaShadowMode;
 import rs117.hd.opengl.shader.ShaderException;
 import rs117.hd.opengl.shader.ShaderIncludes;
+import rs117.hd.opengl.shader.ShaderProgram;
 import rs117.hd.opengl.shader.TiledLightingShaderProgram;
 import rs117.hd.opengl.shader.UIShaderProgram;
 import rs117.hd.opengl.uniforms.UBOCompute;
@@ -112,10 +115,12 @@ import rs117.hd.scene.LightManager;
 import rs117.hd.scene.MaterialManager;
 import rs117.hd.scene.ModelOverrideManager;
 import rs117.hd.scene.ProceduralGenerator;
+import rs117.hd.scene.SceneChanges;
 import rs117.hd.scene.SceneContext;
 import rs117.hd.scene.TextureManager;
 import rs117.hd.scene.TileOverrideManager;
 import rs117.hd.scene.WaterTypeManager;
+import rs117.hd.scene.lights.LightClusters;
 import rs117.hd.utils.ColorUtils;
 import rs117.hd.utils.DestructibleHandler;
 import rs117.hd.utils.DeveloperTools;
@@ -123,6 +128,7 @@ import rs117.hd.utils.FileWatcher;
 import rs117.hd.utils.GsonUtils;
 import rs117.hd.utils.HDUtils;
 import rs117.hd.utils.HDVariables;
+import rs117.hd.utils.JsonSnapshot;
 import rs117.hd.utils.Mat4;
 import rs117.hd.utils.NpcDisplacementCache;
 import rs117.hd.utils.PopupUtils;
@@ -465,6 +471,17 @@ public class HdPlugin extends Plugin {
 	@Getter
 	public int drawnDynamicRenderableCount;
 	@Getter
+	public int eliminatedGlCallCount;
+	// Bytes staged in the last frame, by zone uploads and by mapped buffers running out of room, and staging buffers
+	// allocated for it
+	@Getter
+	public long stagedByteCount;
+	@Getter
+	public long stagingAllocationCount;
+	// Buffer flushes which had to copy in staged data over the last 10 seconds
+	@Getter
+	public long stagedFlushCount;
+	@Getter
 	public long garbageCollectionCount;
 
 	private int startupCount;
@@ -518,6 +535,18 @@ public class HdPlugin extends Plugin {
 				isActive = true;
 				startupCount++;
 
+				// Start loading configs in the background, while the rest of the plugin is being initialized
+				JsonSnapshot.preload(
+					MaterialManager.MATERIALS_PATH,
+					WaterTypeManager.WATER_TYPES_PATH,
+					AreaManager.AREA_PATH,
+					GroundMaterialManager.GROUND_MATERIALS_PATH,
+					TileOverrideManager.TILE_OVERRIDES_PATH,
+					ModelOverrideManager.MODEL_OVERRIDES_PATH,
+					LightManager.LIGHTS_PATH,
+					EnvironmentManager.ENVIRONMENTS_PATH
+				);
+
 				fboScene = 0;
 				rboSceneColor = 0;
 				rboSceneDepth = 0;
@@ -751,6 +780,7 @@ public class HdPlugin extends Plugin {
 				return;
 			isActive = false;
 			FileWatcher.destroy();
+			JsonSnapshot.clearPreloaded();
 
 			if (renderer != null)
 				renderer.waitUntilIdle();
@@ -914,6 +944,11 @@ public class HdPlugin extends Plugin {
 			.define("TILED_LIGHTING", configTiledLighting)
 			.define("TILED_LIGHTING_LAYER_COUNT", configDynamicLights.getTiledLightingLayers())
 			.define("TILED_LIGHTING_TILE_SIZE", TILED_LIGHTING_TILE_SIZE)
+			.define("LIGHT_CLUSTER_GRID_X", LightClusters.GRID_X)
+			.define("LIGHT_CLUSTER_GRID_Y", LightClusters.GRID_Y)
+			.define("LIGHT_CLUSTER_GRID_Z", LightClusters.GRID_Z)
+			.define("LIGHT_CLUSTER_DEPTH_NEAR", LightClusters.DEPTH_NEAR)
+			.define("LIGHT_CLUSTER_DEPTH_FAR", LightClusters.DEPTH_FAR)
 			.define("MAX_LIGHT_COUNT", configTiledLighting ? UBOLights.MAX_LIGHTS : configDynamicLights.getMaxSceneLights())
 			.define("NORMAL_MAPPING", config.normalMapping())
 			.define("PARALLAX_OCCLUSION_MAPPING", config.parallaxOcclusionMapping())
@@ -968,9 +1003,7 @@ public class HdPlugin extends Plugin {
 		// Bind a valid VAO, otherwise validation may fail on older Intel-based Macs
 		glBindVertexArray(vaoTri);
 
-		renderer.initializeShaders(includes);
-		uiProgram.compile(includes);
-
+		// Compile tiled lighting first, so the scene programs are compiled for whichever lighting ends up being used
 		if (configDynamicLights != DynamicLights.NONE && configTiledLighting) {
 			if (!AMD_GPU && configTiledLightingImageLoadStore &&
 				GL_CAPS.GL_ARB_shader_image_load_store &&
@@ -1019,10 +1052,14 @@ public class HdPlugin extends Plugin {
 						);
 					}
 					configTiledLighting = false;
+					includes = getShaderIncludes();
 				}
 			}
 		}
 
+		renderer.initializeShaders(includes);
+		uiProgram.compile(includes);
+
 		checkGLErrors();
 
 		eventBus.post(new ShaderRecompile(includes));
@@ -1044,15 +1081,31 @@ public class HdPlugin extends Plugin {
 			return;
 
 		clientThread.invoke(() -> {
+			long start = System.nanoTime();
+			boolean failed = false;
 			try {
 				renderer.waitUntilIdle();
+				// Programs whose preprocessed sources are unaffected by the change are reused instead of compiled again
+				ShaderProgram.retainPrograms();
 				destroyShaders();
 				initializeShaders();
 			} catch (ShaderException | IOException ex) {
 				// TODO: If each shader compilation leaves the previous working shader intact, we wouldn't need to shut down on failure
 				log.error("Error while recompiling shaders:", ex);
-				stopPlugin();
+				failed = true;
+			} finally {
+				int[] counts = ShaderProgram.releaseRetainedPrograms();
+				log.debug(
+					"Compiled {} and reused {} shader programs in {} ms",
+					counts[1],
+					counts[0],
+					String.format("%.2f", (System.nanoTime() - start) / 1e6)
+				);
 			}
+
+			// Stopping the plugin destroys the GL context, so retained programs must be released first
+			if (failed)
+				stopPlugin();
 		});
 	}
 
@@ -1755,157 +1808,91 @@ public class HdPlugin extends Plugin {
 
 					renderer.processConfigChanges(pendingConfigChanges);
 
-					boolean recompilePrograms = false;
-					boolean recreateSceneFbo = false;
-					boolean recreateShadowMapFbo = false;
-					boolean reloadTexturesAndMaterials = false;
-					boolean reloadEnvironments = false;
-					boolean reloadModelOverrides = false;
-					boolean reloadTileOverrides = false;
-					boolean reloadScene = false;
-
-					for (var key : pendingConfigChanges) {
-						switch (key) {
-							case KEY_LOW_MEMORY_MODE:
-							case KEY_REMOVE_VERTEX_SNAPPING:
-							case KEY_LEGACY_RENDERER:
-							case KEY_INDIRECT_DRAW:
-							case KEY_STORAGE_BUFFERS:
-							case KEY_SHADING_MODE:
-								restartPlugin();
-								// since we'll be restarting the plugin anyway, skip pending changes
-								return;
-							case KEY_SEASONAL_THEME:
-							case KEY_SEASONAL_HEMISPHERE:
-							case KEY_GROUND_BLENDING:
-							case KEY_GROUND_TEXTURES:
-								reloadTileOverrides = true;
-								break;
-							case KEY_COLOR_FILTER:
-								if (configColorFilter == ColorFilter.NONE || configColorFilterPrevious == ColorFilter.NONE)
-									recompilePrograms = true;
-								if (configColorFilter == ColorFilter.CEL_SHADING || configColorFilterPrevious == ColorFilter.CEL_SHADING)
-									reloadScene = true;
-								break;
-							case KEY_CPU_USAGE_LIMIT:
+					var artifacts = ConfigDependencies.getAffected(pendingConfigChanges);
+					if (pendingConfigChanges.contains(KEY_COLOR_FILTER)) {
+						// These dependencies also depend on the previous color filter
+						if (configColorFilter == ColorFilter.NONE || configColorFilterPrevious == ColorFilter.NONE)
+							artifacts.add(Artifact.SHADERS);
+						if (configColorFilter == ColorFilter.CEL_SHADING || configColorFilterPrevious == ColorFilter.CEL_SHADING) {
+							artifacts.add(Artifact.TERRAIN);
+							artifacts.add(Artifact.MODELS);
+						}
+					}
+
+					if (artifacts.contains(Artifact.RESTART_PLUGIN)) {
+						restartPlugin();
+						// since we'll be restarting the plugin anyway, skip pending changes
+						return;
+					}
+
+					log.debug("Applying config changes to: {}", artifacts);
+
+					if (artifacts.contains(Artifact.TEXTURES_AND_MATERIALS) || artifacts.contains(Artifact.SHADERS))
+						renderer.waitUntilIdle();
+
+					for (var artifact : artifacts) {
+						long start = System.nanoTime();
+						switch (artifact) {
+							case JOB_SYSTEM:
 								if (jobSystem.isActive()) {
 									// Restart the job system with the new worker count
 									jobSystem.shutDown();
 									jobSystem.startUp(config.cpuUsageLimit());
 								}
 								break;
-						}
-
-						switch (key) {
-							case KEY_EXPANDED_MAP_LOADING_CHUNKS:
-								client.setExpandedMapLoading(getExpandedMapLoadingChunks());
-								// fall-through
-							case KEY_HIDE_UNRELATED_AREAS:
+							case MAP_RELOAD:
+								if (pendingConfigChanges.contains(KEY_EXPANDED_MAP_LOADING_CHUNKS))
+									client.setExpandedMapLoading(getExpandedMapLoadingChunks());
 								if (client.getGameState() == GameState.LOGGED_IN)
 									client.setGameState(GameState.LOADING);
 								break;
-							case KEY_COLOR_BLINDNESS:
-							case KEY_MACOS_INTEL_WORKAROUND:
-							case KEY_DYNAMIC_LIGHTS:
-							case KEY_TILED_LIGHTING:
-							case KEY_TILED_LIGHTING_IMAGE_STORE:
-							case KEY_NORMAL_MAPPING:
-							case KEY_PARALLAX_OCCLUSION_MAPPING:
-							case KEY_UI_SCALING_MODE:
-							case KEY_VANILLA_COLOR_BANDING:
-							case KEY_WIND_DISPLACEMENT:
-							case KEY_CHARACTER_DISPLACEMENT:
-							case KEY_WIREFRAME:
-							case KEY_SHADOW_FILTERING:
-							case KEY_WINDOWS_HDR_CORRECTION:
-								recompilePrograms = true;
+							case SYNC_MODE:
+								setupSyncMode();
 								break;
-							case KEY_ANTI_ALIASING_MODE:
-							case KEY_SCENE_RESOLUTION_SCALE:
-								recreateSceneFbo = true;
+							case TEXTURES_AND_MATERIALS:
+								// Everything depending on materials is rebuilt separately
+								materialManager.reload(true);
 								break;
-							case KEY_SHADOW_MODE:
-							case KEY_SHADOW_RESOLUTION:
-							case KEY_SHADOW_TRANSPARENCY:
-								recompilePrograms = true;
-								recreateShadowMapFbo = true;
+							case TEXTURE_FILTERING:
+								materialManager.updateTextureFiltering();
 								break;
-							case KEY_ATMOSPHERIC_LIGHTING:
-							case KEY_POH_THEME_ENVIRONMENTS:
-							case KEY_LEGACY_TOB_ENVIRONMENT:
-								reloadEnvironments = true;
+							case MODEL_OVERRIDES:
+								modelOverrideManager.reload();
 								break;
-							case KEY_SEASONAL_THEME:
-							case KEY_SEASONAL_HEMISPHERE:
-								reloadEnvironments = true;
-								reloadModelOverrides = true;
-								// fall-through
-							case KEY_ANISOTROPIC_FILTERING_LEVEL:
-							case KEY_GROUND_TEXTURES:
-							case KEY_MODEL_TEXTURES:
-							case KEY_TEXTURE_RESOLUTION:
-							case KEY_INFERNAL_CAPE:
-								reloadTexturesAndMaterials = true;
-								// fall-through
-							case KEY_GROUND_BLENDING:
-							case KEY_FILL_GAPS_IN_TERRAIN:
-							case KEY_LEGACY_TZHAAR_RESKIN:
-								reloadScene = true;
+							case TILE_OVERRIDES:
+								tileOverrideManager.reload(true);
 								break;
-							case KEY_HIDE_VANILLA_WATER_EFFECTS:
-								reloadModelOverrides = true;
-								// fall-through
-							case KEY_VANILLA_SHADOW_MODE:
-								reloadScene = true;
+							case SHADERS:
+								recompilePrograms();
 								break;
-							case KEY_LEGACY_GREY_COLORS:
-							case KEY_PRESERVE_VANILLA_NORMALS:
-							case KEY_FLAT_SHADING:
-								recompilePrograms = true;
-								reloadScene = true;
+							case SCENE_FBO:
+								destroySceneFbo();
+								updateSceneFbo();
 								break;
-							case KEY_FPS_TARGET:
-							case KEY_UNLOCK_FPS:
-							case KEY_VSYNC_MODE:
-								setupSyncMode();
+							case SHADOW_MAP_FBO:
+								destroyShadowMapFbo();
+								initializeShadowMapFbo();
+								break;
+							case TERRAIN:
+								renderer.invalidateScene(artifacts.contains(Artifact.MODELS) ?
+									SceneChanges.all() :
+									SceneChanges.terrain());
+								break;
+							case MODELS:
+								if (artifacts.contains(Artifact.TERRAIN))
+									continue; // Already rebuilt along with the terrain
+								renderer.invalidateScene(SceneChanges.models());
+								break;
+							case ENVIRONMENTS:
+								environmentManager.reload();
 								break;
 						}
+						log.debug(
+							"Applied config changes to {} in {} ms",
+							artifact,
+							String.format("%.2f", (System.nanoTime() - start) / 1e6)
+						);
 					}
-
-					if (reloadTexturesAndMaterials || recompilePrograms)
-						renderer.waitUntilIdle();
-
-					if (reloadTexturesAndMaterials) {
-						materialManager.reload(reloadScene);
-						modelOverrideManager.reload();
-						recompilePrograms = true;
-					} else if (reloadModelOverrides) {
-						modelOverrideManager.reload();
-					}
-
-					if (reloadTileOverrides)
-						tileOverrideManager.reload(reloadScene);
-
-					if (recompilePrograms)
-						recompilePrograms();
-
-					if (recreateSceneFbo) {
-						destroySceneFbo();
-						updateSceneFbo();
-					}
-
-					if (reloadScene) {
-						renderer.clearCaches();
-						renderer.reloadScene();
-					}
-
-					if (recreateShadowMapFbo) {
-						destroyShadowMapFbo();
-						initializeShadowMapFbo();
-					}
-
-					if (reloadEnvironments)
-						environmentManager.reload();
 				}
 			} catch (Throwable ex) {
 				log.error("Error while changing settings:", ex);
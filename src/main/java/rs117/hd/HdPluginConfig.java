@@ -1251,6 +1251,24 @@ public interface HdPluginConfig extends Config
 		return true;
 	}
 
+	String KEY_ZONE_CACHE_SIZE = "zoneCacheSizeMiB";
+	@Range(
+		max = 4096
+	)
+	@Units(" MiB")
+	@ConfigItem(
+		keyName = KEY_ZONE_CACHE_SIZE,
+		name = "Zone cache size",
+		description =
+			"Size of the on-disk cache of uploaded scene geometry, in mebibytes (slightly more than megabytes).<br>" +
+			"Revisiting an area loads its geometry from the cache instead of rebuilding it.<br>" +
+			"Set to 0 to disable the cache. Minimum=0 MiB, maximum=4096 MiB",
+		section = experimentalSettings
+	)
+	default int zoneCacheSizeMiB() {
+		return 256;
+	}
+
 	/*====== Internal settings ======*/
 
 	@ConfigItem(keyName = "pluginUpdateMessage", hidden = true, name = "", description = "")
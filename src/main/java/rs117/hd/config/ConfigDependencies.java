@@ -0,0 +1,143 @@
+package rs117.hd.config;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static rs117.hd.HdPluginConfig.*;
+import static rs117.hd.config.ConfigDependencies.Artifact.*;
+
+/**
+ * Maps each config key to the artifacts which need to be rebuilt when it changes, so each change does the minimum
+ * amount of work. Keys without any dependencies only affect values which are read every frame, like uniforms.
+ */
+public class ConfigDependencies {
+	/**
+	 * Everything which may need rebuilding after a config change, in the order they should be applied.
+	 */
+	public enum Artifact {
+		RESTART_PLUGIN,
+		JOB_SYSTEM,
+		MAP_RELOAD,
+		SYNC_MODE,
+		TEXTURES_AND_MATERIALS,
+		TEXTURE_FILTERING,
+		MODEL_OVERRIDES,
+		TILE_OVERRIDES,
+		SHADERS,
+		SCENE_FBO,
+		SHADOW_MAP_FBO,
+		// Zone geometry of tiles, which also requires generating new scene data
+		TERRAIN,
+		// Zone geometry of static models
+		MODELS,
+		ENVIRONMENTS,
+	}
+
+	private static final Map<String, EnumSet<Artifact>> DEPENDENCIES = new HashMap<>();
+	private static final Map<Artifact, EnumSet<Artifact>> IMPLIED = new EnumMap<>(Artifact.class);
+
+	static {
+		// Materials are referenced by index from shaders, overrides and uploaded geometry
+		implies(TEXTURES_AND_MATERIALS, MODEL_OVERRIDES, SHADERS, TERRAIN, MODELS);
+		implies(MODEL_OVERRIDES, MODELS);
+		implies(TILE_OVERRIDES, TERRAIN);
+
+		put(
+			EnumSet.of(RESTART_PLUGIN),
+			KEY_LOW_MEMORY_MODE,
+			KEY_REMOVE_VERTEX_SNAPPING,
+			KEY_LEGACY_RENDERER,
+			KEY_INDIRECT_DRAW,
+			KEY_STORAGE_BUFFERS,
+			KEY_SHADING_MODE
+		);
+		put(EnumSet.of(JOB_SYSTEM), KEY_CPU_USAGE_LIMIT);
+		put(EnumSet.of(MAP_RELOAD), KEY_EXPANDED_MAP_LOADING_CHUNKS, KEY_HIDE_UNRELATED_AREAS);
+		put(EnumSet.of(SYNC_MODE), KEY_FPS_TARGET, KEY_UNLOCK_FPS, KEY_VSYNC_MODE);
+		put(
+			EnumSet.of(SHADERS),
+			KEY_COLOR_BLINDNESS,
+			KEY_MACOS_INTEL_WORKAROUND,
+			KEY_DYNAMIC_LIGHTS,
+			KEY_TILED_LIGHTING,
+			KEY_TILED_LIGHTING_IMAGE_STORE,
+			KEY_NORMAL_MAPPING,
+			KEY_PARALLAX_OCCLUSION_MAPPING,
+			KEY_UI_SCALING_MODE,
+			KEY_VANILLA_COLOR_BANDING,
+			KEY_WIND_DISPLACEMENT,
+			KEY_CHARACTER_DISPLACEMENT,
+			KEY_WIREFRAME,
+			KEY_SHADOW_FILTERING,
+			KEY_WINDOWS_HDR_CORRECTION,
+			KEY_FLAT_SHADING
+		);
+		put(EnumSet.of(SCENE_FBO), KEY_ANTI_ALIASING_MODE, KEY_SCENE_RESOLUTION_SCALE);
+		put(EnumSet.of(SHADERS, SHADOW_MAP_FBO), KEY_SHADOW_MODE, KEY_SHADOW_RESOLUTION, KEY_SHADOW_TRANSPARENCY);
+		put(EnumSet.of(ENVIRONMENTS), KEY_ATMOSPHERIC_LIGHTING, KEY_POH_THEME_ENVIRONMENTS, KEY_LEGACY_TOB_ENVIRONMENT);
+		put(
+			EnumSet.of(TEXTURES_AND_MATERIALS, TILE_OVERRIDES, ENVIRONMENTS),
+			KEY_SEASONAL_THEME,
+			KEY_SEASONAL_HEMISPHERE
+		);
+		put(EnumSet.of(TEXTURES_AND_MATERIALS, TILE_OVERRIDES), KEY_GROUND_TEXTURES);
+		put(EnumSet.of(TEXTURES_AND_MATERIALS), KEY_MODEL_TEXTURES, KEY_TEXTURE_RESOLUTION, KEY_INFERNAL_CAPE);
+		put(EnumSet.of(TEXTURE_FILTERING), KEY_ANISOTROPIC_FILTERING_LEVEL);
+		put(EnumSet.of(TILE_OVERRIDES), KEY_GROUND_BLENDING);
+		put(EnumSet.of(TERRAIN), KEY_FILL_GAPS_IN_TERRAIN);
+		put(EnumSet.of(MODEL_OVERRIDES), KEY_HIDE_VANILLA_WATER_EFFECTS);
+		put(EnumSet.of(MODELS), KEY_LEGACY_TZHAAR_RESKIN, KEY_VANILLA_SHADOW_MODE);
+		put(EnumSet.of(SHADERS, MODELS), KEY_LEGACY_GREY_COLORS, KEY_PRESERVE_VANILLA_NORMALS);
+	}
+
+	private static void implies(Artifact artifact, Artifact first, Artifact... rest) {
+		IMPLIED.put(artifact, EnumSet.of(first, rest));
+	}
+
+	private static void put(EnumSet<Artifact> artifacts, String... keys) {
+		for (String key : keys)
+			DEPENDENCIES.computeIfAbsent(key, k -> EnumSet.noneOf(Artifact.class)).addAll(artifacts);
+	}
+
+	/**
+	 * @return the artifacts directly affected by the specified config key
+	 */
+	public static EnumSet<Artifact> get(String key) {
+		var artifacts = DEPENDENCIES.get(key);
+		return artifacts == null ? EnumSet.noneOf(Artifact.class) : EnumSet.copyOf(artifacts);
+	}
+
+	/**
+	 * @return every artifact which needs to be rebuilt after the specified config keys have changed,
+	 *         including artifacts which depend on other affected artifacts
+	 */
+	public static EnumSet<Artifact> getAffected(Collection<String> keys) {
+		var artifacts = EnumSet.noneOf(Artifact.class);
+		for (String key : keys) {
+			var direct = DEPENDENCIES.get(key);
+			if (direct != null)
+				artifacts.addAll(direct);
+		}
+		return resolve(artifacts);
+	}
+
+	/**
+	 * Add any artifacts which depend on the specified artifacts in-place.
+	 */
+	public static EnumSet<Artifact> resolve(EnumSet<Artifact> artifacts) {
+		var queue = new ArrayDeque<>(artifacts);
+		while (!queue.isEmpty()) {
+			var implied = IMPLIED.get(queue.poll());
+			if (implied == null)
+				continue;
+			for (var artifact : implied)
+				if (artifacts.add(artifact))
+					queue.add(artifact);
+		}
+		return artifacts;
+	}
+}
@@ -3,14 +3,18 @@ package rs117.hd.model;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayDeque;
-import java.util.HashMap;
 import lombok.extern.slf4j.Slf4j;
 import org.lwjgl.system.MemoryUtil;
+import rs117.hd.utils.collections.PrimitiveLongHashMap;
 
+import static rs117.hd.HdPlugin.PROCESSOR_COUNT;
+import static rs117.hd.utils.HDUtils.ceilPow2;
 import static rs117.hd.utils.MathUtils.*;
 
 @Slf4j
 public class ModelCache {
+	private static final int MIN_SHARD_SIZE_MIB = 64;
+
 	private static class Allocation {
 		long address;
 		long byteCapacity;
@@ -60,44 +64,194 @@ public class ModelCache {
 
 	private static class Buffer {
 		final boolean endMarker;
+		final boolean isFloat;
 		final long hash;
+		final long address;
 		final long byteCapacity;
-		final IntBuffer intBuffer;
-		final FloatBuffer floatBuffer;
 
 		public Buffer(long byteCapacity) {
 			endMarker = true;
+			isFloat = false;
 			this.hash = 0;
+			this.address = 0;
 			this.byteCapacity = byteCapacity;
-			intBuffer = null;
-			floatBuffer = null;
 		}
 
-		public Buffer(long hash, IntBuffer buffer) {
+		public Buffer(long hash, long address, long byteCapacity, boolean isFloat) {
 			endMarker = false;
+			this.isFloat = isFloat;
 			this.hash = hash;
-			byteCapacity = buffer.capacity() * 4L;
-			intBuffer = buffer;
-			floatBuffer = null;
+			this.address = address;
+			this.byteCapacity = byteCapacity;
 		}
+	}
 
-		public Buffer(long hash, FloatBuffer buffer) {
-			endMarker = false;
-			this.hash = hash;
-			byteCapacity = buffer.capacity() * 4L;
-			intBuffer = null;
-			floatBuffer = buffer;
+	/**
+	 * An independent region of the cache, with its own allocations, lookup table and FIFO eviction order.
+	 * All access to a shard must be synchronized on the shard itself.
+	 */
+	private class Shard {
+		final PrimitiveLongHashMap<Buffer> cache = new PrimitiveLongHashMap<>(4096);
+		final ArrayDeque<Buffer> buffers = new ArrayDeque<>();
+		final Allocation[] allocations;
+		Allocation currentAllocation;
+		int currentAllocationIndex;
+
+		Shard(Allocation[] allocations) {
+			this.allocations = allocations;
+			currentAllocation = allocations[0];
+		}
+
+		void destroy() {
+			cache.clear();
+			buffers.clear();
+			currentAllocation = null;
+
+			for (int i = 0; i < allocations.length; i++) {
+				if (allocations[i] != null) {
+					allocations[i].destroy();
+					allocations[i] = null;
+				}
+			}
+		}
+
+		void clear() {
+			cache.clear();
+			buffers.clear();
+			for (Allocation allocation : allocations) {
+				if (allocation != null) {
+					allocation.cursor = 0;
+					allocation.freeBytesAhead = allocation.byteCapacity;
+				}
+			}
+		}
+
+		void nextAllocation() {
+			currentAllocation.cursor = 0;
+			currentAllocation.freeBytesAhead = 0;
+
+			currentAllocationIndex++;
+			currentAllocationIndex %= allocations.length;
+			currentAllocation = allocations[currentAllocationIndex];
+		}
+
+		long reserve(long numBytes) {
+			if (currentAllocation.bytesFromEnd() < numBytes) {
+				// ### = taken, ... = free, MMM = end marker
+				//                    _________ -> not enough space
+				// [##################....###MM]
+				// inserting a new end marker as follows will cause issues
+				// [##################MMMM###MM]
+				// since ### and MM will be freed next, an option is to move these to the end of the buffer list
+				// another minor optimization we can make is to pretend that the buffers are shifted to the left like so
+				// [##################|MMMM###MM]
+				// [##################|###MMMMMM]
+				// this leaves us with only a single dummy buffer at the end, and a guarantee that buffers will still be
+				// freed in an appropriate order with no collisions
+
+				// Move the existing regions to the end of the buffer list
+				while (currentAllocation.bytesFromEnd() != currentAllocation.freeBytesAhead) {
+					assert currentAllocation.bytesFromEnd() > currentAllocation.freeBytesAhead;
+					Buffer buffer = buffers.pollFirst();
+					if (buffer == null) {
+						log.error("No more cache entries left to free, yet the allocation is still in use ({} != {})",
+							currentAllocation.bytesFromEnd(), currentAllocation.freeBytesAhead);
+						terminationHook.run();
+						return 0;
+					}
+
+					if (buffer.endMarker) {
+						// Shift unused space to the end of the buffer, as detailed above
+						currentAllocation.freeBytesAhead += buffer.byteCapacity;
+						assert currentAllocation.cursor + currentAllocation.freeBytesAhead <= currentAllocation.byteCapacity;
+					} else {
+						// Move the buffer to the end of the list, and pretend we've shifted it to the left as detailed above
+						buffers.addLast(buffer);
+						currentAllocation.cursor += buffer.byteCapacity;
+					}
+				}
+
+				// Consume the remaining free bytes of the allocation
+				buffers.addLast(new Buffer(currentAllocation.freeBytesAhead));
+				// Advance to the next allocation, or the beginning of the same allocation if there is only one
+				nextAllocation();
+
+				if (currentAllocation.bytesFromEnd() < numBytes) {
+					log.error("Failed to reserve space for {} bytes. Too large to fit in allocation {} of size {}",
+						numBytes, currentAllocationIndex, currentAllocation.byteCapacity);
+					terminationHook.run();
+					return 0;
+				}
+			}
+
+			while (currentAllocation.freeBytesAhead < numBytes) {
+				if (removeOldestCacheEntry() == null) {
+					log.error("No more cache entries left to free, yet there aren't enough free bytes ({} < {})",
+						currentAllocation.freeBytesAhead, numBytes);
+					terminationHook.run();
+					return 0;
+				}
+			}
+
+			return currentAllocation.reserve(numBytes);
+		}
+
+		Buffer removeOldestCacheEntry() {
+			Buffer buffer = buffers.pollFirst();
+
+			if (buffer != null) {
+				if (!buffer.endMarker) {
+					cache.remove(buffer.hash, buffer);
+					// Normally, these addresses will be equal, but in case they've been "shifted" as detailed in the
+					// reserve function, the buffer's actual address will be larger than the cursor position
+					assert currentAllocation.address + currentAllocation.cursor + currentAllocation.freeBytesAhead <= buffer.address;
+				}
+
+				currentAllocation.freeBytesAhead += buffer.byteCapacity;
+				assert currentAllocation.cursor + currentAllocation.freeBytesAhead <= currentAllocation.byteCapacity;
+			}
+
+			return buffer;
+		}
+
+		boolean copyTo(long hash, boolean isFloat, long dstAddress, int count) {
+			if (currentAllocation == null)
+				return false;
+			Buffer buffer = cache.get(hash);
+			if (buffer == null || buffer.isFloat != isFloat || buffer.byteCapacity != count * 4L)
+				return false;
+			MemoryUtil.memCopy(buffer.address, dstAddress, buffer.byteCapacity);
+			return true;
+		}
+
+		boolean copyFrom(long hash, boolean isFloat, long srcAddress, int count) {
+			if (currentAllocation == null)
+				return false;
+			long numBytes = count * 4L;
+			long address = reserve(numBytes);
+			if (address == 0L)
+				return false;
+			MemoryUtil.memCopy(srcAddress, address, numBytes);
+			Buffer buffer = new Buffer(hash, address, numBytes, isFloat);
+			cache.put(hash, buffer);
+			buffers.addLast(buffer);
+			return true;
 		}
 	}
 
 	private final Runnable terminationHook;
-	private final HashMap<Long, Buffer> cache = new HashMap<>();
-	private final ArrayDeque<Buffer> buffers = new ArrayDeque<>();
-	private final Allocation[] allocations;
-	private Allocation currentAllocation;
-	private int currentAllocationIndex;
+	private final Shard[] shards;
+	private final int shardMask;
 
 	public ModelCache(int modelCacheSizeMiB, Runnable terminationHook) {
+		this(modelCacheSizeMiB, false, terminationHook);
+	}
+
+	/**
+	 * @param concurrent whether the cache should be split into independently locked shards, to reduce contention when
+	 *                   the cache is accessed from multiple threads at once
+	 */
+	public ModelCache(int modelCacheSizeMiB, boolean concurrent, Runnable terminationHook) {
 		this.terminationHook = terminationHook;
 
 		// Limit cache size to 128 MiB for 32-bit
@@ -121,46 +275,66 @@ public class ModelCache {
 			log.warn("Unable to check physical memory size: " + e);
 		}
 
-		long byteCapacity = modelCacheSizeMiB * MiB;
+		int shardCount = 1;
+		if (concurrent) {
+			// Each shard should still be large enough to hold plenty of models
+			shardCount = min(ceilPow2(PROCESSOR_COUNT), max(1, Integer.highestOneBit(modelCacheSizeMiB / MIN_SHARD_SIZE_MIB)));
+		}
 
-		log.debug("Allocating {} MiB model cache", modelCacheSizeMiB);
+		long shardByteCapacity = modelCacheSizeMiB * MiB / shardCount;
 
-		Allocation[] allocations = new Allocation[1];
-		try {
-			// Try allocating the whole size as a single chunk
-			allocations[0] = new Allocation(byteCapacity);
-		} catch (Throwable err) {
-			log.warn("Unable to allocate {} MiB as a single chunk", modelCacheSizeMiB, err);
+		log.debug("Allocating {} MiB model cache in {} shard(s)", modelCacheSizeMiB, shardCount);
 
+		shards = new Shard[shardCount];
+		shardMask = shardCount - 1;
+		for (int i = 0; i < shardCount; i++) {
 			try {
-				// Try allocating in chunks of up to 1 GiB each
-				int numChunks = (int) ((byteCapacity + GiB - 1) / GiB);
-				allocations = new Allocation[numChunks];
-				for (int i = 0; i < numChunks; i++) {
-					allocations[i] = new Allocation(min(byteCapacity - i * GiB, GiB));
-				}
-			} catch (Throwable err2) {
+				shards[i] = new Shard(allocate(shardByteCapacity));
+			} catch (Throwable err) {
 				destroy();
-				log.error("Unable to allocate {} MiB in chunks of up to 1 GiB each", modelCacheSizeMiB, err2);
-				throw err2;
+				log.error("Unable to allocate {} MiB in chunks of up to 1 GiB each", shardByteCapacity / MiB, err);
+				throw err;
 			}
 		}
+	}
+
+	private static Allocation[] allocate(long byteCapacity) {
+		try {
+			// Try allocating the whole size as a single chunk
+			return new Allocation[] { new Allocation(byteCapacity) };
+		} catch (Throwable err) {
+			log.warn("Unable to allocate {} MiB as a single chunk", byteCapacity / MiB, err);
+		}
 
-		this.allocations = allocations;
-		currentAllocation = allocations[0];
+		// Try allocating in chunks of up to 1 GiB each
+		int numChunks = (int) ((byteCapacity + GiB - 1) / GiB);
+		Allocation[] allocations = new Allocation[numChunks];
+		try {
+			for (int i = 0; i < numChunks; i++)
+				allocations[i] = new Allocation(min(byteCapacity - i * GiB, GiB));
+		} catch (Throwable err) {
+			for (Allocation allocation : allocations)
+				if (allocation != null)
+					allocation.destroy();
+			throw err;
+		}
+		return allocations;
 	}
 
-	public void destroy() {
-		cache.clear();
-		buffers.clear();
-		currentAllocation = null;
+	/**
+	 * @return whether the cache may be accessed from multiple threads at once. Every shard is locked on access, so this
+	 * holds even when the cache is too small to be split into more than a single shard.
+	 */
+	public boolean isConcurrent() {
+		return true;
+	}
 
-		if (allocations != null) {
-			for (int i = 0; i < allocations.length; i++) {
-				if (allocations[i] != null) {
-					allocations[i].destroy();
-					allocations[i] = null;
-				}
+	public void destroy() {
+		for (Shard shard : shards) {
+			if (shard == null)
+				continue;
+			synchronized (shard) {
+				shard.destroy();
 			}
 		}
 	}
@@ -177,142 +351,71 @@ public class ModelCache {
 	}
 
 	public void clear() {
-		cache.clear();
-		buffers.clear();
-		for (Allocation allocation : allocations) {
-			if (allocation != null) {
-				allocation.cursor = 0;
-				allocation.freeBytesAhead = allocation.byteCapacity;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				shard.clear();
 			}
 		}
 	}
 
-	private Buffer get(long hash) {
-		return cache.get(hash);
+	private Shard shard(long hash) {
+		return shards[(int) (hash ^ hash >>> 32) & shardMask];
 	}
 
-	private void nextAllocation() {
-		currentAllocation.cursor = 0;
-		currentAllocation.freeBytesAhead = 0;
-
-		currentAllocationIndex++;
-		currentAllocationIndex %= allocations.length;
-		currentAllocation = allocations[currentAllocationIndex];
-	}
-
-	private long reserve(long numBytes) {
-		assert currentAllocation != null : "model cache used after destruction";
-
-		if (currentAllocation.bytesFromEnd() < numBytes) {
-			// ### = taken, ... = free, MMM = end marker
-			//                    _________ -> not enough space
-			// [##################....###MM]
-			// inserting a new end marker as follows will cause issues
-			// [##################MMMM###MM]
-			// since ### and MM will be freed next, an option is to move these to the end of the buffer list
-			// another minor optimization we can make is to pretend that the buffers are shifted to the left like so
-			// [##################|MMMM###MM]
-			// [##################|###MMMMMM]
-			// this leaves us with only a single dummy buffer at the end, and a guarantee that buffers will still be
-			// freed in an appropriate order with no collisions
-
-			// Move the existing regions to the end of the buffer list
-			while (currentAllocation.bytesFromEnd() != currentAllocation.freeBytesAhead) {
-				assert currentAllocation.bytesFromEnd() > currentAllocation.freeBytesAhead;
-				Buffer buffer = buffers.pollFirst();
-				if (buffer == null) {
-					log.error("No more cache entries left to free, yet the allocation is still in use ({} != {})",
-						currentAllocation.bytesFromEnd(), currentAllocation.freeBytesAhead);
-					terminationHook.run();
-					return 0;
-				}
-
-				if (buffer.endMarker) {
-					// Shift unused space to the end of the buffer, as detailed above
-					currentAllocation.freeBytesAhead += buffer.byteCapacity;
-					assert currentAllocation.cursor + currentAllocation.freeBytesAhead <= currentAllocation.byteCapacity;
-				} else {
-					// Move the buffer to the end of the list, and pretend we've shifted it to the left as detailed above
-					buffers.addLast(buffer);
-					currentAllocation.cursor += buffer.byteCapacity;
-				}
-			}
-
-			// Consume the remaining free bytes of the allocation
-			buffers.addLast(new Buffer(currentAllocation.freeBytesAhead));
-			// Advance to the next allocation, or the beginning of the same allocation if there is only one
-			nextAllocation();
-
-			if (currentAllocation.bytesFromEnd() < numBytes) {
-				log.error("Failed to reserve space for {} bytes. Too large to fit in allocation {} of size {}",
-					numBytes, currentAllocationIndex, currentAllocation.byteCapacity);
-				terminationHook.run();
-				return 0;
-			}
+	/**
+	 * Copy the cached data for the specified hash into the destination buffer, at its current position.
+	 * The destination's position is advanced only if the data was found. Safe to call from any thread.
+	 *
+	 * @param count the expected number of ints. Cached data of any other size is treated as a miss
+	 * @return whether cached data was found and copied
+	 */
+	public boolean getIntBuffer(long hash, IntBuffer dst, int count) {
+		assert dst.isDirect() && dst.remaining() >= count;
+		final Shard shard = shard(hash);
+		synchronized (shard) {
+			if (!shard.copyTo(hash, false, MemoryUtil.memAddress(dst), count))
+				return false;
 		}
-
-		while (currentAllocation.freeBytesAhead < numBytes) {
-			if (removeOldestCacheEntry() == null) {
-				log.error("No more cache entries left to free, yet there aren't enough free bytes ({} < {})",
-					currentAllocation.freeBytesAhead, numBytes);
-				terminationHook.run();
-				return 0;
-			}
-		}
-
-		return currentAllocation.reserve(numBytes);
+		dst.position(dst.position() + count);
+		return true;
 	}
 
-	private Buffer removeOldestCacheEntry() {
-		Buffer buffer = buffers.pollFirst();
-
-		if (buffer != null) {
-			if (!buffer.endMarker) {
-				cache.remove(buffer.hash, buffer);
-				// Normally, these addresses will be equal, but in case they've been "shifted" as detailed in the
-				// reserve function, the buffer's actual address will be larger than the cursor position
-				assert currentAllocation.address + currentAllocation.cursor + currentAllocation.freeBytesAhead <=
-					MemoryUtil.memAddress0(buffer.intBuffer == null ? buffer.floatBuffer : buffer.intBuffer);
-			}
-
-			currentAllocation.freeBytesAhead += buffer.byteCapacity;
-			assert currentAllocation.cursor + currentAllocation.freeBytesAhead <= currentAllocation.byteCapacity;
+	/**
+	 * Float equivalent of {@link #getIntBuffer(long, IntBuffer, int)}.
+	 */
+	public boolean getFloatBuffer(long hash, FloatBuffer dst, int count) {
+		assert dst.isDirect() && dst.remaining() >= count;
+		final Shard shard = shard(hash);
+		synchronized (shard) {
+			if (!shard.copyTo(hash, true, MemoryUtil.memAddress(dst), count))
+				return false;
 		}
-
-		return buffer;
+		dst.position(dst.position() + count);
+		return true;
 	}
 
-	public IntBuffer getIntBuffer(long hash) {
-		Buffer buffer = get(hash);
-		if (buffer == null)
-			return null;
-		return buffer.intBuffer;
-	}
-
-	public FloatBuffer getFloatBuffer(long hash) {
-		Buffer buffer = get(hash);
-		if (buffer == null)
-			return null;
-		return buffer.floatBuffer;
-	}
-
-	public IntBuffer reserveIntBuffer(long hash, int capacity) {
-		long address = reserve(capacity * 4L);
-		if (address == 0L)
-			return null;
-		Buffer buffer = new Buffer(hash, MemoryUtil.memIntBuffer(address, capacity));
-		cache.put(hash, buffer);
-		buffers.addLast(buffer);
-		return buffer.intBuffer;
+	/**
+	 * Cache a copy of the specified range of the source buffer. The entry is only made visible to other threads once
+	 * the copy is complete. Safe to call from any thread.
+	 *
+	 * @return whether there was enough space to cache the data
+	 */
+	public boolean putIntBuffer(long hash, IntBuffer src, int offset, int count) {
+		assert src.isDirect() && offset + count <= src.capacity();
+		final Shard shard = shard(hash);
+		synchronized (shard) {
+			return shard.copyFrom(hash, false, MemoryUtil.memAddress0(src) + offset * 4L, count);
+		}
 	}
 
-	public FloatBuffer reserveFloatBuffer(long hash, int capacity) {
-		long address = reserve(capacity * 4L);
-		if (address == 0L)
-			return null;
-		Buffer buffer = new Buffer(hash, MemoryUtil.memFloatBuffer(address, capacity));
-		cache.put(hash, buffer);
-		buffers.addLast(buffer);
-		return buffer.floatBuffer;
+	/**
+	 * Float equivalent of {@link #putIntBuffer(long, IntBuffer, int, int)}.
+	 */
+	public boolean putFloatBuffer(long hash, FloatBuffer src, int offset, int count) {
+		assert src.isDirect() && offset + count <= src.capacity();
+		final Shard shard = shard(hash);
+		synchronized (shard) {
+			return shard.copyFrom(hash, true, MemoryUtil.memAddress0(src) + offset * 4L, count);
+		}
 	}
 }
@@ -7,15 +7,44 @@ import java.util.Set;
 import lombok.Getter;
 
 public abstract class GLState {
+	/**
+	 * Shared by a group of states, to keep track of which states have pending values without having to visit all of them,
+	 * and to count how many redundant GL calls were skipped.
+	 */
+	public static final class Group {
+		public int dirtyBits;
+		public int eliminatedCalls;
+	}
+
 	protected boolean hasValue;
 	protected boolean hasApplied;
 
+	private Group group;
+	private int dirtyBit;
+
+	public void attach(Group group, int index) {
+		assert index < Integer.SIZE;
+		this.group = group;
+		this.dirtyBit = 1 << index;
+	}
+
+	protected final void markPending() {
+		hasValue = true;
+		if (group != null)
+			group.dirtyBits |= dirtyBit;
+	}
+
+	protected final void markEliminated() {
+		if (group != null)
+			group.eliminatedCalls++;
+	}
+
 	public void reset() {
 		hasValue = hasApplied = false;
 	}
 
 	public void invalidate() {
-		hasValue = true;
+		markPending();
 		hasApplied = false;
 	}
 
@@ -35,8 +64,10 @@ public abstract class GLState {
 		private boolean appliedValue;
 
 		public final void set(boolean v) {
-			hasValue = true;
 			value = v;
+			// A previously pending value will be compared again when applied
+			if (!hasApplied || v != appliedValue)
+				markPending();
 		}
 
 		@Override
@@ -44,6 +75,8 @@ public abstract class GLState {
 			if (!hasApplied || value != appliedValue) {
 				applyValue(value);
 				appliedValue = value;
+			} else {
+				markEliminated();
 			}
 		}
 
@@ -56,8 +89,9 @@ public abstract class GLState {
 		private int appliedValue;
 
 		public final void set(int v) {
-			hasValue = true;
 			value = v;
+			if (!hasApplied || v != appliedValue)
+				markPending();
 		}
 
 		@Override
@@ -65,6 +99,8 @@ public abstract class GLState {
 			if (!hasApplied || value != appliedValue) {
 				applyValue(value);
 				appliedValue = value;
+			} else {
+				markEliminated();
 			}
 		}
 
@@ -77,8 +113,9 @@ public abstract class GLState {
 		private T appliedValue;
 
 		public final void set(T v) {
-			hasValue = true;
 			value = v;
+			if (!hasApplied || !Objects.equals(v, appliedValue))
+				markPending();
 		}
 
 		@Override
@@ -86,6 +123,8 @@ public abstract class GLState {
 			if (!hasApplied || !Objects.equals(value, appliedValue)) {
 				applyValue(value);
 				appliedValue = value;
+			} else {
+				markEliminated();
 			}
 		}
 
@@ -103,7 +142,7 @@ public abstract class GLState {
 		}
 
 		public final void set(int... v) {
-			hasValue = true;
+			markPending();
 			System.arraycopy(v, 0, value, 0, v.length);
 		}
 
@@ -112,6 +151,8 @@ public abstract class GLState {
 			if (!hasApplied || !Arrays.equals(value, appliedValue)) {
 				applyValues(value);
 				System.arraycopy(value, 0, appliedValue, 0, value.length);
+			} else {
+				markEliminated();
 			}
 		}
 
@@ -129,7 +170,7 @@ public abstract class GLState {
 		}
 
 		public final void set(boolean... v) {
-			hasValue = true;
+			markPending();
 			System.arraycopy(v, 0, value, 0, v.length);
 		}
 
@@ -138,6 +179,8 @@ public abstract class GLState {
 			if (!hasApplied || !Arrays.equals(value, appliedValue)) {
 				applyValues(value);
 				System.arraycopy(value, 0, appliedValue, 0, value.length);
+			} else {
+				markEliminated();
 			}
 		}
 
@@ -148,7 +191,7 @@ public abstract class GLState {
 		private final Set<Integer> targets = new HashSet<>();
 
 		public void add(int target) {
-			hasValue = true;
+			markPending();
 			targets.add(target);
 		}
 
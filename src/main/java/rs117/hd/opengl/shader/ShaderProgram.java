@@ -2,7 +2,9 @@ package rs117.hd.opengl.shader;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -25,9 +27,15 @@ public class ShaderProgram implements Destructible {
 	private final List<UniformProperty> uniformProperties = new ArrayList<>();
 	private final List<UniformBufferBlockPair> uniformBlockMappings = new ArrayList<>();
 
+	// Linked programs kept around while recompiling, keyed by their preprocessed sources, so unchanged programs can be reused
+	private static Map<String, Integer> retainedPrograms;
+	private static int reusedCount;
+	private static int compiledCount;
+
 	protected final ShaderTemplate shaderTemplate;
 
 	private int program;
+	private String sourceKey;
 	@Getter
 	private boolean viable = true;
 
@@ -36,19 +44,55 @@ public class ShaderProgram implements Destructible {
 		templateConsumer.accept(shaderTemplate);
 	}
 
+	/**
+	 * Keep programs which are destroyed from now on, until {@link #releaseRetainedPrograms()} is called,
+	 * so programs which end up with identical sources after recompiling can be reused instead of being compiled again.
+	 */
+	public static void retainPrograms() {
+		if (retainedPrograms == null)
+			retainedPrograms = new HashMap<>();
+		reusedCount = 0;
+		compiledCount = 0;
+	}
+
+	/**
+	 * Delete any retained programs which weren't reused.
+	 *
+	 * @return the number of programs which were reused and the number of programs which had to be compiled
+	 */
+	public static int[] releaseRetainedPrograms() {
+		if (retainedPrograms != null) {
+			for (int program : retainedPrograms.values())
+				glDeleteProgram(program);
+			retainedPrograms = null;
+		}
+		return new int[] { reusedCount, compiledCount };
+	}
+
 	public void compile(ShaderIncludes includes) throws ShaderException, IOException {
+		var sources = shaderTemplate.preprocess(includes);
+		String newSourceKey = sources.toString();
+
+		Integer retained = retainedPrograms == null ? null : retainedPrograms.remove(newSourceKey);
 		int newProgram;
-		try {
-			newProgram = shaderTemplate.compile(includes);
-		} catch (ShaderException ex) {
-			viable = false;
-			throw ex;
+		if (retained != null) {
+			newProgram = retained;
+			reusedCount++;
+		} else {
+			try {
+				newProgram = shaderTemplate.compile(includes, sources);
+				compiledCount++;
+			} catch (ShaderException ex) {
+				viable = false;
+				throw ex;
+			}
 		}
 
 		if (isValid())
 			destroy();
 
 		program = newProgram;
+		sourceKey = newSourceKey;
 		assert isValid();
 
 		for (var prop : uniformProperties) {
@@ -116,8 +160,10 @@ public class ShaderProgram implements Destructible {
 		if (program == 0)
 			return;
 
-		glDeleteProgram(program);
+		if (retainedPrograms == null || sourceKey == null || retainedPrograms.putIfAbsent(sourceKey, program) != null)
+			glDeleteProgram(program);
 		program = 0;
+		sourceKey = null;
 
 		for (var prop : uniformProperties)
 			prop.destroy();
@@ -28,6 +28,7 @@ package rs117.hd.opengl.shader;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 import org.lwjgl.BufferUtils;
@@ -58,7 +59,24 @@ public class ShaderTemplate
 		return this;
 	}
 
+	/**
+	 * @return the preprocessed source of each shader stage, by shader type
+	 */
+	public Map<Integer, String> preprocess(ShaderIncludes includes) throws IOException {
+		var sources = new LinkedHashMap<Integer, String>();
+		for (var entry : shaderTypePaths.entrySet()) {
+			sources.put(entry.getKey(), includes
+				.addInclude("SHADER_TYPE", SHADER_TYPE_DEFINE + entry.getKey())
+				.loadFile(entry.getValue()));
+		}
+		return sources;
+	}
+
 	public int compile(ShaderIncludes includes) throws ShaderException, IOException {
+		return compile(includes, preprocess(includes));
+	}
+
+	public int compile(ShaderIncludes includes, Map<Integer, String> sources) throws ShaderException, IOException {
 		int program = glCreateProgram();
 		int[] shaders = new int[shaderTypePaths.size()];
 		int i = 0;
@@ -71,9 +89,7 @@ public class ShaderTemplate
 				if (shader == 0)
 					throw new ShaderException("Unable to create shader of type " + entry.getKey());
 
-				String source = includes
-					.addInclude("SHADER_TYPE", SHADER_TYPE_DEFINE + entry.getKey())
-					.loadFile(entry.getValue());
+				String source = sources.get(entry.getKey());
 				glShaderSource(shader, source);
 				glCompileShader(shader);
 
@@ -22,6 +22,7 @@ import rs117.hd.renderer.zone.WorldViewContext;
 import rs117.hd.renderer.zone.ZoneRenderer;
 import rs117.hd.utils.FrameTimingsRecorder;
 import rs117.hd.utils.NpcDisplacementCache;
+import rs117.hd.utils.buffer.StagingStats;
 import rs117.hd.utils.jobs.JobSystem;
 
 import static rs117.hd.renderer.zone.SceneManager.MAX_WORLDVIEWS;
@@ -184,6 +185,21 @@ public class FrameTimerOverlay extends OverlayPanel implements FrameTimer.Listen
 					.left("Temp renderables:")
 					.right(String.valueOf(plugin.getDrawnTempRenderableCount()))
 					.build());
+
+				children.add(LineComponent.builder()
+					.left("Eliminated GL calls:")
+					.right(String.valueOf(plugin.getEliminatedGlCallCount()))
+					.build());
+
+				children.add(LineComponent.builder()
+					.left("Staging:")
+					.right(format("%s (%d allocs)", formatBytes(plugin.getStagedByteCount()), plugin.getStagingAllocationCount()))
+					.build());
+
+				children.add(LineComponent.builder()
+					.left(format("Staged flushes (%d s):", StagingStats.FLUSH_WINDOW_SECONDS))
+					.right(String.valueOf(plugin.getStagedFlushCount()))
+					.build());
 			} else {
 				children.add(LineComponent.builder()
 					.left("Tiles:")
@@ -212,6 +228,7 @@ public class FrameTimerOverlay extends OverlayPanel implements FrameTimer.Listen
 				.build());
 
 			WorldViewContext root = sceneManager.getRoot();
+			long dynamicBufferSize = root.getDynamicBufferSize();
 			addTiming("Root Scene Load", root.loadTime, false);
 			addTiming("Root Scene Upload", root.uploadTime, false);
 			addTiming("Root Scene Swap", root.sceneSwapTime, false);
@@ -229,6 +246,7 @@ public class FrameTimerOverlay extends OverlayPanel implements FrameTimer.Listen
 					subSceneLoadTime += subscene.loadTime;
 					subSceneUploadTime += subscene.uploadTime;
 					subSceneSwapTime += subscene.sceneSwapTime;
+					dynamicBufferSize += subscene.getDynamicBufferSize();
 				}
 			}
 
@@ -243,6 +261,11 @@ public class FrameTimerOverlay extends OverlayPanel implements FrameTimer.Listen
 				.right(String.valueOf(subSceneCount))
 				.build());
 
+			children.add(LineComponent.builder()
+				.left("Dynamic buffers:")
+				.right(formatBytes(dynamicBufferSize))
+				.build());
+
 
 			children.add(LineComponent.builder()
 				.left("Streaming Zones:")
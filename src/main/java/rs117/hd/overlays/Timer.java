@@ -59,6 +59,7 @@ public enum Timer {
 	DRAW_TEMP_ASYNC(ASYNC_CPU_TIMER),
 	DRAW_DYNAMIC_ASYNC(ASYNC_CPU_TIMER),
 	STATIC_ALPHA_SORT(ASYNC_CPU_TIMER),
+	DRAW_ZONE_OPAQUE_ASYNC(ASYNC_CPU_TIMER),
 
 	// GPU timers
 	RENDER_FRAME(GPU_TIMER),
@@ -7,6 +7,7 @@ import net.runelite.api.hooks.*;
 import org.lwjgl.opengl.*;
 import rs117.hd.opengl.shader.ShaderException;
 import rs117.hd.opengl.shader.ShaderIncludes;
+import rs117.hd.scene.SceneChanges;
 import rs117.hd.scene.SceneContext;
 
 public interface Renderer extends DrawCallbacks {
@@ -28,6 +29,13 @@ public interface Renderer extends DrawCallbacks {
 	}
 	default void reloadScene() {}
 	default void clearCaches() {}
+	/**
+	 * Rebuild the parts of the scene affected by the specified changes, which by default means reloading all of it.
+	 */
+	default void invalidateScene(SceneChanges changes) {
+		clearCaches();
+		reloadScene();
+	}
 	@Nullable
 	default SceneContext getSceneContext() {
 		return null;
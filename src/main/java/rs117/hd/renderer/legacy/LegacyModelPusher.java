@@ -1,7 +1,5 @@
 package rs117.hd.renderer.legacy;
 
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 import java.util.Arrays;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -80,7 +78,7 @@ public class LegacyModelPusher {
 		if (plugin.configModelCaching && !plugin.useLowMemoryMode) {
 			final int size = config.modelCacheSizeMiB();
 			try {
-				modelCache = new ModelCache(size, () -> {
+				modelCache = new ModelCache(size, true, () -> {
 					shutDown();
 					plugin.stopPlugin();
 				});
@@ -169,9 +167,9 @@ public class LegacyModelPusher {
 		int preOrientation,
 		boolean needsCaching
 	) {
-		boolean useCache = needsCaching;
-		if (modelCache == null)
-			useCache = false;
+		// The cache may be destroyed by its termination hook part-way through
+		final ModelCache modelCache = this.modelCache;
+		final boolean useCache = needsCaching && modelCache != null;
 
 		final int faceCount = min(model.getFaceCount(), MAX_FACE_COUNT);
 		final int bufferSize = faceCount * DATUM_PER_FACE;
@@ -205,31 +203,22 @@ public class LegacyModelPusher {
 		boolean foundCachedNormalData = false;
 		boolean foundCachedUvData = skipUVs;
 
-		if (useCache) {
-			assert client.isClientThread() : "Model caching isn't thread-safe";
-
-			IntBuffer vertexData = this.modelCache.getIntBuffer(modelHasher.vertexHash);
-			foundCachedVertexData = vertexData != null && vertexData.remaining() == bufferSize;
-			if (foundCachedVertexData) {
-				sceneContext.stagingBufferVertices.put(vertexData);
-				vertexData.rewind();
-			}
+		final long vertexHash = modelHasher.vertexHash;
+		final long normalHash = modelHasher.normalHash;
+		final long uvHash = modelHasher.uvHash;
 
-			FloatBuffer normalData = this.modelCache.getFloatBuffer(modelHasher.normalHash);
-			foundCachedNormalData = normalData != null && normalData.remaining() == bufferSize;
-			if (foundCachedNormalData) {
-				sceneContext.stagingBufferNormals.put(normalData);
-				normalData.rewind();
-			}
+		if (useCache) {
+			assert client.isClientThread() || modelCache.isConcurrent() :
+				"Model caching from other threads requires a concurrent model cache";
 
+			foundCachedVertexData = modelCache.getIntBuffer(
+				vertexHash, sceneContext.stagingBufferVertices.getBuffer(), bufferSize);
+			foundCachedNormalData = modelCache.getFloatBuffer(
+				normalHash, sceneContext.stagingBufferNormals.getBuffer(), bufferSize);
 			if (!foundCachedUvData) {
-				FloatBuffer uvData = this.modelCache.getFloatBuffer(modelHasher.uvHash);
-				foundCachedUvData = uvData != null && uvData.remaining() == bufferSize;
-				if (foundCachedUvData) {
+				foundCachedUvData = modelCache.getFloatBuffer(uvHash, sceneContext.stagingBufferUvs.getBuffer(), bufferSize);
+				if (foundCachedUvData)
 					texturedFaceCount = faceCount;
-					sceneContext.stagingBufferUvs.put(uvData);
-					uvData.rewind();
-				}
 			}
 
 			if (foundCachedVertexData && foundCachedNormalData && foundCachedUvData) {
@@ -239,42 +228,13 @@ public class LegacyModelPusher {
 			}
 		}
 
-		IntBuffer fullVertexData = null;
-		FloatBuffer fullNormalData = null;
-		FloatBuffer fullUvData = null;
-
-		boolean cacheVertexData = false;
-		boolean cacheNormalData = false;
-		boolean cacheUvData = false;
-		if (useCache) {
-			cacheVertexData = !foundCachedVertexData;
-			cacheNormalData = !foundCachedNormalData;
-			cacheUvData = !foundCachedUvData;
-
-			if (cacheVertexData) {
-				fullVertexData = this.modelCache.reserveIntBuffer(modelHasher.vertexHash, bufferSize);
-				if (fullVertexData == null) {
-					log.error("failed to reserve vertex buffer");
-					cacheVertexData = false;
-				}
-			}
-
-			if (cacheNormalData) {
-				fullNormalData = this.modelCache.reserveFloatBuffer(modelHasher.normalHash, bufferSize);
-				if (fullNormalData == null) {
-					log.error("failed to reserve normal buffer");
-					cacheNormalData = false;
-				}
-			}
-
-			if (cacheUvData) {
-				fullUvData = this.modelCache.reserveFloatBuffer(modelHasher.uvHash, bufferSize);
-				if (fullUvData == null) {
-					log.error("failed to reserve uv buffer");
-					cacheUvData = false;
-				}
-			}
-		}
+		// The newly pushed data is copied into the cache once complete, so other threads never see partial entries
+		final boolean cacheVertexData = useCache && !foundCachedVertexData;
+		final boolean cacheNormalData = useCache && !foundCachedNormalData;
+		final boolean cacheUvData = useCache && !foundCachedUvData;
+		final int vertexOffset = sceneContext.stagingBufferVertices.position();
+		final int normalOffset = sceneContext.stagingBufferNormals.position();
+		final int uvOffset = skipUVs ? 0 : sceneContext.stagingBufferUvs.position();
 
 		if (!foundCachedVertexData) {
 			if (plugin.enableDetailedTimers)
@@ -284,8 +244,6 @@ public class LegacyModelPusher {
 			for (int face = 0; face < faceCount; face++) {
 				int[] data = getFaceVertices(sceneContext, tile, uuid, model, modelOverride, face);
 				sceneContext.stagingBufferVertices.put(data);
-				if (cacheVertexData)
-					fullVertexData.put(data);
 			}
 			modelOverride.revertRotation(model);
 
@@ -300,8 +258,6 @@ public class LegacyModelPusher {
 			for (int face = 0; face < faceCount; face++) {
 				getNormalDataForFace(sceneContext, model, modelOverride, face);
 				sceneContext.stagingBufferNormals.put(sceneContext.modelFaceNormals);
-				if (cacheNormalData)
-					fullNormalData.put(sceneContext.modelFaceNormals);
 			}
 
 			if (plugin.enableDetailedTimers)
@@ -366,8 +322,6 @@ public class LegacyModelPusher {
 				}
 
 				sceneContext.stagingBufferUvs.put(uvData);
-				if (cacheUvData)
-					fullUvData.put(uvData);
 
 				++texturedFaceCount;
 			}
@@ -376,12 +330,16 @@ public class LegacyModelPusher {
 				frameTimer.end(Timer.MODEL_PUSHING_UV);
 		}
 
-		if (cacheVertexData)
-			fullVertexData.flip();
-		if (cacheNormalData)
-			fullNormalData.flip();
-		if (cacheUvData)
-			fullUvData.flip();
+		if (cacheVertexData && !modelCache.putIntBuffer(
+			vertexHash, sceneContext.stagingBufferVertices.getBuffer(), vertexOffset, bufferSize))
+			log.error("failed to reserve vertex buffer");
+		if (cacheNormalData && !modelCache.putFloatBuffer(
+			normalHash, sceneContext.stagingBufferNormals.getBuffer(), normalOffset, bufferSize))
+			log.error("failed to reserve normal buffer");
+		// Only fully textured models can be looked up later, so there's no point caching partial UVs
+		if (cacheUvData && texturedFaceCount == faceCount && !modelCache.putFloatBuffer(
+			uvHash, sceneContext.stagingBufferUvs.getBuffer(), uvOffset, bufferSize))
+			log.error("failed to reserve uv buffer");
 
 		sceneContext.modelPusherResults[0] = faceCount;
 		sceneContext.modelPusherResults[1] = texturedFaceCount;
@@ -275,7 +275,9 @@ public class LegacyRenderer implements Renderer {
 
 	@Override
 	public void addShaderIncludes(ShaderIncludes includes) {
-		includes.addUniformBuffer(uboCompute);
+		includes
+			.define("CLUSTERED_LIGHTING", false)
+			.addUniformBuffer(uboCompute);
 	}
 
 	@Override
@@ -715,7 +717,7 @@ public class LegacyRenderer implements Renderer {
 			final float[] lightPosition = new float[4];
 			final float[] lightColor = new float[4];
 			for (int i = 0; i < sceneContext.numVisibleLights; i++) {
-				final Light light = sceneContext.lights.get(i);
+				final Light light = sceneContext.visibleLights.get(i);
 				final float lightRadiusSq = light.radius * light.radius;
 				lightPosition[0] = light.pos[0] + plugin.cameraShift[0];
 				lightPosition[1] = light.pos[1];
@@ -54,6 +54,7 @@ import rs117.hd.utils.ModelHash;
 import static net.runelite.api.Constants.*;
 import static net.runelite.api.Constants.SCENE_SIZE;
 import static net.runelite.api.Perspective.*;
+import static rs117.hd.scene.VertexTerrainData.*;
 import static rs117.hd.scene.tile_overrides.TileOverride.NONE;
 import static rs117.hd.scene.tile_overrides.TileOverride.OVERLAY_FLAG;
 import static rs117.hd.utils.HDUtils.HIDDEN_HSL;
@@ -657,10 +658,10 @@ public class LegacySceneUploader {
 					swMaterial = seMaterial = neMaterial = nwMaterial = material;
 				}
 
-				swNormals = sceneContext.vertexTerrainNormals.getOrDefault(swVertexKey, swNormals);
-				seNormals = sceneContext.vertexTerrainNormals.getOrDefault(seVertexKey, seNormals);
-				neNormals = sceneContext.vertexTerrainNormals.getOrDefault(neVertexKey, neNormals);
-				nwNormals = sceneContext.vertexTerrainNormals.getOrDefault(nwVertexKey, nwNormals);
+				swNormals = sceneContext.vertexTerrain.getNormals(swVertexKey, swNormals);
+				seNormals = sceneContext.vertexTerrain.getNormals(seVertexKey, seNormals);
+				neNormals = sceneContext.vertexTerrain.getNormals(neVertexKey, neNormals);
+				nwNormals = sceneContext.vertexTerrain.getNormals(nwVertexKey, nwNormals);
 
 				boolean useBlendedMaterialAndColor =
 					plugin.configGroundBlending &&
@@ -687,17 +688,17 @@ public class LegacySceneUploader {
 				}
 
 				if (useBlendedMaterialAndColor) {
-					// get the vertices' colors and textures from hashmaps
-					swColor = sceneContext.vertexTerrainColor.getOrDefault(swVertexKey, swColor);
-					seColor = sceneContext.vertexTerrainColor.getOrDefault(seVertexKey, seColor);
-					neColor = sceneContext.vertexTerrainColor.getOrDefault(neVertexKey, neColor);
-					nwColor = sceneContext.vertexTerrainColor.getOrDefault(nwVertexKey, nwColor);
+					// get the vertices' colors and textures from the vertex terrain data
+					swColor = sceneContext.vertexTerrain.getColor(swVertexKey, swColor);
+					seColor = sceneContext.vertexTerrain.getColor(seVertexKey, seColor);
+					neColor = sceneContext.vertexTerrain.getColor(neVertexKey, neColor);
+					nwColor = sceneContext.vertexTerrain.getColor(nwVertexKey, nwColor);
 
 					if (plugin.configGroundTextures) {
-						swMaterial = sceneContext.vertexTerrainTexture.getOrDefault(swVertexKey, swMaterial);
-						seMaterial = sceneContext.vertexTerrainTexture.getOrDefault(seVertexKey, seMaterial);
-						neMaterial = sceneContext.vertexTerrainTexture.getOrDefault(neVertexKey, neMaterial);
-						nwMaterial = sceneContext.vertexTerrainTexture.getOrDefault(nwVertexKey, nwMaterial);
+						swMaterial = sceneContext.vertexTerrain.getMaterial(swVertexKey, swMaterial);
+						seMaterial = sceneContext.vertexTerrain.getMaterial(seVertexKey, seMaterial);
+						neMaterial = sceneContext.vertexTerrain.getMaterial(neVertexKey, neMaterial);
+						nwMaterial = sceneContext.vertexTerrain.getMaterial(nwVertexKey, nwMaterial);
 					}
 				} else if (plugin.configGroundTextures && groundMaterial != null) {
 					swMaterial = groundMaterial.getRandomMaterial(worldPos[0], worldPos[1], worldPos[2]);
@@ -711,23 +712,23 @@ public class LegacySceneUploader {
 				// set colors for the shoreline to create a foam effect in the water shader
 				swColor = seColor = nwColor = neColor = 127;
 
-				if (sceneContext.vertexIsWater.containsKey(swVertexKey) && sceneContext.vertexIsLand.containsKey(swVertexKey))
+				if (sceneContext.vertexTerrain.hasFlags(swVertexKey, FLAG_WATER | FLAG_LAND))
 					swColor = 0;
-				if (sceneContext.vertexIsWater.containsKey(seVertexKey) && sceneContext.vertexIsLand.containsKey(seVertexKey))
+				if (sceneContext.vertexTerrain.hasFlags(seVertexKey, FLAG_WATER | FLAG_LAND))
 					seColor = 0;
-				if (sceneContext.vertexIsWater.containsKey(nwVertexKey) && sceneContext.vertexIsLand.containsKey(nwVertexKey))
+				if (sceneContext.vertexTerrain.hasFlags(nwVertexKey, FLAG_WATER | FLAG_LAND))
 					nwColor = 0;
-				if (sceneContext.vertexIsWater.containsKey(neVertexKey) && sceneContext.vertexIsLand.containsKey(neVertexKey))
+				if (sceneContext.vertexTerrain.hasFlags(neVertexKey, FLAG_WATER | FLAG_LAND))
 					neColor = 0;
 			}
 
-			if (sceneContext.vertexIsOverlay.containsKey(neVertexKey) && sceneContext.vertexIsUnderlay.containsKey(neVertexKey))
+			if (sceneContext.vertexTerrain.hasFlags(neVertexKey, FLAG_OVERLAY | FLAG_UNDERLAY))
 				neVertexIsOverlay = true;
-			if (sceneContext.vertexIsOverlay.containsKey(nwVertexKey) && sceneContext.vertexIsUnderlay.containsKey(nwVertexKey))
+			if (sceneContext.vertexTerrain.hasFlags(nwVertexKey, FLAG_OVERLAY | FLAG_UNDERLAY))
 				nwVertexIsOverlay = true;
-			if (sceneContext.vertexIsOverlay.containsKey(seVertexKey) && sceneContext.vertexIsUnderlay.containsKey(seVertexKey))
+			if (sceneContext.vertexTerrain.hasFlags(seVertexKey, FLAG_OVERLAY | FLAG_UNDERLAY))
 				seVertexIsOverlay = true;
-			if (sceneContext.vertexIsOverlay.containsKey(swVertexKey) && sceneContext.vertexIsUnderlay.containsKey(swVertexKey))
+			if (sceneContext.vertexTerrain.hasFlags(swVertexKey, FLAG_OVERLAY | FLAG_UNDERLAY))
 				swVertexIsOverlay = true;
 
 
@@ -837,15 +838,15 @@ public class LegacySceneUploader {
 			int swColor, seColor, neColor, nwColor;
 			swColor = seColor = neColor = nwColor = UNDERWATER_HSL;
 
-			int swDepth = sceneContext.vertexUnderwaterDepth.getOrDefault(swVertexKey, 0);
-			int seDepth = sceneContext.vertexUnderwaterDepth.getOrDefault(seVertexKey, 0);
-			int nwDepth = sceneContext.vertexUnderwaterDepth.getOrDefault(nwVertexKey, 0);
-			int neDepth = sceneContext.vertexUnderwaterDepth.getOrDefault(neVertexKey, 0);
+			int swDepth = sceneContext.vertexTerrain.getUnderwaterDepth(swVertexKey, 0);
+			int seDepth = sceneContext.vertexTerrain.getUnderwaterDepth(seVertexKey, 0);
+			int nwDepth = sceneContext.vertexTerrain.getUnderwaterDepth(nwVertexKey, 0);
+			int neDepth = sceneContext.vertexTerrain.getUnderwaterDepth(neVertexKey, 0);
 
-			int[] swNormals = sceneContext.vertexTerrainNormals.getOrDefault(swVertexKey, UP_NORMAL);
-			int[] seNormals = sceneContext.vertexTerrainNormals.getOrDefault(seVertexKey, UP_NORMAL);
-			int[] nwNormals = sceneContext.vertexTerrainNormals.getOrDefault(nwVertexKey, UP_NORMAL);
-			int[] neNormals = sceneContext.vertexTerrainNormals.getOrDefault(neVertexKey, UP_NORMAL);
+			int[] swNormals = sceneContext.vertexTerrain.getNormals(swVertexKey, UP_NORMAL);
+			int[] seNormals = sceneContext.vertexTerrain.getNormals(seVertexKey, UP_NORMAL);
+			int[] nwNormals = sceneContext.vertexTerrain.getNormals(nwVertexKey, UP_NORMAL);
+			int[] neNormals = sceneContext.vertexTerrain.getNormals(neVertexKey, UP_NORMAL);
 
 			Material swMaterial = Material.NONE;
 			Material seMaterial = Material.NONE;
@@ -1013,9 +1014,9 @@ public class LegacySceneUploader {
 						materialA = materialB = materialC = material;
 					}
 
-					normalsA = sceneContext.vertexTerrainNormals.getOrDefault(vertexKeyA, normalsA);
-					normalsB = sceneContext.vertexTerrainNormals.getOrDefault(vertexKeyB, normalsB);
-					normalsC = sceneContext.vertexTerrainNormals.getOrDefault(vertexKeyC, normalsC);
+					normalsA = sceneContext.vertexTerrain.getNormals(vertexKeyA, normalsA);
+					normalsB = sceneContext.vertexTerrain.getNormals(vertexKeyB, normalsB);
+					normalsC = sceneContext.vertexTerrain.getNormals(vertexKeyC, normalsC);
 
 					GroundMaterial groundMaterial = null;
 
@@ -1038,15 +1039,15 @@ public class LegacySceneUploader {
 					}
 
 					if (useBlendedMaterialAndColor) {
-						// get the vertices' colors and textures from hashmaps
-						colorA = sceneContext.vertexTerrainColor.getOrDefault(vertexKeyA, colorA);
-						colorB = sceneContext.vertexTerrainColor.getOrDefault(vertexKeyB, colorB);
-						colorC = sceneContext.vertexTerrainColor.getOrDefault(vertexKeyC, colorC);
+						// get the vertices' colors and textures from the vertex terrain data
+						colorA = sceneContext.vertexTerrain.getColor(vertexKeyA, colorA);
+						colorB = sceneContext.vertexTerrain.getColor(vertexKeyB, colorB);
+						colorC = sceneContext.vertexTerrain.getColor(vertexKeyC, colorC);
 
 						if (plugin.configGroundTextures) {
-							materialA = sceneContext.vertexTerrainTexture.getOrDefault(vertexKeyA, materialA);
-							materialB = sceneContext.vertexTerrainTexture.getOrDefault(vertexKeyB, materialB);
-							materialC = sceneContext.vertexTerrainTexture.getOrDefault(vertexKeyC, materialC);
+							materialA = sceneContext.vertexTerrain.getMaterial(vertexKeyA, materialA);
+							materialB = sceneContext.vertexTerrain.getMaterial(vertexKeyB, materialB);
+							materialC = sceneContext.vertexTerrain.getMaterial(vertexKeyC, materialC);
 						}
 					} else if (plugin.configGroundTextures && groundMaterial != null) {
 						materialA = groundMaterial.getRandomMaterial(
@@ -1068,19 +1069,19 @@ public class LegacySceneUploader {
 				} else {
 					// set colors for the shoreline to create a foam effect in the water shader
 					colorA = colorB = colorC = 127;
-					if (sceneContext.vertexIsWater.containsKey(vertexKeyA) && sceneContext.vertexIsLand.containsKey(vertexKeyA))
+					if (sceneContext.vertexTerrain.hasFlags(vertexKeyA, FLAG_WATER | FLAG_LAND))
 						colorA = 0;
-					if (sceneContext.vertexIsWater.containsKey(vertexKeyB) && sceneContext.vertexIsLand.containsKey(vertexKeyB))
+					if (sceneContext.vertexTerrain.hasFlags(vertexKeyB, FLAG_WATER | FLAG_LAND))
 						colorB = 0;
-					if (sceneContext.vertexIsWater.containsKey(vertexKeyC) && sceneContext.vertexIsLand.containsKey(vertexKeyC))
+					if (sceneContext.vertexTerrain.hasFlags(vertexKeyC, FLAG_WATER | FLAG_LAND))
 						colorC = 0;
 				}
 
-				if (sceneContext.vertexIsOverlay.containsKey(vertexKeyA) && sceneContext.vertexIsUnderlay.containsKey(vertexKeyA))
+				if (sceneContext.vertexTerrain.hasFlags(vertexKeyA, FLAG_OVERLAY | FLAG_UNDERLAY))
 					vertexAIsOverlay = true;
-				if (sceneContext.vertexIsOverlay.containsKey(vertexKeyB) && sceneContext.vertexIsUnderlay.containsKey(vertexKeyB))
+				if (sceneContext.vertexTerrain.hasFlags(vertexKeyB, FLAG_OVERLAY | FLAG_UNDERLAY))
 					vertexBIsOverlay = true;
-				if (sceneContext.vertexIsOverlay.containsKey(vertexKeyC) && sceneContext.vertexIsUnderlay.containsKey(vertexKeyC))
+				if (sceneContext.vertexTerrain.hasFlags(vertexKeyC, FLAG_OVERLAY | FLAG_UNDERLAY))
 					vertexCIsOverlay = true;
 
 				for (int i = 0; i < 3; i++)
@@ -1188,9 +1189,9 @@ public class LegacySceneUploader {
 				int vertexKeyB = vertexKeys[1];
 				int vertexKeyC = vertexKeys[2];
 
-				int depthA = sceneContext.vertexUnderwaterDepth.getOrDefault(vertexKeyA, 0);
-				int depthB = sceneContext.vertexUnderwaterDepth.getOrDefault(vertexKeyB, 0);
-				int depthC = sceneContext.vertexUnderwaterDepth.getOrDefault(vertexKeyC, 0);
+				int depthA = sceneContext.vertexTerrain.getUnderwaterDepth(vertexKeyA, 0);
+				int depthB = sceneContext.vertexTerrain.getUnderwaterDepth(vertexKeyB, 0);
+				int depthC = sceneContext.vertexTerrain.getUnderwaterDepth(vertexKeyC, 0);
 
 				if (plugin.configGroundTextures) {
 					GroundMaterial groundMaterial = GroundMaterial.UNDERWATER_GENERIC;
@@ -1211,9 +1212,9 @@ public class LegacySceneUploader {
 					);
 				}
 
-				int[] normalsA = sceneContext.vertexTerrainNormals.getOrDefault(vertexKeyA, UP_NORMAL);
-				int[] normalsB = sceneContext.vertexTerrainNormals.getOrDefault(vertexKeyB, UP_NORMAL);
-				int[] normalsC = sceneContext.vertexTerrainNormals.getOrDefault(vertexKeyC, UP_NORMAL);
+				int[] normalsA = sceneContext.vertexTerrain.getNormals(vertexKeyA, UP_NORMAL);
+				int[] normalsB = sceneContext.vertexTerrain.getNormals(vertexKeyB, UP_NORMAL);
+				int[] normalsC = sceneContext.vertexTerrain.getNormals(vertexKeyC, UP_NORMAL);
 
 				int textureId = faceTextures == null ? -1 : faceTextures[face];
 				WaterType waterType = proceduralGenerator.seasonalWaterType(override, textureId);
@@ -2,15 +2,18 @@ package rs117.hd.renderer.zone;
 
 import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.annotation.Nonnull;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import rs117.hd.utils.CommandBuffer;
 import rs117.hd.utils.Destructible;
+import rs117.hd.utils.buffer.AdaptiveBufferSize;
 import rs117.hd.utils.buffer.GLBuffer;
 import rs117.hd.utils.buffer.GLMappedBufferIntWriter;
 import rs117.hd.utils.buffer.GLMappedBufferIntWriter.ReservedView;
 import rs117.hd.utils.buffer.GLTextureBuffer;
+import rs117.hd.utils.buffer.StagingStats;
 
 import static org.lwjgl.opengl.GL33C.*;
 import static rs117.hd.HdPlugin.GL_CAPS;
@@ -26,6 +29,7 @@ import static rs117.hd.utils.buffer.GLBuffer.STORAGE_WRITE;
 @Slf4j
 public class DynamicModelVAO implements Destructible {
 	public static final int INITIAL_SIZE = (int) (8 * MiB);
+	public static final int MIN_SIZE = (int) MiB;
 
 	// Temp vertex format
 	// pos float vec3(x, y, z)
@@ -36,8 +40,8 @@ public class DynamicModelVAO implements Destructible {
 
 	// Metadata format
 	// worldViewIndex int
-	// dummy sceneOffset ivec2 for macOS workaround
-	static final int METADATA_SIZE = 12;
+	// dummy sceneOffset ivec3 for macOS workaround
+	static final int METADATA_SIZE = 16;
 
 	@Getter
 	private int vao;
@@ -47,11 +51,15 @@ public class DynamicModelVAO implements Destructible {
 	private final GLTextureBuffer tbo;
 
 	private final ArrayDeque<View> usedViews = new ArrayDeque<>();
-	private final ArrayDeque<View> freeViews = new ArrayDeque<>();
+	private final ConcurrentLinkedQueue<View> freeViews = new ConcurrentLinkedQueue<>();
 
 	private final GLMappedBufferIntWriter vboWriter;
 	private final GLMappedBufferIntWriter tboWriter;
 
+	// Sized from the bytes written in previous frames, so the writers don't have to stage in the steady state
+	private final AdaptiveBufferSize vboSize = new AdaptiveBufferSize(INITIAL_SIZE, MIN_SIZE);
+	private final AdaptiveBufferSize tboSize = new AdaptiveBufferSize(INITIAL_SIZE, MIN_SIZE);
+
 	private boolean isMapped = false;
 	private int[] drawOffsets = new int[16];
 	private int[] drawCounts = new int[16];
@@ -89,14 +97,30 @@ public class DynamicModelVAO implements Destructible {
 
 	void initialize() {
 		vao = glGenVertexArrays();
-		tbo.initialize(INITIAL_SIZE);
-		vboRender.initialize(INITIAL_SIZE);
+		tbo.initialize(tboSize.getSize());
+		vboRender.initialize(vboSize.getSize());
 		if (vboRender != vboStaging)
-			vboStaging.initialize(INITIAL_SIZE);
+			vboStaging.initialize(vboSize.getSize());
 
 		bindRenderVAO();
 	}
 
+	/**
+	 * @return the combined size of the vertex and texture buffers
+	 */
+	public long getBufferSize() {
+		return vboStaging.size + tbo.size + (hasStagingBuffer() ? vboRender.size : 0);
+	}
+
+	private static void resize(GLBuffer buffer, long size) {
+		if (buffer.size == size)
+			return;
+
+		// Immutable buffers can't be resized in place, and nothing needs to be preserved, so simply recreate it
+		buffer.destroy();
+		buffer.initialize(size);
+	}
+
 	public void bindMetadataVAO(@Nonnull GLBuffer vboMetadata) {
 		glBindVertexArray(vao);
 		glBindBuffer(GL_ARRAY_BUFFER, vboMetadata.id);
@@ -110,7 +134,7 @@ public class DynamicModelVAO implements Destructible {
 			// Workaround for incorrect implementations of disabled vertex attribs, particularly on macOS
 			glEnableVertexAttribArray(7);
 			glVertexAttribDivisor(7, 1);
-			glVertexAttribIPointer(7, 2, GL_INT, METADATA_SIZE, 4);
+			glVertexAttribIPointer(7, 3, GL_INT, METADATA_SIZE, 4);
 		}
 
 		glBindBuffer(GL_ARRAY_BUFFER, 0);
@@ -142,6 +166,14 @@ public class DynamicModelVAO implements Destructible {
 	}
 
 	void map() {
+		final int renderVBOId = vboRender.id;
+		resize(vboStaging, vboSize.getSize());
+		if (vboRender != vboStaging)
+			resize(vboRender, vboSize.getSize());
+		resize(tbo, tboSize.getSize());
+		if (renderVBOId != vboRender.id)
+			bindRenderVAO();
+
 		vboWriter.map(false);
 		tboWriter.map(false);
 
@@ -152,7 +184,9 @@ public class DynamicModelVAO implements Destructible {
 	synchronized void unmap(boolean coalesce) {
 		final int renderVBOId = vboRender.id;
 		long vboWrittenBytes = vboWriter.flush();
-		tboWriter.flush();
+		long tboWrittenBytes = tboWriter.flush();
+		vboSize.update(vboWrittenBytes);
+		tboSize.update(tboWrittenBytes);
 
 		if (drawRangeCount > 0) {
 			mergeRanges();
@@ -189,6 +223,14 @@ public class DynamicModelVAO implements Destructible {
 		isMapped = false;
 	}
 
+	/**
+	 * Add what both writers have staged since the last call to the specified stats.
+	 */
+	void takeStagingStats(StagingStats stats) {
+		stats.add(vboWriter);
+		stats.add(tboWriter);
+	}
+
 	@Override
 	public void destroy() {
 		vboWriter.destroy();
@@ -216,7 +258,8 @@ public class DynamicModelVAO implements Destructible {
 		return beginDraw(-1, faceCount);
 	}
 
-	public synchronized View beginDraw(int drawIdx, int faceCount) {
+	// Not synchronized, since both the view pool and the writers' reservations are lock-free
+	public View beginDraw(int drawIdx, int faceCount) {
 		if (drawIdx == -1)
 			drawIdx = obtainDrawIndex();
 
@@ -31,11 +31,13 @@ import rs117.hd.scene.EnvironmentManager;
 import rs117.hd.scene.FishingSpotReplacer;
 import rs117.hd.scene.LightManager;
 import rs117.hd.scene.ProceduralGenerator;
+import rs117.hd.scene.SceneChanges;
 import rs117.hd.scene.areas.AABB;
 import rs117.hd.scene.areas.Area;
 import rs117.hd.utils.DestructibleHandler;
 import rs117.hd.utils.NpcDisplacementCache;
 import rs117.hd.utils.RenderState;
+import rs117.hd.utils.buffer.StagingStats;
 import rs117.hd.utils.jobs.GenericJob;
 
 import static net.runelite.api.Constants.*;
@@ -43,6 +45,7 @@ import static net.runelite.api.Perspective.SCENE_SIZE;
 import static rs117.hd.HdPlugin.checkGLErrors;
 import static rs117.hd.renderer.zone.WorldViewContext.DYNAMIC_MODEL_VAO_POOL;
 import static rs117.hd.renderer.zone.WorldViewContext.DYNAMIC_MODEL_VAO_STAGING_POOL;
+import static rs117.hd.scene.tile_overrides.TileOverride.OVERLAY_FLAG;
 import static rs117.hd.utils.MathUtils.*;
 
 @Slf4j
@@ -139,6 +142,16 @@ public class SceneManager {
 		return root;
 	}
 
+	/**
+	 * Add what every world view has staged since the last call to the specified stats.
+	 */
+	void takeStagingStats(StagingStats stats) {
+		root.takeStagingStats(stats);
+		for (var sub : subs)
+			if (sub != null)
+				sub.takeStagingStats(stats);
+	}
+
 	public void initialize(RenderState renderState, UBOWorldViews uboWorldViews) {
 		this.renderState = renderState;
 		this.uboWorldViews = uboWorldViews;
@@ -351,6 +364,136 @@ public class SceneManager {
 		log.trace("Zone invalidated: wx={} x={} z={}", scene.getWorldViewId(), zx, zz);
 	}
 
+	/**
+	 * Rebuild only the zones containing tiles or objects affected by the specified changes,
+	 * instead of reloading the whole scene.
+	 */
+	public void invalidateScene(SceneChanges changes) {
+		assert client.isClientThread();
+		if (!plugin.isActive() || reloadRequested)
+			return;
+
+		// A scene which is still loading may already be partially uploaded with the previous overrides
+		if (root.isLoading || nextSceneContext != null) {
+			reloadScene();
+			return;
+		}
+
+		Stopwatch sw = Stopwatch.createStarted();
+		int zoneCount = 0;
+		try {
+			loadingLock.lock();
+			completeAllStreaming();
+
+			// Tile colors, normals and water depths are generated ahead of uploading zones, so they need regenerating
+			if (changes.hasTileChanges()) {
+				if (!generateSceneDataTask.isDone())
+					generateSceneDataTask.waitForCompletion();
+				generateSceneDataTask.queue();
+			}
+
+			Map<Integer, int[]> impostorIds = new HashMap<>();
+			zoneCount += invalidateAffectedZones(root, changes, impostorIds);
+			for (var sub : subs) {
+				if (sub == null || sub.isLoading)
+					continue;
+				int count = invalidateAffectedZones(sub, changes, impostorIds);
+				if (count > 0 && changes.hasTileChanges())
+					proceduralGenerator.generateSceneData(sub.sceneContext);
+				zoneCount += count;
+			}
+		} finally {
+			loadingLock.unlock();
+			log.trace("loadingLock unlocked - holdCount: {}", loadingLock.getHoldCount());
+		}
+
+		log.debug("Invalidated {} zones affected by {} in {}", zoneCount, changes, sw);
+	}
+
+	private int invalidateAffectedZones(WorldViewContext ctx, SceneChanges changes, Map<Integer, int[]> impostorIds) {
+		Scene scene = ctx.sceneContext.scene;
+		Tile[][][] tiles = scene.getExtendedTiles();
+		boolean[][] affected = new boolean[ctx.sizeX][ctx.sizeZ];
+		int[] worldPos = new int[3];
+
+		int sizeX = min(ctx.sizeX << 3, tiles[0].length);
+		int sizeZ = min(ctx.sizeZ << 3, tiles[0][0].length);
+		for (int level = 0; level < tiles.length; level++) {
+			for (int x = 0; x < sizeX; x++) {
+				for (int z = 0; z < sizeZ; z++) {
+					Tile tile = tiles[level][x][z];
+					for (; tile != null; tile = tile.getBridge()) {
+						if (isTileAffected(ctx.sceneContext, tile, x, z, changes, worldPos)) {
+							// Ground blending and terrain normals are shared with neighbouring tiles, which may be in other zones
+							for (int zx = max(0, x - 1 >> 3); zx <= min(ctx.sizeX - 1, x + 1 >> 3); zx++)
+								for (int zz = max(0, z - 1 >> 3); zz <= min(ctx.sizeZ - 1, z + 1 >> 3); zz++)
+									affected[zx][zz] = true;
+						} else if (hasAffectedObject(tile, changes, impostorIds)) {
+							affected[x >> 3][z >> 3] = true;
+						}
+					}
+				}
+			}
+		}
+
+		int count = 0;
+		for (int zx = 0; zx < ctx.sizeX; zx++) {
+			for (int zz = 0; zz < ctx.sizeZ; zz++) {
+				if (affected[zx][zz]) {
+					invalidateZone(scene, zx, zz);
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static boolean isTileAffected(ZoneSceneContext ctx, Tile tile, int x, int z, SceneChanges changes, int[] worldPos) {
+		if (!changes.hasTileChanges())
+			return false;
+
+		var pos = tile.getSceneLocation();
+		int plane = tile.getRenderLevel();
+		ctx.sceneToWorld(pos.getX(), pos.getY(), plane, worldPos);
+		int overlayId = OVERLAY_FLAG | ctx.scene.getOverlayIds()[plane][x][z];
+		int underlayId = ctx.scene.getUnderlayIds()[plane][x][z];
+		return changes.affectsTile(worldPos, overlayId, underlayId);
+	}
+
+	private boolean hasAffectedObject(Tile tile, SceneChanges changes, Map<Integer, int[]> impostorIds) {
+		if (!changes.hasObjectChanges())
+			return false;
+
+		WallObject wallObject = tile.getWallObject();
+		if (wallObject != null && isObjectAffected(wallObject.getId(), changes, impostorIds))
+			return true;
+		DecorativeObject decorativeObject = tile.getDecorativeObject();
+		if (decorativeObject != null && isObjectAffected(decorativeObject.getId(), changes, impostorIds))
+			return true;
+		GroundObject groundObject = tile.getGroundObject();
+		if (groundObject != null && isObjectAffected(groundObject.getId(), changes, impostorIds))
+			return true;
+		for (GameObject gameObject : tile.getGameObjects())
+			if (gameObject != null && isObjectAffected(gameObject.getId(), changes, impostorIds))
+				return true;
+		return false;
+	}
+
+	private boolean isObjectAffected(int id, SceneChanges changes, Map<Integer, int[]> impostorIds) {
+		if (changes.affectsObject(id))
+			return true;
+
+		// Objects with impostors may be drawn using the model override of any of their impostors
+		int[] ids = impostorIds.computeIfAbsent(id, i -> {
+			var def = client.getObjectDefinition(i);
+			return def == null || def.getImpostorIds() == null ? new int[0] : def.getImpostorIds();
+		});
+		for (int impostorId : ids)
+			if (changes.affectsObject(impostorId))
+				return true;
+		return false;
+	}
+
 	private static boolean isEdgeTile(Zone[][] zones, int zx, int zz) {
 		for (int x = zx - 2; x <= zx + 2; ++x) {
 			if (x < 0 || x >= NUM_ZONES)
@@ -361,7 +504,7 @@ public class SceneManager {
 				Zone zone = zones[x][z];
 				if (!zone.initialized)
 					return true;
-				if (zone.sizeO == 0 && zone.sizeA == 0)
+				if (!zone.hasGeometry())
 					return true;
 			}
 		}
@@ -439,6 +582,8 @@ public class SceneManager {
 			root.sceneLoadGroup.complete();
 			root.streamingGroup.complete();
 			root.invalidationGroup.complete();
+			// Only store meshes which are repeated within the new scene
+			root.staticMeshes.resetSightings();
 
 			if (nextSceneContext != null)
 				nextSceneContext.destroy();
@@ -543,7 +688,7 @@ public class SceneManager {
 							continue;
 
 						final Zone old = ctx.zones[ox][oz];
-						if (!old.initialized || (old.sizeO == 0 && old.sizeA == 0))
+						if (!old.initialized || !old.hasGeometry())
 							continue;
 
 						old.needsRoofUpdate = true;
@@ -695,6 +840,12 @@ public class SceneManager {
 			totalAlpha,
 			(totalAlpha * Zone.VERT_SIZE * 3L) / KiB
 		);
+		log.debug(
+			"static meshes {} pages {} size {} KiB",
+			root.staticMeshes.getMeshCount(),
+			root.staticMeshes.getPageCount(),
+			root.staticMeshes.getBufferSize() / KiB
+		);
 
 		for (int x = 0; x < ctx.sizeX; ++x) {
 			for (int z = 0; z < ctx.sizeZ; ++z) {
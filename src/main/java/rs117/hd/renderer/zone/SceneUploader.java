@@ -26,11 +26,13 @@ package rs117.hd.renderer.zone;
 
 import java.util.HashSet;
 import java.util.Set;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
 import net.runelite.client.callback.RenderCallbackManager;
 import rs117.hd.HdPlugin;
+import rs117.hd.model.ModelHasher;
 import rs117.hd.scene.GamevalManager;
 import rs117.hd.scene.MaterialManager;
 import rs117.hd.scene.ModelOverrideManager;
@@ -44,8 +46,10 @@ import rs117.hd.scene.model_overrides.TzHaarRecolorType;
 import rs117.hd.scene.model_overrides.UvType;
 import rs117.hd.scene.tile_overrides.TileOverride;
 import rs117.hd.scene.water_types.WaterType;
+import rs117.hd.utils.Destructible;
 import rs117.hd.utils.HDUtils;
 import rs117.hd.utils.ModelHash;
+import rs117.hd.utils.StableHasher;
 import rs117.hd.utils.buffer.GpuIntBuffer;
 import rs117.hd.utils.collections.ConcurrentPool;
 import rs117.hd.utils.collections.PrimitiveIntArray;
@@ -53,6 +57,7 @@ import rs117.hd.utils.collections.PrimitiveIntArray;
 import static net.runelite.api.Constants.*;
 import static net.runelite.api.Perspective.*;
 import static rs117.hd.renderer.zone.FacePrioritySorter.MAX_FACE_COUNT;
+import static rs117.hd.scene.VertexTerrainData.*;
 import static rs117.hd.scene.tile_overrides.TileOverride.NONE;
 import static rs117.hd.scene.tile_overrides.TileOverride.OVERLAY_FLAG;
 import static rs117.hd.utils.HDUtils.HIDDEN_HSL;
@@ -60,7 +65,7 @@ import static rs117.hd.utils.HDUtils.UNDERWATER_HSL;
 import static rs117.hd.utils.MathUtils.*;
 
 @Slf4j
-public class SceneUploader implements AutoCloseable {
+public class SceneUploader implements AutoCloseable, Destructible {
 	public static ConcurrentPool<SceneUploader> POOL;
 
 	public static final int MAX_VERTEX_COUNT = 6500;
@@ -109,6 +114,9 @@ public class SceneUploader implements AutoCloseable {
 	@Inject
 	public ProceduralGenerator proceduralGenerator;
 
+	@Inject
+	ZoneGeometryCache zoneGeometryCache;
+
 	@FunctionalInterface
 	public interface OnBeforeProcessTileFunc {
 		void invoke(Tile t, boolean isEstimate) throws InterruptedException;
@@ -150,6 +158,18 @@ public class SceneUploader implements AutoCloseable {
 	// Lazily initialized staging buffers, only used by uploadTempModel
 	public VertexWriteCache.Collection writeCache;
 
+	// Lazily initialized staging arena, only used by uploadZoneStaged
+	private ZoneStagingArena stagingArena;
+	// Set while uploading into the staging arena, which needs to grow ahead of each tile and model
+	private boolean isStaging;
+	// Set while uploading into the staging arena with instancing of repeated static models
+	@Nullable
+	private StaticMeshStore staticMeshes;
+	// Hash of everything besides the model which affects static meshes, set along with the store
+	private long meshConfigHash;
+	// Accumulated by hashZone
+	private final StableHasher zoneHasher = new StableHasher();
+
 	public void setScene(Scene scene) {
 		if (scene == currentScene)
 			return;
@@ -198,6 +218,245 @@ public class SceneUploader implements AutoCloseable {
 		var fb = zone.tboF != null ? new GpuIntBuffer(zone.tboF.mapped()) : null;
 		assert fb != null;
 
+		uploadZone(ctx, zone, mzx, mzz, vb, ab, fb);
+	}
+
+	/**
+	 * Upload the zone in a single pass into a growable staging arena, instead of estimating its size first.
+	 * The zone's sizes and water flag are set to match what was written, so its buffers can be allocated and filled
+	 * with {@link ZoneStagingArena#copyTo} afterwards.
+	 * If a {@link StaticMeshStore} is specified, repeated static models are stored there, and the zone is given
+	 * instances of them to draw instead.
+	 */
+	ZoneStagingArena uploadZoneStaged(
+		ZoneSceneContext ctx,
+		Zone zone,
+		int mzx,
+		int mzz,
+		@Nullable StaticMeshStore staticMeshes
+	) throws InterruptedException {
+		if (stagingArena == null)
+			stagingArena = new ZoneStagingArena();
+		var arena = stagingArena;
+		arena.clear();
+
+		isStaging = true;
+		this.staticMeshes = staticMeshes;
+		meshConfigHash = staticMeshes == null ? 0 : zoneGeometryCache.getConfigHash();
+		try {
+			uploadZone(ctx, zone, mzx, mzz, arena.opaque, arena.alpha, arena.faces);
+		} finally {
+			isStaging = false;
+			this.staticMeshes = null;
+		}
+
+		zone.sizeO = arena.opaqueFaceCount();
+		zone.sizeA = arena.alphaFaceCount();
+		zone.sizeF = arena.textureFaceCount();
+		zone.instances = arena.instances.build();
+		return arena;
+	}
+
+	/**
+	 * Hash everything that goes into uploading the zone, visiting the same tiles and objects as the upload itself,
+	 * for looking up its geometry in the {@link ZoneGeometryCache}.
+	 *
+	 * @return the hash, or 0 if the zone contains anything which can't be cached
+	 */
+	long hashZone(ZoneSceneContext ctx, int mzx, int mzz, long configHash) {
+		zoneHasher.reset().add(configHash);
+		zoneHasher.add(ctx.currentArea == null ? null : ctx.currentArea.name);
+
+		for (int level = 0; level < MAX_Z; level++) {
+			for (int xoff = 0; xoff < 8; ++xoff) {
+				for (int zoff = 0; zoff < 8; ++zoff) {
+					int msx = (mzx << 3) + xoff;
+					int msz = (mzz << 3) + zoff;
+					zoneHasher.add(settings[level][msx][msz]);
+					zoneHasher.add(roofs[level][msx][msz]);
+					Tile t = tiles[level][msx][msz];
+					if (t != null && !hashZoneTile(ctx, t, mzx, mzz))
+						return 0;
+				}
+			}
+		}
+
+		long hash = zoneHasher.get();
+		return hash == 0 ? 1 : hash;
+	}
+
+	private boolean hashZoneTile(ZoneSceneContext ctx, Tile t, int mzx, int mzz) {
+		var tilePoint = t.getSceneLocation();
+		int tileExX = tilePoint.getX() + ctx.sceneOffset;
+		int tileExY = tilePoint.getY() + ctx.sceneOffset;
+		int tileZ = t.getRenderLevel();
+		ctx.sceneToWorld(tilePoint.getX(), tilePoint.getY(), t.getPlane(), worldPos);
+		zoneHasher.add(worldPos[0]);
+		zoneHasher.add(worldPos[1]);
+		zoneHasher.add(worldPos[2]);
+		zoneHasher.add(tileZ);
+		zoneHasher.add(overlayIds[tileZ][tileExX][tileExY]);
+		zoneHasher.add(underlayIds[tileZ][tileExX][tileExY]);
+		zoneHasher.add(tileHeights[tileZ][tileExX][tileExY]);
+		zoneHasher.add(renderCallbackManager.drawTile(ctx.scene, t));
+
+		SceneTilePaint paint = t.getSceneTilePaint();
+		if (paint != null) {
+			zoneHasher.add(paint.getSwColor());
+			zoneHasher.add(paint.getSeColor());
+			zoneHasher.add(paint.getNeColor());
+			zoneHasher.add(paint.getNwColor());
+			zoneHasher.add(paint.getTexture());
+			ProceduralGenerator.tileVertexKeys(ctx, t, vertices, vertexKeys);
+			for (int key : vertexKeys) {
+				zoneHasher.add(key);
+				if (ctx.vertexTerrain != null)
+					zoneHasher.add(ctx.vertexTerrain.hashVertex(key));
+			}
+		}
+
+		SceneTileModel model = t.getSceneTileModel();
+		if (model != null) {
+			zoneHasher.add(model.getShape());
+			zoneHasher.add(model.getFaceX());
+			zoneHasher.add(model.getFaceY());
+			zoneHasher.add(model.getFaceZ());
+			zoneHasher.add(model.getVertexX());
+			zoneHasher.add(model.getVertexY());
+			zoneHasher.add(model.getVertexZ());
+			zoneHasher.add(model.getTriangleColorA());
+			zoneHasher.add(model.getTriangleColorB());
+			zoneHasher.add(model.getTriangleColorC());
+			zoneHasher.add(model.getTriangleTextureId());
+			if (ctx.vertexTerrain != null) {
+				int faceCount = model.getFaceX().length;
+				for (int face = 0; face < faceCount; face++) {
+					ProceduralGenerator.faceVertexKeys(t, face, vertices, vertexKeys);
+					for (int i = 0; i < 3; i++)
+						zoneHasher.add(ctx.vertexTerrain.hashVertex(vertexKeys[i]));
+				}
+			}
+		}
+
+		int basex = (mzx - (ctx.sceneOffset >> 3)) << 10;
+		int basez = (mzz - (ctx.sceneOffset >> 3)) << 10;
+
+		WallObject wallObject = t.getWallObject();
+		if (wallObject != null && renderCallbackManager.drawObject(ctx.scene, wallObject)) {
+			zoneHasher.add(wallObject.getId());
+			zoneHasher.add(wallObject.getOrientationA());
+			zoneHasher.add(wallObject.getOrientationB());
+			zoneHasher.add(wallObject.getX() - basex);
+			zoneHasher.add(wallObject.getZ());
+			zoneHasher.add(wallObject.getY() - basez);
+			if (!hashRenderable(wallObject.getRenderable1()) || !hashRenderable(wallObject.getRenderable2()))
+				return false;
+		}
+
+		DecorativeObject decorativeObject = t.getDecorativeObject();
+		if (decorativeObject != null && renderCallbackManager.drawObject(ctx.scene, decorativeObject)) {
+			zoneHasher.add(decorativeObject.getId());
+			zoneHasher.add(decorativeObject.getConfig());
+			zoneHasher.add(decorativeObject.getX() - basex);
+			zoneHasher.add(decorativeObject.getZ());
+			zoneHasher.add(decorativeObject.getY() - basez);
+			zoneHasher.add(decorativeObject.getXOffset());
+			zoneHasher.add(decorativeObject.getYOffset());
+			if (!hashRenderable(decorativeObject.getRenderable()) || !hashRenderable(decorativeObject.getRenderable2()))
+				return false;
+		}
+
+		GroundObject groundObject = t.getGroundObject();
+		if (groundObject != null && renderCallbackManager.drawObject(ctx.scene, groundObject)) {
+			zoneHasher.add(groundObject.getId());
+			zoneHasher.add(groundObject.getConfig());
+			zoneHasher.add(groundObject.getX() - basex);
+			zoneHasher.add(groundObject.getZ());
+			zoneHasher.add(groundObject.getY() - basez);
+			if (!hashRenderable(groundObject.getRenderable()))
+				return false;
+		}
+
+		for (GameObject gameObject : t.getGameObjects()) {
+			if (gameObject == null || !renderCallbackManager.drawObject(ctx.scene, gameObject))
+				continue;
+
+			if (ModelHash.isTemporaryObject(gameObject.getHash()))
+				continue;
+
+			Point min = gameObject.getSceneMinLocation();
+			if (!min.equals(t.getSceneLocation()))
+				continue;
+
+			Point max = gameObject.getSceneMaxLocation();
+			zoneHasher.add(gameObject.getId());
+			zoneHasher.add(gameObject.getConfig());
+			zoneHasher.add(gameObject.getModelOrientation());
+			zoneHasher.add(gameObject.getX() - basex);
+			zoneHasher.add(gameObject.getZ());
+			zoneHasher.add(gameObject.getY() - basez);
+			zoneHasher.add(max.getX() - min.getX());
+			zoneHasher.add(max.getY() - min.getY());
+			if (!hashRenderable(gameObject.getRenderable()))
+				return false;
+		}
+
+		Tile bridge = t.getBridge();
+		return bridge == null || hashZoneTile(ctx, bridge, mzx, mzz);
+	}
+
+	private boolean hashRenderable(Renderable r) {
+		// Dynamic objects may change their model at any time, and may be animated
+		if (r instanceof DynamicObject)
+			return false;
+
+		if (!(r instanceof Model)) {
+			zoneHasher.add(0);
+			return true;
+		}
+
+		Model model = (Model) r;
+		int vertexCount = model.getVerticesCount();
+		int faceCount = model.getFaceCount();
+		zoneHasher.add(vertexCount);
+		zoneHasher.add(faceCount);
+		zoneHasher.add(model.getVerticesX(), vertexCount);
+		zoneHasher.add(model.getVerticesY(), vertexCount);
+		zoneHasher.add(model.getVerticesZ(), vertexCount);
+		zoneHasher.add(model.getVertexNormalsX());
+		zoneHasher.add(model.getVertexNormalsY());
+		zoneHasher.add(model.getVertexNormalsZ());
+		zoneHasher.add(model.getFaceIndices1(), faceCount);
+		zoneHasher.add(model.getFaceIndices2(), faceCount);
+		zoneHasher.add(model.getFaceIndices3(), faceCount);
+		zoneHasher.add(model.getFaceColors1(), faceCount);
+		zoneHasher.add(model.getFaceColors2(), faceCount);
+		zoneHasher.add(model.getFaceColors3(), faceCount);
+		zoneHasher.add(model.getUnlitFaceColors());
+		zoneHasher.add(model.getFaceTextures());
+		zoneHasher.add(model.getTextureFaces());
+		zoneHasher.add(model.getTexIndices1());
+		zoneHasher.add(model.getTexIndices2());
+		zoneHasher.add(model.getTexIndices3());
+		zoneHasher.add(model.getFaceTransparencies());
+		zoneHasher.add(model.getFaceBias());
+		zoneHasher.add(model.getModelHeight());
+		zoneHasher.add(model.getOverrideAmount());
+		zoneHasher.add(model.getOverrideHue());
+		zoneHasher.add(model.getOverrideSaturation());
+		zoneHasher.add(model.getOverrideLuminance());
+		return true;
+	}
+
+	private void uploadZone(
+		ZoneSceneContext ctx,
+		Zone zone,
+		int mzx,
+		int mzz,
+		GpuIntBuffer vb,
+		GpuIntBuffer ab,
+		GpuIntBuffer fb
+	) throws InterruptedException {
 		roofIds.clear();
 		for (int level = 0; level <= 3; ++level) {
 			for (int xoff = 0; xoff < 8; ++xoff) {
@@ -212,6 +471,8 @@ public class SceneUploader implements AutoCloseable {
 		zone.rids = new int[4][roofIds.size()];
 		zone.roofStart = new int[4][roofIds.size()];
 		zone.roofEnd = new int[4][roofIds.size()];
+		zone.instanceRoofStart = new int[4][roofIds.size()];
+		zone.instanceRoofEnd = new int[4][roofIds.size()];
 
 		for (int z = 0; z <= 3; ++z) {
 			this.level = z;
@@ -230,12 +491,18 @@ public class SceneUploader implements AutoCloseable {
 				int pos = vb.position();
 				zone.levelOffsets[z] = pos;
 			}
+			zone.instanceLevelOffsets[z] = endInstanceSegment();
 		}
 
 		// Upload water surface tiles to be drawn after everything else
-		if (zone.hasWater && vb != null) {
+		// Without an estimate, whether the zone has water is only known once its water surfaces have been written
+		if ((zone.hasWater || isStaging) && vb != null) {
+			int waterStart = vb.position();
 			uploadZoneWater(ctx, zone, mzx, mzz, vb, fb);
-			zone.levelOffsets[Zone.LEVEL_WATER_SURFACE] = vb.position();
+			if (isStaging)
+				zone.hasWater = vb.position() > waterStart;
+			if (zone.hasWater)
+				zone.levelOffsets[Zone.LEVEL_WATER_SURFACE] = vb.position();
 		}
 	}
 
@@ -256,15 +523,19 @@ public class SceneUploader implements AutoCloseable {
 		// upload the roofs and save their positions
 		for (int id : roofIds) {
 			int pos = vb != null ? vb.position() : 0;
+			int instancePos = endInstanceSegment();
 
 			uploadZoneLevelRoof(ctx, zone, mzx, mzz, level, id, visbelow, vb, ab, fb);
 
 			int endpos = vb != null ? vb.position() : 0;
+			int instanceEndpos = endInstanceSegment();
 
-			if (endpos > pos) {
+			if (endpos > pos || instanceEndpos > instancePos) {
 				zone.rids[level][ridx] = id;
 				zone.roofStart[level][ridx] = pos;
 				zone.roofEnd[level][ridx] = endpos;
+				zone.instanceRoofStart[level][ridx] = instancePos;
+				zone.instanceRoofEnd[level][ridx] = instanceEndpos;
 				++ridx;
 			}
 		}
@@ -478,6 +749,10 @@ public class SceneUploader implements AutoCloseable {
 		boolean drawTile = renderCallbackManager.drawTile(ctx.scene, t);
 
 		SceneTilePaint paint = t.getSceneTilePaint();
+		SceneTileModel model = t.getSceneTileModel();
+		if (isStaging && drawTile)
+			stagingArena.reserve((paint != null ? 2 : 0) + (model != null ? model.getFaceX().length : 0), false);
+
 		if (paint != null && drawTile) {
 			uploadTilePaint(
 				ctx,
@@ -491,7 +766,6 @@ public class SceneUploader implements AutoCloseable {
 			);
 		}
 
-		SceneTileModel model = t.getSceneTileModel();
 		if (model != null && drawTile)
 			uploadTileModel(ctx, t, model, onlyWaterSurface, tileExX, tileExY, tileZ, basex, basez, vertexBuffer, textureBuffer);
 
@@ -734,9 +1008,12 @@ public class SceneUploader implements AutoCloseable {
 		if (modelOverride.hide)
 			return;
 
+		if (isStaging)
+			stagingArena.reserve(model.getFaceCount(), true);
+
 		int alphaStart = alphaBuffer != null ? alphaBuffer.position() : 0;
 		try {
-			uploadStaticModel(
+			uploadStaticMesh(
 				ctx, tile, model, modelOverride, uuid,
 				preOrientation, orient,
 				x - basex, y, z - basez,
@@ -776,7 +1053,8 @@ public class SceneUploader implements AutoCloseable {
 					plugin,
 					materialManager,
 					zone.glVaoA,
-					zone.tboF.getTexId(),
+					// When staging, the zone's buffers don't exist yet, and are assigned by Zone::initialize
+					zone.tboF != null ? zone.tboF.getTexId() : 0,
 					model, modelOverride, alphaStart, alphaEnd,
 					x - basex, y, z - basez,
 					lx, lz, ux, uz,
@@ -875,10 +1153,10 @@ public class SceneUploader implements AutoCloseable {
 		swTerrainData = seTerrainData = nwTerrainData = neTerrainData = HDUtils.packTerrainData(true, 0, waterType, tileZ);
 
 		if (!onlyWaterSurface) {
-			swNormals = ctx.vertexTerrainNormals.getOrDefault(swVertexKey, swNormals);
-			seNormals = ctx.vertexTerrainNormals.getOrDefault(seVertexKey, seNormals);
-			neNormals = ctx.vertexTerrainNormals.getOrDefault(neVertexKey, neNormals);
-			nwNormals = ctx.vertexTerrainNormals.getOrDefault(nwVertexKey, nwNormals);
+			swNormals = ctx.vertexTerrain.getNormals(swVertexKey, swNormals);
+			seNormals = ctx.vertexTerrain.getNormals(seVertexKey, seNormals);
+			neNormals = ctx.vertexTerrain.getNormals(neVertexKey, neNormals);
+			nwNormals = ctx.vertexTerrain.getNormals(nwVertexKey, nwNormals);
 		}
 
 		if (waterType == WaterType.NONE) {
@@ -915,17 +1193,17 @@ public class SceneUploader implements AutoCloseable {
 			}
 
 			if (useBlendedMaterialAndColor) {
-				// get the vertices' colors and textures from hashmaps
-				swColor = ctx.vertexTerrainColor.getOrDefault(swVertexKey, swColor);
-				seColor = ctx.vertexTerrainColor.getOrDefault(seVertexKey, seColor);
-				neColor = ctx.vertexTerrainColor.getOrDefault(neVertexKey, neColor);
-				nwColor = ctx.vertexTerrainColor.getOrDefault(nwVertexKey, nwColor);
+				// get the vertices' colors and textures from the vertex terrain data
+				swColor = ctx.vertexTerrain.getColor(swVertexKey, swColor);
+				seColor = ctx.vertexTerrain.getColor(seVertexKey, seColor);
+				neColor = ctx.vertexTerrain.getColor(neVertexKey, neColor);
+				nwColor = ctx.vertexTerrain.getColor(nwVertexKey, nwColor);
 
 				if (plugin.configGroundTextures) {
-					swMaterial = ctx.vertexTerrainTexture.getOrDefault(swVertexKey, swMaterial);
-					seMaterial = ctx.vertexTerrainTexture.getOrDefault(seVertexKey, seMaterial);
-					neMaterial = ctx.vertexTerrainTexture.getOrDefault(neVertexKey, neMaterial);
-					nwMaterial = ctx.vertexTerrainTexture.getOrDefault(nwVertexKey, nwMaterial);
+					swMaterial = ctx.vertexTerrain.getMaterial(swVertexKey, swMaterial);
+					seMaterial = ctx.vertexTerrain.getMaterial(seVertexKey, seMaterial);
+					neMaterial = ctx.vertexTerrain.getMaterial(neVertexKey, neMaterial);
+					nwMaterial = ctx.vertexTerrain.getMaterial(nwVertexKey, nwMaterial);
 				}
 			} else if (plugin.configGroundTextures && groundMaterial != null) {
 				swMaterial = groundMaterial.getRandomMaterial(worldPos[0], worldPos[1], worldPos[2]);
@@ -934,25 +1212,25 @@ public class SceneUploader implements AutoCloseable {
 				neMaterial = groundMaterial.getRandomMaterial(worldPos[0] + 1, worldPos[1] + 1, worldPos[2]);
 			}
 
-			if (ctx.vertexIsOverlay.containsKey(neVertexKey) && ctx.vertexIsUnderlay.containsKey(neVertexKey))
+			if (ctx.vertexTerrain.hasFlags(neVertexKey, FLAG_OVERLAY | FLAG_UNDERLAY))
 				neVertexIsOverlay = true;
-			if (ctx.vertexIsOverlay.containsKey(nwVertexKey) && ctx.vertexIsUnderlay.containsKey(nwVertexKey))
+			if (ctx.vertexTerrain.hasFlags(nwVertexKey, FLAG_OVERLAY | FLAG_UNDERLAY))
 				nwVertexIsOverlay = true;
-			if (ctx.vertexIsOverlay.containsKey(seVertexKey) && ctx.vertexIsUnderlay.containsKey(seVertexKey))
+			if (ctx.vertexTerrain.hasFlags(seVertexKey, FLAG_OVERLAY | FLAG_UNDERLAY))
 				seVertexIsOverlay = true;
-			if (ctx.vertexIsOverlay.containsKey(swVertexKey) && ctx.vertexIsUnderlay.containsKey(swVertexKey))
+			if (ctx.vertexTerrain.hasFlags(swVertexKey, FLAG_OVERLAY | FLAG_UNDERLAY))
 				swVertexIsOverlay = true;
 		} else if (onlyWaterSurface) {
 			// set colors for the shoreline to create a foam effect in the water shader
 			swColor = seColor = nwColor = neColor = 127;
 
-			if (ctx.vertexIsWater.containsKey(swVertexKey) && ctx.vertexIsLand.containsKey(swVertexKey))
+			if (ctx.vertexTerrain.hasFlags(swVertexKey, FLAG_WATER | FLAG_LAND))
 				swColor = 0;
-			if (ctx.vertexIsWater.containsKey(seVertexKey) && ctx.vertexIsLand.containsKey(seVertexKey))
+			if (ctx.vertexTerrain.hasFlags(seVertexKey, FLAG_WATER | FLAG_LAND))
 				seColor = 0;
-			if (ctx.vertexIsWater.containsKey(nwVertexKey) && ctx.vertexIsLand.containsKey(nwVertexKey))
+			if (ctx.vertexTerrain.hasFlags(nwVertexKey, FLAG_WATER | FLAG_LAND))
 				nwColor = 0;
-			if (ctx.vertexIsWater.containsKey(neVertexKey) && ctx.vertexIsLand.containsKey(neVertexKey))
+			if (ctx.vertexTerrain.hasFlags(neVertexKey, FLAG_WATER | FLAG_LAND))
 				neColor = 0;
 
 			if (seColor == 0 && nwColor == 0 && (neColor == 0 || swColor == 0))
@@ -969,10 +1247,10 @@ public class SceneUploader implements AutoCloseable {
 				neMaterial = groundMaterial.getRandomMaterial(worldPos[0] + 1, worldPos[1] + 1, worldPos[2]);
 			}
 
-			int swDepth = ctx.vertexUnderwaterDepth.getOrDefault(swVertexKey, 0);
-			int seDepth = ctx.vertexUnderwaterDepth.getOrDefault(seVertexKey, 0);
-			int nwDepth = ctx.vertexUnderwaterDepth.getOrDefault(nwVertexKey, 0);
-			int neDepth = ctx.vertexUnderwaterDepth.getOrDefault(neVertexKey, 0);
+			int swDepth = ctx.vertexTerrain.getUnderwaterDepth(swVertexKey, 0);
+			int seDepth = ctx.vertexTerrain.getUnderwaterDepth(seVertexKey, 0);
+			int nwDepth = ctx.vertexTerrain.getUnderwaterDepth(nwVertexKey, 0);
+			int neDepth = ctx.vertexTerrain.getUnderwaterDepth(neVertexKey, 0);
 			swHeight += swDepth;
 			seHeight += seDepth;
 			nwHeight += nwDepth;
@@ -1165,9 +1443,9 @@ public class SceneUploader implements AutoCloseable {
 			terrainDataA = terrainDataB = terrainDataC = HDUtils.packTerrainData(true, 0, waterType, tileZ);
 
 			if (!onlyWaterSurface) {
-				normalsA = ctx.vertexTerrainNormals.getOrDefault(vertexKeyA, normalsA);
-				normalsB = ctx.vertexTerrainNormals.getOrDefault(vertexKeyB, normalsB);
-				normalsC = ctx.vertexTerrainNormals.getOrDefault(vertexKeyC, normalsC);
+				normalsA = ctx.vertexTerrain.getNormals(vertexKeyA, normalsA);
+				normalsB = ctx.vertexTerrain.getNormals(vertexKeyB, normalsB);
+				normalsC = ctx.vertexTerrain.getNormals(vertexKeyC, normalsC);
 			}
 
 			if (!isWater) {
@@ -1200,15 +1478,15 @@ public class SceneUploader implements AutoCloseable {
 				}
 
 				if (useBlendedMaterialAndColor) {
-					// get the vertices' colors and textures from hashmaps
-					colorA = ctx.vertexTerrainColor.getOrDefault(vertexKeyA, colorA);
-					colorB = ctx.vertexTerrainColor.getOrDefault(vertexKeyB, colorB);
-					colorC = ctx.vertexTerrainColor.getOrDefault(vertexKeyC, colorC);
+					// get the vertices' colors and textures from the vertex terrain data
+					colorA = ctx.vertexTerrain.getColor(vertexKeyA, colorA);
+					colorB = ctx.vertexTerrain.getColor(vertexKeyB, colorB);
+					colorC = ctx.vertexTerrain.getColor(vertexKeyC, colorC);
 
 					if (plugin.configGroundTextures) {
-						materialA = ctx.vertexTerrainTexture.getOrDefault(vertexKeyA, materialA);
-						materialB = ctx.vertexTerrainTexture.getOrDefault(vertexKeyB, materialB);
-						materialC = ctx.vertexTerrainTexture.getOrDefault(vertexKeyC, materialC);
+						materialA = ctx.vertexTerrain.getMaterial(vertexKeyA, materialA);
+						materialB = ctx.vertexTerrain.getMaterial(vertexKeyB, materialB);
+						materialC = ctx.vertexTerrain.getMaterial(vertexKeyC, materialC);
 					}
 				} else if (plugin.configGroundTextures && groundMaterial != null) {
 					materialA = groundMaterial.getRandomMaterial(
@@ -1230,11 +1508,11 @@ public class SceneUploader implements AutoCloseable {
 			} else if (onlyWaterSurface) {
 				// set colors for the shoreline to create a foam effect in the water shader
 				colorA = colorB = colorC = 127;
-				if (ctx.vertexIsWater.containsKey(vertexKeyA) && ctx.vertexIsLand.containsKey(vertexKeyA))
+				if (ctx.vertexTerrain.hasFlags(vertexKeyA, FLAG_WATER | FLAG_LAND))
 					colorA = 0;
-				if (ctx.vertexIsWater.containsKey(vertexKeyB) && ctx.vertexIsLand.containsKey(vertexKeyB))
+				if (ctx.vertexTerrain.hasFlags(vertexKeyB, FLAG_WATER | FLAG_LAND))
 					colorB = 0;
-				if (ctx.vertexIsWater.containsKey(vertexKeyC) && ctx.vertexIsLand.containsKey(vertexKeyC))
+				if (ctx.vertexTerrain.hasFlags(vertexKeyC, FLAG_WATER | FLAG_LAND))
 					colorC = 0;
 				if (colorA == 0 && colorB == 0 && colorC == 0)
 					colorA = colorB = colorC = 1 << 16; // Bias depth a bit if it's flush with underwater geometry
@@ -1261,9 +1539,9 @@ public class SceneUploader implements AutoCloseable {
 					);
 				}
 
-				int depthA = ctx.vertexUnderwaterDepth.getOrDefault(vertexKeyA, 0);
-				int depthB = ctx.vertexUnderwaterDepth.getOrDefault(vertexKeyB, 0);
-				int depthC = ctx.vertexUnderwaterDepth.getOrDefault(vertexKeyC, 0);
+				int depthA = ctx.vertexTerrain.getUnderwaterDepth(vertexKeyA, 0);
+				int depthB = ctx.vertexTerrain.getUnderwaterDepth(vertexKeyB, 0);
+				int depthC = ctx.vertexTerrain.getUnderwaterDepth(vertexKeyC, 0);
 				ly0 += depthA;
 				ly1 += depthB;
 				ly2 += depthC;
@@ -1273,11 +1551,11 @@ public class SceneUploader implements AutoCloseable {
 				terrainDataC = HDUtils.packTerrainData(true, max(1, depthC), waterType, tileZ);
 			}
 
-			if (ctx.vertexIsOverlay.containsKey(vertexKeyA) && ctx.vertexIsUnderlay.containsKey(vertexKeyA))
+			if (ctx.vertexTerrain.hasFlags(vertexKeyA, FLAG_OVERLAY | FLAG_UNDERLAY))
 				vertexAIsOverlay = true;
-			if (ctx.vertexIsOverlay.containsKey(vertexKeyB) && ctx.vertexIsUnderlay.containsKey(vertexKeyB))
+			if (ctx.vertexTerrain.hasFlags(vertexKeyB, FLAG_OVERLAY | FLAG_UNDERLAY))
 				vertexBIsOverlay = true;
-			if (ctx.vertexIsOverlay.containsKey(vertexKeyC) && ctx.vertexIsUnderlay.containsKey(vertexKeyC))
+			if (ctx.vertexTerrain.hasFlags(vertexKeyC, FLAG_OVERLAY | FLAG_UNDERLAY))
 				vertexCIsOverlay = true;
 
 			ly0 -= override.heightOffset;
@@ -1341,6 +1619,110 @@ public class SceneUploader implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * @return the number of instance draw commands so far, marking the end of the current draw range
+	 */
+	private int endInstanceSegment() {
+		return staticMeshes != null ? stagingArena.instances.endSegment() : 0;
+	}
+
+	/**
+	 * Upload a static model as an instance of a mesh in the {@link StaticMeshStore} if possible,
+	 * or pack it into the zone like any other model otherwise.
+	 */
+	private void uploadStaticMesh(
+		ZoneSceneContext ctx,
+		Tile tile,
+		Model model,
+		ModelOverride modelOverride,
+		int uuid,
+		int preOrientation, int orientation,
+		int x, int y, int z,
+		GpuIntBuffer opaqueBuffer,
+		GpuIntBuffer alphaBuffer,
+		GpuIntBuffer textureBuffer
+	) {
+		final var store = staticMeshes;
+		final long key = store == null ? 0 : hashStaticMesh(model, modelOverride, preOrientation, orientation);
+		if (key != 0) {
+			var mesh = store.get(key);
+			if (mesh == null && store.markSeen(key)) {
+				// The mesh has been seen before, so pack it at the origin for storing
+				var arena = stagingArena;
+				arena.clearMesh(model.getFaceCount());
+				uploadStaticModel(
+					ctx, tile, model, modelOverride, uuid,
+					preOrientation, orientation,
+					0, 0, 0,
+					arena.meshVertices, arena.meshAlpha, arena.meshFaces
+				);
+				if (arena.meshAlpha.position() > 0) {
+					// Alpha faces need to be sorted along with the rest of the zone
+					store.reject(key);
+				} else {
+					mesh = store.store(key, arena.meshVertices.getBuffer(), arena.meshFaces.getBuffer());
+				}
+			}
+
+			if (mesh != null && stagingArena.instances.add(mesh, x, y, z))
+				return;
+		}
+
+		uploadStaticModel(
+			ctx, tile, model, modelOverride, uuid,
+			preOrientation, orientation,
+			x, y, z,
+			opaqueBuffer, alphaBuffer, textureBuffer
+		);
+	}
+
+	/**
+	 * Hash everything besides the position which goes into uploading a static model, for sharing its mesh.
+	 *
+	 * @return the hash, or 0 if the model shouldn't be instanced
+	 */
+	private long hashStaticMesh(Model model, ModelOverride modelOverride, int preOrientation, int orientation) {
+		final int faceCount = model.getFaceCount();
+		if (
+			faceCount < StaticMeshStore.MIN_INSTANCE_FACES ||
+			modelOverride.terrainVertexSnap ||
+			modelOverride.inheritTileColorType != InheritTileColorType.NONE ||
+			plugin.configLegacyTzHaarReskin && modelOverride.tzHaarRecolorType != TzHaarRecolorType.NONE
+		) {
+			return 0;
+		}
+
+		final int vertexCount = model.getVerticesCount();
+		long h = meshConfigHash;
+		h = h * 31 + faceCount;
+		h = h * 31 + vertexCount;
+		h = h * 31 + ModelHasher.fastFloatHash(model.getVerticesX(), vertexCount);
+		h = h * 31 + ModelHasher.fastFloatHash(model.getVerticesY(), vertexCount);
+		h = h * 31 + ModelHasher.fastFloatHash(model.getVerticesZ(), vertexCount);
+		h = h * 31 + ModelHasher.fastHash(model.getFaceIndices1(), faceCount);
+		h = h * 31 + ModelHasher.fastHash(model.getFaceIndices2(), faceCount);
+		h = h * 31 + ModelHasher.fastHash(model.getFaceIndices3(), faceCount);
+		h = h * 31 + ModelHasher.fastHash(model.getFaceColors1(), faceCount);
+		h = h * 31 + ModelHasher.fastHash(model.getFaceColors2(), faceCount);
+		h = h * 31 + ModelHasher.fastHash(model.getFaceColors3(), faceCount);
+		if (plugin.configUnlitFaceColors)
+			h = h * 31 + ModelHasher.fastShortHash(model.getUnlitFaceColors());
+		h = h * 31 + ModelHasher.fastHash(model.getVertexNormalsX());
+		h = h * 31 + ModelHasher.fastHash(model.getVertexNormalsY());
+		h = h * 31 + ModelHasher.fastHash(model.getVertexNormalsZ());
+		h = h * 31 + ModelHasher.fastShortHash(model.getFaceTextures());
+		h = h * 31 + ModelHasher.fastByteHash(model.getTextureFaces());
+		h = h * 31 + ModelHasher.fastHash(model.getTexIndices1());
+		h = h * 31 + ModelHasher.fastHash(model.getTexIndices2());
+		h = h * 31 + ModelHasher.fastHash(model.getTexIndices3());
+		h = h * 31 + ModelHasher.fastByteHash(model.getFaceBias());
+		h = h * 31 + ModelHasher.fastByteHash(model.getFaceTransparencies());
+		h = h * 31 + modelOverride.hashCode();
+		h = h * 31 + preOrientation;
+		h = h * 31 + mod(orientation, 2048);
+		return h == 0 ? 1 : h;
+	}
+
 	// scene upload
 	private int uploadStaticModel(
 		ZoneSceneContext ctx,
@@ -2311,4 +2693,11 @@ public class SceneUploader implements AutoCloseable {
 		clear();
 		POOL.recycle(this);
 	}
+
+	@Override
+	public void destroy() {
+		if (stagingArena != null)
+			stagingArena.destroy();
+		stagingArena = null;
+	}
 }
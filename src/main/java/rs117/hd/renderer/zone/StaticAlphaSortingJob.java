@@ -1,5 +1,6 @@
 package rs117.hd.renderer.zone;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 import lombok.RequiredArgsConstructor;
@@ -10,15 +11,25 @@ import rs117.hd.utils.Camera;
 import rs117.hd.utils.jobs.Job;
 
 import static net.runelite.api.Perspective.*;
+import static rs117.hd.HdPlugin.PROCESSOR_COUNT;
 import static rs117.hd.utils.HDUtils.ceilPow2;
+import static rs117.hd.utils.MathUtils.*;
 
 @RequiredArgsConstructor
 public final class StaticAlphaSortingJob extends Job {
+	// Splitting up fewer faces than this isn't worth the overhead of queueing more jobs
+	private static final int MIN_CHUNK_FACES = 4096;
+
 	private FrameTimer frameTimer;
 
 	private AlphaModel[] models = new AlphaModel[16];
 	private AtomicIntegerArray states = new AtomicIntegerArray(16);
 	private int size = 0;
+	private int totalFaceCount;
+
+	private final ArrayList<Chunk> chunks = new ArrayList<>();
+	private Job[] chunkDependencies = new Job[0];
+	private int chunkCount;
 
 	private int yaw;
 	private int yawSin;
@@ -38,6 +49,7 @@ public final class StaticAlphaSortingJob extends Job {
 		states.set(size, 0);
 		models[size] = m;
 		size++;
+		totalFaceCount += m.packedFaces.length;
 	}
 
 	public void queue(Camera camera) {
@@ -49,24 +61,78 @@ public final class StaticAlphaSortingJob extends Job {
 		pitch = camera.getFixedPitch();
 		pitchSin = SINE[pitch];
 		pitchCos = COSINE[pitch];
-		queue();
+
+		splitIntoChunks();
+		if (chunkCount == 0) {
+			queue();
+			return;
+		}
+
+		// Queue each chunk separately, with this job only completing once all chunks are done
+		for (int i = 0; i < chunkCount; i++)
+			chunkDependencies[i] = chunks.get(i).queue();
+		queue(chunkDependencies);
+	}
+
+	/**
+	 * Split the models into contiguous chunks of roughly equal face counts, one per worker at most.
+	 */
+	private void splitIntoChunks() {
+		chunkCount = 0;
+		final int maxChunks = min(max(1, PROCESSOR_COUNT - 1), totalFaceCount / MIN_CHUNK_FACES);
+		if (maxChunks <= 1)
+			return;
+
+		if (chunkDependencies.length < maxChunks)
+			chunkDependencies = new Job[maxChunks];
+		Arrays.fill(chunkDependencies, null);
+
+		final int targetFaceCount = ceil((float) totalFaceCount / maxChunks);
+		int start = 0;
+		int faceCount = 0;
+		for (int i = 0; i < size; i++) {
+			faceCount += models[i].packedFaces.length;
+			if (faceCount >= targetFaceCount || i == size - 1) {
+				if (chunkCount == chunks.size())
+					chunks.add(new Chunk());
+				Chunk chunk = chunks.get(chunkCount++);
+				chunk.start = start;
+				chunk.end = i + 1;
+				start = i + 1;
+				faceCount = 0;
+			}
+		}
 	}
 
 	public void reset() {
 		size = 0;
+		totalFaceCount = 0;
 	}
 
 	@Override
 	protected void onRun() {
-		long start = System.nanoTime();
+		// When split into chunks, all work has already been done by the chunks this job depends on
+		long elapsedNanos = 0;
+		if (chunkCount == 0) {
+			elapsedNanos = sortRange(0, size);
+		} else {
+			for (int i = 0; i < chunkCount; i++)
+				elapsedNanos += chunks.get(i).elapsedNanos;
+		}
+		// Report the time once, since the frame timer isn't safe to update from multiple threads at once
+		frameTimer.add(Timer.STATIC_ALPHA_SORT, elapsedNanos);
+	}
+
+	private long sortRange(int start, int end) {
+		long startTime = System.nanoTime();
 		try (FacePrioritySorter sorter = FacePrioritySorter.POOL.acquire()) {
-			for (int i = 0; i < size; i++) {
+			for (int i = start; i < end; i++) {
 				if (!states.compareAndSet(i, 0, 1))
 					continue;
 				processModel(sorter, models[i]);
 			}
 		}
-		frameTimer.add(Timer.STATIC_ALPHA_SORT, System.nanoTime() - start);
+		return System.nanoTime() - startTime;
 	}
 
 	private void processModel(FacePrioritySorter sorter, AlphaModel m) {
@@ -85,4 +151,14 @@ public final class StaticAlphaSortingJob extends Job {
 		}
 		return false;
 	}
+
+	private final class Chunk extends Job {
+		int start, end;
+		long elapsedNanos;
+
+		@Override
+		protected void onRun() {
+			elapsedNanos = sortRange(start, end);
+		}
+	}
 }
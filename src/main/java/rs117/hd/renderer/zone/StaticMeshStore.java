@@ -0,0 +1,491 @@
+package rs117.hd.renderer.zone;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import rs117.hd.utils.Destructible;
+import rs117.hd.utils.buffer.GLBuffer;
+import rs117.hd.utils.buffer.GLTextureBuffer;
+import rs117.hd.utils.buffer.GpuIntBuffer;
+
+import static org.lwjgl.opengl.GL33C.*;
+import static rs117.hd.utils.MathUtils.*;
+
+/**
+ * Shares the geometry of static models which are placed many times with the same orientation, like trees, fences and
+ * walls, between all zones of a world view. Each mesh is packed once at the origin into a page of shared vertex and
+ * texture face buffers, and zones only record the position of each instance, which they draw with instanced indirect
+ * draws. Meshes are only stored once their key has been seen twice, so models placed only once are still packed into
+ * their zone.
+ * <p>
+ * Meshes are stored from worker threads, while the GL buffers of pages are only created, filled and deleted on the
+ * client thread. A page is freed once it's full and no zone references it anymore.
+ */
+public class StaticMeshStore implements Destructible {
+	// Faces per page, which makes each page's vertex buffer about 4 MiB
+	public static final int PAGE_FACES = (int) (4 * MiB / (3 * Zone.VERT_SIZE));
+	// Models with fewer faces cost about as much to draw as instances as they take up in a zone
+	public static final int MIN_INSTANCE_FACES = 16;
+
+	// Each vertex ends with its texture face index
+	private static final int VERTEX_INTS = Zone.VERT_SIZE / Integer.BYTES;
+	public static final int VERTEX_INTS_PER_FACE = VERTEX_INTS * 3;
+	public static final int TEXTURE_INTS_PER_FACE = Zone.TEXTURE_SIZE / Integer.BYTES;
+
+	private final int pageFaces;
+	private final ConcurrentHashMap<Long, Mesh> meshes = new ConcurrentHashMap<>();
+	// Keys seen since the sightings were last reset, and keys which can't be instanced
+	private final Set<Long> seen = ConcurrentHashMap.newKeySet();
+	private final Set<Long> rejected = ConcurrentHashMap.newKeySet();
+
+	// Guarded by this
+	private final List<Page> pages = new ArrayList<>();
+	private final List<Mesh> pendingUploads = new ArrayList<>();
+	private Page openPage;
+
+	// Only used on the client thread
+	private GpuIntBuffer uploadBuffer;
+
+	public StaticMeshStore() {
+		this(PAGE_FACES);
+	}
+
+	public StaticMeshStore(int pageFaces) {
+		this.pageFaces = pageFaces;
+	}
+
+	public static final class Page {
+		// Negative once the page has been freed, after which it can't be acquired anymore
+		private final AtomicInteger refs = new AtomicInteger();
+		private final List<Long> keys = new ArrayList<>();
+		private int faceCount;
+		private boolean full;
+
+		GLBuffer vbo;
+		GLTextureBuffer tbo;
+
+		/**
+		 * @return whether a reference was acquired, which fails if the page has already been freed
+		 */
+		public boolean tryAcquire() {
+			int count;
+			do {
+				count = refs.get();
+				if (count < 0)
+					return false;
+			} while (!refs.compareAndSet(count, count + 1));
+			return true;
+		}
+
+		public void release() {
+			refs.decrementAndGet();
+		}
+
+		public int getRefCount() {
+			return refs.get();
+		}
+
+		public int getFaceCount() {
+			return faceCount;
+		}
+
+		public boolean isFreed() {
+			return refs.get() < 0;
+		}
+
+		private void destroy() {
+			if (vbo != null)
+				vbo.destroy();
+			vbo = null;
+			if (tbo != null)
+				tbo.destroy();
+			tbo = null;
+		}
+	}
+
+	public static final class Mesh {
+		final Page page;
+		final int firstFace;
+		final int faceCount;
+
+		// Packed data waiting to be uploaded, with texture face indices already rebased onto the page
+		int[] vertices;
+		int[] faces;
+
+		Mesh(Page page, int firstFace, int faceCount, int[] vertices, int[] faces) {
+			this.page = page;
+			this.firstFace = firstFace;
+			this.faceCount = faceCount;
+			this.vertices = vertices;
+			this.faces = faces;
+		}
+
+		public Page getPage() {
+			return page;
+		}
+
+		public int getFirstVertex() {
+			return firstFace * 3;
+		}
+
+		public int getVertexCount() {
+			return faceCount * 3;
+		}
+
+		@Nullable
+		public int[] getPendingVertices() {
+			return vertices;
+		}
+
+		@Nullable
+		public int[] getPendingFaces() {
+			return faces;
+		}
+	}
+
+	@Nullable
+	public Mesh get(long key) {
+		return meshes.get(key);
+	}
+
+	/**
+	 * Record that a mesh with the specified key is about to be packed.
+	 *
+	 * @return whether the mesh has been seen before, and should be packed for storing
+	 */
+	public boolean markSeen(long key) {
+		return !rejected.contains(key) && !seen.add(key);
+	}
+
+	/**
+	 * Stop trying to store the mesh with the specified key, for instance because it has alpha faces,
+	 * which need to be sorted along with the rest of their zone.
+	 */
+	public void reject(long key) {
+		rejected.add(key);
+	}
+
+	/**
+	 * Forget which keys have been seen, so models which are no longer in the scene don't keep piling up.
+	 */
+	public void resetSightings() {
+		seen.clear();
+		rejected.clear();
+	}
+
+	/**
+	 * Store a mesh packed at the origin, from the beginning of each buffer up to its current position.
+	 * Its texture face indices are rebased onto where the mesh ends up in its page.
+	 *
+	 * @return the stored mesh, which may have been stored by another thread first, or null if it doesn't fit in a page
+	 */
+	@Nullable
+	public synchronized Mesh store(long key, IntBuffer vertices, IntBuffer faces) {
+		Mesh mesh = meshes.get(key);
+		if (mesh != null)
+			return mesh;
+
+		int faceCount = faces.position() / TEXTURE_INTS_PER_FACE;
+		assert vertices.position() == faceCount * VERTEX_INTS_PER_FACE;
+		if (faceCount == 0 || faceCount > pageFaces)
+			return null;
+
+		if (openPage == null || openPage.faceCount + faceCount > pageFaces) {
+			if (openPage != null)
+				openPage.full = true;
+			openPage = new Page();
+			pages.add(openPage);
+		}
+
+		Page page = openPage;
+		int[] packedVertices = copy(vertices);
+		// Texture face indices point at the first of three texels per face
+		int texelOffset = page.faceCount * 3;
+		for (int i = VERTEX_INTS - 1; i < packedVertices.length; i += VERTEX_INTS)
+			packedVertices[i] += texelOffset;
+
+		mesh = new Mesh(page, page.faceCount, faceCount, packedVertices, copy(faces));
+		page.faceCount += faceCount;
+		page.keys.add(key);
+		pendingUploads.add(mesh);
+		meshes.put(key, mesh);
+		return mesh;
+	}
+
+	private static int[] copy(IntBuffer buffer) {
+		var src = buffer.duplicate();
+		src.flip();
+		int[] ints = new int[src.remaining()];
+		src.get(ints);
+		return ints;
+	}
+
+	/**
+	 * Upload the meshes stored since the last call, creating the buffers of new pages as needed.
+	 * Must be called on the client thread, before any of their instances are drawn.
+	 */
+	public synchronized void upload() {
+		for (Mesh mesh : pendingUploads) {
+			Page page = mesh.page;
+			if (page.isFreed())
+				continue;
+
+			if (page.vbo == null) {
+				page.vbo = new GLBuffer("StaticMeshStore::VBO", GL_ARRAY_BUFFER, GL_STATIC_DRAW);
+				page.vbo.initialize((long) pageFaces * 3 * Zone.VERT_SIZE);
+				page.tbo = new GLTextureBuffer("StaticMeshStore::TBO", GL_STATIC_DRAW);
+				page.tbo.initialize((long) pageFaces * Zone.TEXTURE_SIZE);
+			}
+
+			upload(page.vbo, mesh.vertices, (long) mesh.firstFace * 3 * Zone.VERT_SIZE);
+			upload(page.tbo, mesh.faces, (long) mesh.firstFace * Zone.TEXTURE_SIZE);
+			mesh.vertices = null;
+			mesh.faces = null;
+		}
+		pendingUploads.clear();
+	}
+
+	private void upload(GLBuffer buffer, int[] data, long byteOffset) {
+		if (uploadBuffer == null)
+			uploadBuffer = new GpuIntBuffer(data.length);
+		uploadBuffer.clear().ensureCapacity(data.length).put(data);
+		uploadBuffer.flip();
+		buffer.upload(uploadBuffer.getBuffer(), byteOffset);
+	}
+
+	/**
+	 * Free full pages which are no longer referenced by any zone, along with their meshes.
+	 * Must be called on the client thread.
+	 */
+	public synchronized void collect() {
+		for (int i = pages.size() - 1; i >= 0; i--) {
+			Page page = pages.get(i);
+			if (!page.full || !page.refs.compareAndSet(0, -1))
+				continue;
+
+			for (long key : page.keys)
+				meshes.remove(key);
+			page.destroy();
+			pages.remove(i);
+		}
+	}
+
+	public int getMeshCount() {
+		return meshes.size();
+	}
+
+	public synchronized int getPageCount() {
+		return pages.size();
+	}
+
+	/**
+	 * @return the size of the GL buffers of all pages
+	 */
+	public synchronized long getBufferSize() {
+		long size = 0;
+		for (Page page : pages)
+			if (page.vbo != null)
+				size += page.vbo.size + page.tbo.size;
+		return size;
+	}
+
+	@Override
+	public synchronized void destroy() {
+		// Zones may still release their references later, but the pages must never be acquired again
+		for (Page page : pages) {
+			page.refs.set(-1);
+			page.destroy();
+		}
+		pages.clear();
+		pendingUploads.clear();
+		openPage = null;
+		meshes.clear();
+		resetSightings();
+
+		if (uploadBuffer != null)
+			uploadBuffer.destroy();
+		uploadBuffer = null;
+	}
+
+	/**
+	 * The instances of stored meshes in a zone, along with the indirect draw commands which draw them.
+	 * Holds a reference to each page it draws from, until released.
+	 */
+	public static final class Instances {
+		final Page[] pages;
+		// x, y, z per instance, relative to the zone
+		final int[] positions;
+		// count, instanceCount, first, baseInstance per command, in the layout expected by glMultiDrawArraysIndirect
+		final int[] commands;
+		// Index into pages per command
+		final byte[] commandPages;
+
+		private Instances(Page[] pages, int[] positions, int[] commands, byte[] commandPages) {
+			this.pages = pages;
+			this.positions = positions;
+			this.commands = commands;
+			this.commandPages = commandPages;
+		}
+
+		public int size() {
+			return positions.length / 3;
+		}
+
+		public int getCommandCount() {
+			return commandPages.length;
+		}
+
+		public Page getPage(int command) {
+			return pages[commandPages[command]];
+		}
+
+		public int[] getPositions() {
+			return positions;
+		}
+
+		public int[] getCommands() {
+			return commands;
+		}
+
+		public void release() {
+			for (Page page : pages)
+				page.release();
+		}
+	}
+
+	/**
+	 * Collects the instances placed in a zone while it's being uploaded. Instances are grouped into segments, which
+	 * match the ranges the zone draws separately, like levels and roofs. Within each segment, instances are sorted by
+	 * mesh, so each run of the same mesh turns into a single instanced draw command.
+	 * Each thread uploading zones needs its own list.
+	 */
+	public static final class InstanceList {
+		private final ArrayList<Page> pages = new ArrayList<>();
+
+		private Mesh[] segmentMeshes = new Mesh[64];
+		private int[] segmentPositions = new int[64 * 3];
+		private long[] sortKeys = new long[64];
+		private int segmentSize;
+
+		private int[] positions = new int[256 * 3];
+		private int[] commands = new int[64 * 4];
+		private byte[] commandPages = new byte[64];
+		private int instanceCount;
+		private int commandCount;
+
+		/**
+		 * Add an instance of the mesh to the current segment.
+		 *
+		 * @return whether the instance was added, which fails if the mesh's page has been freed in the meantime
+		 */
+		public boolean add(Mesh mesh, int x, int y, int z) {
+			if (!pages.contains(mesh.page)) {
+				if (pages.size() == Byte.MAX_VALUE || !mesh.page.tryAcquire())
+					return false;
+				pages.add(mesh.page);
+			}
+
+			if (segmentSize == segmentMeshes.length) {
+				segmentMeshes = Arrays.copyOf(segmentMeshes, segmentSize * 2);
+				segmentPositions = Arrays.copyOf(segmentPositions, segmentSize * 2 * 3);
+				sortKeys = new long[segmentSize * 2];
+			}
+			segmentMeshes[segmentSize] = mesh;
+			segmentPositions[segmentSize * 3] = x;
+			segmentPositions[segmentSize * 3 + 1] = y;
+			segmentPositions[segmentSize * 3 + 2] = z;
+			segmentSize++;
+			return true;
+		}
+
+		/**
+		 * Turn the instances of the current segment into draw commands, and start a new segment.
+		 *
+		 * @return the number of draw commands so far, which marks the end of the segment
+		 */
+		public int endSegment() {
+			if (segmentSize == 0)
+				return commandCount;
+
+			for (int i = 0; i < segmentSize; i++) {
+				Mesh mesh = segmentMeshes[i];
+				sortKeys[i] = (long) pages.indexOf(mesh.page) << 48 | (long) mesh.firstFace << 24 | i;
+			}
+			Arrays.sort(sortKeys, 0, segmentSize);
+
+			if (positions.length < (instanceCount + segmentSize) * 3)
+				positions = Arrays.copyOf(positions, max(positions.length * 2, (instanceCount + segmentSize) * 3));
+
+			Mesh prev = null;
+			for (int k = 0; k < segmentSize; k++) {
+				int i = (int) (sortKeys[k] & 0xFFFFFF);
+				Mesh mesh = segmentMeshes[i];
+				int instance = instanceCount++;
+				System.arraycopy(segmentPositions, i * 3, positions, instance * 3, 3);
+
+				if (mesh == prev) {
+					commands[(commandCount - 1) * 4 + 1]++;
+					continue;
+				}
+
+				if (commandCount == commandPages.length) {
+					commands = Arrays.copyOf(commands, commandCount * 2 * 4);
+					commandPages = Arrays.copyOf(commandPages, commandCount * 2);
+				}
+				int c = commandCount++;
+				commands[c * 4] = mesh.getVertexCount();
+				commands[c * 4 + 1] = 1;
+				commands[c * 4 + 2] = mesh.getFirstVertex();
+				// The zone's own geometry uses the first metadata entry, so instances start from the second
+				commands[c * 4 + 3] = 1 + instance;
+				commandPages[c] = (byte) (sortKeys[k] >>> 48);
+				prev = mesh;
+			}
+
+			Arrays.fill(segmentMeshes, 0, segmentSize, null);
+			segmentSize = 0;
+			return commandCount;
+		}
+
+		/**
+		 * Hand the collected instances over to a zone, along with the page references, and start over.
+		 *
+		 * @return the instances, or null if there weren't any
+		 */
+		@Nullable
+		public Instances build() {
+			endSegment();
+			if (instanceCount == 0)
+				return null;
+
+			var instances = new Instances(
+				pages.toArray(new Page[0]),
+				Arrays.copyOf(positions, instanceCount * 3),
+				Arrays.copyOf(commands, commandCount * 4),
+				Arrays.copyOf(commandPages, commandCount)
+			);
+			pages.clear();
+			instanceCount = 0;
+			commandCount = 0;
+			return instances;
+		}
+
+		/**
+		 * Drop any collected instances, releasing the pages which weren't handed over to a zone.
+		 */
+		public void reset() {
+			for (Page page : pages)
+				page.release();
+			pages.clear();
+			Arrays.fill(segmentMeshes, 0, segmentSize, null);
+			segmentSize = 0;
+			instanceCount = 0;
+			commandCount = 0;
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +21,7 @@ import rs117.hd.utils.CommandBuffer;
 import rs117.hd.utils.DestructibleHandler;
 import rs117.hd.utils.RenderState;
 import rs117.hd.utils.buffer.GLBuffer;
+import rs117.hd.utils.buffer.StagingStats;
 import rs117.hd.utils.collections.ConcurrentPool;
 import rs117.hd.utils.jobs.JobGroup;
 
@@ -72,6 +74,13 @@ public class WorldViewContext {
 	CommandBuffer vaoDirectionalCmd;
 	final DynamicModelVAO[][] dynamicModelVaos = new DynamicModelVAO[FRAMES_IN_FLIGHT][VAO_COUNT];
 
+	// Staged by zone uploads since the last call to takeStagingStats
+	final LongAdder zoneStagedBytes = new LongAdder();
+	final LongAdder zoneStagingAllocations = new LongAdder();
+
+	// Meshes of static models shared between the zones of this world view
+	final StaticMeshStore staticMeshes = new StaticMeshStore();
+
 	public long loadTime;
 	public long uploadTime;
 	public long sceneSwapTime;
@@ -112,9 +121,9 @@ public class WorldViewContext {
 		vboM = new GLBuffer("WorldViewMetadata", GL_ARRAY_BUFFER, GL_DYNAMIC_DRAW, 0);
 		vboM.initialize(METADATA_SIZE);
 		try (MemoryStack stack = MemoryStack.stackPush()) {
-			IntBuffer buf = stack.mallocInt(3);
+			IntBuffer buf = stack.mallocInt(4);
 			buf.put(uboWorldViewStruct == null ? 0 : uboWorldViewStruct.worldViewIdx + 1);
-			buf.put(0).put(0);
+			buf.put(0).put(0).put(0);
 			buf.flip();
 			vboM.upload(buf);
 		}
@@ -154,6 +163,33 @@ public class WorldViewContext {
 		dynamicModelVaos[plugin.frame % FRAMES_IN_FLIGHT][type].draw(cmd);
 	}
 
+	/**
+	 * @return the combined size of the dynamic model buffers for the current frame
+	 */
+	public long getDynamicBufferSize() {
+		if (vboM == null)
+			return 0;
+
+		long size = 0;
+		for (var vao : dynamicModelVaos[plugin.frame % FRAMES_IN_FLIGHT])
+			if (vao != null)
+				size += vao.getBufferSize();
+		return size;
+	}
+
+	/**
+	 * Add what the dynamic model buffers of every frame in flight, and zone uploads, have staged since the last call
+	 * to the specified stats.
+	 */
+	void takeStagingStats(StagingStats stats) {
+		for (var vaos : dynamicModelVaos)
+			for (var vao : vaos)
+				if (vao != null)
+					vao.takeStagingStats(stats);
+		stats.stagedBytes += zoneStagedBytes.sumThenReset();
+		stats.allocations += zoneStagingAllocations.sumThenReset();
+	}
+
 	void unmap() {
 		for (int i = 0; i < VAO_COUNT; i++) {
 			final boolean shouldCoalesce = i == VAO_OPAQUE || i == VAO_PLAYER || i == VAO_SHADOW;
@@ -244,6 +280,9 @@ public class WorldViewContext {
 		for (int x = 0; x < sizeX; x++)
 			for (int z = 0; z < sizeZ; z++)
 				handleZoneSwap(x, z, true);
+
+		// Zones swapped out above have released their meshes
+		staticMeshes.collect();
 	}
 
 	void processZoneRebuilds() {
@@ -280,6 +319,8 @@ public class WorldViewContext {
 			uboWorldViewStruct.free();
 		uboWorldViewStruct = null;
 
+		// Drop the stats of pooled buffers, so they aren't reported by whichever context picks them up next
+		takeStagingStats(new StagingStats());
 		for (int i = 0; i < VAO_COUNT; i++) {
 			for (int k = 0; k < FRAMES_IN_FLIGHT; k++) {
 				if (dynamicModelVaos[k][i] == null)
@@ -294,6 +335,7 @@ public class WorldViewContext {
 		for (int x = 0; x < sizeX; ++x)
 			for (int z = 0; z < sizeZ; ++z)
 				zones[x][z].destroy();
+		staticMeshes.destroy();
 
 		if (vboM != null)
 			vboM.destroy();
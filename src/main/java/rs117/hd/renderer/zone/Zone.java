@@ -4,7 +4,6 @@ import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -14,7 +13,7 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 import rs117.hd.HdPlugin;
 import rs117.hd.scene.MaterialManager;
 import rs117.hd.scene.SceneContext;
@@ -27,6 +26,8 @@ import rs117.hd.utils.DestructibleHandler;
 import rs117.hd.utils.HDUtils;
 import rs117.hd.utils.buffer.GLBuffer;
 import rs117.hd.utils.buffer.GLTextureBuffer;
+import rs117.hd.utils.buffer.GpuIntBuffer;
+import rs117.hd.utils.collections.RadixSorter;
 
 import static org.lwjgl.opengl.GL33C.*;
 import static rs117.hd.HdPlugin.GL_CAPS;
@@ -53,10 +54,10 @@ public class Zone implements Destructible {
 	// terrainData ivec3
 	public static final int TEXTURE_SIZE = 36;
 
-	// Metadata format
+	// Metadata format, for the zone itself followed by each static mesh instance
 	// worldViewIndex int int
-	// sceneOffset int vec2(x, y)
-	public static final int METADATA_SIZE = 12;
+	// sceneOffset int vec3(x, y, z)
+	public static final int METADATA_SIZE = 16;
 
 	public static final int LEVEL_WATER_SURFACE = 4;
 
@@ -94,17 +95,25 @@ public class Zone implements Destructible {
 	int[][] roofStart;
 	int[][] roofEnd;
 
+	// Instances of meshes in the StaticMeshStore, partitioned like the zone's own geometry, in draw commands
+	@Nullable
+	StaticMeshStore.Instances instances;
+	int[] instanceVaos; // one per page of the StaticMeshStore
+	int[] instanceLevelOffsets = new int[5];
+	int[][] instanceRoofStart;
+	int[][] instanceRoofEnd;
+
 	final List<AlphaModel> alphaModels = new ArrayList<>(0);
 	final ConcurrentLinkedQueue<AsyncCachedModel> pendingModelJobs = new ConcurrentLinkedQueue<>();
 
 	public void initialize(GLBuffer o, GLBuffer a, GLTextureBuffer f) {
 		assert glVao == 0;
 		assert glVaoA == 0;
-		if (o == null && a == null || f == null)
+		if ((o == null && a == null || f == null) && instances == null)
 			return;
 
 		vboM = new GLBuffer("ZoneMetadata", GL_ARRAY_BUFFER, GL_DYNAMIC_DRAW);
-		vboM.initialize(METADATA_SIZE);
+		vboM.initialize((long) METADATA_SIZE * (1 + (instances == null ? 0 : instances.size())));
 
 		if (o != null) {
 			vboO = o;
@@ -119,6 +128,30 @@ public class Zone implements Destructible {
 		}
 
 		tboF = f;
+
+		if (instances != null) {
+			// The pages' buffers must already have been created by uploading the StaticMeshStore
+			instanceVaos = new int[instances.pages.length];
+			for (int i = 0; i < instanceVaos.length; i++) {
+				instanceVaos[i] = glGenVertexArrays();
+				setupVao(instanceVaos[i], instances.pages[i].vbo.id, vboM.id);
+			}
+		}
+
+		// Alpha models staged before the buffers existed still need to be pointed at them
+		if (f != null) {
+			for (AlphaModel m : alphaModels) {
+				m.vao = glVaoA;
+				m.tboF = f.getTexId();
+			}
+		}
+	}
+
+	/**
+	 * @return whether the zone has any geometry of its own, or instances of static meshes
+	 */
+	boolean hasGeometry() {
+		return sizeO > 0 || sizeA > 0 || instances != null;
 	}
 
 	public static void freeZones(@Nullable Zone[][] zones) {
@@ -134,7 +167,7 @@ public class Zone implements Destructible {
 	@Override
 	@SuppressWarnings("deprecation")
 	protected void finalize() {
-		if (glVao != 0 || glVaoA != 0)
+		if (glVao != 0 || glVaoA != 0 || instanceVaos != null)
 			DestructibleHandler.queueLeakedDestruction(this);
 	}
 
@@ -170,6 +203,16 @@ public class Zone implements Destructible {
 			glVaoA = 0;
 		}
 
+		if (instanceVaos != null) {
+			glDeleteVertexArrays(instanceVaos);
+			instanceVaos = null;
+		}
+
+		if (instances != null) {
+			instances.release();
+			instances = null;
+		}
+
 		if (uploadJob != null) {
 			uploadJob.cancel();
 			DestructibleHandler.destroy(uploadJob.zone);
@@ -195,6 +238,9 @@ public class Zone implements Destructible {
 		rids = null;
 		roofStart = null;
 		roofEnd = null;
+		Arrays.fill(instanceLevelOffsets, 0);
+		instanceRoofStart = null;
+		instanceRoofEnd = null;
 
 		// don't add permanent alphamodels to the cache as permanent alphamodels are always allocated
 		// to avoid having to synchronize the cache
@@ -258,7 +304,7 @@ public class Zone implements Destructible {
 		// Scene offset
 		glEnableVertexAttribArray(7);
 		glVertexAttribDivisor(7, 1);
-		glVertexAttribIPointer(7, 2, GL_INT, METADATA_SIZE, 4);
+		glVertexAttribIPointer(7, 3, GL_INT, METADATA_SIZE, 4);
 
 		checkGLErrors();
 
@@ -270,16 +316,23 @@ public class Zone implements Destructible {
 		if (vboM == null)
 			return;
 
+		int worldViewIdx = viewContext.uboWorldViewStruct != null ? viewContext.uboWorldViewStruct.worldViewIdx + 1 : 0;
 		int baseX = (mx - (sceneContext.sceneOffset >> 3)) << 10;
 		int baseZ = (mz - (sceneContext.sceneOffset >> 3)) << 10;
 
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			IntBuffer buf = stack.mallocInt(3)
-				.put(viewContext.uboWorldViewStruct != null ? viewContext.uboWorldViewStruct.worldViewIdx + 1 : 0)
-				.put(baseX)
-				.put(baseZ);
+		int instanceCount = instances == null ? 0 : instances.size();
+		IntBuffer buf = MemoryUtil.memAllocInt((1 + instanceCount) * METADATA_SIZE / Integer.BYTES);
+		try {
+			buf.put(worldViewIdx).put(baseX).put(0).put(baseZ);
+			if (instances != null) {
+				int[] positions = instances.positions;
+				for (int i = 0; i < positions.length; i += 3)
+					buf.put(worldViewIdx).put(baseX + positions[i]).put(positions[i + 1]).put(baseZ + positions[i + 2]);
+			}
 			buf.flip();
 			vboM.upload(buf);
+		} finally {
+			MemoryUtil.memFree(buf);
 		}
 	}
 
@@ -296,30 +349,143 @@ public class Zone implements Destructible {
 	}
 
 	private static final int NUM_DRAW_RANGES = 512;
-	private static final int[] drawOff = new int[NUM_DRAW_RANGES];
-	private static final int[] drawEnd = new int[NUM_DRAW_RANGES];
 
-	private static final int[] glDrawOffset = new int[NUM_DRAW_RANGES];
-	private static final int[] glDrawLength = new int[NUM_DRAW_RANGES];
-	private static int drawIdx = 0;
+	/**
+	 * Scratch space for merging byte ranges into as few draw calls as possible.
+	 * Each thread recording draw calls needs its own instance.
+	 */
+	static final class DrawRanges {
+		private final int[] drawOff = new int[NUM_DRAW_RANGES];
+		private final int[] drawEnd = new int[NUM_DRAW_RANGES];
+
+		private final int[] glDrawOffset = new int[NUM_DRAW_RANGES];
+		private final int[] glDrawLength = new int[NUM_DRAW_RANGES];
+		private int drawIdx;
+
+		void clear() {
+			drawIdx = 0;
+		}
+
+		boolean isEmpty() {
+			return drawIdx == 0;
+		}
+
+		void push(int start, int end) {
+			assert end >= start;
+
+			if (drawIdx > 0 && drawEnd[drawIdx - 1] == start) {
+				drawEnd[drawIdx - 1] = end;
+			} else if (drawIdx >= NUM_DRAW_RANGES) {
+				log.debug("draw ranges exhausted");
+			} else {
+				drawOff[drawIdx] = start;
+				drawEnd[drawIdx] = end;
+				drawIdx++;
+			}
+		}
 
-	private void convertForDraw(int vertSize) {
-		for (int i = 0; i < drawIdx; ++i) {
-			assert drawEnd[i] >= drawOff[i];
+		private void convertForDraw(int vertSize) {
+			for (int i = 0; i < drawIdx; ++i) {
+				assert drawEnd[i] >= drawOff[i];
 
-			// convert from bytes to verts
-			drawOff[i] /= vertSize >> 2;
-			drawEnd[i] /= vertSize >> 2;
+				// convert from bytes to verts
+				drawOff[i] /= vertSize >> 2;
+				drawEnd[i] /= vertSize >> 2;
 
-			drawEnd[i] -= drawOff[i]; // convert from end pos to length
+				drawEnd[i] -= drawOff[i]; // convert from end pos to length
+			}
+
+			copyTo(glDrawOffset, drawOff, 0, drawIdx);
+			copyTo(glDrawLength, drawEnd, 0, drawIdx);
 		}
 
-		copyTo(glDrawOffset, drawOff, 0, drawIdx);
-		copyTo(glDrawLength, drawEnd, 0, drawIdx);
+		/**
+		 * Record draw calls for all pushed ranges, then clear them.
+		 */
+		void draw(CommandBuffer cmd, int vao, int tboF, int vertSize, GpuIntBuffer indirectBuffer) {
+			if (drawIdx == 0)
+				return;
+
+			convertForDraw(vertSize);
+			cmd.BindVertexArray(vao);
+			cmd.BindTextureUnit(GL_TEXTURE_BUFFER, tboF, TEXTURE_UNIT_TEXTURED_FACES);
+			if (drawIdx == 1) {
+				if (GL_CAPS.OpenGL40 && SUPPORTS_INDIRECT_DRAW) {
+					cmd.DrawArraysIndirect(GL_TRIANGLES, drawOff[0], drawEnd[0], indirectBuffer);
+				} else {
+					cmd.DrawArrays(GL_TRIANGLES, drawOff[0], drawEnd[0]);
+				}
+			} else {
+				if (GL_CAPS.OpenGL43 && SUPPORTS_INDIRECT_DRAW) {
+					cmd.MultiDrawArraysIndirect(GL_TRIANGLES, glDrawOffset, glDrawLength, drawIdx, indirectBuffer);
+				} else {
+					cmd.MultiDrawArrays(GL_TRIANGLES, glDrawOffset, glDrawLength, drawIdx);
+				}
+			}
+			drawIdx = 0;
+		}
+
+		/**
+		 * Record instanced draw calls for all pushed ranges of instance draw commands, with one multi draw per page of
+		 * the {@link StaticMeshStore}, then clear them.
+		 */
+		void drawInstances(CommandBuffer cmd, StaticMeshStore.Instances instances, int[] vaos, GpuIntBuffer indirectBuffer) {
+			if (drawIdx == 0)
+				return;
+
+			int commandCount = 0;
+			for (int i = 0; i < drawIdx; ++i)
+				commandCount += drawEnd[i] - drawOff[i];
+			indirectBuffer.ensureCapacity(commandCount * 4);
+
+			final IntBuffer buf = indirectBuffer.getBuffer();
+			final int[] commands = instances.commands;
+			final byte[] commandPages = instances.commandPages;
+			for (int page = 0; page < vaos.length; ++page) {
+				int indirectOffset = buf.position();
+				int drawCount = 0;
+				for (int i = 0; i < drawIdx; ++i) {
+					for (int c = drawOff[i]; c < drawEnd[i]; ++c) {
+						if (commandPages[c] == page) {
+							buf.put(commands, c * 4, 4);
+							drawCount++;
+						}
+					}
+				}
+
+				if (drawCount > 0) {
+					cmd.BindVertexArray(vaos[page]);
+					cmd.BindTextureUnit(GL_TEXTURE_BUFFER, instances.pages[page].tbo.getTexId(), TEXTURE_UNIT_TEXTURED_FACES);
+					cmd.MultiDrawArraysIndirect(GL_TRIANGLES, indirectOffset, drawCount);
+				}
+			}
+			drawIdx = 0;
+		}
 	}
 
+	// Used when recording on the client thread
+	private static final DrawRanges drawRanges = new DrawRanges();
+	private static final DrawRanges instanceRanges = new DrawRanges();
+
 	void renderOpaque(CommandBuffer cmd, WorldViewContext ctx, boolean roofShadows) {
-		drawIdx = 0;
+		renderOpaque(cmd, ctx, roofShadows, drawRanges, instanceRanges, ZoneRenderer.indirectDrawCmdsStaging);
+	}
+
+	/**
+	 * Record draw calls for opaque geometry. This only reads state which doesn't change during a frame,
+	 * so it's safe to call from worker threads, as long as each thread has its own draw ranges and indirect buffer.
+	 */
+	void renderOpaque(
+		CommandBuffer cmd,
+		WorldViewContext ctx,
+		boolean roofShadows,
+		DrawRanges drawRanges,
+		DrawRanges instanceRanges,
+		GpuIntBuffer indirectBuffer
+	) {
+		drawRanges.clear();
+		instanceRanges.clear();
+		final boolean hasInstances = instances != null;
 
 		int currentLevel = ctx.level;
 		int maxLevel = ctx.maxLevel;
@@ -338,7 +504,9 @@ public class Zone implements Destructible {
 				// draw the whole level
 				int start = level == 0 ? 0 : this.levelOffsets[level - 1];
 				int end = this.levelOffsets[level];
-				pushRange(start, end);
+				drawRanges.push(start, end);
+				if (hasInstances)
+					instanceRanges.push(level == 0 ? 0 : instanceLevelOffsets[level - 1], instanceLevelOffsets[level]);
 				continue;
 			}
 
@@ -348,59 +516,43 @@ public class Zone implements Destructible {
 					// draw the roof
 					assert roofEnd[roofIdx] >= roofStart[roofIdx];
 					if (roofEnd[roofIdx] > roofStart[roofIdx]) {
-						pushRange(roofStart[roofIdx], roofEnd[roofIdx]);
+						drawRanges.push(roofStart[roofIdx], roofEnd[roofIdx]);
 					}
+					if (hasInstances && instanceRoofEnd[level][roofIdx] > instanceRoofStart[level][roofIdx])
+						instanceRanges.push(instanceRoofStart[level][roofIdx], instanceRoofEnd[level][roofIdx]);
 				}
 			}
 
 			// push from the end of the last roof to the end of the level
 			int endpos = level == 0 ? 0 : this.levelOffsets[level - 1];
+			int instanceEndpos = level == 0 ? 0 : instanceLevelOffsets[level - 1];
 			for (int roofIdx = rids.length - 1; roofIdx >= 0; --roofIdx) {
 				int rid = rids[roofIdx];
 				if (rid > 0) {
 					endpos = roofEnd[roofIdx];
+					if (hasInstances)
+						instanceEndpos = instanceRoofEnd[level][roofIdx];
 					break;
 				}
 			}
 			// draw the non roofs
-			pushRange(endpos, this.levelOffsets[level]);
+			drawRanges.push(endpos, this.levelOffsets[level]);
+			if (hasInstances)
+				instanceRanges.push(instanceEndpos, instanceLevelOffsets[level]);
 		}
 
-		if (drawIdx == 0)
-			return;
-
-		lastDrawMode = STATIC_UNSORTED;
-		lastVao = glVao;
-		lastTboF = tboF.getTexId();
-		flush(cmd);
+		// A zone with only instances has no geometry of its own
+		if (glVao != 0 && !drawRanges.isEmpty())
+			drawRanges.draw(cmd, glVao, tboF.getTexId(), VERT_SIZE, indirectBuffer);
+		if (hasInstances)
+			instanceRanges.drawInstances(cmd, instances, instanceVaos, indirectBuffer);
 	}
 
 	void renderOpaqueLevel(CommandBuffer cmd, int level) {
-		drawIdx = 0;
-
-		pushRange(this.levelOffsets[level - 1], this.levelOffsets[level]);
-
-		if (drawIdx == 0)
-			return;
-
-		lastDrawMode = STATIC_UNSORTED;
-		lastVao = glVao;
-		lastTboF = tboF.getTexId();
-		flush(cmd);
-	}
-
-	private static void pushRange(int start, int end) {
-		assert end >= start;
-
-		if (drawIdx > 0 && drawEnd[drawIdx - 1] == start) {
-			drawEnd[drawIdx - 1] = end;
-		} else if (drawIdx >= NUM_DRAW_RANGES) {
-			log.debug("draw ranges exhausted");
-		} else {
-			drawOff[drawIdx] = start;
-			drawEnd[drawIdx] = end;
-			drawIdx++;
-		}
+		drawRanges.clear();
+		drawRanges.push(this.levelOffsets[level - 1], this.levelOffsets[level]);
+		if (!drawRanges.isEmpty())
+			drawRanges.draw(cmd, glVao, tboF.getTexId(), VERT_SIZE, ZoneRenderer.indirectDrawCmdsStaging);
 	}
 
 	public static class AlphaModel {
@@ -673,7 +825,7 @@ public class Zone implements Destructible {
 	}
 
 	private final AlphaSortPredicate alphaSortPred = new AlphaSortPredicate();
-	private final Comparator<AlphaModel> alphaSortComparator = Comparator.comparingInt(alphaSortPred).reversed();
+	private final RadixSorter alphaSorter = new RadixSorter();
 
 	private final EboAlphaWriterJob sortedAlphaFacesUpload = new EboAlphaWriterJob();
 
@@ -683,7 +835,7 @@ public class Zone implements Destructible {
 		alphaSortPred.cz = (int) camera.getPositionZ();
 		alphaSortPred.zx = zx;
 		alphaSortPred.zz = zz;
-		alphaModels.sort(alphaSortComparator);
+		alphaSorter.sortDescending(alphaModels, alphaSortPred);
 	}
 
 	void alphaStaticModelSort(Camera camera) {
@@ -719,7 +871,7 @@ public class Zone implements Destructible {
 			hiddenRoofIds = Collections.emptySet();
 		}
 
-		drawIdx = 0;
+		drawRanges.clear();
 
 		cmd.DepthMask(false);
 
@@ -759,7 +911,7 @@ public class Zone implements Destructible {
 			}
 
 			if (drawMode != STATIC) {
-				pushRange(m.startpos, m.endpos);
+				drawRanges.push(m.startpos, m.endpos);
 				continue;
 			}
 
@@ -805,24 +957,14 @@ public class Zone implements Destructible {
 				}
 			}
 			alphaFaceCount = 0;
-		} else if (drawIdx != 0) {
-			convertForDraw(lastDrawMode == STATIC_UNSORTED ? VERT_SIZE : DynamicModelVAO.VERT_SIZE);
-			cmd.BindVertexArray(lastVao);
-			cmd.BindTextureUnit(GL_TEXTURE_BUFFER, lastTboF, TEXTURE_UNIT_TEXTURED_FACES);
-			if (drawIdx == 1) {
-				if (GL_CAPS.OpenGL40 && SUPPORTS_INDIRECT_DRAW) {
-					cmd.DrawArraysIndirect(GL_TRIANGLES, drawOff[0], drawEnd[0], ZoneRenderer.indirectDrawCmdsStaging);
-				} else {
-					cmd.DrawArrays(GL_TRIANGLES, drawOff[0], drawEnd[0]);
-				}
-			} else {
-				if (GL_CAPS.OpenGL43 && SUPPORTS_INDIRECT_DRAW) {
-					cmd.MultiDrawArraysIndirect(GL_TRIANGLES, glDrawOffset, glDrawLength, drawIdx, ZoneRenderer.indirectDrawCmdsStaging);
-				} else {
-					cmd.MultiDrawArrays(GL_TRIANGLES, glDrawOffset, glDrawLength, drawIdx);
-				}
-			}
-			drawIdx = 0;
+		} else {
+			drawRanges.draw(
+				cmd,
+				lastVao,
+				lastTboF,
+				lastDrawMode == STATIC_UNSORTED ? VERT_SIZE : DynamicModelVAO.VERT_SIZE,
+				ZoneRenderer.indirectDrawCmdsStaging
+			);
 		}
 	}
 
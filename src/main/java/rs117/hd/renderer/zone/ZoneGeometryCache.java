@@ -0,0 +1,436 @@
+package rs117.hd.renderer.zone;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.system.MemoryUtil;
+import rs117.hd.HdPlugin;
+import rs117.hd.HdPluginConfig;
+import rs117.hd.scene.AreaManager;
+import rs117.hd.scene.GamevalManager;
+import rs117.hd.scene.GroundMaterialManager;
+import rs117.hd.scene.MaterialManager;
+import rs117.hd.scene.ModelOverrideManager;
+import rs117.hd.scene.TileOverrideManager;
+import rs117.hd.scene.WaterTypeManager;
+import rs117.hd.scene.model_overrides.ModelOverride;
+import rs117.hd.utils.JsonSnapshot;
+import rs117.hd.utils.ResourcePath;
+import rs117.hd.utils.StableHasher;
+import rs117.hd.utils.buffer.GLBuffer;
+
+import static rs117.hd.utils.MathUtils.*;
+
+/**
+ * Persistent on-disk cache of uploaded zone geometry, keyed by a hash of everything that goes into a zone's upload.
+ * Revisiting an area copies the cached vertex and texture data straight into the zone's buffers, skipping the upload.
+ * Least recently used entries are evicted once the cache grows beyond its configured size.
+ */
+@Slf4j
+@Singleton
+public class ZoneGeometryCache {
+	private static final ResourcePath CACHE_PATH = HdPlugin.PLUGIN_DIR.resolve("zone-cache");
+	private static final String EXTENSION = ".zone";
+	private static final int MAGIC = 0x5A4F4E45; // ZONE
+	// Bump whenever the vertex format or anything else affecting uploaded geometry changes
+	private static final int VERSION = 2;
+
+	@Inject
+	private HdPlugin plugin;
+
+	@Inject
+	private HdPluginConfig config;
+
+	// File sizes by key, in least recently used order
+	private final LinkedHashMap<Long, Long> index = new LinkedHashMap<>(256, .75f, true);
+	private long totalSize;
+	private long maxSize;
+
+	/**
+	 * A cached zone, read from disk.
+	 */
+	static final class Entry {
+		int sizeO, sizeA, sizeF;
+		boolean hasWater;
+		final int[] levelOffsets = new int[5];
+		int[][] rids, roofStart, roofEnd;
+		final byte[] filledTiles = new byte[64];
+		Zone.AlphaModel[] alphaModels;
+		IntBuffer opaque, alpha, faces;
+
+		/**
+		 * Restore the zone's metadata, which needs to happen before its buffers are allocated.
+		 */
+		void apply(Zone zone, ZoneSceneContext ctx, int mzx, int mzz) {
+			zone.sizeO = sizeO;
+			zone.sizeA = sizeA;
+			zone.sizeF = sizeF;
+			zone.hasWater = hasWater;
+			System.arraycopy(levelOffsets, 0, zone.levelOffsets, 0, levelOffsets.length);
+			zone.rids = rids;
+			zone.roofStart = roofStart;
+			zone.roofEnd = roofEnd;
+			for (int i = 0; i < filledTiles.length; i++)
+				ctx.filledTiles[(mzx << 3) + (i >> 3)][(mzz << 3) + (i & 7)] |= filledTiles[i];
+			for (var m : alphaModels)
+				zone.alphaModels.add(m);
+		}
+
+		/**
+		 * Copy the cached data into the zone's mapped buffers.
+		 */
+		void copyTo(Zone zone) {
+			copy(opaque, zone.vboO);
+			copy(alpha, zone.vboA);
+			copy(faces, zone.tboF);
+		}
+
+		private static void copy(IntBuffer src, @Nullable GLBuffer dst) {
+			if (dst != null)
+				dst.mapped().intView().put(src.duplicate());
+		}
+	}
+
+	public synchronized void initialize(long maxSize) {
+		this.maxSize = maxSize;
+		index.clear();
+		totalSize = 0;
+
+		var dir = CACHE_PATH.toPath();
+		if (!Files.isDirectory(dir))
+			return;
+
+		try (var files = Files.list(dir)) {
+			// Register the most recently used entries last, so they're evicted last
+			for (var path : files
+				.filter(p -> p.getFileName().toString().endsWith(EXTENSION))
+				.sorted(Comparator.comparingLong(ZoneGeometryCache::lastModified))
+				.collect(Collectors.toList())
+			) {
+				String name = path.getFileName().toString();
+				try {
+					long key = Long.parseUnsignedLong(name.substring(0, name.length() - EXTENSION.length()), 16);
+					long size = Files.size(path);
+					index.put(key, size);
+					totalSize += size;
+				} catch (NumberFormatException | IOException ex) {
+					deleteFile(path);
+				}
+			}
+		} catch (IOException ex) {
+			log.warn("Unable to scan the zone cache:", ex);
+		}
+
+		evict();
+		log.debug("Zone cache: {} entries, {} / {} MiB", index.size(), totalSize / MiB, maxSize / MiB);
+	}
+
+	public synchronized void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+		evict();
+	}
+
+	public synchronized boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Hash everything besides the scene itself which affects uploaded geometry. That's the content of every config
+	 * the upload path reads from, and the effective value of every setting it reads, after the plugin has resolved
+	 * derived settings such as the shading mode, the automatic seasonal theme, and textures disabled by color filters.
+	 * The settings are also exposed to the configs' conditional expressions through {@link rs117.hd.utils.HDVariables}.
+	 *
+	 * @return a hash of the configs and plugin settings which affect uploaded geometry
+	 */
+	public long getConfigHash() {
+		return new StableHasher()
+			.add(VERSION)
+			.add(JsonSnapshot.getContentHash(MaterialManager.MATERIALS_PATH))
+			.add(JsonSnapshot.getContentHash(GroundMaterialManager.GROUND_MATERIALS_PATH))
+			.add(JsonSnapshot.getContentHash(WaterTypeManager.WATER_TYPES_PATH))
+			.add(JsonSnapshot.getContentHash(ModelOverrideManager.MODEL_OVERRIDES_PATH))
+			.add(JsonSnapshot.getContentHash(TileOverrideManager.TILE_OVERRIDES_PATH))
+			.add(JsonSnapshot.getContentHash(AreaManager.AREA_PATH))
+			.add(GamevalManager.getContentHash())
+			.add(plugin.configGroundTextures)
+			.add(plugin.configGroundBlending)
+			.add(plugin.configModelTextures)
+			.add(plugin.configLegacyTzHaarReskin)
+			.add(plugin.configLegacyGreyColors)
+			.add(plugin.configVanillaShadowMode)
+			.add(plugin.configHideFakeShadows)
+			.add(plugin.configHideVanillaWaterEffects)
+			.add(plugin.configPreserveVanillaNormals)
+			.add(plugin.configUnlitFaceColors)
+			.add(plugin.configUndoVanillaShading)
+			.add(plugin.configSeasonalTheme)
+			.add(config.infernalCape())
+			.get();
+	}
+
+	@Nullable
+	Entry read(long key) {
+		synchronized (this) {
+			if (index.get(key) == null)
+				return null;
+		}
+
+		var path = pathOf(key);
+		try {
+			// Read onto the heap rather than memory-mapping, since a mapping keeps the file locked on Windows until it's GC'd,
+			// which would stop eviction from deleting it
+			var buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.nativeOrder());
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != key)
+				throw new IOException("Invalid header");
+
+			var entry = new Entry();
+			entry.sizeO = buffer.getInt();
+			entry.sizeA = buffer.getInt();
+			entry.sizeF = buffer.getInt();
+			entry.hasWater = buffer.getInt() != 0;
+			int opaqueInts = buffer.getInt();
+			int alphaInts = buffer.getInt();
+			int faceInts = buffer.getInt();
+			for (int i = 0; i < entry.levelOffsets.length; i++)
+				entry.levelOffsets[i] = buffer.getInt();
+
+			// Each roof has a start, end and ID per level
+			int roofCount = readCount(buffer, 12 * Integer.BYTES);
+			entry.rids = readLevels(buffer, roofCount);
+			entry.roofStart = readLevels(buffer, roofCount);
+			entry.roofEnd = readLevels(buffer, roofCount);
+			buffer.get(entry.filledTiles);
+
+			entry.alphaModels = new Zone.AlphaModel[readCount(buffer, 48)];
+			for (int i = 0; i < entry.alphaModels.length; i++) {
+				var m = entry.alphaModels[i] = new Zone.AlphaModel();
+				m.id = buffer.getInt();
+				// Static alpha models don't use their override after being uploaded
+				m.modelOverride = ModelOverride.NONE;
+				m.startpos = buffer.getInt();
+				m.endpos = buffer.getInt();
+				m.x = (short) buffer.getInt();
+				m.y = (short) buffer.getInt();
+				m.z = (short) buffer.getInt();
+				m.rid = (short) buffer.getInt();
+				m.level = buffer.get();
+				m.lx = buffer.get();
+				m.lz = buffer.get();
+				m.ux = buffer.get();
+				m.uz = buffer.get();
+				buffer.position(buffer.position() + 3);
+				m.radius = buffer.getInt();
+				m.packedFaces = new int[readCount(buffer, Integer.BYTES)];
+				buffer.asIntBuffer().get(m.packedFaces);
+				buffer.position(buffer.position() + m.packedFaces.length * Integer.BYTES);
+				int sortedFaces = buffer.getInt();
+				if (sortedFaces < 0 || sortedFaces > m.packedFaces.length * 3)
+					throw new IOException("Invalid sorted face count " + sortedFaces);
+				m.sortedFaces = new int[sortedFaces];
+			}
+
+			entry.opaque = sliceInts(buffer, opaqueInts);
+			entry.alpha = sliceInts(buffer, alphaInts);
+			entry.faces = sliceInts(buffer, faceInts);
+
+			synchronized (this) {
+				index.get(key);
+			}
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+			return entry;
+		} catch (Exception ex) {
+			log.debug("Discarding unreadable zone cache entry {}:", path.getFileName(), ex);
+			remove(key);
+			return null;
+		}
+	}
+
+	void write(long key, Zone zone, ZoneStagingArena arena, ZoneSceneContext ctx, int mzx, int mzz) {
+		var opaque = flipped(arena.opaque.getBuffer());
+		var alpha = flipped(arena.alpha.getBuffer());
+		var faces = flipped(arena.faces.getBuffer());
+
+		int roofCount = zone.rids[0].length;
+		int size = 68 + roofCount * 12 * Integer.BYTES + 64 + Integer.BYTES;
+		for (var m : zone.alphaModels)
+			size += 48 + m.packedFaces.length * Integer.BYTES;
+
+		var header = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(key);
+		header.putInt(zone.sizeO);
+		header.putInt(zone.sizeA);
+		header.putInt(zone.sizeF);
+		header.putInt(zone.hasWater ? 1 : 0);
+		header.putInt(opaque.remaining());
+		header.putInt(alpha.remaining());
+		header.putInt(faces.remaining());
+		for (int offset : zone.levelOffsets)
+			header.putInt(offset);
+
+		header.putInt(roofCount);
+		writeLevels(header, zone.rids);
+		writeLevels(header, zone.roofStart);
+		writeLevels(header, zone.roofEnd);
+		for (int x = 0; x < 8; x++)
+			for (int z = 0; z < 8; z++)
+				header.put(ctx.filledTiles[(mzx << 3) + x][(mzz << 3) + z]);
+
+		header.putInt(zone.alphaModels.size());
+		for (var m : zone.alphaModels) {
+			header.putInt(m.id);
+			header.putInt(m.startpos);
+			header.putInt(m.endpos);
+			header.putInt(m.x);
+			header.putInt(m.y);
+			header.putInt(m.z);
+			header.putInt(m.rid);
+			header.put(m.level);
+			header.put(m.lx);
+			header.put(m.lz);
+			header.put(m.ux);
+			header.put(m.uz);
+			header.position(header.position() + 3);
+			header.putInt(m.radius);
+			header.putInt(m.packedFaces.length);
+			for (int packed : m.packedFaces)
+				header.putInt(packed);
+			header.putInt(m.sortedFaces.length);
+		}
+		header.flip();
+
+		ByteBuffer[] buffers = {
+			header,
+			MemoryUtil.memByteBuffer(opaque),
+			MemoryUtil.memByteBuffer(alpha),
+			MemoryUtil.memByteBuffer(faces)
+		};
+		long fileSize = 0;
+		for (var b : buffers)
+			fileSize += b.remaining();
+
+		// Write to a temporary file first, so a partially written entry is never picked up
+		var target = pathOf(key);
+		Path tempFile = null;
+		try {
+			CACHE_PATH.mkdirs();
+			tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+			try (var channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				long written = 0;
+				while (written < fileSize)
+					written += channel.write(buffers);
+			}
+			try {
+				Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException ex) {
+			log.debug("Unable to write zone cache entry {}:", target.getFileName(), ex);
+			return;
+		} finally {
+			if (tempFile != null)
+				deleteFile(tempFile);
+		}
+
+		synchronized (this) {
+			Long previous = index.put(key, fileSize);
+			totalSize += fileSize - (previous == null ? 0 : previous);
+			evict();
+		}
+	}
+
+	private synchronized void remove(long key) {
+		Long size = index.remove(key);
+		if (size != null)
+			totalSize -= size;
+		deleteFile(pathOf(key));
+	}
+
+	private synchronized void evict() {
+		var it = index.entrySet().iterator();
+		while (totalSize > maxSize && it.hasNext()) {
+			var entry = it.next();
+			it.remove();
+			totalSize -= entry.getValue();
+			deleteFile(pathOf(entry.getKey()));
+		}
+	}
+
+	private static Path pathOf(long key) {
+		return CACHE_PATH.resolve(String.format("%016x", key) + EXTENSION).toPath();
+	}
+
+	private static long lastModified(Path path) {
+		try {
+			return Files.getLastModifiedTime(path).toMillis();
+		} catch (IOException ex) {
+			return 0;
+		}
+	}
+
+	private static void deleteFile(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException ex) {
+			log.debug("Unable to delete {}:", path, ex);
+		}
+	}
+
+	private static IntBuffer flipped(IntBuffer buffer) {
+		var copy = buffer.duplicate();
+		copy.flip();
+		return copy;
+	}
+
+	private static IntBuffer sliceInts(ByteBuffer buffer, int ints) throws IOException {
+		if (ints < 0 || ints > buffer.remaining() / Integer.BYTES)
+			throw new IOException("Invalid int count " + ints + " at " + buffer.position());
+		var slice = buffer.slice().order(ByteOrder.nativeOrder());
+		slice.limit(ints * Integer.BYTES);
+		buffer.position(buffer.position() + ints * Integer.BYTES);
+		return slice.asIntBuffer();
+	}
+
+	/**
+	 * Read a count of items which are each at least the specified number of bytes long, and validate it against the
+	 * remaining bytes, so a corrupt entry can't trigger huge allocations.
+	 */
+	private static int readCount(ByteBuffer buffer, int minItemBytes) throws IOException {
+		int count = buffer.getInt();
+		if (count < 0 || count > buffer.remaining() / minItemBytes)
+			throw new IOException("Invalid count " + count + " at " + (buffer.position() - 4));
+		return count;
+	}
+
+	private static int[][] readLevels(ByteBuffer buffer, int length) {
+		int[][] levels = new int[4][length];
+		for (int[] level : levels)
+			for (int i = 0; i < length; i++)
+				level[i] = buffer.getInt();
+		return levels;
+	}
+
+	private static void writeLevels(ByteBuffer buffer, int[][] levels) {
+		for (int[] level : levels)
+			for (int value : level)
+				buffer.putInt(value);
+	}
+}
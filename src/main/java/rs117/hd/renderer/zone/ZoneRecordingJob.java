@@ -0,0 +1,114 @@
+package rs117.hd.renderer.zone;
+
+import java.util.Arrays;
+import rs117.hd.opengl.shader.ShadowShaderProgram;
+import rs117.hd.utils.CommandBuffer;
+import rs117.hd.utils.Destructible;
+import rs117.hd.utils.RenderState;
+import rs117.hd.utils.buffer.GpuIntBuffer;
+import rs117.hd.utils.jobs.Job;
+
+/**
+ * Records opaque zone draw calls on a worker thread, into command buffers which are executed as sub command buffers
+ * of the scene & directional passes. Indirect draw commands are written to a separate buffer, which must be appended
+ * to {@link ZoneRenderer#indirectDrawCmdsStaging} using {@link #mergeIndirectDraws} once the job has completed.
+ */
+final class ZoneRecordingJob extends Job implements Destructible {
+	// Recording a single zone is cheap, so batch enough of them to be worth the overhead of queueing a job
+	static final int ZONES_PER_JOB = 16;
+
+	final CommandBuffer sceneCmd;
+	final CommandBuffer directionalCmd;
+
+	private final GpuIntBuffer indirectStaging = new GpuIntBuffer();
+	private final Zone.DrawRanges drawRanges = new Zone.DrawRanges();
+	private final Zone.DrawRanges instanceRanges = new Zone.DrawRanges();
+
+	private final Zone[] zones = new Zone[ZONES_PER_JOB];
+	private final boolean[] drawScene = new boolean[ZONES_PER_JOB];
+	private final boolean[] drawShadow = new boolean[ZONES_PER_JOB];
+	private int size;
+
+	private WorldViewContext ctx;
+	private ShadowShaderProgram shadowProgram;
+	private boolean roofShadows;
+
+	// Reported by the client thread once the job has completed, since the frame timer isn't thread-safe
+	long elapsedNanos;
+
+	ZoneRecordingJob(RenderState renderState) {
+		sceneCmd = new CommandBuffer("Scene Zones", renderState);
+		directionalCmd = new CommandBuffer("Directional Zones", renderState);
+	}
+
+	void prepare(WorldViewContext ctx, ShadowShaderProgram shadowProgram, boolean roofShadows) {
+		this.ctx = ctx;
+		this.shadowProgram = shadowProgram;
+		this.roofShadows = roofShadows;
+	}
+
+	void addZone(Zone zone, boolean drawScene, boolean drawShadow) {
+		assert size < ZONES_PER_JOB;
+		zones[size] = zone;
+		this.drawScene[size] = drawScene;
+		this.drawShadow[size] = drawShadow;
+		size++;
+	}
+
+	boolean isRecording(WorldViewContext ctx) {
+		return this.ctx == ctx;
+	}
+
+	boolean isFull() {
+		return size == ZONES_PER_JOB;
+	}
+
+	/**
+	 * Append the recorded indirect draw commands to the specified buffer, and offset the recorded draw calls to match.
+	 * Must only be called after the job has completed.
+	 */
+	void mergeIndirectDraws(GpuIntBuffer indirectBuffer) {
+		int count = indirectStaging.position();
+		if (count == 0)
+			return;
+
+		long byteOffset = (long) indirectBuffer.position() * Integer.BYTES;
+		sceneCmd.offsetIndirectDraws(byteOffset);
+		directionalCmd.offsetIndirectDraws(byteOffset);
+
+		indirectStaging.flip();
+		indirectBuffer.ensureCapacity(count);
+		indirectBuffer.put(indirectStaging.getBuffer());
+		indirectStaging.clear();
+	}
+
+	void reset() {
+		sceneCmd.reset();
+		directionalCmd.reset();
+		indirectStaging.clear();
+		Arrays.fill(zones, 0, size, null);
+		ctx = null;
+		size = 0;
+		elapsedNanos = 0;
+	}
+
+	@Override
+	protected void onRun() {
+		long startTime = System.nanoTime();
+		directionalCmd.SetShader(shadowProgram);
+		for (int i = 0; i < size; i++) {
+			if (drawScene[i])
+				zones[i].renderOpaque(sceneCmd, ctx, false, drawRanges, instanceRanges, indirectStaging);
+			if (drawShadow[i])
+				zones[i].renderOpaque(directionalCmd, ctx, roofShadows, drawRanges, instanceRanges, indirectStaging);
+		}
+		elapsedNanos = System.nanoTime() - startTime;
+	}
+
+	@Override
+	public void destroy() {
+		waitForCompletion();
+		reset();
+		indirectStaging.destroy();
+	}
+}
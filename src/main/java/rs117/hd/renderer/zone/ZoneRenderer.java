@@ -26,6 +26,7 @@ package rs117.hd.renderer.zone;
 
 import com.google.inject.Injector;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Set;
 import javax.inject.Inject;
@@ -55,8 +56,10 @@ import rs117.hd.renderer.Renderer;
 import rs117.hd.scene.EnvironmentManager;
 import rs117.hd.scene.LightManager;
 import rs117.hd.scene.ProceduralGenerator;
+import rs117.hd.scene.SceneChanges;
 import rs117.hd.scene.SceneContext;
 import rs117.hd.scene.lights.Light;
+import rs117.hd.scene.lights.LightClusters;
 import rs117.hd.utils.Camera;
 import rs117.hd.utils.ColorUtils;
 import rs117.hd.utils.CommandBuffer;
@@ -66,8 +69,11 @@ import rs117.hd.utils.RenderState;
 import rs117.hd.utils.ShadowCasterVolume;
 import rs117.hd.utils.buffer.GLBuffer;
 import rs117.hd.utils.buffer.GLMappedBufferIntWriter;
+import rs117.hd.utils.buffer.GLTextureBuffer;
 import rs117.hd.utils.buffer.GpuIntBuffer;
+import rs117.hd.utils.buffer.StagingStats;
 import rs117.hd.utils.collections.ConcurrentPool;
+import rs117.hd.utils.jobs.GenericJob;
 import rs117.hd.utils.jobs.JobSystem;
 
 import static net.runelite.api.Constants.*;
@@ -91,6 +97,7 @@ public class ZoneRenderer implements Renderer {
 
 	private static int TEXTURE_UNIT_COUNT = HdPlugin.TEXTURE_UNIT_COUNT;
 	public static final int TEXTURE_UNIT_TEXTURED_FACES = GL_TEXTURE0 + TEXTURE_UNIT_COUNT++;
+	public static final int TEXTURE_UNIT_CLUSTERED_LIGHTS = GL_TEXTURE0 + TEXTURE_UNIT_COUNT++;
 
 	private static int UNIFORM_BLOCK_COUNT = HdPlugin.UNIFORM_BLOCK_COUNT;
 	public static final int UNIFORM_BLOCK_WORLD_VIEWS = UNIFORM_BLOCK_COUNT++;
@@ -143,6 +150,9 @@ public class ZoneRenderer implements Renderer {
 	@Inject
 	private UBOWorldViews uboWorldViews;
 
+	@Inject
+	private ZoneGeometryCache zoneGeometryCache;
+
 	public final Camera sceneCamera = new Camera().setReverseZ(true);
 	public final Camera directionalCamera = new Camera().setOrthographic(true);
 	public final ShadowCasterVolume directionalShadowCasterVolume = new ShadowCasterVolume(directionalCamera);
@@ -156,6 +166,20 @@ public class ZoneRenderer implements Renderer {
 
 	public static GLBuffer.EBO eboAlpha;
 	public static GLMappedBufferIntWriter eboAlphaWriter;
+	private final StagingStats stagingStats = new StagingStats();
+
+	private GLTextureBuffer tboClusteredLights;
+	private GpuIntBuffer clusteredLightsStaging;
+	private final LightClusters lightClusters = new LightClusters();
+	private final GenericJob binLightClustersTask = GenericJob.build(
+		"LightClusters::bin",
+		task -> lightClusters.bin()
+	);
+
+	// Opaque zones are recorded in batches on worker threads, in the order they were submitted
+	private final ConcurrentPool<ZoneRecordingJob> zoneRecordingJobPool = new ConcurrentPool<>(() -> new ZoneRecordingJob(renderState));
+	private final ArrayList<ZoneRecordingJob> zoneRecordingJobs = new ArrayList<>();
+	private ZoneRecordingJob zoneRecordingBatch;
 
 	private boolean sceneFboValid;
 	private boolean shouldRenderScene;
@@ -189,6 +213,7 @@ public class ZoneRenderer implements Renderer {
 		directionalCmd.setFrameTimer(frameTimer);
 
 		jobSystem.startUp(config.cpuUsageLimit());
+		zoneGeometryCache.initialize(config.zoneCacheSizeMiB() * MiB);
 		uboWorldViews.initialize(UNIFORM_BLOCK_WORLD_VIEWS);
 		sceneManager.initialize(renderState, uboWorldViews);
 		modelStreamingManager.initialize();
@@ -200,6 +225,9 @@ public class ZoneRenderer implements Renderer {
 
 	@Override
 	public void destroy() {
+		binLightClustersTask.waitForCompletion();
+		recycleZoneRecordingJobs();
+		zoneRecordingJobPool.destroy();
 		destroyBuffers();
 
 		jobSystem.shutDown();
@@ -224,6 +252,7 @@ public class ZoneRenderer implements Renderer {
 	public void addShaderIncludes(ShaderIncludes includes) {
 		includes
 			.define("MAX_SIMULTANEOUS_WORLD_VIEWS", UBOWorldViews.MAX_SIMULTANEOUS_WORLD_VIEWS)
+			.define("CLUSTERED_LIGHTING", useClusteredLighting())
 			.addInclude("WORLD_VIEW_GETTER", () -> plugin.generateGetter("WorldView", UBOWorldViews.MAX_SIMULTANEOUS_WORLD_VIEWS))
 			.addUniformBuffer(uboWorldViews);
 	}
@@ -249,6 +278,11 @@ public class ZoneRenderer implements Renderer {
 
 		indirectDrawCmds = new GLBuffer("indirectDrawCmds", GL_DRAW_INDIRECT_BUFFER, GL_STREAM_DRAW).initialize(MiB);
 		indirectDrawCmdsStaging = new GpuIntBuffer();
+
+		tboClusteredLights = new GLTextureBuffer("Clustered Lights", GL_STREAM_DRAW)
+			.setInternalFormat(GL_R32UI)
+			.initialize(LightClusters.CLUSTER_COUNT * 2 * 4L);
+		clusteredLightsStaging = new GpuIntBuffer(LightClusters.CLUSTER_COUNT * 2);
 	}
 
 	private void destroyBuffers() {
@@ -267,12 +301,23 @@ public class ZoneRenderer implements Renderer {
 		if (indirectDrawCmdsStaging != null)
 			indirectDrawCmdsStaging.destroy();
 		indirectDrawCmdsStaging = null;
+
+		if (tboClusteredLights != null)
+			tboClusteredLights.destroy();
+		tboClusteredLights = null;
+
+		if (clusteredLightsStaging != null)
+			clusteredLightsStaging.destroy();
+		clusteredLightsStaging = null;
 	}
 
 	@Override
 	public void processConfigChanges(Set<String> keys) {
 		if (keys.contains(KEY_ASYNC_MODEL_PROCESSING) || keys.contains(KEY_ASYNC_MODEL_CACHE_SIZE))
 			modelStreamingManager.reinitialize();
+
+		if (keys.contains(KEY_ZONE_CACHE_SIZE))
+			zoneGeometryCache.setMaxSize(config.zoneCacheSizeMiB() * MiB);
 	}
 
 	@Override
@@ -294,6 +339,7 @@ public class ZoneRenderer implements Renderer {
 			}
 
 			frameTimer.begin(Timer.DRAW_PRESCENE);
+			flushZoneRecording();
 			ctx.minLevel = minLevel;
 			ctx.level = level;
 			ctx.maxLevel = maxLevel;
@@ -388,6 +434,8 @@ public class ZoneRenderer implements Renderer {
 
 				frameTimer.begin(Timer.UPDATE_LIGHTS);
 				lightManager.update(ctx.sceneContext, plugin.cameraShift, plugin.cameraFrustum);
+				if (useClusteredLighting())
+					queueLightClustering(ctx.sceneContext);
 				frameTimer.end(Timer.UPDATE_LIGHTS);
 
 				frameTimer.begin(Timer.UPDATE_SCENE);
@@ -492,7 +540,7 @@ public class ZoneRenderer implements Renderer {
 				final float[] lightPosition = new float[4];
 				final float[] lightColor = new float[4];
 				for (int i = 0; i < ctx.sceneContext.numVisibleLights; i++) {
-					final Light light = ctx.sceneContext.lights.get(i);
+					final Light light = ctx.sceneContext.visibleLights.get(i);
 					final float lightRadiusSq = light.radius * light.radius;
 					lightPosition[0] = light.pos[0] + plugin.cameraShift[0];
 					lightPosition[1] = light.pos[1];
@@ -518,6 +566,8 @@ public class ZoneRenderer implements Renderer {
 				plugin.uboLights.upload();
 				plugin.uboLightsCulling.upload();
 				plugin.uboGlobal.pointLightsCount.set(ctx.sceneContext.numVisibleLights);
+				if (useClusteredLighting())
+					uploadLightClusters();
 				frameTimer.end(Timer.UPDATE_LIGHTS);
 			}
 		}
@@ -610,6 +660,7 @@ public class ZoneRenderer implements Renderer {
 		plugin.uboGlobal.upload();
 
 		// Reset buffers for the next frame
+		recycleZoneRecordingJobs();
 		indirectDrawCmdsStaging.clear();
 		sceneCmd.reset();
 		directionalCmd.reset();
@@ -634,6 +685,7 @@ public class ZoneRenderer implements Renderer {
 				return;
 
 			frameTimer.begin(Timer.DRAW_POSTSCENE);
+			flushZoneRecording();
 			if (scene.getWorldViewId() == WorldView.TOPLEVEL)
 				postDrawTopLevel();
 			frameTimer.end(Timer.DRAW_POSTSCENE);
@@ -652,8 +704,17 @@ public class ZoneRenderer implements Renderer {
 		// Upload world views before rendering
 		uboWorldViews.upload();
 
-		if (eboAlphaWriter != null)
+		stagingStats.reset();
+		if (eboAlphaWriter != null) {
 			eboAlphaWriter.flush();
+			stagingStats.add(eboAlphaWriter);
+		}
+		sceneManager.takeStagingStats(stagingStats);
+		plugin.stagedByteCount = stagingStats.stagedBytes;
+		plugin.stagingAllocationCount = stagingStats.allocations;
+		plugin.stagedFlushCount = stagingStats.updateFlushWindow(System.currentTimeMillis());
+
+		mergeZoneRecordingJobs();
 
 		// Scene draw state to apply before all recorded commands
 		if (indirectDrawCmdsStaging.position() > 0) {
@@ -672,6 +733,81 @@ public class ZoneRenderer implements Renderer {
 		checkGLErrors();
 	}
 
+	/**
+	 * Queue the current batch of opaque zones for recording, if any.
+	 */
+	private void flushZoneRecording() {
+		if (zoneRecordingBatch == null)
+			return;
+
+		zoneRecordingBatch.queue();
+		zoneRecordingBatch = null;
+	}
+
+	/**
+	 * Wait for all opaque zones to finish recording, and append their indirect draw commands in submission order.
+	 */
+	private void mergeZoneRecordingJobs() {
+		long elapsedNanos = 0;
+		for (var job : zoneRecordingJobs) {
+			job.waitForCompletion();
+			job.mergeIndirectDraws(indirectDrawCmdsStaging);
+			elapsedNanos += job.elapsedNanos;
+		}
+		frameTimer.add(Timer.DRAW_ZONE_OPAQUE_ASYNC, elapsedNanos);
+	}
+
+	private void recycleZoneRecordingJobs() {
+		// Jobs may still be running if the previous frame was interrupted
+		flushZoneRecording();
+		for (var job : zoneRecordingJobs) {
+			job.waitForCompletion();
+			job.reset();
+			zoneRecordingJobPool.recycle(job);
+		}
+		zoneRecordingJobs.clear();
+	}
+
+	private boolean useClusteredLighting() {
+		return plugin.configDynamicLights != DynamicLights.NONE && !plugin.configTiledLighting;
+	}
+
+	/**
+	 * Snapshot the visible lights and bin them into clusters on a worker thread, while the rest of the frame is prepared.
+	 */
+	private void queueLightClustering(SceneContext sceneContext) {
+		// The previous snapshot may still be in use if the last frame was interrupted before uploading
+		binLightClustersTask.waitForCompletion();
+
+		lightClusters.prepare(plugin.viewProjMatrix, sceneContext.numVisibleLights);
+		for (int i = 0; i < sceneContext.numVisibleLights; i++) {
+			Light light = sceneContext.visibleLights.get(i);
+			lightClusters.setLight(
+				i,
+				light.pos[0] + plugin.cameraShift[0],
+				light.pos[1],
+				light.pos[2] + plugin.cameraShift[1],
+				light.radius
+			);
+		}
+		binLightClustersTask.queue();
+	}
+
+	private void uploadLightClusters() {
+		binLightClustersTask.waitForCompletion();
+
+		int length = lightClusters.getDataLength();
+		clusteredLightsStaging.clear();
+		clusteredLightsStaging.ensureCapacity(length);
+		clusteredLightsStaging.getBuffer().put(lightClusters.getData(), 0, length);
+		clusteredLightsStaging.flip();
+		tboClusteredLights.upload(clusteredLightsStaging);
+
+		// Resizing the buffer may have unbound the texture from the active unit, so rebind it every frame
+		glActiveTexture(TEXTURE_UNIT_CLUSTERED_LIGHTS);
+		glBindTexture(GL_TEXTURE_BUFFER, tboClusteredLights.getTexId());
+	}
+
 	private void tiledLightingPass() {
 		if (!plugin.configTiledLighting || plugin.configDynamicLights == DynamicLights.NONE)
 			return;
@@ -881,17 +1017,30 @@ public class ZoneRenderer implements Renderer {
 				return;
 
 			Zone z = ctx.zones[zx][zz];
-			if (!z.initialized || z.sizeO == 0)
+			if (!z.initialized || z.sizeO == 0 && z.instances == null)
 				return;
 
 			frameTimer.begin(Timer.DRAW_ZONE_OPAQUE);
-			if (!sceneManager.isRoot(ctx) || z.inSceneFrustum)
-				z.renderOpaque(sceneCmd, ctx, false);
-
+			final boolean drawScene = !sceneManager.isRoot(ctx) || z.inSceneFrustum;
 			final boolean isSquashed = ctx.uboWorldViewStruct != null && ctx.uboWorldViewStruct.isSquashed();
-			if (!isSquashed && (!sceneManager.isRoot(ctx) || z.inShadowFrustum)) {
-				directionalCmd.SetShader(fastShadowProgram);
-				z.renderOpaque(directionalCmd, ctx, shouldDrawRoofShadows);
+			final boolean drawShadow = !isSquashed && (!sceneManager.isRoot(ctx) || z.inShadowFrustum);
+			if (drawScene || drawShadow) {
+				// Each batch is limited to a single world view, since its commands are executed in one place
+				if (zoneRecordingBatch != null && !zoneRecordingBatch.isRecording(ctx))
+					flushZoneRecording();
+
+				if (zoneRecordingBatch == null) {
+					zoneRecordingBatch = zoneRecordingJobPool.acquire();
+					zoneRecordingBatch.prepare(ctx, fastShadowProgram, shouldDrawRoofShadows);
+					zoneRecordingJobs.add(zoneRecordingBatch);
+					// Reserve the batch's place in the command buffers, to be filled in once recorded
+					sceneCmd.ExecuteSubCommandBuffer(zoneRecordingBatch.sceneCmd);
+					directionalCmd.ExecuteSubCommandBuffer(zoneRecordingBatch.directionalCmd);
+				}
+
+				zoneRecordingBatch.addZone(z, drawScene, drawShadow);
+				if (zoneRecordingBatch.isFull())
+					flushZoneRecording();
 			}
 			frameTimer.end(Timer.DRAW_ZONE_OPAQUE);
 
@@ -917,6 +1066,7 @@ public class ZoneRenderer implements Renderer {
 				return;
 
 			frameTimer.begin(Timer.DRAW_ZONE_ALPHA);
+			flushZoneRecording();
 			final boolean renderWater = z.inSceneFrustum && level == 0 && z.hasWater;
 			if (renderWater)
 				z.renderOpaqueLevel(sceneCmd, Zone.LEVEL_WATER_SURFACE);
@@ -959,6 +1109,7 @@ public class ZoneRenderer implements Renderer {
 				return;
 
 			frameTimer.begin(Timer.DRAW_PASS);
+			flushZoneRecording();
 
 			switch (pass) {
 				case DrawCallbacks.PASS_OPAQUE:
@@ -1079,6 +1230,7 @@ public class ZoneRenderer implements Renderer {
 				directionalShadowPass();
 				scenePass();
 			}
+			plugin.eliminatedGlCallCount = renderState.takeEliminatedCallCount();
 
 			if (sceneFboValid && plugin.sceneResolution != null && plugin.sceneViewport != null) {
 				glBindFramebuffer(GL_READ_FRAMEBUFFER, plugin.fboScene);
@@ -1169,6 +1321,20 @@ public class ZoneRenderer implements Renderer {
 			sceneManager.reloadScene();
 	}
 
+	@Override
+	public void invalidateScene(SceneChanges changes) {
+		if (changes.isAll()) {
+			clearCaches();
+			reloadScene();
+		} else if (
+			!changes.isEmpty() &&
+			sceneManager.isTopLevelValid() &&
+			client.getGameState().getState() >= GameState.LOGGED_IN.getState()
+		) {
+			sceneManager.invalidateScene(changes);
+		}
+	}
+
 	@Override
 	public SceneContext getSceneContext() {
 		return sceneManager.getSceneContext();
@@ -0,0 +1,129 @@
+package rs117.hd.renderer.zone;
+
+import javax.annotation.Nullable;
+import rs117.hd.utils.Destructible;
+import rs117.hd.utils.buffer.GLBuffer;
+import rs117.hd.utils.buffer.GpuIntBuffer;
+
+/**
+ * Growable off-heap buffers that a zone is uploaded into in a single pass, without estimating its size up front.
+ * Once the whole zone has been written, exactly what was written is copied into the zone's mapped buffers.
+ * Each arena is owned by a pooled {@link SceneUploader}, so its capacity is reused across zones.
+ */
+final class ZoneStagingArena implements Destructible {
+	// The most ints written per face to each buffer
+	static final int VERTEX_INTS_PER_FACE = Zone.VERT_SIZE * 3 / Integer.BYTES;
+	static final int TEXTURE_INTS_PER_FACE = Zone.TEXTURE_SIZE / Integer.BYTES;
+
+	final GpuIntBuffer opaque = new GpuIntBuffer(1 << 16);
+	final GpuIntBuffer alpha = new GpuIntBuffer(1 << 14);
+	final GpuIntBuffer faces = new GpuIntBuffer(1 << 15);
+
+	// Instances of meshes in the StaticMeshStore, drawn instead of being copied into the zone
+	final StaticMeshStore.InstanceList instances = new StaticMeshStore.InstanceList();
+	// Lazily initialized scratch buffers for packing a static mesh at the origin, before it's stored
+	GpuIntBuffer meshVertices, meshAlpha, meshFaces;
+
+	// Times a buffer had to grow since the last call to takeAllocations
+	private int allocations;
+
+	void clear() {
+		opaque.clear();
+		alpha.clear();
+		faces.clear();
+		// Release instances left behind by an upload which didn't complete
+		instances.reset();
+	}
+
+	/**
+	 * Clear the mesh scratch buffers, making room for packing a model with the specified number of faces.
+	 */
+	void clearMesh(int faceCount) {
+		if (meshVertices == null) {
+			meshVertices = new GpuIntBuffer(1 << 14);
+			meshAlpha = new GpuIntBuffer(1 << 14);
+			meshFaces = new GpuIntBuffer(1 << 13);
+		}
+		meshVertices.clear().ensureCapacity(faceCount * VERTEX_INTS_PER_FACE);
+		meshAlpha.clear().ensureCapacity(faceCount * VERTEX_INTS_PER_FACE);
+		meshFaces.clear().ensureCapacity(faceCount * TEXTURE_INTS_PER_FACE);
+	}
+
+	/**
+	 * Make room for the specified number of faces, before anything holds on to the underlying buffers.
+	 * Each face is written either to the opaque or the alpha buffer, along with its texture face data.
+	 */
+	void reserve(int faceCount, boolean mightHaveAlpha) {
+		long capacity = totalCapacity();
+		opaque.ensureCapacity(faceCount * VERTEX_INTS_PER_FACE);
+		if (mightHaveAlpha)
+			alpha.ensureCapacity(faceCount * VERTEX_INTS_PER_FACE);
+		faces.ensureCapacity(faceCount * TEXTURE_INTS_PER_FACE);
+		if (totalCapacity() != capacity)
+			allocations++;
+	}
+
+	private long totalCapacity() {
+		return (long) opaque.capacity() + alpha.capacity() + faces.capacity();
+	}
+
+	/**
+	 * @return the number of bytes staged for the current zone
+	 */
+	long stagedBytes() {
+		return ((long) opaque.position() + alpha.position() + faces.position()) * Integer.BYTES;
+	}
+
+	/**
+	 * @return the number of times a buffer had to grow since the last call
+	 */
+	int takeAllocations() {
+		int count = allocations;
+		allocations = 0;
+		return count;
+	}
+
+	int opaqueFaceCount() {
+		return opaque.position() / VERTEX_INTS_PER_FACE;
+	}
+
+	int alphaFaceCount() {
+		return alpha.position() / VERTEX_INTS_PER_FACE;
+	}
+
+	int textureFaceCount() {
+		return faces.position() / TEXTURE_INTS_PER_FACE;
+	}
+
+	/**
+	 * Copy the staged data into the zone's mapped buffers, which must be sized according to the staged face counts.
+	 */
+	void copyTo(Zone zone) {
+		copy(opaque, zone.vboO);
+		copy(alpha, zone.vboA);
+		copy(faces, zone.tboF);
+	}
+
+	private static void copy(GpuIntBuffer src, @Nullable GLBuffer dst) {
+		if (dst == null)
+			return;
+		// Leave the arena's position intact, so the staged data can also be written to the zone cache
+		var buffer = src.getBuffer().duplicate();
+		buffer.flip();
+		dst.mapped().intView().put(buffer);
+	}
+
+	@Override
+	public void destroy() {
+		opaque.destroy();
+		alpha.destroy();
+		faces.destroy();
+		instances.reset();
+		if (meshVertices != null) {
+			meshVertices.destroy();
+			meshAlpha.destroy();
+			meshFaces.destroy();
+		}
+		meshVertices = meshAlpha = meshFaces = null;
+	}
+}
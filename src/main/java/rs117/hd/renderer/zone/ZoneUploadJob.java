@@ -4,16 +4,23 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
 import rs117.hd.utils.DestructibleHandler;
+import rs117.hd.utils.Props;
 import rs117.hd.utils.buffer.GLBuffer;
 import rs117.hd.utils.buffer.GLTextureBuffer;
 import rs117.hd.utils.jobs.Job;
 
 import static org.lwjgl.opengl.GL33C.*;
+import static rs117.hd.HdPlugin.GL_CAPS;
+import static rs117.hd.HdPlugin.SUPPORTS_INDIRECT_DRAW;
 import static rs117.hd.utils.buffer.GLBuffer.MAP_WRITE;
 
 @Slf4j
 public final class ZoneUploadJob extends Job {
 	private static final ConcurrentLinkedQueue<ZoneUploadJob> POOL = new ConcurrentLinkedQueue<>();
+	// Fall back to estimating each zone's size before uploading it directly into its mapped buffers
+	private static final boolean ESTIMATE_ZONE_SIZE = Props.getBoolean("rlhd.estimate-zone-size");
+	// Upload repeated static models into every zone, instead of drawing them as instances from a shared mesh store
+	private static final boolean DISABLE_STATIC_INSTANCING = Props.getBoolean("rlhd.disable-static-instancing");
 
 	private WorldViewContext viewContext;
 	private ZoneSceneContext sceneContext;
@@ -30,6 +37,11 @@ public final class ZoneUploadJob extends Job {
 
 			sceneUploader.onBeforeProcessTile = this::onBeforeProcessTile;
 			sceneUploader.setScene(sceneContext.scene);
+			if (!ESTIMATE_ZONE_SIZE) {
+				uploadStaged(sceneUploader);
+				return;
+			}
+
 			sceneUploader.estimateZoneSize(sceneContext, zone, x, z);
 
 			if (zone.sizeO > 0 || zone.sizeA > 0) {
@@ -48,6 +60,56 @@ public final class ZoneUploadJob extends Job {
 		}
 	}
 
+	private void uploadStaged(SceneUploader sceneUploader) throws InterruptedException {
+		var cache = sceneUploader.zoneGeometryCache;
+		long cacheKey = 0;
+		if (cache.isEnabled()) {
+			cacheKey = sceneUploader.hashZone(sceneContext, x, z, cache.getConfigHash());
+			var entry = cacheKey == 0 ? null : cache.read(cacheKey);
+			if (entry != null) {
+				entry.apply(zone, sceneContext, x, z);
+				workerHandleCancel();
+
+				if (zone.sizeO > 0 || zone.sizeA > 0) {
+					invokeClientCallback(this::mapZoneVertexBuffers);
+					workerHandleCancel();
+
+					entry.copyTo(zone);
+					workerHandleCancel();
+
+					if (shouldUnmap)
+						invokeClientCallback(zone::unmap);
+				}
+				zone.initialized = true;
+				return;
+			}
+		}
+
+		// Instances are drawn with a base instance per indirect draw command, which requires GL 4.2+
+		var staticMeshes = GL_CAPS.OpenGL43 && SUPPORTS_INDIRECT_DRAW && !DISABLE_STATIC_INSTANCING ? viewContext.staticMeshes : null;
+		var stagingArena = sceneUploader.uploadZoneStaged(sceneContext, zone, x, z, staticMeshes);
+		viewContext.zoneStagedBytes.add(stagingArena.stagedBytes());
+		viewContext.zoneStagingAllocations.add(stagingArena.takeAllocations());
+		workerHandleCancel();
+
+		if (zone.hasGeometry()) {
+			invokeClientCallback(this::mapZoneVertexBuffers);
+			workerHandleCancel();
+
+			stagingArena.copyTo(zone);
+			workerHandleCancel();
+
+			if (shouldUnmap)
+				invokeClientCallback(zone::unmap);
+		}
+
+		// Write the entry before the zone is handed over, while its alpha models only include static ones.
+		// Zones referencing shared meshes can't be restored from their own geometry, so they aren't cached.
+		if (cacheKey != 0 && zone.instances == null)
+			cache.write(cacheKey, zone, stagingArena, sceneContext, x, z);
+		zone.initialized = true;
+	}
+
 	private void onBeforeProcessTile(Tile t, boolean isEstimate) throws InterruptedException {
 		workerHandleCancel();
 	}
@@ -77,6 +139,10 @@ public final class ZoneUploadJob extends Job {
 				f.map(MAP_WRITE);
 			}
 
+			// Meshes first stored by this zone need to be uploaded before its VAOs reference their pages
+			if (zone.instances != null)
+				viewContext.staticMeshes.upload();
+
 			zone.initialize(o, a, f);
 			zone.setMetadata(viewContext, sceneContext, x, z);
 		} catch (Throwable ex) {
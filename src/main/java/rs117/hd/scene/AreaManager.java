@@ -17,6 +17,7 @@ import rs117.hd.HdPlugin;
 import rs117.hd.scene.areas.Area;
 import rs117.hd.utils.FileWatcher;
 import rs117.hd.utils.GsonUtils;
+import rs117.hd.utils.JsonSnapshot;
 import rs117.hd.utils.Props;
 import rs117.hd.utils.ResourcePath;
 
@@ -25,7 +26,7 @@ import static rs117.hd.utils.ResourcePath.path;
 @Slf4j
 @Singleton
 public class AreaManager {
-	private static final ResourcePath AREA_PATH = Props
+	public static final ResourcePath AREA_PATH = Props
 		.getFile("rlhd.area-path", () -> path(AreaManager.class, "areas.json"));
 
 	@Inject
@@ -58,7 +59,7 @@ public class AreaManager {
 	public void startUp() {
 		fileWatcher = AREA_PATH.watch((path, first) -> {
 			try {
-				Area[] areas = path.loadJson(plugin.getGson(), Area[].class);
+				Area[] areas = JsonSnapshot.loadJson(plugin.getGson(), path, Area[].class);
 				if (areas == null)
 					throw new IOException("Empty or invalid: " + path);
 
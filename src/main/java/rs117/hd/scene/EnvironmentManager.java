@@ -41,6 +41,7 @@ import rs117.hd.HdPluginConfig;
 import rs117.hd.config.DefaultSkyColor;
 import rs117.hd.scene.environments.Environment;
 import rs117.hd.utils.FileWatcher;
+import rs117.hd.utils.JsonSnapshot;
 import rs117.hd.utils.Props;
 import rs117.hd.utils.ResourcePath;
 
@@ -50,7 +51,7 @@ import static rs117.hd.utils.ResourcePath.path;
 @Slf4j
 @Singleton
 public class EnvironmentManager {
-	private static final ResourcePath ENVIRONMENTS_PATH = Props
+	public static final ResourcePath ENVIRONMENTS_PATH = Props
 		.getFile("rlhd.environments-path", () -> path(EnvironmentManager.class, "environments.json"));
 
 	@Inject
@@ -163,7 +164,7 @@ public class EnvironmentManager {
 	public void startUp() {
 		fileWatcher = ENVIRONMENTS_PATH.watch((path, first) -> {
 			try {
-				environments = path.loadJson(plugin.getGson(), Environment[].class);
+				environments = JsonSnapshot.loadJson(plugin.getGson(), path, Environment[].class);
 				if (environments == null)
 					throw new IOException("Empty or invalid: " + path);
 				log.debug("Loaded {} environments", environments.length);
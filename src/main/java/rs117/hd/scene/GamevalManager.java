@@ -1,67 +1,70 @@
 package rs117.hd.scene;
 
+import com.google.gson.JsonParser;
 import com.google.gson.TypeAdapter;
-import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import rs117.hd.HdPlugin;
+import rs117.hd.scene.gamevals.GamevalTable;
 import rs117.hd.utils.FileWatcher;
 import rs117.hd.utils.GsonUtils;
 import rs117.hd.utils.Props;
 import rs117.hd.utils.ResourcePath;
+import rs117.hd.utils.StableHasher;
 
 import static rs117.hd.utils.ResourcePath.path;
 
 @Slf4j
 @Singleton
 public class GamevalManager {
-	private static final ResourcePath GAMEVAL_PATH = Props
+	public static final ResourcePath GAMEVAL_PATH = Props
 		.getFile("rlhd.gameval-path", () -> path(GamevalManager.class, "gamevals.json"));
 
 	private static final String NPC_KEY = "npcs";
 	private static final String OBJECT_KEY = "objects";
 	private static final String ANIM_KEY = "anims";
 	private static final String SPOTANIM_KEY = "spotanims";
+	private static final String[] KEYS = { NPC_KEY, OBJECT_KEY, ANIM_KEY, SPOTANIM_KEY };
 
 	@Inject
 	private HdPlugin plugin;
 
 	private FileWatcher.UnregisterCallback fileWatcher;
 
-	private static final Map<String, Map<String, Integer>> GAMEVALS = new HashMap<>();
+	// Categories are loaded & indexed on first use, since most of them are only needed by a few configs or developer overlays
+	private static final Map<String, GamevalTable> TABLES = new ConcurrentHashMap<>();
+	// Each category is loaded under its own lock, so loading one doesn't hold up lookups in the others
+	private static final Map<String, Object> LOCKS = new HashMap<>();
+	// Gamevals file to load categories from, or null if the manager isn't running
+	@Nullable
+	private static volatile ResourcePath gamevalPath;
+	// Hash of the gamevals file's content, computed on first use, or 0 if it hasn't been computed yet
+	private static volatile long contentHash;
 
 	static {
-		clearGamevals();
-	}
-
-	private static void clearGamevals() {
-		GAMEVALS.put(NPC_KEY, Collections.emptyMap());
-		GAMEVALS.put(OBJECT_KEY, Collections.emptyMap());
-		GAMEVALS.put(ANIM_KEY, Collections.emptyMap());
-		GAMEVALS.put(SPOTANIM_KEY, Collections.emptyMap());
+		for (var key : KEYS)
+			LOCKS.put(key, new Object());
 	}
 
 	public void startUp() throws IOException {
 		fileWatcher = GAMEVAL_PATH.watch((path, first) -> {
-			try {
-				Map<String, Map<String, Integer>> gamevals = plugin.getGson()
-					.fromJson(path.toReader(), new TypeToken<Map<String, Map<String, Integer>>>() {}.getType());
-				GAMEVALS.replaceAll((k, v) -> gamevals.getOrDefault(k, Collections.emptyMap()));
-				log.debug("Loaded gameval mappings");
-			} catch (IOException ex) {
-				log.error("Failed to load gamevals:", ex);
-			}
+			gamevalPath = path;
+			contentHash = 0;
+			TABLES.clear();
+			if (!first)
+				log.debug("Reset gameval mappings");
 		});
 	}
 
@@ -69,66 +72,129 @@ public class GamevalManager {
 		if (fileWatcher != null)
 			fileWatcher.unregister();
 		fileWatcher = null;
-		clearGamevals();
+		gamevalPath = null;
+		contentHash = 0;
+		TABLES.clear();
+	}
+
+	/**
+	 * @return a hash of the content of the gamevals file, which configs refer to entries by name in, or 0 if unavailable
+	 */
+	public static long getContentHash() {
+		long hash = contentHash;
+		var path = gamevalPath;
+		if (hash != 0 || path == null)
+			return hash;
+
+		try (var is = path.toInputStream()) {
+			hash = new StableHasher().add(is.readAllBytes()).get();
+		} catch (IOException ex) {
+			log.error("Failed to hash gamevals from {}:", path, ex);
+			return 0;
+		}
+
+		// Don't cache the hash if the file changed while it was being read
+		if (path == gamevalPath)
+			contentHash = hash;
+		return hash;
+	}
+
+	private static GamevalTable getTable(String key) {
+		var table = TABLES.get(key);
+		if (table != null)
+			return table;
+
+		synchronized (LOCKS.get(key)) {
+			table = TABLES.get(key);
+			if (table != null)
+				return table;
+
+			var path = gamevalPath;
+			table = GamevalTable.EMPTY;
+			if (path != null) {
+				long start = System.nanoTime();
+				try {
+					table = loadTable(path, key);
+				} catch (IOException | RuntimeException ex) {
+					log.error("Failed to load {} gamevals from {}:", key, path, ex);
+				}
+				log.debug("Loaded {} {} gamevals in {} ms", table.size(), key, String.format("%.2f", (System.nanoTime() - start) / 1e6));
+			}
+
+			// Don't cache the table if the file changed while it was being loaded
+			if (path == gamevalPath)
+				TABLES.put(key, table);
+			return table;
+		}
 	}
 
-	private String getName(String key, int id) {
-		return GAMEVALS
-			.get(key)
-			.entrySet()
-			.stream()
-			.filter(e -> e.getValue() == id)
-			.map(Map.Entry::getKey)
-			.findFirst()
-			.orElse(null);
+	/**
+	 * Parse a single category from the gamevals file, skipping over the others without building a JSON tree for them.
+	 */
+	private static GamevalTable loadTable(ResourcePath path, String key) throws IOException {
+		try (var in = new JsonReader(path.toReader())) {
+			in.beginObject();
+			while (in.hasNext()) {
+				if (!in.nextName().equals(key)) {
+					in.skipValue();
+					continue;
+				}
+
+				var category = JsonParser.parseReader(in);
+				if (!category.isJsonObject())
+					throw new IOException("Invalid " + key + " gamevals in " + path);
+				return GamevalTable.fromJson(category.getAsJsonObject());
+			}
+		}
+		return GamevalTable.EMPTY;
 	}
 
-	public Map<String, Integer> getNpcs() {
-		return GAMEVALS.get(NPC_KEY);
+	public GamevalTable getNpcs() {
+		return getTable(NPC_KEY);
 	}
 
-	public Map<String, Integer> getObjects() {
-		return GAMEVALS.get(OBJECT_KEY);
+	public GamevalTable getObjects() {
+		return getTable(OBJECT_KEY);
 	}
 
-	public Map<String, Integer> getAnims() {
-		return GAMEVALS.get(ANIM_KEY);
+	public GamevalTable getAnims() {
+		return getTable(ANIM_KEY);
 	}
 
-	public Map<String, Integer> getSpotanims() {
-		return GAMEVALS.get(SPOTANIM_KEY);
+	public GamevalTable getSpotanims() {
+		return getTable(SPOTANIM_KEY);
 	}
 
 	public int getNpcId(String name) {
-		return getNpcs().get(name);
+		return getNpcs().getId(name);
 	}
 
 	public int getObjectId(String name) {
-		return getObjects().get(name);
+		return getObjects().getId(name);
 	}
 
 	public int getAnimId(String name) {
-		return getAnims().get(name);
+		return getAnims().getId(name);
 	}
 
 	public int getSpotanimId(String name) {
-		return getSpotanims().get(name);
+		return getSpotanims().getId(name);
 	}
 
 	public String getNpcName(int id) {
-		return getName(NPC_KEY, id);
+		return getNpcs().getName(id);
 	}
 
 	public String getObjectName(int id) {
-		return getName(OBJECT_KEY, id);
+		return getObjects().getName(id);
 	}
 
 	public String getAnimName(int id) {
-		return getName(ANIM_KEY, id);
+		return getAnims().getName(id);
 	}
 
 	public String getSpotanimName(int id) {
-		return getName(SPOTANIM_KEY, id);
+		return getSpotanims().getName(id);
 	}
 
 	@Slf4j
@@ -138,7 +204,7 @@ public class GamevalManager {
 
 		@Override
 		public HashSet<Integer> read(JsonReader in) throws IOException {
-			var map = GAMEVALS.get(key);
+			var table = getTable(key);
 			HashSet<Integer> result = new HashSet<>();
 
 			in.beginArray();
@@ -154,12 +220,12 @@ public class GamevalManager {
 					}
 					case STRING:
 						String name = in.nextString();
-						Integer id = map.get(name);
-						if (id == null) {
+						int id = table.getId(name);
+						if (id == -1) {
 							String suggestion = "";
-							for (var gamevalMapEntry : GAMEVALS.entrySet()) {
-								if (gamevalMapEntry.getValue().get(name) != null) {
-									suggestion = String.format(", did you mean to match %s?", gamevalMapEntry.getKey());
+							for (var otherKey : KEYS) {
+								if (getTable(otherKey).containsName(name)) {
+									suggestion = String.format(", did you mean to match %s?", otherKey);
 									break;
 								}
 							}
@@ -180,13 +246,18 @@ public class GamevalManager {
 
 		@Override
 		public void write(JsonWriter out, HashSet<Integer> ids) throws IOException {
-			var remainingIds = new ArrayList<>(ids);
-			var map = GAMEVALS.get(key);
-			var names = map.entrySet().stream()
-				.filter(e -> remainingIds.remove(e.getValue()))
-				.map(Map.Entry::getKey)
-				.sorted()
-				.toArray(String[]::new);
+			var table = getTable(key);
+			var remainingIds = new ArrayList<Integer>();
+			var names = new ArrayList<String>();
+			for (int id : ids) {
+				var name = table.getName(id);
+				if (name == null) {
+					remainingIds.add(id);
+				} else {
+					names.add(name);
+				}
+			}
+			names.sort(String::compareTo);
 
 			if (!remainingIds.isEmpty()) {
 				remainingIds.sort(Integer::compareTo);
@@ -10,6 +10,7 @@ import net.runelite.client.callback.ClientThread;
 import rs117.hd.HdPlugin;
 import rs117.hd.scene.ground_materials.GroundMaterial;
 import rs117.hd.utils.FileWatcher;
+import rs117.hd.utils.JsonSnapshot;
 import rs117.hd.utils.Props;
 import rs117.hd.utils.ResourcePath;
 
@@ -17,7 +18,7 @@ import static rs117.hd.utils.ResourcePath.path;
 
 @Slf4j
 public class GroundMaterialManager {
-	private static final ResourcePath GROUND_MATERIALS_PATH = Props
+	public static final ResourcePath GROUND_MATERIALS_PATH = Props
 		.getFile("rlhd.ground-materials-path", () -> path(AreaManager.class, "ground_materials.json"));
 
 	@Inject
@@ -39,7 +40,7 @@ public class GroundMaterialManager {
 	public void startUp() {
 		fileWatcher = GROUND_MATERIALS_PATH.watch((path, first) -> clientThread.invoke(() -> {
 			try {
-				GroundMaterial[] groundMaterials = path.loadJson(plugin.getGson(), GroundMaterial[].class);
+				GroundMaterial[] groundMaterials = JsonSnapshot.loadJson(plugin.getGson(), path, GroundMaterial[].class);
 				if (groundMaterials == null)
 					throw new IOException("Empty or invalid: " + path);
 
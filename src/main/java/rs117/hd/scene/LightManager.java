@@ -53,11 +53,11 @@ import rs117.hd.HdPlugin;
 import rs117.hd.config.DynamicLights;
 import rs117.hd.data.ObjectType;
 import rs117.hd.opengl.uniforms.UBOLights;
-import rs117.hd.scene.lights.Alignment;
 import rs117.hd.scene.lights.Light;
 import rs117.hd.scene.lights.LightDefinition;
 import rs117.hd.scene.lights.LightType;
 import rs117.hd.utils.HDUtils;
+import rs117.hd.utils.JsonSnapshot;
 import rs117.hd.utils.ModelHash;
 import rs117.hd.utils.Props;
 import rs117.hd.utils.ResourcePath;
@@ -71,7 +71,7 @@ import static rs117.hd.utils.ResourcePath.path;
 @Singleton
 @Slf4j
 public class LightManager {
-	private static final ResourcePath LIGHTS_PATH = Props
+	public static final ResourcePath LIGHTS_PATH = Props
 		.getFile("rlhd.lights-path", () -> path(LightManager.class, "lights.json"));
 
 	@Inject
@@ -105,6 +105,10 @@ public class LightManager {
 	private final ListMultimap<Integer, LightDefinition> GRAPHICS_OBJECT_LIGHTS = ArrayListMultimap.create();
 
 	private final Renderable[] imposterRenderables = new Renderable[2];
+	private final ArrayList<Light> lightsToUpdate = new ArrayList<>();
+	private final ArrayList<Light> lightCandidates = new ArrayList<>();
+	private final ArrayList<Light> previousVisibleLights = new ArrayList<>();
+	private final HashSet<Light> lightsToRemove = new HashSet<>();
 	private boolean reloadLights;
 	private EntityHiderConfig entityHiderConfig;
 	private int currentPlane;
@@ -112,7 +116,7 @@ public class LightManager {
 	public void loadConfig(Gson gson, ResourcePath path) {
 		LightDefinition[] lights;
 		try {
-			lights = path.loadJson(gson, LightDefinition[].class);
+			lights = JsonSnapshot.loadJson(gson, path, LightDefinition[].class);
 			if (lights == null) {
 				log.warn("Skipping empty lights.json");
 				return;
@@ -165,13 +169,14 @@ public class LightManager {
 		assert client.isClientThread();
 
 		if (plugin.configDynamicLights == DynamicLights.NONE || client.getGameState() != GameState.LOGGED_IN) {
+			sceneContext.visibleLights.clear();
 			sceneContext.numVisibleLights = 0;
 			return;
 		}
 
 		if (reloadLights) {
 			reloadLights = false;
-			sceneContext.lights.clear();
+			sceneContext.clearLights();
 			sceneContext.knownProjectiles.clear();
 			loadSceneLights(sceneContext);
 			swapSceneLights(sceneContext, null);
@@ -189,7 +194,7 @@ public class LightManager {
 		}
 		if (sceneContext.lights.size() > 10000) {
 			log.warn("Too many lights: {}. Clearing...", sceneContext.lights.size());
-			sceneContext.lights.clear();
+			sceneContext.clearLights();
 		}
 
 		int drawDistance = plugin.getDrawDistance() * LOCAL_TILE_SIZE;
@@ -206,7 +211,26 @@ public class LightManager {
 			changedPlanes = true;
 		}
 
-		for (Light light : sceneContext.lights) {
+		// Static lights are only updated when they may be able to affect the visible scene
+		lightsToUpdate.clear();
+		lightsToUpdate.addAll(sceneContext.dynamicLights);
+		sceneContext.staticLights.query(
+			plugin.cameraFocalPoint[0],
+			plugin.cameraFocalPoint[1],
+			drawDistance + LOCAL_HALF_TILE_SIZE,
+			plugin.configTiledLighting ? cameraFrustum : null,
+			4,
+			cameraShift,
+			lightsToUpdate
+		);
+
+		// Lights which were visible during the previous frame might not be updated this frame
+		previousVisibleLights.clear();
+		previousVisibleLights.addAll(sceneContext.visibleLights);
+		for (Light light : previousVisibleLights)
+			light.visible = false;
+
+		for (Light light : lightsToUpdate) {
 			// Ways lights may get deleted:
 			// - animation-specific:
 			//   effectively spawn when the animation they're attached to starts playing, and despawns when it stops,
@@ -353,41 +377,9 @@ public class LightManager {
 				}
 			}
 
-			light.pos[0] = light.origin[0];
-			light.pos[1] = light.origin[1];
-			light.pos[2] = light.origin[2];
-
-			int orientation = 0;
-			if (light.alignment.relative)
-				orientation = mod(light.orientation + light.alignment.orientation, 2048);
-
-			if (light.alignment == Alignment.CUSTOM) {
-				// orientation 0 = south
-				float sin = sin(orientation * JAU_TO_RAD);
-				float cos = cos(orientation * JAU_TO_RAD);
-				float x = light.offset[0];
-				float z = light.offset[2];
-				light.pos[0] += -cos * x - sin * z;
-				light.pos[1] += light.offset[1];
-				light.pos[2] += -cos * z + sin * x;
-			} else {
-				int localSizeX = light.sizeX * LOCAL_TILE_SIZE;
-				int localSizeY = light.sizeY * LOCAL_TILE_SIZE;
-
-				float radius = localSizeX / 2f;
-				if (!light.alignment.radial)
-					radius = sqrt(localSizeX * localSizeX + localSizeX * localSizeX) / 2;
-
-				float sine = SINE[orientation] / 65536f;
-				float cosine = COSINE[orientation] / 65536f;
-				cosine /= (float) localSizeX / (float) localSizeY;
-
-				int offsetX = (int) (radius * sine);
-				int offsetY = (int) (radius * cosine);
-
-				light.pos[0] += offsetX;
-				light.pos[2] += offsetY;
-			}
+			// Static lights remain in the same position
+			if (light.gridBucket == -1)
+				light.updatePosition();
 
 			// This is a little bit slow, so only update it when necessary
 			if (light.prevPlane != light.plane) {
@@ -436,7 +428,12 @@ public class LightManager {
 			if (hiddenTemporarily != light.hiddenTemporarily)
 				light.toggleTemporaryVisibility(changedPlanes);
 
-			light.elapsedTime += plugin.deltaClientTime;
+			// Static lights aren't updated while out of view, so catch up on the time since their last update
+			float deltaTime = plugin.deltaClientTime;
+			if (light.gridBucket != -1 && light.lastUpdatedAt != -1)
+				deltaTime = (float) max(0, plugin.elapsedClientTime - light.lastUpdatedAt);
+			light.lastUpdatedAt = plugin.elapsedClientTime;
+			light.elapsedTime += deltaTime;
 
 			light.visible = light.spawnDelay <= light.elapsedTime && (light.lifetime == -1 || light.elapsedTime < light.lifetime);
 
@@ -450,15 +447,7 @@ public class LightManager {
 				float distZ = plugin.cameraFocalPoint[1] - light.pos[2];
 				light.distanceSquared = distX * distX + distZ * distZ;
 
-				float maxRadius = light.def.radius;
-				switch (light.def.type) {
-					case FLICKER:
-						maxRadius *= 1.5f;
-						break;
-					case PULSE:
-						maxRadius *= 1 + light.def.range / 100f;
-						break;
-				}
+				float maxRadius = light.maxRadius;
 
 				// Hide lights which cannot possibly affect the visible scene,
 				// by either being behind the camera, or too far beyond the edge of the scene
@@ -482,20 +471,20 @@ public class LightManager {
 			}
 		}
 
-		// Order visible lights first, then by distance. Leave hidden lights unordered at the end.
-		sceneContext.lights.sort((a, b) -> a.visible && b.visible ?
-			Float.compare(a.distanceSquared, b.distanceSquared) :
-			Boolean.compare(b.visible, a.visible));
-
-		// Count number of visible lights
-		sceneContext.numVisibleLights = 0;
+		// Select the nearest visible lights, ordered by distance, without sorting the remaining lights
+		lightCandidates.clear();
+		for (Light light : lightsToUpdate)
+			if (light.visible)
+				lightCandidates.add(light);
 		int maxLights = plugin.configTiledLighting ? UBOLights.MAX_LIGHTS : plugin.configDynamicLights.getMaxSceneLights();
-		for (Light light : sceneContext.lights) {
-			// Exit early once encountering the first invisible light, or the light limit is reached
-			if (!light.visible || sceneContext.numVisibleLights >= maxLights)
-				break;
+		int numVisibleLights = Light.selectNearest(lightCandidates, maxLights);
 
-			sceneContext.numVisibleLights++;
+		var visibleLights = sceneContext.visibleLights;
+		visibleLights.clear();
+		visibleLights.addAll(lightCandidates.subList(0, numVisibleLights));
+		sceneContext.numVisibleLights = numVisibleLights;
+
+		for (Light light : visibleLights) {
 
 			// If the light was temporarily hidden, begin fading in
 			if (!light.withinViewingDistance && light.hiddenTemporarily)
@@ -541,19 +530,31 @@ public class LightManager {
 			light.applyTemporaryVisibilityFade();
 		}
 
-		for (int i = sceneContext.lights.size() - 1; i >= sceneContext.numVisibleLights; i--) {
-			Light light = sceneContext.lights.get(i);
-			light.withinViewingDistance = false;
+		// Lights which were visible during the previous frame, but haven't been updated this frame
+		for (Light light : previousVisibleLights)
+			if (!light.visible)
+				light.withinViewingDistance = false;
 
-			// Automatically despawn non-replayable fixed lifetime lights when they expire
-			if (!light.replayable && light.lifetime != -1 && light.lifetime < light.elapsedTime)
-				light.markedForRemoval = true;
+		for (Light light : lightsToUpdate)
+			if (!light.visible)
+				hideLight(sceneContext, light);
+		for (int i = numVisibleLights; i < lightCandidates.size(); i++)
+			hideLight(sceneContext, lightCandidates.get(i));
 
-			if (light.markedForRemoval) {
-				sceneContext.lights.remove(i);
-				if (light.projectile != null && --light.projectileRefCounter[0] == 0)
-					sceneContext.knownProjectiles.remove(light.projectile);
-			}
+		sceneContext.removeLights(lightsToRemove);
+		lightsToRemove.clear();
+	}
+
+	private void hideLight(SceneContext sceneContext, Light light) {
+		light.withinViewingDistance = false;
+
+		// Automatically despawn non-replayable fixed lifetime lights when they expire
+		if (!light.replayable && light.lifetime != -1 && light.lifetime < light.elapsedTime)
+			light.markedForRemoval = true;
+
+		if (light.markedForRemoval && lightsToRemove.add(light)) {
+			if (light.projectile != null && --light.projectileRefCounter[0] == 0)
+				sceneContext.knownProjectiles.remove(light.projectile);
 		}
 	}
 
@@ -672,23 +673,24 @@ public class LightManager {
 			if (light.actor != null || light.projectile != null)
 				lightsToKeep.add(light);
 
-		sceneContext.lights.addAll(lightsToKeep);
-		for (var light : lightsToKeep)
+		for (var light : lightsToKeep) {
+			sceneContext.addLight(light);
 			if (light.projectile != null && oldSceneContext.knownProjectiles.contains(light.projectile))
 				sceneContext.knownProjectiles.add(light.projectile);
+		}
 	}
 
-	private void removeLightIf(Predicate<Light> predicate) {
+	private void removeLightIf(Object owner, Predicate<Light> predicate) {
 		var sceneContext = plugin.getSceneContext();
 		if (sceneContext == null)
 			return;
-		removeLightIf(sceneContext, predicate);
+		removeLightIf(sceneContext, owner, predicate);
 	}
 
-	private void removeLightIf(@Nonnull SceneContext sceneContext, Predicate<Light> predicate) {
-		for (var light : sceneContext.lights)
+	private void removeLightIf(@Nonnull SceneContext sceneContext, Object owner, Predicate<Light> predicate) {
+		for (var light : sceneContext.lightIndex.get(owner))
 			if (predicate.test(light))
-				light.markedForRemoval = true;
+				sceneContext.markLightForRemoval(light);
 	}
 
 	private void addSpotanimLights(Actor actor) {
@@ -712,10 +714,9 @@ public class LightManager {
 						continue;
 				}
 
-				boolean isDuplicate = sceneContext.lights.stream()
+				boolean isDuplicate = sceneContext.lightIndex.get(actor).stream()
 					.anyMatch(light ->
 						light.spotanimId == spotAnimId &&
-						light.actor == actor &&
 						light.def == def);
 				if (isDuplicate)
 					continue;
@@ -724,7 +725,7 @@ public class LightManager {
 				light.plane = -1;
 				light.spotanimId = spotAnimId;
 				light.actor = actor;
-				sceneContext.lights.add(light);
+				sceneContext.addLight(light);
 			}
 		}
 	}
@@ -755,9 +756,8 @@ public class LightManager {
 			}
 
 			// Prevent duplicate lights from being spawned for the same NPC
-			boolean isDuplicate = sceneContext.lights.stream()
+			boolean isDuplicate = sceneContext.lightIndex.get(npc).stream()
 				.anyMatch(light ->
-					light.actor == npc &&
 					light.def == def &&
 					!light.markedForRemoval);
 			if (isDuplicate)
@@ -766,7 +766,7 @@ public class LightManager {
 			Light light = new Light(def);
 			light.plane = -1;
 			light.actor = npc;
-			sceneContext.lights.add(light);
+			sceneContext.addLight(light);
 		}
 	}
 
@@ -819,15 +819,12 @@ public class LightManager {
 			}
 		}
 
-		for (int i = 0; i < sceneContext.lights.size(); ++i) {
-			var light = sceneContext.lights.get(i);
-			if (light.tileObject == tileObject) {
-				if (light.tileObjectId == tileObjectId)
-					return; // Duplicate spawn, probably from spawn event right after scene load
+		for (var light : sceneContext.lightIndex.get(tileObject)) {
+			if (light.tileObjectId == tileObjectId)
+				return; // Duplicate spawn, probably from spawn event right after scene load
 
-				// Schedule despawning of the old light
-				light.markedForRemoval = true;
-			}
+			// Schedule despawning of the old light
+			sceneContext.markLightForRemoval(light);
 		}
 
 		spawnLights(sceneContext, tileObject, tileObjectId);
@@ -839,7 +836,7 @@ public class LightManager {
 			return;
 
 		int impostorId = getImpostorId(tileObject);
-		removeLightIf(sceneContext, l -> l.tileObject == tileObject && l.tileObjectId == impostorId);
+		removeLightIf(sceneContext, tileObject, l -> l.tileObjectId == impostorId);
 	}
 
 	private void spawnLights(@Nonnull SceneContext sceneContext, TileObject tileObject, int impostorId) {
@@ -969,7 +966,7 @@ public class LightManager {
 				light.origin[2] = lightZ;
 				light.sizeX = sizeX;
 				light.sizeY = sizeY;
-				sceneContext.lights.add(light);
+				sceneContext.addLight(light);
 			}
 		}
 	}
@@ -988,7 +985,7 @@ public class LightManager {
 			copy.origin[0] = local[0] + LOCAL_HALF_TILE_SIZE;
 			copy.origin[1] = sceneContext.scene.getTileHeights()[local[2]][tileExX][tileExY] - copy.def.height - 1;
 			copy.origin[2] = local[1] + LOCAL_HALF_TILE_SIZE;
-			sceneContext.lights.add(copy);
+			sceneContext.addLight(copy);
 		});
 	}
 
@@ -1027,7 +1024,7 @@ public class LightManager {
 			light.origin[2] = (int) projectile.getY();
 			light.plane = projectile.getFloor();
 
-			sceneContext.lights.add(light);
+			sceneContext.addLight(light);
 		}
 	}
 
@@ -1042,14 +1039,14 @@ public class LightManager {
 	public void onNpcChanged(NpcChanged change) {
 		// Respawn non-spotanim lights
 		NPC npc = change.getNpc();
-		removeLightIf(light -> light.actor == npc && light.spotanimId == -1);
+		removeLightIf(npc, light -> light.spotanimId == -1);
 		addNpcLights(change.getNpc());
 	}
 
 	@Subscribe
 	public void onNpcDespawned(NpcDespawned despawn) {
 		NPC npc = despawn.getNpc();
-		removeLightIf(light -> light.actor == npc);
+		removeLightIf(npc, light -> true);
 	}
 
 	@Subscribe
@@ -1070,7 +1067,7 @@ public class LightManager {
 	@Subscribe
 	public void onPlayerDespawned(PlayerDespawned despawn) {
 		Player player = despawn.getPlayer();
-		removeLightIf(light -> light.actor == player);
+		removeLightIf(player, light -> true);
 	}
 
 	@Subscribe
@@ -1101,7 +1098,7 @@ public class LightManager {
 			light.origin[1] = graphicsObject.getZ();
 			light.origin[2] = lp.getY();
 			light.plane = worldPos[2];
-			sceneContext.lights.add(light);
+			sceneContext.addLight(light);
 		}
 	}
 
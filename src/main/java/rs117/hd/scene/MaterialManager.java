@@ -52,6 +52,7 @@ import rs117.hd.scene.materials.Material;
 import rs117.hd.utils.ExpressionParser;
 import rs117.hd.utils.FileWatcher;
 import rs117.hd.utils.HDVariables;
+import rs117.hd.utils.JsonSnapshot;
 import rs117.hd.utils.Props;
 import rs117.hd.utils.ResourcePath;
 
@@ -63,7 +64,7 @@ import static rs117.hd.utils.ResourcePath.path;
 @Slf4j
 @Singleton
 public class MaterialManager {
-	private static final ResourcePath MATERIALS_PATH = Props
+	public static final ResourcePath MATERIALS_PATH = Props
 		.getFile("rlhd.materials-path", () -> path(MaterialManager.class, "materials.json"));
 
 	@Inject
@@ -179,7 +180,7 @@ public class MaterialManager {
 		// so we parse the JSON manually into a JsonArray, which we can process to copy default
 		// values from parent materials in the correct order.
 		var gson = plugin.getGson();
-		var rawMaterials = path.loadJson(gson, JsonArray.class);
+		var rawMaterials = JsonSnapshot.loadJson(gson, path, JsonArray.class);
 		if (rawMaterials == null)
 			throw new IOException("Empty or invalid: " + path);
 
@@ -468,6 +469,19 @@ public class MaterialManager {
 					mat.isValid = false;
 	}
 
+	/**
+	 * Apply the current texture filtering settings, which doesn't require reloading any textures.
+	 */
+	public void updateTextureFiltering() {
+		assert client.isClientThread();
+		if (texMaterialTextureArray == 0)
+			return;
+
+		glActiveTexture(TEXTURE_UNIT_GAME);
+		glBindTexture(GL_TEXTURE_2D_ARRAY, texMaterialTextureArray);
+		textureManager.setAnisotropicFilteringLevel();
+	}
+
 	public void uploadTextures() {
 		assert client.isClientThread();
 		if (texMaterialTextureArray == 0)
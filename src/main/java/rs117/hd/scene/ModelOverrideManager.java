@@ -1,5 +1,6 @@
 package rs117.hd.scene;
 
+import com.google.gson.JsonElement;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -15,8 +16,10 @@ import net.runelite.api.gameval.*;
 import net.runelite.client.callback.ClientThread;
 import rs117.hd.HdPlugin;
 import rs117.hd.renderer.zone.SceneManager;
+import rs117.hd.scene.areas.RegionIndex;
 import rs117.hd.scene.model_overrides.ModelOverride;
 import rs117.hd.utils.FileWatcher;
+import rs117.hd.utils.JsonSnapshot;
 import rs117.hd.utils.ModelHash;
 import rs117.hd.utils.Props;
 import rs117.hd.utils.ResourcePath;
@@ -26,7 +29,7 @@ import static rs117.hd.utils.ResourcePath.path;
 @Slf4j
 @Singleton
 public class ModelOverrideManager {
-	private static final ResourcePath MODEL_OVERRIDES_PATH = Props
+	public static final ResourcePath MODEL_OVERRIDES_PATH = Props
 		.getFile("rlhd.model-overrides-path", () -> path(ModelOverrideManager.class, "model_overrides.json"));
 
 	@Inject
@@ -49,6 +52,9 @@ public class ModelOverrideManager {
 
 	private final HashMap<Integer, ModelOverride> modelOverrides = new HashMap<>();
 	private final HashSet<Integer> detailCullingBlacklist = new HashSet<>();
+	// The raw entries and parsed overrides from the previous load, for finding which objects are affected by edits
+	private JsonElement[] previousEntries;
+	private ModelOverride[] previousOverrides;
 
 	private FileWatcher.UnregisterCallback fileWatcher;
 
@@ -58,7 +64,14 @@ public class ModelOverrideManager {
 				sceneManager.getLoadingLock().lock();
 				sceneManager.completeAllStreaming();
 
-				ModelOverride[] parsedOverrides = path.loadJson(plugin.getGson(), ModelOverride[].class);
+				var json = JsonSnapshot.load(path);
+				if (json == null || !json.isJsonArray())
+					throw new IOException("Empty or invalid: " + path);
+				JsonElement[] entries = new JsonElement[json.getAsJsonArray().size()];
+				for (int i = 0; i < entries.length; i++)
+					entries[i] = json.getAsJsonArray().get(i);
+
+				ModelOverride[] parsedOverrides = plugin.getGson().fromJson(json, ModelOverride[].class);
 				if (parsedOverrides == null)
 					throw new IOException("Empty or invalid: " + path);
 
@@ -83,6 +96,7 @@ public class ModelOverrideManager {
 
 				addOverride(fishingSpotReplacer.getModelOverride());
 				addSailingCullingOverrides();
+				buildAreaOverrideIndexes();
 
 				detailCullingBlacklist.clear();
 				for (var entry : modelOverrides.entrySet())
@@ -91,11 +105,16 @@ public class ModelOverrideManager {
 
 				log.debug("Loaded {} model overrides", modelOverrides.size());
 
+				var changes = previousEntries == null ?
+					SceneChanges.all() :
+					findChanges(previousEntries, previousOverrides, entries, parsedOverrides);
+				previousEntries = entries;
+				previousOverrides = parsedOverrides;
+
 				if (first)
 					return;
 
-				plugin.renderer.clearCaches();
-				plugin.renderer.reloadScene();
+				plugin.renderer.invalidateScene(changes);
 			} catch (Exception ex) {
 				log.error("Failed to load model overrides:", ex);
 			} finally {
@@ -112,6 +131,8 @@ public class ModelOverrideManager {
 
 		modelOverrides.clear();
 		detailCullingBlacklist.clear();
+		previousEntries = null;
+		previousOverrides = null;
 	}
 
 	public void reload() {
@@ -119,6 +140,22 @@ public class ModelOverrideManager {
 		startUp();
 	}
 
+	private static SceneChanges findChanges(
+		JsonElement[] oldEntries,
+		ModelOverride[] oldOverrides,
+		JsonElement[] newEntries,
+		ModelOverride[] newOverrides
+	) {
+		// NPCs, projectiles and graphics objects are drawn dynamically, so only object overrides affect static geometry
+		var changes = new SceneChanges();
+		int[] range = SceneChanges.diff(oldEntries, newEntries);
+		for (int i = range[0]; i < range[1]; i++)
+			changes.addObjects(oldOverrides[i].objectIds);
+		for (int i = range[0]; i < range[2]; i++)
+			changes.addObjects(newOverrides[i].objectIds);
+		return changes;
+	}
+
 	private void addOverride(@Nullable ModelOverride override) {
 		if (override == null || override.seasonalTheme != null && override.seasonalTheme != plugin.configSeasonalTheme)
 			return;
@@ -207,6 +244,18 @@ public class ModelOverrideManager {
 		}
 	}
 
+	private void buildAreaOverrideIndexes() {
+		for (var override : modelOverrides.values()) {
+			if (override.areaOverrides == null)
+				continue;
+			// Index the area overrides in iteration order, to match the order in which they would otherwise be checked
+			var index = new RegionIndex<ModelOverride>();
+			for (var entry : override.areaOverrides.entrySet())
+				index.add(entry.getKey(), entry.getValue());
+			override.areaOverrideIndex = index;
+		}
+	}
+
 	private void addSailingCullingOverrides() {
 		try {
 			for (Integer row : client.getDBTableRows(DBTableID.SailingBoatSail.ID)) {
@@ -236,10 +285,11 @@ public class ModelOverrideManager {
 		if (override == null)
 			return ModelOverride.NONE;
 
-		if (override.areaOverrides != null)
-			for (var entry : override.areaOverrides.entrySet())
-				if (entry.getKey().contains(worldPos))
-					return entry.getValue();
+		if (override.areaOverrideIndex != null) {
+			var areaOverride = override.areaOverrideIndex.findFirst(worldPos);
+			if (areaOverride != null)
+				return areaOverride;
+		}
 
 		return override;
 	}
@@ -24,8 +24,8 @@
  */
 package rs117.hd.scene;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
@@ -37,10 +37,13 @@ import rs117.hd.scene.model_overrides.TzHaarRecolorType;
 import rs117.hd.scene.tile_overrides.TileOverride;
 import rs117.hd.scene.water_types.WaterType;
 import rs117.hd.utils.ColorUtils;
+import rs117.hd.utils.collections.PrimitiveIntArray;
 import rs117.hd.utils.buffer.GpuIntBuffer;
+import rs117.hd.utils.jobs.JobSystem;
 
 import static net.runelite.api.Constants.*;
 import static net.runelite.api.Perspective.*;
+import static rs117.hd.scene.VertexTerrainData.*;
 import static rs117.hd.scene.tile_overrides.TileOverride.OVERLAY_FLAG;
 import static rs117.hd.utils.HDUtils.HIDDEN_HSL;
 import static rs117.hd.utils.HDUtils.calculateSurfaceNormals;
@@ -54,6 +57,12 @@ public class ProceduralGenerator {
 	public static final int MAX_DEPTH = DEPTH_LEVEL_SLOPE[DEPTH_LEVEL_SLOPE.length - 1];
 
 	public static final int VERTICES_PER_FACE = 3;
+	private static final int[] ZERO_NORMAL = { 0, 0, 0 };
+	// Tile columns processed per job. Stripes span all planes, since water checks look at the planes above and below
+	private static final int STRIPE_WIDTH = 16;
+	private static final int VERTEX_OVERLAY = 1;
+	private static final int VERTEX_LOW_PRIORITY_COLOR = 1 << 1;
+	private static final int VERTEX_DEFAULT_COLOR = 1 << 2;
 	public static final boolean[][] TILE_OVERLAY_TRIS = new boolean[][]
 		{
 			/*  0 */ { true, true, true, true }, // Used by tilemodels of varying tri counts?
@@ -76,35 +85,124 @@ public class ProceduralGenerator {
 	@Inject
 	private WaterTypeManager waterTypeManager;
 
+	@Inject
+	private JobSystem jobSystem;
+
 	public void generateSceneData(SceneContext sceneContext)
 	{
-		long timerTotal = System.currentTimeMillis();
+		long timerTotal = System.nanoTime();
 		long timerCalculateTerrainNormals, timerGenerateTerrainData, timerGenerateUnderwaterTerrain;
+		long parallelCalculateTerrainNormals, parallelGenerateTerrainData, parallelGenerateUnderwaterTerrain;
+
+		// Roughly one vertex per tile corner on each plane, with more for tile models
+		sceneContext.vertexTerrain = new VertexTerrainData((sceneContext.sizeX + 1) * (sceneContext.sizeZ + 1) * 2);
+
+		long startTime = System.nanoTime();
+		parallelGenerateUnderwaterTerrain = generateUnderwaterTerrain(sceneContext);
+		timerGenerateUnderwaterTerrain = System.nanoTime() - startTime;
+		startTime = System.nanoTime();
+		parallelCalculateTerrainNormals = calculateTerrainNormals(sceneContext);
+		timerCalculateTerrainNormals = System.nanoTime() - startTime;
+		startTime = System.nanoTime();
+		parallelGenerateTerrainData = generateTerrainData(sceneContext);
+		timerGenerateTerrainData = System.nanoTime() - startTime;
+
+		// The parallel portion is spread across stripes, while the serial portion covers setup and merging the stripes
+		log.debug(
+			"procedural data generation took {}ms to complete across {} stripes",
+			formatMillis(System.nanoTime() - timerTotal),
+			(sceneContext.sizeX + STRIPE_WIDTH - 1) / STRIPE_WIDTH
+		);
+		log.debug(
+			"-- calculateTerrainNormals: {}ms ({}ms parallel, {}ms serial)",
+			formatMillis(timerCalculateTerrainNormals),
+			formatMillis(parallelCalculateTerrainNormals),
+			formatMillis(timerCalculateTerrainNormals - parallelCalculateTerrainNormals)
+		);
+		log.debug(
+			"-- generateTerrainData: {}ms ({}ms parallel, {}ms serial)",
+			formatMillis(timerGenerateTerrainData),
+			formatMillis(parallelGenerateTerrainData),
+			formatMillis(timerGenerateTerrainData - parallelGenerateTerrainData)
+		);
+		log.debug(
+			"-- generateUnderwaterTerrain: {}ms ({}ms parallel, {}ms serial)",
+			formatMillis(timerGenerateUnderwaterTerrain),
+			formatMillis(parallelGenerateUnderwaterTerrain),
+			formatMillis(timerGenerateUnderwaterTerrain - parallelGenerateUnderwaterTerrain)
+		);
+	}
+
+	private static String formatMillis(long nanos) {
+		return String.format("%.2f", nanos / 1e6);
+	}
+
+	@FunctionalInterface
+	private interface StripeTask {
+		void run(StripeRecords records, int startX, int endX);
+	}
+
+	/**
+	 * Output recorded while processing a single stripe, with one buffer per plane or pass.
+	 * Each buffer is filled in the same order a serial pass over the stripe's tiles would produce it,
+	 * so merging the stripes in order gives the same result as a serial pass over the whole scene.
+	 */
+	private static final class StripeRecords {
+		final RecordBuffer[] buffers = new RecordBuffer[MAX_Z * 2];
+
+		StripeRecords() {
+			for (int i = 0; i < buffers.length; i++)
+				buffers[i] = new RecordBuffer();
+		}
+
+		RecordBuffer get(int index) {
+			return buffers[index];
+		}
+
+		void reset() {
+			for (var buffer : buffers) {
+				buffer.ints.reset();
+				buffer.materials.clear();
+			}
+		}
+	}
+
+	private static final class RecordBuffer {
+		final PrimitiveIntArray ints = new PrimitiveIntArray();
+		final ArrayList<Material> materials = new ArrayList<>();
+	}
 
-		long startTime = System.currentTimeMillis();
-		generateUnderwaterTerrain(sceneContext);
-		timerGenerateUnderwaterTerrain = (int)(System.currentTimeMillis() - startTime);
-		startTime = System.currentTimeMillis();
-		calculateTerrainNormals(sceneContext);
-		timerCalculateTerrainNormals = (int)(System.currentTimeMillis() - startTime);
-		startTime = System.currentTimeMillis();
-		generateTerrainData(sceneContext);
-		timerGenerateTerrainData = (int)(System.currentTimeMillis() - startTime);
-
-		log.debug("procedural data generation took {}ms to complete", (System.currentTimeMillis() - timerTotal));
-		log.debug("-- calculateTerrainNormals: {}ms", timerCalculateTerrainNormals);
-		log.debug("-- generateTerrainData: {}ms", timerGenerateTerrainData);
-		log.debug("-- generateUnderwaterTerrain: {}ms", timerGenerateUnderwaterTerrain);
+	private static StripeRecords[] createStripeRecords(int sizeX) {
+		StripeRecords[] stripeRecords = new StripeRecords[(sizeX + STRIPE_WIDTH - 1) / STRIPE_WIDTH];
+		for (int i = 0; i < stripeRecords.length; i++)
+			stripeRecords[i] = new StripeRecords();
+		return stripeRecords;
+	}
+
+	/**
+	 * Run the task for each stripe of columns in the scene on the job system, and return how long it took.
+	 * The number of stripes doesn't depend on the number of workers, so results don't either.
+	 */
+	private long forEachStripe(String phase, int sizeX, StripeRecords[] stripeRecords, StripeTask task) {
+		long start = System.nanoTime();
+		jobSystem.parallelFor("ProceduralGenerator::" + phase, stripeRecords.length, stripe -> {
+			var records = stripeRecords[stripe];
+			records.reset();
+			int startX = stripe * STRIPE_WIDTH;
+			task.run(records, startX, min(startX + STRIPE_WIDTH, sizeX));
+		});
+		return System.nanoTime() - start;
+	}
+
+	private static void recordVertex(PrimitiveIntArray records, int vertexKey, int value) {
+		records.ensureCapacity(2).put(vertexKey);
+		records.put(value);
 	}
 
 	public void clearSceneData(SceneContext sceneContext) {
 		sceneContext.tileIsWater = null;
-		sceneContext.vertexIsWater = null;
-		sceneContext.vertexIsLand = null;
-		sceneContext.vertexIsOverlay = null;
-		sceneContext.vertexIsUnderlay = null;
 		sceneContext.skipTile = null;
-		sceneContext.vertexUnderwaterDepth = null;
+		sceneContext.vertexTerrain = null;
 		if (!(sceneContext instanceof LegacySceneContext))
 			sceneContext.underwaterDepthLevels = null;
 	}
@@ -112,46 +210,80 @@ public class ProceduralGenerator {
 	/**
 	 * Iterates through all Tiles in a given Scene, producing color and
 	 * material data for each vertex of each Tile. Then adds the resulting
-	 * data to appropriate HashMaps.
+	 * data to the scene's vertex terrain data.
+	 *
+	 * @return the time spent processing stripes in parallel, in nanoseconds
 	 */
-	private void generateTerrainData(SceneContext sceneContext)
+	private long generateTerrainData(SceneContext sceneContext)
 	{
-		sceneContext.vertexTerrainColor = new HashMap<>();
-		// used for overriding potentially undesirable vertex colors
-		// for example, colors that aren't supposed to be visible
-		sceneContext.highPriorityColor = new HashMap<>();
-		sceneContext.vertexTerrainTexture = new HashMap<>();
-		// for faces without an overlay is set to true
-		sceneContext.vertexIsUnderlay = new HashMap<>();
-		// for faces with an overlay is set to true
-		// the result of these maps can be used to determine the vertices
-		// between underlays and overlays for custom blending
-		sceneContext.vertexIsOverlay = new HashMap<>();
-
 		Tile[][][] tiles = sceneContext.scene.getExtendedTiles();
 		int sizeX = sceneContext.sizeX;
 		int sizeY = sceneContext.sizeZ;
-		for (int z = 0; z < MAX_Z; ++z) {
-			for (int x = 0; x < sizeX; ++x)
-				for (int y = 0; y < sizeY; ++y)
-					if (tiles[z][x][y] != null)
-						generateDataForTile(sceneContext, tiles[z][x][y], x, y);
-
-			for (int x = 0; x < sizeX; ++x)
-				for (int y = 0; y < sizeY; ++y)
-					if (tiles[z][x][y] != null && tiles[z][x][y].getBridge() != null)
-						generateDataForTile(sceneContext, tiles[z][x][y].getBridge(), x, y);
+
+		// Tiles are recorded into even buffers, and bridges into odd buffers, matching the order of a serial pass
+		StripeRecords[] stripeRecords = createStripeRecords(sizeX);
+		long parallelNanos = forEachStripe("generateTerrainData", sizeX, stripeRecords, (records, startX, endX) -> {
+			for (int z = 0; z < MAX_Z; ++z) {
+				for (int x = startX; x < endX; ++x)
+					for (int y = 0; y < sizeY; ++y)
+						if (tiles[z][x][y] != null)
+							generateDataForTile(sceneContext, records.get(z * 2), tiles[z][x][y], x, y);
+
+				for (int x = startX; x < endX; ++x)
+					for (int y = 0; y < sizeY; ++y)
+						if (tiles[z][x][y] != null && tiles[z][x][y].getBridge() != null)
+							generateDataForTile(sceneContext, records.get(z * 2 + 1), tiles[z][x][y].getBridge(), x, y);
+			}
+		});
+
+		var vertexTerrain = sceneContext.vertexTerrain;
+		for (int pass = 0; pass < MAX_Z * 2; pass++) {
+			for (var stripe : stripeRecords) {
+				var records = stripe.get(pass);
+				int[] ints = records.ints.array;
+				for (int i = 0, vertex = 0; i < records.ints.length; i += 3, vertex++) {
+					int vertexKey = ints[i];
+					int color = ints[i + 1];
+					int vertexFlags = ints[i + 2];
+					boolean isOverlay = (vertexFlags & VERTEX_OVERLAY) != 0;
+					boolean lowPriorityColor = (vertexFlags & VERTEX_LOW_PRIORITY_COLOR) != 0;
+
+					// mark the vertex as either an overlay or underlay.
+					// vertices marked as both lie between underlays and overlays, and are used for custom blending
+					vertexTerrain.addFlags(vertexKey, isOverlay ? FLAG_OVERLAY : FLAG_UNDERLAY);
+
+					// add color and texture to the vertex terrain data
+					// high priority colors are used for overriding potentially undesirable vertex colors,
+					// for example, colors that aren't supposed to be visible
+					if ((!lowPriorityColor || !vertexTerrain.hasFlags(vertexKey, FLAG_HIGH_PRIORITY_COLOR)) &&
+						(vertexFlags & VERTEX_DEFAULT_COLOR) == 0)
+					{
+						boolean shouldWrite = isOverlay || !vertexTerrain.hasColor(vertexKey);
+						if (shouldWrite || !vertexTerrain.hasColor(vertexKey))
+							vertexTerrain.setColor(vertexKey, color);
+
+						if (shouldWrite || !vertexTerrain.hasMaterial(vertexKey))
+							vertexTerrain.setMaterial(vertexKey, records.materials.get(vertex));
+
+						if (!lowPriorityColor)
+							vertexTerrain.addFlags(vertexKey, FLAG_HIGH_PRIORITY_COLOR);
+					}
+				}
+			}
 		}
+
+		return parallelNanos;
 	}
 
 	/**
 	 * Produces color and material data for the vertices of the provided Tile.
-	 * Then adds the resulting data to appropriate HashMaps.
+	 * Then records the resulting data, to be merged into the scene's vertex terrain data.
 	 *
-	 * @param sceneContext that the tile is associated with
-	 * @param tile         to generate terrain data for
+	 * @param sceneContext   that the tile is associated with
+	 * @param vertexRecords  to append the key, color and flags of each vertex to, along with its material
+	 * @param tile           to generate terrain data for
 	 */
-	private void generateDataForTile(SceneContext sceneContext, Tile tile, int tileExX, int tileExY)
+	private void generateDataForTile(SceneContext sceneContext, RecordBuffer vertexRecords, Tile tile, int tileExX, int tileExY)
 	{
 		int faceCount;
 		if (tile.getSceneTilePaint() != null) {
@@ -255,6 +387,7 @@ public class ProceduralGenerator {
 			}
 		}
 
+		var vertexTerrain = sceneContext.vertexTerrain;
 		for (int vertex = 0; vertex < vertexHashes.length; vertex++)
 		{
 			if (vertexHashes[vertex] == 0)
@@ -275,7 +408,7 @@ public class ProceduralGenerator {
 			int lightenAdd = 3;
 			float darkenMultiplier = 0.5f;
 
-			int[] vNormals = sceneContext.vertexTerrainNormals.getOrDefault(vertexHashes[vertex], new int[] { 0, 0, 0 });
+			int[] vNormals = vertexTerrain.getNormals(vertexHashes[vertex], ZERO_NORMAL);
 
 			float dot = dot(vNormals);
 			if (dot < EPSILON) {
@@ -295,57 +428,41 @@ public class ProceduralGenerator {
 			boolean isOverlay = vertexIsOverlay[vertex] != override.blendedAsOpposite;
 			color = override.modifyColor(color);
 
-			vertexColors[vertex] = color;
-
-			// mark the vertex as either an overlay or underlay.
-			// this is used to determine how to blend between vertex colors
+			int vertexFlags = 0;
 			if (isOverlay)
-			{
-				sceneContext.vertexIsOverlay.put(vertexHashes[vertex], true);
-			}
-			else
-			{
-				sceneContext.vertexIsUnderlay.put(vertexHashes[vertex], true);
-			}
-
-			// add color and texture to hashmap
-			if ((!lowPriorityColor || !sceneContext.highPriorityColor.containsKey(vertexHashes[vertex])) && !vertexDefaultColor[vertex])
-			{
-				boolean shouldWrite = isOverlay || !sceneContext.vertexTerrainColor.containsKey(vertexHashes[vertex]);
-				if (shouldWrite || !sceneContext.vertexTerrainColor.containsKey(vertexHashes[vertex]))
-					sceneContext.vertexTerrainColor.put(vertexHashes[vertex], vertexColors[vertex]);
-
-				if (shouldWrite || !sceneContext.vertexTerrainTexture.containsKey(vertexHashes[vertex]))
-					sceneContext.vertexTerrainTexture.put(vertexHashes[vertex], material);
-
-				if (!lowPriorityColor)
-					sceneContext.highPriorityColor.put(vertexHashes[vertex], true);
-			}
+				vertexFlags |= VERTEX_OVERLAY;
+			if (lowPriorityColor)
+				vertexFlags |= VERTEX_LOW_PRIORITY_COLOR;
+			if (vertexDefaultColor[vertex])
+				vertexFlags |= VERTEX_DEFAULT_COLOR;
+
+			vertexRecords.ints.ensureCapacity(3).put(vertexHashes[vertex]);
+			vertexRecords.ints.put(color);
+			vertexRecords.ints.put(vertexFlags);
+			vertexRecords.materials.add(material);
 		}
 	}
 
 	/**
 	 * Generates underwater terrain data by iterating through all Tiles in a given
 	 * Scene, increasing the depth of each tile based on its distance from the shore.
-	 * Then stores the resulting data in a HashMap.
+	 * Then stores the resulting data in the scene's vertex terrain data.
 	 */
-	private void generateUnderwaterTerrain(SceneContext sceneContext)
+	private long generateUnderwaterTerrain(SceneContext sceneContext)
 	{
 		int sizeX = sceneContext.sizeX;
 		int sizeY = sceneContext.sizeZ;
+		var vertexTerrain = sceneContext.vertexTerrain;
 		// true if a tile contains at least 1 face which qualifies as water
 		sceneContext.tileIsWater = new boolean[MAX_Z][sizeX][sizeY];
-		// true if a vertex is part of a face which qualifies as water; non-existent if not
-		sceneContext.vertexIsWater = new HashMap<>();
-		// true if a vertex is part of a face which qualifies as land; non-existent if not
-		// tiles along the shoreline will be true for both vertexIsWater and vertexIsLand
-		sceneContext.vertexIsLand = new HashMap<>();
+		// vertices which are part of a face which qualifies as water are flagged with FLAG_WATER,
+		// and vertices which are part of a face which qualifies as land are flagged with FLAG_LAND
+		// vertices along the shoreline will have both flags
 		// if true, the tile will be skipped when the scene is drawn
 		// this is due to certain edge cases with water on the same X/Y on different planes
 		sceneContext.skipTile = new boolean[MAX_Z][sizeX][sizeY];
-		// the height adjustment for each vertex, to be applied to the vertex'
-		// real height to create the underwater terrain
-		sceneContext.vertexUnderwaterDepth = new HashMap<>();
+		// the height adjustment for each vertex is stored in the vertex terrain data,
+		// to be applied to the vertex' real height to create the underwater terrain
 		// the basic 'levels' of underwater terrain, used to sink terrain based on its distance
 		// from the shore, then used to produce the world-space height offset
 		// 0 = land
@@ -368,170 +485,20 @@ public class ProceduralGenerator {
 		Tile[][][] tiles = scene.getExtendedTiles();
 
 		// figure out which vertices are water and assign some data
-		for (int z = 0; z < MAX_Z; ++z) {
-			for (int x = 0; x < sizeX; ++x) {
-				for (int y = 0; y < sizeY; ++y) {
-					if (tiles[z][x][y] == null) {
-						sceneContext.underwaterDepthLevels[z][x][y] = 0;
-						sceneContext.underwaterDepthLevels[z][x + 1][y] = 0;
-						sceneContext.underwaterDepthLevels[z][x][y + 1] = 0;
-						sceneContext.underwaterDepthLevels[z][x + 1][y + 1] = 0;
-						continue;
-					}
-
-					Tile tile = tiles[z][x][y];
-					if (tile.getBridge() != null) {
-						tile = tile.getBridge();
-					}
-
-					if (tile.getSceneTilePaint() != null) {
-						int[] vertexKeys = tileVertexKeys(sceneContext, tile);
-
-						int[] worldPos = sceneContext.extendedSceneToWorld(x, y, tile.getRenderLevel());
-						var override = tileOverrideManager.getOverride(sceneContext, tile, worldPos);
-						if (seasonalWaterType(override, tile.getSceneTilePaint().getTexture()) == WaterType.NONE) {
-							for (int vertexKey : vertexKeys)
-								if (tile.getSceneTilePaint().getNeColor() != HIDDEN_HSL || override.forced)
-									sceneContext.vertexIsLand.put(vertexKey, true);
-
-							sceneContext.underwaterDepthLevels[z][x][y] = 0;
-							sceneContext.underwaterDepthLevels[z][x + 1][y] = 0;
-							sceneContext.underwaterDepthLevels[z][x][y + 1] = 0;
-							sceneContext.underwaterDepthLevels[z][x + 1][y + 1] = 0;
-						} else {
-							// Stop tiles on the same X,Y coordinates on different planes from
-							// each generating water. Prevents undesirable results in certain places.
-							if (z > 0) {
-								boolean continueLoop = false;
-
-								for (int checkZ = 0; checkZ < z; ++checkZ) {
-									if (sceneContext.tileIsWater[checkZ][x][y]) {
-										sceneContext.underwaterDepthLevels[z][x][y] = 0;
-										sceneContext.underwaterDepthLevels[z][x + 1][y] = 0;
-										sceneContext.underwaterDepthLevels[z][x][y + 1] = 0;
-										sceneContext.underwaterDepthLevels[z][x + 1][y + 1] = 0;
-
-										sceneContext.skipTile[z][x][y] = true;
-
-										continueLoop = true;
-
-										break;
-									}
-								}
-
-								if (continueLoop)
-									continue;
-							}
-
-							sceneContext.tileIsWater[z][x][y] = true;
-
-							for (int vertexKey : vertexKeys)
-							{
-								sceneContext.vertexIsWater.put(vertexKey, true);
-							}
-						}
-					}
-					else if (tile.getSceneTileModel() != null)
-					{
-						SceneTileModel model = tile.getSceneTileModel();
-
-						int faceCount = model.getFaceX().length;
-
-						int tileZ = tile.getRenderLevel();
-						int[] worldPos = sceneContext.extendedSceneToWorld(x, y, tileZ);
-						int overlayId = OVERLAY_FLAG | scene.getOverlayIds()[tileZ][x][y];
-						int underlayId = scene.getUnderlayIds()[tileZ][x][y];
-						var overlayOverride = tileOverrideManager.getOverride(sceneContext, tile, worldPos, overlayId);
-						var underlayOverride = tileOverrideManager.getOverride(sceneContext, tile, worldPos, underlayId);
-
-						// Stop tiles on the same X,Y coordinates on different planes from
-						// each generating water. Prevents undesirable results in certain places.
-						if (z > 0)
-						{
-							boolean tileIncludesWater = false;
-							for (int face = 0; face < faceCount; face++)
-							{
-								var override = ProceduralGenerator.isOverlayFace(tile, face) ? overlayOverride : underlayOverride;
-								int textureId = model.getTriangleTextureId() == null ? -1 :
-									model.getTriangleTextureId()[face];
-								if (seasonalWaterType(override, textureId) != WaterType.NONE)
-								{
-									tileIncludesWater = true;
-									break;
-								}
-							}
-
-							if (tileIncludesWater)
-							{
-								boolean continueLoop = false;
-
-								for (int checkZ = 0; checkZ < z; ++checkZ)
-								{
-									if (sceneContext.tileIsWater[checkZ][x][y])
-									{
-										sceneContext.underwaterDepthLevels[z][x][y] = 0;
-										sceneContext.underwaterDepthLevels[z][x + 1][y] = 0;
-										sceneContext.underwaterDepthLevels[z][x][y + 1] = 0;
-										sceneContext.underwaterDepthLevels[z][x + 1][y + 1] = 0;
-
-										sceneContext.skipTile[z][x][y] = true;
-
-										continueLoop = true;
-
-										break;
-									}
-								}
-
-								if (continueLoop)
-									continue;
-							}
-						}
-
-						for (int face = 0; face < faceCount; face++)
-						{
-							int[][] vertices = faceVertices(tile, face);
-							int[] vertexKeys = faceVertexKeys(tile, face);
-
-							var override = ProceduralGenerator.isOverlayFace(tile, face) ? overlayOverride : underlayOverride;
-							int textureId = model.getTriangleTextureId() == null ? -1 :
-								model.getTriangleTextureId()[face];
-							if (seasonalWaterType(override, textureId) == WaterType.NONE)
-							{
-								for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
-								{
-									if (model.getTriangleColorA()[face] != HIDDEN_HSL || override.forced)
-										sceneContext.vertexIsLand.put(vertexKeys[vertex], true);
-
-									if (vertices[vertex][0] % LOCAL_TILE_SIZE == 0 &&
-										vertices[vertex][1] % LOCAL_TILE_SIZE == 0
-									) {
-										int vX = (vertices[vertex][0] >> LOCAL_COORD_BITS) + sceneContext.sceneOffset;
-										int vY = (vertices[vertex][1] >> LOCAL_COORD_BITS) + sceneContext.sceneOffset;
-
-										sceneContext.underwaterDepthLevels[z][vX][vY] = 0;
-									}
-								}
-							}
-							else
-							{
-								sceneContext.tileIsWater[z][x][y] = true;
-
-								for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
-								{
-									sceneContext.vertexIsWater.put(vertexKeys[vertex], true);
-								}
-							}
-						}
-					}
-					else
-					{
-						sceneContext.underwaterDepthLevels[z][x][y] = 0;
-						sceneContext.underwaterDepthLevels[z][x + 1][y] = 0;
-						sceneContext.underwaterDepthLevels[z][x][y + 1] = 0;
-						sceneContext.underwaterDepthLevels[z][x + 1][y + 1] = 0;
-					}
-				}
-			}
+		// stripes may clear the depth levels of the column shared with the next stripe, but since the levels are only
+		// ever cleared to 0 at this point, the order of those writes doesn't matter
+		StripeRecords[] stripeRecords = createStripeRecords(sizeX);
+		long parallelNanos = forEachStripe("generateUnderwaterTerrain", sizeX, stripeRecords, (records, startX, endX) -> {
+			for (int z = 0; z < MAX_Z; ++z)
+				for (int x = startX; x < endX; ++x)
+					for (int y = 0; y < sizeY; ++y)
+						classifyWaterTile(sceneContext, records.get(0), tiles, z, x, y);
+		});
+		// water and land flags are independent of the order they're added in
+		for (var records : stripeRecords) {
+			var vertexFlags = records.get(0).ints;
+			for (int i = 0; i < vertexFlags.length; i += 2)
+				vertexTerrain.addFlags(vertexFlags.array[i], vertexFlags.array[i + 1]);
 		}
 
 		// Sink terrain further from shore by desired levels.
@@ -602,123 +569,340 @@ public class ProceduralGenerator {
 			}
 		}
 
-		// Store the height offsets in a hashmap and calculate interpolated
+		// Store the height offsets in the vertex terrain data and calculate interpolated
 		// height offsets for non-corner vertices.
+		// later depths overwrite earlier ones for shared vertices, so stripes are merged plane by plane in scene order
+		parallelNanos += forEachStripe("generateUnderwaterTerrain", sizeX, stripeRecords, (records, startX, endX) -> {
+			for (int z = 0; z < MAX_Z; ++z)
+				for (int x = startX; x < endX; ++x)
+					for (int y = 0; y < sizeY; ++y)
+						assignUnderwaterDepths(sceneContext, records.get(z), tiles, underwaterDepths, z, x, y);
+		});
 		for (int z = 0; z < MAX_Z; ++z) {
-			for (int x = 0; x < sizeX; ++x) {
-				for (int y = 0; y < sizeY; ++y) {
-					if (!sceneContext.tileIsWater[z][x][y]) {
-						continue;
-					}
+			for (var records : stripeRecords) {
+				var vertexDepths = records.get(z).ints;
+				for (int i = 0; i < vertexDepths.length; i += 2)
+					vertexTerrain.setUnderwaterDepth(vertexDepths.array[i], vertexDepths.array[i + 1]);
+			}
+		}
 
-					Tile tile = tiles[z][x][y];
-					if (tile == null) {
-						continue;
+		return parallelNanos;
+	}
+
+	/**
+	 * Determines whether the tile at the given extended scene coordinates is water,
+	 * and records whether its vertices are part of water or land faces.
+	 */
+	private void classifyWaterTile(SceneContext sceneContext, RecordBuffer vertexFlagRecords, Tile[][][] tiles, int z, int x, int y)
+	{
+		Scene scene = sceneContext.scene;
+		var vertexFlags = vertexFlagRecords.ints;
+		if (tiles[z][x][y] == null) {
+			sceneContext.underwaterDepthLevels[z][x][y] = 0;
+			sceneContext.underwaterDepthLevels[z][x + 1][y] = 0;
+			sceneContext.underwaterDepthLevels[z][x][y + 1] = 0;
+			sceneContext.underwaterDepthLevels[z][x + 1][y + 1] = 0;
+			return;
+		}
+
+		Tile tile = tiles[z][x][y];
+		if (tile.getBridge() != null) {
+			tile = tile.getBridge();
+		}
+
+		if (tile.getSceneTilePaint() != null) {
+			int[] vertexKeys = tileVertexKeys(sceneContext, tile);
+
+			int[] worldPos = sceneContext.extendedSceneToWorld(x, y, tile.getRenderLevel());
+			var override = tileOverrideManager.getOverride(sceneContext, tile, worldPos);
+			if (seasonalWaterType(override, tile.getSceneTilePaint().getTexture()) == WaterType.NONE) {
+				for (int vertexKey : vertexKeys)
+					if (tile.getSceneTilePaint().getNeColor() != HIDDEN_HSL || override.forced)
+						recordVertex(vertexFlags, vertexKey, FLAG_LAND);
+
+				sceneContext.underwaterDepthLevels[z][x][y] = 0;
+				sceneContext.underwaterDepthLevels[z][x + 1][y] = 0;
+				sceneContext.underwaterDepthLevels[z][x][y + 1] = 0;
+				sceneContext.underwaterDepthLevels[z][x + 1][y + 1] = 0;
+			} else {
+				// Stop tiles on the same X,Y coordinates on different planes from
+				// each generating water. Prevents undesirable results in certain places.
+				if (z > 0) {
+					boolean continueLoop = false;
+
+					for (int checkZ = 0; checkZ < z; ++checkZ) {
+						if (sceneContext.tileIsWater[checkZ][x][y]) {
+							sceneContext.underwaterDepthLevels[z][x][y] = 0;
+							sceneContext.underwaterDepthLevels[z][x + 1][y] = 0;
+							sceneContext.underwaterDepthLevels[z][x][y + 1] = 0;
+							sceneContext.underwaterDepthLevels[z][x + 1][y + 1] = 0;
+
+							sceneContext.skipTile[z][x][y] = true;
+
+							continueLoop = true;
+
+							break;
+						}
 					}
 
-					if (tile.getBridge() != null) {
-						tile = tile.getBridge();
+					if (continueLoop)
+						return;
+				}
+
+				sceneContext.tileIsWater[z][x][y] = true;
+
+				for (int vertexKey : vertexKeys)
+				{
+					recordVertex(vertexFlags, vertexKey, FLAG_WATER);
+				}
+			}
+		}
+		else if (tile.getSceneTileModel() != null)
+		{
+			SceneTileModel model = tile.getSceneTileModel();
+
+			int faceCount = model.getFaceX().length;
+
+			int tileZ = tile.getRenderLevel();
+			int[] worldPos = sceneContext.extendedSceneToWorld(x, y, tileZ);
+			int overlayId = OVERLAY_FLAG | scene.getOverlayIds()[tileZ][x][y];
+			int underlayId = scene.getUnderlayIds()[tileZ][x][y];
+			var overlayOverride = tileOverrideManager.getOverride(sceneContext, tile, worldPos, overlayId);
+			var underlayOverride = tileOverrideManager.getOverride(sceneContext, tile, worldPos, underlayId);
+
+			// Stop tiles on the same X,Y coordinates on different planes from
+			// each generating water. Prevents undesirable results in certain places.
+			if (z > 0)
+			{
+				boolean tileIncludesWater = false;
+				for (int face = 0; face < faceCount; face++)
+				{
+					var override = ProceduralGenerator.isOverlayFace(tile, face) ? overlayOverride : underlayOverride;
+					int textureId = model.getTriangleTextureId() == null ? -1 :
+						model.getTriangleTextureId()[face];
+					if (seasonalWaterType(override, textureId) != WaterType.NONE)
+					{
+						tileIncludesWater = true;
+						break;
 					}
-					if (tile.getSceneTilePaint() != null) {
-						int[] vertexKeys = tileVertexKeys(sceneContext, tile);
-
-						int swVertexKey = vertexKeys[0];
-						int seVertexKey = vertexKeys[1];
-						int nwVertexKey = vertexKeys[2];
-						int neVertexKey = vertexKeys[3];
-
-						sceneContext.vertexUnderwaterDepth.put(swVertexKey, underwaterDepths[z][x][y]);
-						sceneContext.vertexUnderwaterDepth.put(seVertexKey, underwaterDepths[z][x + 1][y]);
-						sceneContext.vertexUnderwaterDepth.put(nwVertexKey, underwaterDepths[z][x][y + 1]);
-						sceneContext.vertexUnderwaterDepth.put(neVertexKey, underwaterDepths[z][x + 1][y + 1]);
+				}
+
+				if (tileIncludesWater)
+				{
+					boolean continueLoop = false;
+
+					for (int checkZ = 0; checkZ < z; ++checkZ)
+					{
+						if (sceneContext.tileIsWater[checkZ][x][y])
+						{
+							sceneContext.underwaterDepthLevels[z][x][y] = 0;
+							sceneContext.underwaterDepthLevels[z][x + 1][y] = 0;
+							sceneContext.underwaterDepthLevels[z][x][y + 1] = 0;
+							sceneContext.underwaterDepthLevels[z][x + 1][y + 1] = 0;
+
+							sceneContext.skipTile[z][x][y] = true;
+
+							continueLoop = true;
+
+							break;
+						}
 					}
-					else if (tile.getSceneTileModel() != null)
+
+					if (continueLoop)
+						return;
+				}
+			}
+
+			for (int face = 0; face < faceCount; face++)
+			{
+				int[][] vertices = faceVertices(tile, face);
+				int[] vertexKeys = faceVertexKeys(tile, face);
+
+				var override = ProceduralGenerator.isOverlayFace(tile, face) ? overlayOverride : underlayOverride;
+				int textureId = model.getTriangleTextureId() == null ? -1 :
+					model.getTriangleTextureId()[face];
+				if (seasonalWaterType(override, textureId) == WaterType.NONE)
+				{
+					for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
 					{
-						SceneTileModel sceneTileModel = tile.getSceneTileModel();
+						if (model.getTriangleColorA()[face] != HIDDEN_HSL || override.forced)
+							recordVertex(vertexFlags, vertexKeys[vertex], FLAG_LAND);
 
-						int faceCount = sceneTileModel.getFaceX().length;
+						if (vertices[vertex][0] % LOCAL_TILE_SIZE == 0 &&
+							vertices[vertex][1] % LOCAL_TILE_SIZE == 0
+						) {
+							int vX = (vertices[vertex][0] >> LOCAL_COORD_BITS) + sceneContext.sceneOffset;
+							int vY = (vertices[vertex][1] >> LOCAL_COORD_BITS) + sceneContext.sceneOffset;
 
-						for (int face = 0; face < faceCount; face++)
-						{
-							int[][] vertices = faceVertices(tile, face);
-							int[] vertexKeys = faceVertexKeys(tile, face);
-
-							for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
-							{
-								if (vertices[vertex][0] % LOCAL_TILE_SIZE == 0 &&
-									vertices[vertex][1] % LOCAL_TILE_SIZE == 0
-								) {
-									// The vertex is at the corner of the tile;
-									// simply use the offset in the tile grid array.
-
-									int vX = (vertices[vertex][0] >> LOCAL_COORD_BITS) + sceneContext.sceneOffset;
-									int vY = (vertices[vertex][1] >> LOCAL_COORD_BITS) + sceneContext.sceneOffset;
-
-									sceneContext.vertexUnderwaterDepth.put(vertexKeys[vertex], underwaterDepths[z][vX][vY]);
-								}
-								else
-								{
-									// If the tile is a tile model and this vertex is shared only by faces that are water,
-									// interpolate between the height offsets at each corner to get the height offset
-									// of the vertex.
-
-									float lerpX = fract(vertices[vertex][0] / (float) LOCAL_TILE_SIZE);
-									float lerpY = fract(vertices[vertex][1] / (float) LOCAL_TILE_SIZE);
-									float northHeightOffset = mix(underwaterDepths[z][x][y + 1], underwaterDepths[z][x + 1][y + 1], lerpX);
-									float southHeightOffset = mix(underwaterDepths[z][x][y], underwaterDepths[z][x + 1][y], lerpX);
-									int heightOffset = (int) mix(southHeightOffset, northHeightOffset, lerpY);
-
-									if (!sceneContext.vertexIsLand.containsKey(vertexKeys[vertex]))
-										sceneContext.vertexUnderwaterDepth.put(vertexKeys[vertex], heightOffset);
-								}
-							}
+							sceneContext.underwaterDepthLevels[z][vX][vY] = 0;
 						}
 					}
 				}
+				else
+				{
+					sceneContext.tileIsWater[z][x][y] = true;
+
+					for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
+					{
+						recordVertex(vertexFlags, vertexKeys[vertex], FLAG_WATER);
+					}
+				}
 			}
 		}
+		else
+		{
+			sceneContext.underwaterDepthLevels[z][x][y] = 0;
+			sceneContext.underwaterDepthLevels[z][x + 1][y] = 0;
+			sceneContext.underwaterDepthLevels[z][x][y + 1] = 0;
+			sceneContext.underwaterDepthLevels[z][x + 1][y + 1] = 0;
+		}
 	}
 
 	/**
-	 * Iterates through all Tiles in a given Scene, calculating vertex normals
-	 * for each one, then stores resulting normal data in a HashMap.
+	 * Records the underwater depth of each vertex of the water tile at the given extended scene coordinates.
 	 */
-	private void calculateTerrainNormals(SceneContext sceneContext)
-	{
-		sceneContext.vertexTerrainNormals = new HashMap<>();
+	private void assignUnderwaterDepths(
+		SceneContext sceneContext,
+		RecordBuffer vertexDepthRecords,
+		Tile[][][] tiles,
+		int[][][] underwaterDepths,
+		int z,
+		int x,
+		int y
+	) {
+		var vertexTerrain = sceneContext.vertexTerrain;
+		var vertexDepths = vertexDepthRecords.ints;
+		if (!sceneContext.tileIsWater[z][x][y]) {
+			return;
+		}
+
+		Tile tile = tiles[z][x][y];
+		if (tile == null) {
+			return;
+		}
+
+		if (tile.getBridge() != null) {
+			tile = tile.getBridge();
+		}
+		if (tile.getSceneTilePaint() != null) {
+			int[] vertexKeys = tileVertexKeys(sceneContext, tile);
 
-		for (Tile[][] plane : sceneContext.scene.getExtendedTiles()) {
-			for (Tile[] column : plane) {
-				for (Tile tile : column) {
-					if (tile != null) {
-						boolean isBridge = false;
+			int swVertexKey = vertexKeys[0];
+			int seVertexKey = vertexKeys[1];
+			int nwVertexKey = vertexKeys[2];
+			int neVertexKey = vertexKeys[3];
 
-						if (tile.getBridge() != null) {
-							calculateNormalsForTile(sceneContext, tile.getBridge(), false);
-							isBridge = true;
+			recordVertex(vertexDepths, swVertexKey, underwaterDepths[z][x][y]);
+			recordVertex(vertexDepths, seVertexKey, underwaterDepths[z][x + 1][y]);
+			recordVertex(vertexDepths, nwVertexKey, underwaterDepths[z][x][y + 1]);
+			recordVertex(vertexDepths, neVertexKey, underwaterDepths[z][x + 1][y + 1]);
+		}
+		else if (tile.getSceneTileModel() != null)
+		{
+			SceneTileModel sceneTileModel = tile.getSceneTileModel();
+
+			int faceCount = sceneTileModel.getFaceX().length;
+
+			for (int face = 0; face < faceCount; face++)
+			{
+				int[][] vertices = faceVertices(tile, face);
+				int[] vertexKeys = faceVertexKeys(tile, face);
+
+				for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
+				{
+					if (vertices[vertex][0] % LOCAL_TILE_SIZE == 0 &&
+						vertices[vertex][1] % LOCAL_TILE_SIZE == 0
+					) {
+						// The vertex is at the corner of the tile;
+						// simply use the offset in the tile grid array.
+
+						int vX = (vertices[vertex][0] >> LOCAL_COORD_BITS) + sceneContext.sceneOffset;
+						int vY = (vertices[vertex][1] >> LOCAL_COORD_BITS) + sceneContext.sceneOffset;
+
+						recordVertex(vertexDepths, vertexKeys[vertex], underwaterDepths[z][vX][vY]);
+					}
+					else
+					{
+						// If the tile is a tile model and this vertex is shared only by faces that are water,
+						// interpolate between the height offsets at each corner to get the height offset
+						// of the vertex.
+
+						float lerpX = fract(vertices[vertex][0] / (float) LOCAL_TILE_SIZE);
+						float lerpY = fract(vertices[vertex][1] / (float) LOCAL_TILE_SIZE);
+						float northHeightOffset = mix(underwaterDepths[z][x][y + 1], underwaterDepths[z][x + 1][y + 1], lerpX);
+						float southHeightOffset = mix(underwaterDepths[z][x][y], underwaterDepths[z][x + 1][y], lerpX);
+						int heightOffset = (int) mix(southHeightOffset, northHeightOffset, lerpY);
+
+						if (!vertexTerrain.hasFlags(vertexKeys[vertex], FLAG_LAND))
+							recordVertex(vertexDepths, vertexKeys[vertex], heightOffset);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Iterates through all Tiles in a given Scene, calculating vertex normals
+	 * for each one, then stores resulting normal data in the scene's vertex terrain data.
+	 */
+	private long calculateTerrainNormals(SceneContext sceneContext)
+	{
+		Tile[][][] tiles = sceneContext.scene.getExtendedTiles();
+		int sizeY = sceneContext.sizeZ;
+		StripeRecords[] stripeRecords = createStripeRecords(sceneContext.sizeX);
+		long parallelNanos = forEachStripe("calculateTerrainNormals", sceneContext.sizeX, stripeRecords, (records, startX, endX) -> {
+			for (int z = 0; z < MAX_Z; ++z) {
+				var faceNormals = records.get(z);
+				for (int x = startX; x < endX; ++x) {
+					for (int y = 0; y < sizeY; ++y) {
+						Tile tile = tiles[z][x][y];
+						if (tile != null) {
+							boolean isBridge = false;
+
+							if (tile.getBridge() != null) {
+								calculateNormalsForTile(sceneContext, faceNormals, tile.getBridge(), false);
+								isBridge = true;
+							}
+							calculateNormalsForTile(sceneContext, faceNormals, tile, isBridge);
 						}
-						calculateNormalsForTile(sceneContext, tile, isBridge);
 					}
 				}
 			}
+		});
+
+		// accumulate normals in scene order, since each face's normal array is shared by its vertices
+		var vertexTerrain = sceneContext.vertexTerrain;
+		for (int z = 0; z < MAX_Z; ++z) {
+			for (var records : stripeRecords) {
+				var faceNormals = records.get(z).ints;
+				int[] ints = faceNormals.array;
+				for (int i = 0; i < faceNormals.length; i += 6) {
+					int[] vertexNormals = { ints[i + 3], ints[i + 4], ints[i + 5] };
+					for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
+						vertexTerrain.addNormals(ints[i + vertex], vertexNormals);
+				}
+			}
 		}
 
-		sceneContext.vertexTerrainNormals.forEach((key, normal) -> {
+		vertexTerrain.forEachNormals(normal -> {
 			var n = normalize(vec(normal));
 			for (int i = 0; i < 3; i++)
 				normal[i] = GpuIntBuffer.normShort(n[i]);
 		});
+
+		return parallelNanos;
 	}
 
 	/**
-	 * Calculates vertex normals for a given Tile,
-	 * then stores resulting normal data in a HashMap.
+	 * Calculates face normals for a given Tile,
+	 * then records them along with the vertex keys of each face.
 	 *
-	 * @param sceneContext that the tile is associated with
-	 * @param tile         to calculate normals for
-	 * @param isBridge     whether the tile is a bridge tile, i.e. tile above
+	 * @param sceneContext      that the tile is associated with
+	 * @param faceNormalRecords to record the face normals in
+	 * @param tile              to calculate normals for
+	 * @param isBridge          whether the tile is a bridge tile, i.e. tile above
 	 */
-	private void calculateNormalsForTile(SceneContext sceneContext, Tile tile, boolean isBridge)
+	private void calculateNormalsForTile(SceneContext sceneContext, RecordBuffer faceNormalRecords, Tile tile, boolean isBridge)
 	{
 		// Make array of tile's tris with vertices
 		int[][][] faceVertices; // Array of tile's tri vertices
@@ -765,9 +949,9 @@ public class ProceduralGenerator {
 			int[] vertexHeights = new int[]{faceVertices[face][0][2], faceVertices[face][1][2], faceVertices[face][2][2]};
 			if (!isBridge)
 			{
-				vertexHeights[0] += sceneContext.vertexUnderwaterDepth.getOrDefault(faceVertexKeys[face][0], 0);
-				vertexHeights[1] += sceneContext.vertexUnderwaterDepth.getOrDefault(faceVertexKeys[face][1], 0);
-				vertexHeights[2] += sceneContext.vertexUnderwaterDepth.getOrDefault(faceVertexKeys[face][2], 0);
+				vertexHeights[0] += sceneContext.vertexTerrain.getUnderwaterDepth(faceVertexKeys[face][0], 0);
+				vertexHeights[1] += sceneContext.vertexTerrain.getUnderwaterDepth(faceVertexKeys[face][1], 0);
+				vertexHeights[2] += sceneContext.vertexTerrain.getUnderwaterDepth(faceVertexKeys[face][2], 0);
 			}
 
 			int[] vertexNormals = calculateSurfaceNormals(
@@ -788,12 +972,12 @@ public class ProceduralGenerator {
 				)
 			);
 
+			// record the normals, to be accumulated for each vertex
+			var faceNormals = faceNormalRecords.ints.ensureCapacity(6);
 			for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
-			{
-				int vertexKey = faceVertexKeys[face][vertex];
-				// accumulate normals to hashmap
-				sceneContext.vertexTerrainNormals.merge(vertexKey, vertexNormals, (a, b) -> add(a, a, b));
-			}
+				faceNormals.put(faceVertexKeys[face][vertex]);
+			for (int i = 0; i < 3; i++)
+				faceNormals.put(vertexNormals[i]);
 		}
 	}
 
@@ -964,7 +1148,7 @@ public class ProceduralGenerator {
 	}
 
 	/**
-	 * Gets the vertex keys of a Tile Paint tile for use in retrieving data from hashmaps.
+	 * Gets the vertex keys of a Tile Paint tile for use in retrieving vertex terrain data.
 	 * Writes the vertex keys in following order: SW, SE, NW, NE
 	 *
 	 * @param ctx that the tile is from
@@ -0,0 +1,139 @@
+package rs117.hd.scene;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.Nullable;
+import rs117.hd.scene.areas.Area;
+
+/**
+ * Describes which parts of a loaded scene are affected by a change to tile or model overrides,
+ * so only the zones containing affected tiles or objects need to be rebuilt, instead of the whole scene.
+ */
+public class SceneChanges {
+	private boolean all;
+	private boolean allTiles;
+	private boolean allObjects;
+	private final List<TileChange> tiles = new ArrayList<>();
+	private final Set<Integer> objectIds = new HashSet<>();
+
+	private static final class TileChange {
+		final Area area;
+		@Nullable
+		final int[] ids;
+
+		TileChange(Area area, @Nullable int[] ids) {
+			this.area = area;
+			this.ids = ids;
+		}
+	}
+
+	public static SceneChanges all() {
+		var changes = new SceneChanges();
+		changes.all = true;
+		return changes;
+	}
+
+	/**
+	 * @return changes affecting every tile, but no objects
+	 */
+	public static SceneChanges terrain() {
+		var changes = new SceneChanges();
+		changes.allTiles = true;
+		return changes;
+	}
+
+	/**
+	 * @return changes affecting every object, but no tiles
+	 */
+	public static SceneChanges models() {
+		var changes = new SceneChanges();
+		changes.allObjects = true;
+		return changes;
+	}
+
+	public boolean isAll() {
+		return all;
+	}
+
+	public boolean isEmpty() {
+		return !hasTileChanges() && !hasObjectChanges();
+	}
+
+	public boolean hasTileChanges() {
+		return all || allTiles || !tiles.isEmpty();
+	}
+
+	public boolean hasObjectChanges() {
+		return all || allObjects || !objectIds.isEmpty();
+	}
+
+	/**
+	 * Mark tiles within the area as changed, limited to tiles with any of the specified overlay or underlay IDs,
+	 * or all tiles in the area if IDs is null.
+	 */
+	public void addTiles(Area area, @Nullable int[] ids) {
+		if (area != Area.NONE)
+			tiles.add(new TileChange(area, ids));
+	}
+
+	public void addObjects(@Nullable Collection<Integer> ids) {
+		if (ids != null)
+			objectIds.addAll(ids);
+	}
+
+	public boolean affectsTile(int[] worldPos, int overlayId, int underlayId) {
+		if (all || allTiles)
+			return true;
+		for (var change : tiles) {
+			if (!change.area.containsPoint(worldPos))
+				continue;
+			if (change.ids == null)
+				return true;
+			for (int id : change.ids)
+				if (id == overlayId || id == underlayId)
+					return true;
+		}
+		return false;
+	}
+
+	public boolean affectsObject(int id) {
+		return all || allObjects || objectIds.contains(id);
+	}
+
+	/**
+	 * Compare two ordered lists of override entries, where each entry is only considered unchanged if it's equal to
+	 * the entry in the same position relative to the start or end of the list. Since overrides take precedence based
+	 * on their order, everything between the first and last difference is considered changed, which is exact for the
+	 * common case of editing, adding or removing a single entry.
+	 *
+	 * @return the start of the changed range, followed by its end in the old and in the new list, both exclusive
+	 */
+	public static int[] diff(Object[] before, Object[] after) {
+		int maxCommon = Math.min(before.length, after.length);
+		int start = 0;
+		while (start < maxCommon && Objects.equals(before[start], after[start]))
+			start++;
+
+		int endBefore = before.length;
+		int endAfter = after.length;
+		while (endBefore > start && endAfter > start && Objects.equals(before[endBefore - 1], after[endAfter - 1])) {
+			endBefore--;
+			endAfter--;
+		}
+
+		return new int[] { start, endBefore, endAfter };
+	}
+
+	@Override
+	public String toString() {
+		if (all)
+			return "all changes";
+		if (allTiles || allObjects)
+			return allTiles ? "all tiles" : "all objects";
+		return tiles.size() + " tile changes and " + objectIds.size() + " object changes";
+	}
+}
@@ -1,9 +1,9 @@
 package rs117.hd.scene;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import net.runelite.api.*;
@@ -12,7 +12,8 @@ import rs117.hd.scene.areas.AABB;
 import rs117.hd.scene.areas.Area;
 import rs117.hd.scene.environments.Environment;
 import rs117.hd.scene.lights.Light;
-import rs117.hd.scene.materials.Material;
+import rs117.hd.scene.lights.LightGrid;
+import rs117.hd.scene.lights.LightIndex;
 import rs117.hd.scene.tile_overrides.TileOverrideVariables;
 import rs117.hd.utils.HDUtils;
 
@@ -53,21 +54,12 @@ public class SceneContext {
 	// Statistics
 	public int uniqueModels;
 
-	// Terrain data
-	public HashMap<Integer, Integer> vertexTerrainColor;
-	public HashMap<Integer, Material> vertexTerrainTexture;
-	public HashMap<Integer, int[]> vertexTerrainNormals;
-	// Used for overriding potentially low quality vertex colors
-	public HashMap<Integer, Boolean> highPriorityColor;
+	// Terrain data, including colors, materials, normals, and water-related data for each vertex
+	public VertexTerrainData vertexTerrain;
 
 	// Water-related data
 	public boolean[][][] tileIsWater;
-	public HashMap<Integer, Boolean> vertexIsWater;
-	public HashMap<Integer, Boolean> vertexIsLand;
-	public HashMap<Integer, Boolean> vertexIsOverlay;
-	public HashMap<Integer, Boolean> vertexIsUnderlay;
 	public boolean[][][] skipTile;
-	public HashMap<Integer, Integer> vertexUnderwaterDepth;
 	public int[][][] underwaterDepthLevels;
 
 	// Thread safe tile override variables
@@ -75,6 +67,13 @@ public class SceneContext {
 
 	public int numVisibleLights = 0;
 	public final ArrayList<Light> lights = new ArrayList<>();
+	// Lights by their owning TileObject, Actor or Projectile, which should be kept in sync with the list above
+	public final LightIndex lightIndex = new LightIndex();
+	// Lights which need updating every frame, and static lights bucketed by position, which only need updating near the camera
+	public final ArrayList<Light> dynamicLights = new ArrayList<>();
+	public final LightGrid staticLights = new LightGrid();
+	// Lights to render this frame, ordered by distance
+	public final ArrayList<Light> visibleLights = new ArrayList<>();
 	public final HashSet<Projectile> knownProjectiles = new HashSet<>();
 	public final ArrayList<TileObject> lightSpawnsToHandleOnClientThread = new ArrayList<>();
 
@@ -98,6 +97,51 @@ public class SceneContext {
 
 	public synchronized void destroy() {}
 
+	public void addLight(Light light) {
+		lights.add(light);
+		lightIndex.add(light);
+		if (light.isStatic()) {
+			light.updatePosition();
+			staticLights.add(light);
+		} else {
+			dynamicLights.add(light);
+		}
+	}
+
+	/**
+	 * Mark the light for removal, after which it needs to be updated every frame until it has faded out.
+	 */
+	public void markLightForRemoval(Light light) {
+		light.markedForRemoval = true;
+		if (light.gridBucket != -1) {
+			staticLights.remove(light);
+			dynamicLights.add(light);
+		}
+	}
+
+	public void removeLights(Set<Light> lightsToRemove) {
+		if (lightsToRemove.isEmpty())
+			return;
+
+		for (var light : lightsToRemove) {
+			lightIndex.remove(light);
+			staticLights.remove(light);
+		}
+		lights.removeIf(lightsToRemove::contains);
+		dynamicLights.removeIf(lightsToRemove::contains);
+		visibleLights.removeIf(lightsToRemove::contains);
+		numVisibleLights = visibleLights.size();
+	}
+
+	public void clearLights() {
+		lights.clear();
+		lightIndex.clear();
+		dynamicLights.clear();
+		staticLights.clear();
+		visibleLights.clear();
+		numVisibleLights = 0;
+	}
+
 	/**
 	 * Transform local coordinates into world coordinates.
 	 * If the {@link LocalPoint} is not in the scene, this returns untranslated coordinates when in instances.
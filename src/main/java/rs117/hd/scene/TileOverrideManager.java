@@ -2,12 +2,11 @@ package rs117.hd.scene;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.gson.JsonElement;
 import java.io.IOException;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nonnull;
@@ -20,9 +19,11 @@ import net.runelite.client.callback.ClientThread;
 import rs117.hd.HdPlugin;
 import rs117.hd.renderer.zone.SceneManager;
 import rs117.hd.scene.areas.Area;
+import rs117.hd.scene.areas.RegionIndex;
 import rs117.hd.scene.ground_materials.GroundMaterial;
 import rs117.hd.scene.tile_overrides.TileOverride;
 import rs117.hd.utils.FileWatcher;
+import rs117.hd.utils.JsonSnapshot;
 import rs117.hd.utils.Props;
 import rs117.hd.utils.ResourcePath;
 
@@ -33,7 +34,7 @@ import static rs117.hd.utils.ResourcePath.path;
 @Slf4j
 @Singleton
 public class TileOverrideManager {
-	private static final ResourcePath TILE_OVERRIDES_PATH = Props
+	public static final ResourcePath TILE_OVERRIDES_PATH = Props
 		.getFile("rlhd.tile-overrides-path", () -> path(TileOverrideManager.class, "tile_overrides.json"));
 
 	private static final ThreadLocal<int[]> OVERLAY_UNDERLAY_IDS = ThreadLocal.withInitial(() -> new int[2]);
@@ -52,11 +53,14 @@ public class TileOverrideManager {
 
 	private FileWatcher.UnregisterCallback fileWatcher;
 	private boolean trackReplacements;
-	private List<TileOverride> anyMatchOverrides;
+	private RegionIndex<TileOverride> anyMatchOverrides;
 	private ListMultimap<Integer, TileOverride> idMatchOverrides;
+	// The raw entries and resulting overrides from the previous load, for finding which tiles are affected by edits
+	private JsonElement[] previousEntries;
+	private TileOverride[] previousOverrides;
 
 	public void startUp() {
-		fileWatcher = TILE_OVERRIDES_PATH.watch((path, first) -> clientThread.invoke(() -> reload(first)));
+		fileWatcher = TILE_OVERRIDES_PATH.watch((path, first) -> clientThread.invoke(() -> reload(first, true)));
 	}
 
 	public void shutDown() {
@@ -65,16 +69,34 @@ public class TileOverrideManager {
 		fileWatcher = null;
 		anyMatchOverrides = null;
 		idMatchOverrides = null;
+		previousEntries = null;
+		previousOverrides = null;
 	}
 
 	public void reload(boolean skipSceneReload) {
+		reload(skipSceneReload, false);
+	}
+
+	/**
+	 * @param onlyChanges whether only the tiles affected by changed entries need to be rebuilt,
+	 *                    which is only the case if nothing other than the tile overrides themselves has changed
+	 */
+	private void reload(boolean skipSceneReload, boolean onlyChanges) {
 		assert client.isClientThread();
 
+		var changes = SceneChanges.all();
 		try {
 			sceneManager.getLoadingLock().lock();
 			sceneManager.completeAllStreaming();
 
-			TileOverride[] allOverrides = TILE_OVERRIDES_PATH.loadJson(plugin.getGson(), TileOverride[].class);
+			var json = JsonSnapshot.load(TILE_OVERRIDES_PATH);
+			if (json == null || !json.isJsonArray())
+				throw new IOException("Empty or invalid: " + TILE_OVERRIDES_PATH);
+			JsonElement[] entries = new JsonElement[json.getAsJsonArray().size()];
+			for (int i = 0; i < entries.length; i++)
+				entries[i] = json.getAsJsonArray().get(i);
+
+			TileOverride[] allOverrides = plugin.getGson().fromJson(json, TileOverride[].class);
 			if (allOverrides == null)
 				throw new IOException("Empty or invalid: " + TILE_OVERRIDES_PATH);
 
@@ -90,13 +112,14 @@ public class TileOverrideManager {
 
 			checkForReplacementLoops(allOverrides);
 
-			List<TileOverride> anyMatch = new ArrayList<>();
+			RegionIndex<TileOverride> anyMatch = new RegionIndex<>();
 			ListMultimap<Integer, TileOverride> idMatch = ArrayListMultimap.create();
 
 			var tileOverrideVars = plugin.vars.aliases(Map.of(
 				"textures", "groundTextures"
 			));
 
+			TileOverride[] loadedOverrides = new TileOverride[allOverrides.length];
 			for (int i = 0; i < allOverrides.length; i++) {
 				var override = allOverrides[i];
 				try {
@@ -110,18 +133,27 @@ public class TileOverrideManager {
 				if (override.area == Area.NONE)
 					continue;
 
+				loadedOverrides[i] = override;
+
 				override.replacement = trackReplacements ? override : override.resolveConstantReplacements();
 				if (override.ids != null) {
 					for (int id : override.ids)
 						idMatch.put(id, override);
 				} else {
-					anyMatch.add(override);
+					// Overrides are added in order, so the first match is also the one with the lowest index
+					anyMatch.addAll(override.area.aabbs, override);
+					anyMatch.addAll(override.area.unhideAreas, override);
 				}
 			}
 
 			anyMatchOverrides = anyMatch;
 			idMatchOverrides = idMatch;
 
+			if (onlyChanges && previousEntries != null)
+				changes = findChanges(previousEntries, previousOverrides, entries, loadedOverrides);
+			previousEntries = entries;
+			previousOverrides = loadedOverrides;
+
 			log.debug("Loaded {} tile overrides", allOverrides.length);
 		} catch (IOException ex) {
 			log.error("Failed to load tile overrides:", ex);
@@ -133,10 +165,54 @@ public class TileOverrideManager {
 		// Update the reference, since the underlying dirt materials may have changed
 		TileOverride.NONE.groundMaterial = GroundMaterial.DIRT;
 
-		if (!skipSceneReload) {
-			plugin.renderer.clearCaches();
-			plugin.renderer.reloadScene();
+		if (!skipSceneReload)
+			plugin.renderer.invalidateScene(changes);
+	}
+
+	private static SceneChanges findChanges(
+		JsonElement[] oldEntries,
+		TileOverride[] oldOverrides,
+		JsonElement[] newEntries,
+		TileOverride[] newOverrides
+	) {
+		var changes = new SceneChanges();
+		int[] range = SceneChanges.diff(oldEntries, newEntries);
+
+		// Both the old and new versions of changed overrides determine which tiles need to be rebuilt
+		HashSet<TileOverride> changed = new HashSet<>();
+		for (int i = range[0]; i < range[1]; i++)
+			if (oldOverrides[i] != null)
+				changed.add(oldOverrides[i]);
+		for (int i = range[0]; i < range[2]; i++)
+			if (newOverrides[i] != null)
+				changed.add(newOverrides[i]);
+
+		// Overrides which may be replaced by a changed override are also affected, along with anything replaced by them
+		HashSet<String> changedNames = new HashSet<>();
+		for (var override : changed)
+			if (override.name != null)
+				changedNames.add(override.name);
+		boolean foundMore = !changedNames.isEmpty();
+		while (foundMore) {
+			foundMore = false;
+			for (var override : newOverrides) {
+				if (override == null || override.rawReplacements == null || changed.contains(override))
+					continue;
+				for (String name : override.rawReplacements.keySet()) {
+					if (changedNames.contains(name)) {
+						changed.add(override);
+						if (override.name != null)
+							changedNames.add(override.name);
+						foundMore = true;
+						break;
+					}
+				}
+			}
 		}
+
+		for (var override : changed)
+			changes.addTiles(override.area, override.ids);
+		return changes;
 	}
 
 	private void checkForReplacementLoops(TileOverride[] allOverrides) {
@@ -262,14 +338,9 @@ public class TileOverrideManager {
 			}
 		}
 
-		for (var entry : anyMatchOverrides) {
-			if (entry.index > index)
-				break;
-			if (entry.area.containsPoint(worldPos)) {
-				match = entry.replacement;
-				break;
-			}
-		}
+		var entry = anyMatchOverrides.findFirst(worldPos);
+		if (entry != null && entry.index <= index)
+			match = entry.replacement;
 
 		return match;
 	}
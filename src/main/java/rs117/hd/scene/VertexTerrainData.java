@@ -0,0 +1,220 @@
+package rs117.hd.scene;
+
+import java.util.function.Consumer;
+import rs117.hd.scene.materials.Material;
+
+import static rs117.hd.utils.HDUtils.ceilPow2;
+
+/**
+ * Per-vertex terrain data for a scene, keyed by the vertex hashes from {@link ProceduralGenerator#tileVertexKeys}
+ * and {@link ProceduralGenerator#faceVertexKeys}. Everything is stored in a single open-addressing table with parallel
+ * primitive arrays, so looking up a vertex takes a single probe, and neither keys nor values are boxed.
+ * Writes are not thread-safe, but the data can be read concurrently once it's been generated.
+ */
+public final class VertexTerrainData {
+	public static final int FLAG_WATER = 1;
+	public static final int FLAG_LAND = 1 << 1;
+	public static final int FLAG_OVERLAY = 1 << 2;
+	public static final int FLAG_UNDERLAY = 1 << 3;
+	public static final int FLAG_HIGH_PRIORITY_COLOR = 1 << 4;
+
+	private static final int FLAG_COLOR = 1 << 5;
+	private static final int FLAG_MATERIAL = 1 << 6;
+	private static final int FLAG_UNDERWATER_DEPTH = 1 << 7;
+	private static final int FLAG_OCCUPIED = 1 << 8;
+
+	private static final float MAX_LOAD_FACTOR = .5f;
+
+	private int[] keys;
+	private short[] flags;
+	private int[] colors;
+	private int[] underwaterDepths;
+	private Material[] materials;
+	private int[][] normals;
+	private int mask;
+	private int size;
+	private int resizeThreshold;
+
+	public VertexTerrainData(int expectedSize) {
+		allocate(ceilPow2(Math.max(16, (int) (expectedSize / MAX_LOAD_FACTOR))));
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		flags = new short[capacity];
+		colors = new int[capacity];
+		underwaterDepths = new int[capacity];
+		materials = new Material[capacity];
+		normals = new int[capacity][];
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+	}
+
+	private static int mix(int key) {
+		// MurmurHash3 32-bit finalizer, since vertex hashes of neighbouring vertices differ only slightly
+		key = (key ^ (key >>> 16)) * 0x85ebca6b;
+		key = (key ^ (key >>> 13)) * 0xc2b2ae35;
+		return key ^ (key >>> 16);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private int find(int key) {
+		int i = mix(key) & mask;
+		while (flags[i] != 0) {
+			if (keys[i] == key)
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int findOrInsert(int key) {
+		int i = mix(key) & mask;
+		while (flags[i] != 0) {
+			if (keys[i] == key)
+				return i;
+			i = (i + 1) & mask;
+		}
+
+		keys[i] = key;
+		flags[i] = FLAG_OCCUPIED;
+		if (++size > resizeThreshold) {
+			rehash(keys.length * 2);
+			return find(key);
+		}
+		return i;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		short[] oldFlags = flags;
+		int[] oldColors = colors;
+		int[] oldUnderwaterDepths = underwaterDepths;
+		Material[] oldMaterials = materials;
+		int[][] oldNormals = normals;
+		allocate(capacity);
+
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldFlags[j] == 0)
+				continue;
+			int i = mix(oldKeys[j]) & mask;
+			while (flags[i] != 0)
+				i = (i + 1) & mask;
+			keys[i] = oldKeys[j];
+			flags[i] = oldFlags[j];
+			colors[i] = oldColors[j];
+			underwaterDepths[i] = oldUnderwaterDepths[j];
+			materials[i] = oldMaterials[j];
+			normals[i] = oldNormals[j];
+		}
+	}
+
+	/**
+	 * @return true if the vertex has all the specified flags
+	 */
+	public boolean hasFlags(int key, int flagMask) {
+		int i = find(key);
+		return i != -1 && (flags[i] & flagMask) == flagMask;
+	}
+
+	public void addFlags(int key, int flagMask) {
+		int i = findOrInsert(key);
+		flags[i] |= (short) flagMask;
+	}
+
+	public boolean hasColor(int key) {
+		return hasFlags(key, FLAG_COLOR);
+	}
+
+	public int getColor(int key, int defaultColor) {
+		int i = find(key);
+		return i != -1 && (flags[i] & FLAG_COLOR) != 0 ? colors[i] : defaultColor;
+	}
+
+	public void setColor(int key, int color) {
+		int i = findOrInsert(key);
+		flags[i] |= FLAG_COLOR;
+		colors[i] = color;
+	}
+
+	public boolean hasMaterial(int key) {
+		return hasFlags(key, FLAG_MATERIAL);
+	}
+
+	public Material getMaterial(int key, Material defaultMaterial) {
+		int i = find(key);
+		return i != -1 && (flags[i] & FLAG_MATERIAL) != 0 ? materials[i] : defaultMaterial;
+	}
+
+	public void setMaterial(int key, Material material) {
+		int i = findOrInsert(key);
+		flags[i] |= FLAG_MATERIAL;
+		materials[i] = material;
+	}
+
+	public int getUnderwaterDepth(int key, int defaultDepth) {
+		int i = find(key);
+		return i != -1 && (flags[i] & FLAG_UNDERWATER_DEPTH) != 0 ? underwaterDepths[i] : defaultDepth;
+	}
+
+	public void setUnderwaterDepth(int key, int depth) {
+		int i = findOrInsert(key);
+		flags[i] |= FLAG_UNDERWATER_DEPTH;
+		underwaterDepths[i] = depth;
+	}
+
+	/**
+	 * The returned array is shared, and must not be modified once the normals have been generated.
+	 */
+	public int[] getNormals(int key, int[] defaultNormals) {
+		int i = find(key);
+		if (i == -1)
+			return defaultNormals;
+		int[] n = normals[i];
+		return n == null ? defaultNormals : n;
+	}
+
+	/**
+	 * Accumulate normals for the vertex. The first array added for each vertex is kept and added to in-place.
+	 */
+	public void addNormals(int key, int[] vertexNormals) {
+		int i = findOrInsert(key);
+		int[] n = normals[i];
+		if (n == null) {
+			normals[i] = vertexNormals;
+		} else {
+			n[0] += vertexNormals[0];
+			n[1] += vertexNormals[1];
+			n[2] += vertexNormals[2];
+		}
+	}
+
+	/**
+	 * @return a hash of everything stored for the vertex, or 0 if nothing is stored
+	 */
+	public long hashVertex(int key) {
+		int i = find(key);
+		if (i == -1)
+			return 0;
+		long h = flags[i];
+		if ((flags[i] & FLAG_COLOR) != 0)
+			h = h * 31 + colors[i];
+		if ((flags[i] & FLAG_UNDERWATER_DEPTH) != 0)
+			h = h * 31 + underwaterDepths[i];
+		if ((flags[i] & FLAG_MATERIAL) != 0 && materials[i] != null)
+			h = h * 31 + materials[i].name.hashCode();
+		int[] n = normals[i];
+		if (n != null)
+			h = ((h * 31 + n[0]) * 31 + n[1]) * 31 + n[2];
+		return h;
+	}
+
+	public void forEachNormals(Consumer<int[]> consumer) {
+		for (int[] n : normals)
+			if (n != null)
+				consumer.accept(n);
+	}
+}
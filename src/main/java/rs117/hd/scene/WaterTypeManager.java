@@ -36,6 +36,7 @@ import rs117.hd.renderer.zone.SceneManager;
 import rs117.hd.scene.materials.Material;
 import rs117.hd.scene.water_types.WaterType;
 import rs117.hd.utils.FileWatcher;
+import rs117.hd.utils.JsonSnapshot;
 import rs117.hd.utils.Props;
 import rs117.hd.utils.ResourcePath;
 
@@ -45,7 +46,7 @@ import static rs117.hd.utils.ResourcePath.path;
 @Slf4j
 @Singleton
 public class WaterTypeManager {
-	private static final ResourcePath WATER_TYPES_PATH = Props
+	public static final ResourcePath WATER_TYPES_PATH = Props
 		.getFile("rlhd.water-types-path", () -> path(WaterTypeManager.class, "water_types.json"));
 
 	@Inject
@@ -79,7 +80,7 @@ public class WaterTypeManager {
 				sceneManager.getLoadingLock().lock();
 				sceneManager.completeAllStreaming();
 
-				var rawWaterTypes = path.loadJson(plugin.getGson(), WaterType[].class);
+				var rawWaterTypes = JsonSnapshot.loadJson(plugin.getGson(), path, WaterType[].class);
 				if (rawWaterTypes == null)
 					throw new IOException("Empty or invalid: " + path);
 				log.debug("Loaded {} water types", rawWaterTypes.length);
@@ -27,6 +27,11 @@ public class Area {
 
 	public transient AABB[] aabbs;
 	private transient boolean normalized;
+	// Spatial indexes for faster point queries, along with the arrays they were built from
+	private transient RegionIndex<AABB> aabbIndex;
+	private transient RegionIndex<AABB> unhideIndex;
+	private transient AABB[] indexedAabbs;
+	private transient AABB[] indexedUnhideAreas;
 
 	public Area(String name) {
 		this.name = name;
@@ -67,19 +72,34 @@ public class Area {
 
 		if (unhideAreas == null)
 			unhideAreas = new AABB[0];
+
+		aabbIndex = buildIndex(indexedAabbs = this.aabbs);
+		unhideIndex = buildIndex(indexedUnhideAreas = unhideAreas);
 	}
 
-	public boolean containsPoint(boolean includeUnhiding, int... worldPoint) {
+	private static RegionIndex<AABB> buildIndex(AABB[] aabbs) {
+		var index = new RegionIndex<AABB>();
+		for (var aabb : aabbs)
+			index.add(aabb, aabb);
+		return index;
+	}
+
+	private static boolean containsPoint(AABB[] aabbs, RegionIndex<AABB> index, AABB[] indexedAabbs, int[] worldPoint) {
+		// The AABBs may have been replaced since normalization, in which case the index is stale
+		if (index != null && aabbs == indexedAabbs)
+			return index.contains(worldPoint);
 		for (var aabb : aabbs)
 			if (aabb.contains(worldPoint))
 				return true;
-		if (includeUnhiding)
-			for (var aabb : unhideAreas)
-				if (aabb.contains(worldPoint))
-					return true;
 		return false;
 	}
 
+	public boolean containsPoint(boolean includeUnhiding, int... worldPoint) {
+		return
+			containsPoint(aabbs, aabbIndex, indexedAabbs, worldPoint) ||
+			includeUnhiding && containsPoint(unhideAreas, unhideIndex, indexedUnhideAreas, worldPoint);
+	}
+
 	public boolean containsPoint(int... worldPoint) {
 		return containsPoint(true, worldPoint);
 	}
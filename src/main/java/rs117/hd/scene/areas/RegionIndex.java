@@ -0,0 +1,133 @@
+package rs117.hd.scene.areas;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import rs117.hd.utils.collections.PrimitiveIntArray;
+import rs117.hd.utils.collections.PrimitiveLongHashMap;
+
+/**
+ * Spatial index for finding the first of many AABBs containing a point, without testing each of them in turn.
+ * Entries are bucketed by the 64x64 map regions they overlap, and are checked in insertion order, so lookups return
+ * the same result as a linear scan over all entries. Entries extending beyond the map, or spanning a large number of
+ * regions, are instead checked on every lookup.
+ * Adding entries is not thread-safe, but lookups may be performed concurrently once the index has been built.
+ */
+public final class RegionIndex<T> {
+	private static final int REGION_SHIFT = 6;
+	private static final int MAX_REGION_COORD = 0xFF;
+	// Entries spanning more regions than this are cheaper to check on every lookup than to add to each bucket
+	private static final int MAX_BUCKETED_REGIONS = 64;
+	// Below this many entries, scanning all of them is faster than looking up a bucket
+	private static final int LINEAR_SCAN_THRESHOLD = 8;
+
+	private final PrimitiveLongHashMap<PrimitiveIntArray> buckets = new PrimitiveLongHashMap<>();
+	private final PrimitiveIntArray unbucketed = new PrimitiveIntArray();
+	private AABB[] aabbs = new AABB[16];
+	private Object[] values = new Object[16];
+	private int size;
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void add(AABB aabb, T value) {
+		assert value != null : "null values are not supported";
+		if (size == aabbs.length) {
+			aabbs = Arrays.copyOf(aabbs, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+
+		int index = size++;
+		aabbs[index] = aabb;
+		values[index] = value;
+
+		// Use long math, since unbounded AABBs span the entire int range
+		long minRegionX = (long) aabb.minX >> REGION_SHIFT;
+		long minRegionY = (long) aabb.minY >> REGION_SHIFT;
+		long maxRegionX = (long) aabb.maxX >> REGION_SHIFT;
+		long maxRegionY = (long) aabb.maxY >> REGION_SHIFT;
+		long regionCount = (maxRegionX - minRegionX + 1) * (maxRegionY - minRegionY + 1);
+		if (minRegionX < 0 || minRegionY < 0 || maxRegionX > MAX_REGION_COORD || maxRegionY > MAX_REGION_COORD ||
+			regionCount > MAX_BUCKETED_REGIONS
+		) {
+			unbucketed.ensureCapacity(1).put(index);
+			return;
+		}
+
+		for (int regionX = (int) minRegionX; regionX <= maxRegionX; regionX++) {
+			for (int regionY = (int) minRegionY; regionY <= maxRegionY; regionY++) {
+				long key = regionKey(regionX, regionY);
+				var bucket = buckets.get(key);
+				if (bucket == null)
+					buckets.put(key, bucket = new PrimitiveIntArray());
+				// Entries are added in order, so each bucket remains sorted by index
+				bucket.ensureCapacity(1).put(index);
+			}
+		}
+	}
+
+	public void addAll(AABB[] aabbs, T value) {
+		for (var aabb : aabbs)
+			add(aabb, value);
+	}
+
+	/**
+	 * Find the value of the earliest added entry whose AABB contains the specified point.
+	 *
+	 * @param worldPos X, Y and optionally a plane
+	 * @return the matching value, or null if no entry contains the point
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public T findFirst(int... worldPos) {
+		if (size <= LINEAR_SCAN_THRESHOLD) {
+			for (int i = 0; i < size; i++)
+				if (aabbs[i].contains(worldPos))
+					return (T) values[i];
+			return null;
+		}
+
+		int[] a = unbucketed.array;
+		int aLength = unbucketed.length;
+		int[] b = null;
+		int bLength = 0;
+
+		// Points outside the map can only be contained by unbucketed entries
+		int regionX = worldPos[0] >> REGION_SHIFT;
+		int regionY = worldPos[1] >> REGION_SHIFT;
+		if (0 <= regionX && regionX <= MAX_REGION_COORD && 0 <= regionY && regionY <= MAX_REGION_COORD) {
+			var bucket = buckets.get(regionKey(regionX, regionY));
+			if (bucket != null) {
+				b = bucket.array;
+				bLength = bucket.length;
+			}
+		}
+
+		// Merge both sorted lists of candidates, to check them in insertion order
+		int i = 0, j = 0;
+		while (i < aLength || j < bLength) {
+			int index;
+			if (j == bLength || i < aLength && a[i] < b[j]) {
+				index = a[i++];
+			} else {
+				index = b[j++];
+			}
+			if (aabbs[index].contains(worldPos))
+				return (T) values[index];
+		}
+
+		return null;
+	}
+
+	public boolean contains(int... worldPos) {
+		return findFirst(worldPos) != null;
+	}
+
+	private static long regionKey(int regionX, int regionY) {
+		return regionX << 8 | regionY;
+	}
+}
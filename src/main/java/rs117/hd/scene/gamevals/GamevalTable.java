@@ -0,0 +1,92 @@
+package rs117.hd.scene.gamevals;
+
+import com.google.gson.JsonObject;
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+import javax.annotation.Nullable;
+
+/**
+ * Compact, immutable mapping between gameval names and IDs for a single category.
+ * Names are stored in a sorted string table with their IDs in parallel, and a second ID-sorted index allows reverse
+ * lookups by binary search, without keeping any boxed keys or hash map entries around.
+ * Safe to share between threads.
+ */
+public final class GamevalTable {
+	public static final GamevalTable EMPTY = new GamevalTable(new String[0], new int[0]);
+
+	// Sorted by name
+	private final String[] names;
+	private final int[] ids;
+	// Sorted by ID, and by name for duplicate IDs
+	private final int[] sortedIds;
+	private final int[] nameIndices;
+
+	private GamevalTable(String[] names, int[] ids) {
+		this.names = names;
+		this.ids = ids;
+
+		int n = names.length;
+		long[] order = new long[n];
+		for (int i = 0; i < n; i++)
+			order[i] = (long) ids[i] << 32 | i;
+		// Sorting signed IDs in the high bits, with name indices in the low bits, keeps duplicate IDs ordered by name
+		Arrays.sort(order);
+
+		sortedIds = new int[n];
+		nameIndices = new int[n];
+		for (int i = 0; i < n; i++) {
+			sortedIds[i] = (int) (order[i] >> 32);
+			nameIndices[i] = (int) order[i];
+		}
+	}
+
+	public static GamevalTable fromJson(JsonObject json) {
+		int n = json.size();
+		String[] names = json.keySet().toArray(new String[n]);
+		Arrays.sort(names);
+
+		int[] ids = new int[n];
+		for (int i = 0; i < n; i++)
+			ids[i] = json.get(names[i]).getAsInt();
+
+		return new GamevalTable(names, ids);
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * @return the ID of the gameval with the specified name, or -1 if there is none
+	 */
+	public int getId(String name) {
+		int i = Arrays.binarySearch(names, name);
+		return i < 0 ? -1 : ids[i];
+	}
+
+	public boolean containsName(String name) {
+		return Arrays.binarySearch(names, name) >= 0;
+	}
+
+	/**
+	 * @return the alphabetically first gameval name with the specified ID, or null if there is none
+	 */
+	@Nullable
+	public String getName(int id) {
+		int i = Arrays.binarySearch(sortedIds, id);
+		if (i < 0)
+			return null;
+		// Step back to the first of any duplicate IDs
+		while (i > 0 && sortedIds[i - 1] == id)
+			i--;
+		return names[nameIndices[i]];
+	}
+
+	/**
+	 * Iterate over all gamevals in alphabetical order.
+	 */
+	public void forEach(ObjIntConsumer<String> consumer) {
+		for (int i = 0; i < names.length; i++)
+			consumer.accept(names[i], ids[i]);
+	}
+}
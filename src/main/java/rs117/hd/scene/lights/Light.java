@@ -1,16 +1,23 @@
 package rs117.hd.scene.lights;
 
+import java.util.Comparator;
+import java.util.List;
 import net.runelite.api.*;
 import net.runelite.api.coords.*;
 
+import static net.runelite.api.Perspective.*;
 import static rs117.hd.utils.MathUtils.*;
 
 public class Light
 {
 	public static final float VISIBILITY_FADE = 0.064f;
 
+	private static final Comparator<Light> NEAREST_FIRST = (a, b) -> Float.compare(a.distanceSquared, b.distanceSquared);
+
 	public final float randomOffset = RAND.nextFloat();
 	public final LightDefinition def;
+	// The largest radius the light may reach while animating
+	public final float maxRadius;
 
 	public float radius;
 	public float strength;
@@ -51,6 +58,10 @@ public class Light
 	public float[] pos = new float[3];
 	public int orientation;
 	public float distanceSquared;
+	// Client time of the last update, or -1 if the light hasn't been updated yet
+	public double lastUpdatedAt = -1;
+	// Index of the spatial grid bucket containing the light, or -1 if the light is updated every frame
+	public int gridBucket = -1;
 
 	public Actor actor;
 	public Projectile projectile;
@@ -79,6 +90,18 @@ public class Light
 		if (def.type == LightType.PULSE)
 			animation = (float) Math.random();
 
+		switch (def.type) {
+			case FLICKER:
+				maxRadius = def.radius * 1.5f;
+				break;
+			case PULSE:
+				maxRadius = def.radius * (1 + def.range / 100f);
+				break;
+			default:
+				maxRadius = def.radius;
+				break;
+		}
+
 		// Old way of setting a fixed lifetime
 		if (def.fixedDespawnTime)
 			lifetime = spawnDelay + despawnDelay;
@@ -103,6 +126,99 @@ public class Light
 		}
 	}
 
+	/**
+	 * Lights which aren't attached to anything that moves or animates only need their position computed once.
+	 */
+	public boolean isStatic() {
+		return actor == null && projectile == null && graphicsObject == null && !animationSpecific;
+	}
+
+	/**
+	 * Compute the light's position from its origin, offset and alignment relative to its orientation.
+	 */
+	public void updatePosition() {
+		pos[0] = origin[0];
+		pos[1] = origin[1];
+		pos[2] = origin[2];
+
+		int orientation = 0;
+		if (alignment.relative)
+			orientation = mod(this.orientation + alignment.orientation, 2048);
+
+		if (alignment == Alignment.CUSTOM) {
+			// orientation 0 = south
+			float sin = sin(orientation * JAU_TO_RAD);
+			float cos = cos(orientation * JAU_TO_RAD);
+			float x = offset[0];
+			float z = offset[2];
+			pos[0] += -cos * x - sin * z;
+			pos[1] += offset[1];
+			pos[2] += -cos * z + sin * x;
+		} else {
+			int localSizeX = sizeX * LOCAL_TILE_SIZE;
+			int localSizeY = sizeY * LOCAL_TILE_SIZE;
+
+			float radius = localSizeX / 2f;
+			if (!alignment.radial)
+				radius = sqrt(localSizeX * localSizeX + localSizeX * localSizeX) / 2;
+
+			float sine = SINE[orientation] / 65536f;
+			float cosine = COSINE[orientation] / 65536f;
+			cosine /= (float) localSizeX / (float) localSizeY;
+
+			int offsetX = (int) (radius * sine);
+			int offsetY = (int) (radius * cosine);
+
+			pos[0] += offsetX;
+			pos[2] += offsetY;
+		}
+	}
+
+	/**
+	 * Partially sort the lights, so the k lights nearest to the focal point come first, ordered by distance.
+	 * The order of the remaining lights is unspecified.
+	 *
+	 * @return the number of lights moved to the front of the list
+	 */
+	public static int selectNearest(List<Light> lights, int k) {
+		int n = lights.size();
+		k = min(k, n);
+		if (k <= 0)
+			return 0;
+
+		if (k < n) {
+			// Quickselect, so the lights before index k are the k nearest
+			int lo = 0;
+			int hi = n - 1;
+			while (lo < hi) {
+				float pivot = lights.get((lo + hi) >>> 1).distanceSquared;
+				int i = lo;
+				int j = hi;
+				while (i <= j) {
+					while (lights.get(i).distanceSquared < pivot)
+						i++;
+					while (lights.get(j).distanceSquared > pivot)
+						j--;
+					if (i <= j) {
+						var tmp = lights.get(i);
+						lights.set(i++, lights.get(j));
+						lights.set(j--, tmp);
+					}
+				}
+				if (k - 1 <= j) {
+					hi = j;
+				} else if (k - 1 >= i) {
+					lo = i;
+				} else {
+					break;
+				}
+			}
+		}
+
+		lights.subList(0, k).sort(NEAREST_FIRST);
+		return k;
+	}
+
 	public void toggleTemporaryVisibility(boolean changedPlanes) {
 		hiddenTemporarily = !hiddenTemporarily;
 		// If visibility changes due to something other than changing planes, and the light didn't spawn this frame, fade in or out
@@ -0,0 +1,216 @@
+package rs117.hd.scene.lights;
+
+import java.util.Arrays;
+import lombok.Getter;
+
+import static net.runelite.api.Constants.*;
+import static net.runelite.api.Perspective.*;
+import static rs117.hd.HdPlugin.NEAR_PLANE;
+import static rs117.hd.utils.MathUtils.*;
+
+/**
+ * Bins lights into a screen-space froxel grid on the CPU, as a fallback for when GPU tiled lighting is unavailable.
+ * Tiles are evenly spaced across the screen, while depth slices are spaced logarithmically between
+ * {@link #DEPTH_NEAR} and {@link #DEPTH_FAR}, matching the lookup in {@code utils/lights.glsl}.
+ * <p>
+ * The binned data is a single int array, starting with an {@code [offset, count]} pair per cluster, followed by the
+ * light indices referenced by each pair. Lights are assumed to be sorted by priority, so when a cluster exceeds
+ * {@link #MAX_LIGHTS_PER_CLUSTER}, the lights which came first are kept.
+ * <p>
+ * Snapshotting lights and binning them are split up, so binning can run on a worker thread without touching any
+ * state owned by the client thread.
+ */
+public class LightClusters {
+	public static final int GRID_X = 16;
+	public static final int GRID_Y = 9;
+	public static final int GRID_Z = 24;
+	public static final int CLUSTER_COUNT = GRID_X * GRID_Y * GRID_Z;
+	public static final int MAX_LIGHTS_PER_CLUSTER = 32;
+
+	public static final float DEPTH_NEAR = NEAR_PLANE;
+	public static final float DEPTH_FAR = EXTENDED_SCENE_SIZE * LOCAL_TILE_SIZE;
+	private static final float DEPTH_SCALE = GRID_Z / (float) Math.log(DEPTH_FAR / DEPTH_NEAR);
+
+	// Below this clip space W, the projected bounds are unreliable, so the light is assumed to cover the whole screen
+	private static final float MIN_W = 1e-3f;
+
+	private final float[] viewProj = new float[16];
+	private float[] lights = new float[0];
+	@Getter
+	private int lightCount;
+
+	// Min & max cluster coordinates for each light, or -1 if the light is off-screen
+	private int[] bounds = new int[0];
+	private final int[] clusterCounts = new int[CLUSTER_COUNT];
+
+	@Getter
+	private int[] data = new int[CLUSTER_COUNT * 2];
+	@Getter
+	private int dataLength = CLUSTER_COUNT * 2;
+
+	/**
+	 * Begin a new snapshot of lights to bin.
+	 *
+	 * @param viewProj   column-major view-projection matrix, with clip space W equal to view space depth for perspective
+	 * @param lightCount number of lights which will be set
+	 */
+	public void prepare(float[] viewProj, int lightCount) {
+		System.arraycopy(viewProj, 0, this.viewProj, 0, 16);
+		this.lightCount = lightCount;
+		if (lights.length < lightCount * 4)
+			lights = new float[lightCount * 4];
+	}
+
+	public void setLight(int index, float x, float y, float z, float radius) {
+		assert index < lightCount;
+		int i = index * 4;
+		lights[i] = x;
+		lights[i + 1] = y;
+		lights[i + 2] = z;
+		lights[i + 3] = radius;
+	}
+
+	public static int getDepthSlice(float depth) {
+		if (depth <= DEPTH_NEAR)
+			return 0;
+		return min(GRID_Z - 1, (int) (Math.log(depth / DEPTH_NEAR) * DEPTH_SCALE));
+	}
+
+	public static int getClusterIndex(int x, int y, int z) {
+		return (z * GRID_Y + y) * GRID_X + x;
+	}
+
+	public int getClusterOffset(int cluster) {
+		return data[cluster * 2];
+	}
+
+	public int getClusterLightCount(int cluster) {
+		return data[cluster * 2 + 1];
+	}
+
+	/**
+	 * Bin all lights in the current snapshot.
+	 */
+	public void bin() {
+		if (bounds.length < lightCount * 6)
+			bounds = new int[lightCount * 6];
+
+		// Orthographic projections have a constant W, in which case depth slices can't be determined from it
+		boolean orthographic = viewProj[3] == 0 && viewProj[7] == 0 && viewProj[11] == 0;
+
+		Arrays.fill(clusterCounts, 0);
+		int total = 0;
+		for (int i = 0; i < lightCount; i++) {
+			int b = i * 6;
+			if (!computeBounds(viewProj, orthographic, lights, i * 4, bounds, b)) {
+				bounds[b] = -1;
+				continue;
+			}
+
+			for (int z = bounds[b + 4]; z <= bounds[b + 5]; z++) {
+				for (int y = bounds[b + 2]; y <= bounds[b + 3]; y++) {
+					for (int x = bounds[b]; x <= bounds[b + 1]; x++) {
+						int c = getClusterIndex(x, y, z);
+						if (clusterCounts[c] < MAX_LIGHTS_PER_CLUSTER) {
+							clusterCounts[c]++;
+							total++;
+						}
+					}
+				}
+			}
+		}
+
+		dataLength = CLUSTER_COUNT * 2 + total;
+		if (data.length < dataLength)
+			data = new int[dataLength + dataLength / 2];
+
+		int offset = CLUSTER_COUNT * 2;
+		for (int c = 0; c < CLUSTER_COUNT; c++) {
+			data[c * 2] = offset;
+			data[c * 2 + 1] = 0;
+			offset += clusterCounts[c];
+		}
+
+		for (int i = 0; i < lightCount; i++) {
+			int b = i * 6;
+			if (bounds[b] == -1)
+				continue;
+
+			for (int z = bounds[b + 4]; z <= bounds[b + 5]; z++) {
+				for (int y = bounds[b + 2]; y <= bounds[b + 3]; y++) {
+					for (int x = bounds[b]; x <= bounds[b + 1]; x++) {
+						int c = getClusterIndex(x, y, z);
+						int count = data[c * 2 + 1];
+						if (count < clusterCounts[c]) {
+							data[data[c * 2] + count] = i;
+							data[c * 2 + 1] = count + 1;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute a conservative range of clusters touched by a light, by projecting the corners of its bounding box.
+	 *
+	 * @return false if the light is entirely off-screen
+	 */
+	static boolean computeBounds(float[] m, boolean orthographic, float[] lights, int lightOffset, int[] out, int outOffset) {
+		float cx = lights[lightOffset];
+		float cy = lights[lightOffset + 1];
+		float cz = lights[lightOffset + 2];
+		float r = lights[lightOffset + 3];
+
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minW = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxW = Float.NEGATIVE_INFINITY;
+		boolean crossesNearPlane = false;
+		for (int corner = 0; corner < 8; corner++) {
+			float x = (corner & 1) == 0 ? cx - r : cx + r;
+			float y = (corner & 2) == 0 ? cy - r : cy + r;
+			float z = (corner & 4) == 0 ? cz - r : cz + r;
+			float clipX = m[0] * x + m[4] * y + m[8] * z + m[12];
+			float clipY = m[1] * x + m[5] * y + m[9] * z + m[13];
+			float clipW = m[3] * x + m[7] * y + m[11] * z + m[15];
+			minW = min(minW, clipW);
+			maxW = max(maxW, clipW);
+			if (clipW <= MIN_W) {
+				crossesNearPlane = true;
+				continue;
+			}
+			float ndcX = clipX / clipW;
+			float ndcY = clipY / clipW;
+			minX = min(minX, ndcX);
+			maxX = max(maxX, ndcX);
+			minY = min(minY, ndcY);
+			maxY = max(maxY, ndcY);
+		}
+
+		if (maxW <= MIN_W)
+			return false; // Entirely behind the camera
+
+		if (crossesNearPlane) {
+			minX = minY = -1;
+			maxX = maxY = 1;
+		} else if (minX > 1 || maxX < -1 || minY > 1 || maxY < -1) {
+			return false;
+		}
+
+		out[outOffset] = toTile(minX, GRID_X);
+		out[outOffset + 1] = toTile(maxX, GRID_X);
+		out[outOffset + 2] = toTile(minY, GRID_Y);
+		out[outOffset + 3] = toTile(maxY, GRID_Y);
+		if (orthographic) {
+			out[outOffset + 4] = 0;
+			out[outOffset + 5] = GRID_Z - 1;
+		} else {
+			out[outOffset + 4] = getDepthSlice(minW);
+			out[outOffset + 5] = getDepthSlice(maxW);
+		}
+		return true;
+	}
+
+	private static int toTile(float ndc, int gridSize) {
+		return clamp((int) Math.floor((ndc + 1) * .5f * gridSize), 0, gridSize - 1);
+	}
+}
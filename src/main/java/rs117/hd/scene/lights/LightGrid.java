@@ -0,0 +1,172 @@
+package rs117.hd.scene.lights;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.runelite.api.Constants.*;
+import static net.runelite.api.Perspective.*;
+import static rs117.hd.utils.MathUtils.*;
+
+/**
+ * Buckets static lights by the chunk they're positioned in, so only lights near the camera need to be visited each frame.
+ * Bucket positions are in local coordinates, covering the extended scene regardless of the scene offset, with
+ * lights outside of it being clamped to the buckets along the edges.
+ */
+public class LightGrid {
+	private static final int BUCKET_SIZE = CHUNK_SIZE * LOCAL_TILE_SIZE;
+	private static final int ORIGIN = ceil((float) EXTENDED_SCENE_SIZE / CHUNK_SIZE);
+	private static final int SIZE = ORIGIN * 2;
+
+	@SuppressWarnings("unchecked")
+	private final ArrayList<Light>[] buckets = new ArrayList[SIZE * SIZE];
+	private int size;
+	private float maxRadius;
+	private float minY = Float.POSITIVE_INFINITY;
+	private float maxY = Float.NEGATIVE_INFINITY;
+
+	private static int toBucket(float localCoord) {
+		return clamp(Math.floorDiv((int) localCoord, BUCKET_SIZE) + ORIGIN, 0, SIZE - 1);
+	}
+
+	/**
+	 * Add a light to the grid, based on its current position, which shouldn't change while it remains in the grid.
+	 */
+	public void add(Light light) {
+		assert light.gridBucket == -1;
+		int bucket = toBucket(light.pos[2]) * SIZE + toBucket(light.pos[0]);
+		var lights = buckets[bucket];
+		if (lights == null)
+			lights = buckets[bucket] = new ArrayList<>();
+		lights.add(light);
+		light.gridBucket = bucket;
+		size++;
+
+		maxRadius = max(maxRadius, light.maxRadius);
+		minY = min(minY, light.pos[1]);
+		maxY = max(maxY, light.pos[1]);
+	}
+
+	public void remove(Light light) {
+		if (light.gridBucket == -1)
+			return;
+
+		var lights = buckets[light.gridBucket];
+		light.gridBucket = -1;
+		for (int i = 0; i < lights.size(); i++) {
+			if (lights.get(i) == light) {
+				// Order within buckets doesn't matter
+				int last = lights.size() - 1;
+				lights.set(i, lights.get(last));
+				lights.remove(last);
+				size--;
+				break;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		for (var lights : buckets) {
+			if (lights == null)
+				continue;
+			for (var light : lights)
+				light.gridBucket = -1;
+			lights.clear();
+		}
+		size = 0;
+		maxRadius = 0;
+		minY = Float.POSITIVE_INFINITY;
+		maxY = Float.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Append all lights in buckets which any light could reach within the specified distance from the center,
+	 * and which intersect the frustum, if one is specified.
+	 *
+	 * @param centerX     local X coordinate of the center
+	 * @param centerZ     local Z coordinate of the center
+	 * @param distance    maximum distance from the center, excluding the radius of each light
+	 * @param frustum     culling planes in the space of local coordinates shifted by the camera shift, or null
+	 * @param numPlanes   number of culling planes to test
+	 * @param cameraShift camera shift applied to local X and Z coordinates
+	 * @param result      list to add lights to
+	 * @return the number of buckets visited
+	 */
+	public int query(
+		float centerX,
+		float centerZ,
+		float distance,
+		float[][] frustum,
+		int numPlanes,
+		int[] cameraShift,
+		List<Light> result
+	) {
+		if (size == 0)
+			return 0;
+
+		float reach = distance + maxRadius;
+		int minBucketX = toBucket(centerX - reach);
+		int maxBucketX = toBucket(centerX + reach);
+		int minBucketZ = toBucket(centerZ - reach);
+		int maxBucketZ = toBucket(centerZ + reach);
+		float reachSquared = reach * reach;
+
+		int visited = 0;
+		for (int bz = minBucketZ; bz <= maxBucketZ; bz++) {
+			for (int bx = minBucketX; bx <= maxBucketX; bx++) {
+				var lights = buckets[bz * SIZE + bx];
+				if (lights == null || lights.isEmpty())
+					continue;
+
+				// Edge buckets may contain clamped lights outside of their bounds, so always visit those
+				boolean isEdge = bx == 0 || bz == 0 || bx == SIZE - 1 || bz == SIZE - 1;
+				if (!isEdge) {
+					float minX = (bx - ORIGIN) * BUCKET_SIZE;
+					float minZ = (bz - ORIGIN) * BUCKET_SIZE;
+					float dx = max(0, max(minX - centerX, centerX - (minX + BUCKET_SIZE)));
+					float dz = max(0, max(minZ - centerZ, centerZ - (minZ + BUCKET_SIZE)));
+					if (dx * dx + dz * dz >= reachSquared)
+						continue;
+
+					if (frustum != null && !isBoxIntersectingFrustum(
+						minX - maxRadius + cameraShift[0],
+						minY - maxRadius,
+						minZ - maxRadius + cameraShift[1],
+						minX + BUCKET_SIZE + maxRadius + cameraShift[0],
+						maxY + maxRadius,
+						minZ + BUCKET_SIZE + maxRadius + cameraShift[1],
+						frustum,
+						numPlanes
+					)) {
+						continue;
+					}
+				}
+
+				result.addAll(lights);
+				visited++;
+			}
+		}
+
+		return visited;
+	}
+
+	private static boolean isBoxIntersectingFrustum(
+		float minX, float minY, float minZ,
+		float maxX, float maxY, float maxZ,
+		float[][] planes, int numPlanes
+	) {
+		for (int i = 0; i < numPlanes; i++) {
+			final float[] p = planes[i];
+			// Test the corner furthest along the plane's normal
+			float x = p[0] >= 0 ? maxX : minX;
+			float y = p[1] >= 0 ? maxY : minY;
+			float z = p[2] >= 0 ? maxZ : minZ;
+			if (p[0] * x + p[1] * y + p[2] * z + p[3] < 0)
+				return false;
+		}
+		return true;
+	}
+}
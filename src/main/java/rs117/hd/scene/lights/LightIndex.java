@@ -0,0 +1,67 @@
+package rs117.hd.scene.lights;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Identity-keyed index from the {@link net.runelite.api.TileObject}, {@link net.runelite.api.Actor} or
+ * {@link net.runelite.api.Projectile} owning a light, to all lights spawned for it. This must be kept in sync with the
+ * scene's light list, so finding the lights belonging to an owner doesn't require scanning every light in the scene.
+ */
+public class LightIndex {
+	private final IdentityHashMap<Object, ArrayList<Light>> lightsByOwner = new IdentityHashMap<>();
+
+	@Nullable
+	private static Object getOwner(Light light) {
+		if (light.tileObject != null)
+			return light.tileObject;
+		if (light.actor != null)
+			return light.actor;
+		return light.projectile;
+	}
+
+	public void add(Light light) {
+		var owner = getOwner(light);
+		if (owner != null)
+			lightsByOwner.computeIfAbsent(owner, k -> new ArrayList<>(1)).add(light);
+	}
+
+	public void remove(Light light) {
+		var owner = getOwner(light);
+		if (owner == null)
+			return;
+
+		var lights = lightsByOwner.get(owner);
+		if (lights == null)
+			return;
+
+		for (int i = 0; i < lights.size(); i++) {
+			if (lights.get(i) == light) {
+				lights.remove(i);
+				break;
+			}
+		}
+
+		if (lights.isEmpty())
+			lightsByOwner.remove(owner);
+	}
+
+	/**
+	 * @return all lights owned by the specified object, including lights marked for removal
+	 */
+	public List<Light> get(Object owner) {
+		var lights = lightsByOwner.get(owner);
+		return lights == null ? Collections.emptyList() : lights;
+	}
+
+	public int getOwnerCount() {
+		return lightsByOwner.size();
+	}
+
+	public void clear() {
+		lightsByOwner.clear();
+	}
+}
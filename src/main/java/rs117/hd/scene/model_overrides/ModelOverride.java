@@ -17,7 +17,9 @@ import rs117.hd.config.SeasonalTheme;
 import rs117.hd.config.VanillaShadowMode;
 import rs117.hd.scene.GamevalManager;
 import rs117.hd.scene.areas.AABB;
+import rs117.hd.scene.areas.RegionIndex;
 import rs117.hd.scene.materials.Material;
+import rs117.hd.utils.ExpressionParser;
 import rs117.hd.utils.Props;
 
 import static net.runelite.api.Perspective.*;
@@ -34,6 +36,10 @@ public class ModelOverride
 
 	private static final Set<Integer> EMPTY = new HashSet<>();
 
+	// Variables available to HSL conditions, in slot order
+	private static final String[] AHSL_VARS = { "a", "h", "s", "l", "hsl", "ahsl" };
+	private static final ThreadLocal<float[]> AHSL_SLOTS = ThreadLocal.withInitial(() -> new float[AHSL_VARS.length]);
+
 	public String description = "UNKNOWN";
 
 	// When, where or what the override should apply to
@@ -93,6 +99,7 @@ public class ModelOverride
 	public transient boolean isDummy;
 	public transient boolean isGenerated;
 	public transient Map<AABB, ModelOverride> areaOverrides;
+	public transient RegionIndex<ModelOverride> areaOverrideIndex;
 	public transient AhslPredicate ahslCondition;
 	public transient boolean hasTransparency;
 	public transient boolean mightHaveTransparency;
@@ -256,6 +263,7 @@ public class ModelOverride
 			isDummy,
 			isGenerated,
 			areaOverrides,
+			areaOverrideIndex,
 			ahslCondition,
 			hasTransparency,
 			mightHaveTransparency,
@@ -310,33 +318,30 @@ public class ModelOverride
 
 				if (Props.DEVELOPMENT) {
 					// Ensure all variables are defined
-					final Set<String> knownVariables = Set.of("a", "h", "s", "l", "hsl", "ahsl");
+					final Set<String> knownVariables = Set.of(AHSL_VARS);
 					for (var variable : expr.variables)
 						if (!knownVariables.contains(variable))
 							throw new IllegalStateException(
 								"Expression '" + prim.getAsString() + "' contains unknown variable '" + variable + "'");
 				}
 
-				var predicate = expr.toPredicate();
-				condition = ahsl -> predicate.test(key -> {
-					switch (key) {
-						case "a":
-							return ahsl >>> 16 & 0xFF;
-						case "h":
-							return ahsl >>> 10 & 0x3F;
-						case "s":
-							return ahsl >>> 7 & 0x7;
-						case "l":
-							return ahsl & 0x7F;
-						case "ahsl":
-							return ahsl;
-						case "hsl":
-							return ahsl & 0xFFFF;
-						default:
-							assert false : "Unexpected variable: " + key;
-							return 0;
-					}
-				});
+				ExpressionParser.CompiledPredicate predicate;
+				try {
+					predicate = expr.compilePredicate(AHSL_VARS);
+				} catch (IllegalArgumentException ex) {
+					log.warn("Skipping invalid HSL condition '{}' in override '{}': {}", el, description, ex.getMessage());
+					continue;
+				}
+				condition = ahsl -> {
+					float[] slots = AHSL_SLOTS.get();
+					slots[0] = ahsl >>> 16 & 0xFF;
+					slots[1] = ahsl >>> 10 & 0x3F;
+					slots[2] = ahsl >>> 7 & 0x7;
+					slots[3] = ahsl & 0x7F;
+					slots[4] = ahsl & 0xFFFF;
+					slots[5] = ahsl;
+					return predicate.test(slots);
+				};
 			} else {
 				log.warn("Skipping unexpected HSL condition primitive '{}' in override '{}'", el, description);
 				continue;
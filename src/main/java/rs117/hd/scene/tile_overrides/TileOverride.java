@@ -194,7 +194,7 @@ public class TileOverride {
 						continue; // Skip replacement conditions that are always false
 					predicate = ExpressionPredicate.TRUE;
 				} else {
-					predicate = asExpression(result).toPredicate();
+					predicate = asExpression(result).compilePredicate(TileOverrideVariables.HSL_VARS);
 				}
 
 				replacements.add(Map.entry(predicate, replacement));
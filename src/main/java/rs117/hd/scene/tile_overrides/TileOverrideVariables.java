@@ -5,8 +5,10 @@ import rs117.hd.utils.HDUtils;
 import rs117.hd.utils.VariableSupplier;
 
 public class TileOverrideVariables implements VariableSupplier {
-	private final String[] HSL_VARS = { "h", "s", "l" };
+	public static final String[] HSL_VARS = { "h", "s", "l" };
+
 	private final int[] hsl = new int[3];
+	private final float[] hslSlots = new float[3];
 
 	private Tile tile;
 	private boolean requiresHslUpdate;
@@ -18,18 +20,32 @@ public class TileOverrideVariables implements VariableSupplier {
 		requiresHslUpdate = true;
 	}
 
+	private void updateHsl() {
+		if (!requiresHslUpdate)
+			return;
+		HDUtils.getSouthWesternMostTileColor(hsl, tile);
+		for (int i = 0; i < hsl.length; i++)
+			hslSlots[i] = hsl[i];
+		requiresHslUpdate = false;
+	}
+
 	@Override
 	public Object get(String name) {
 		for (int i = 0; i < HSL_VARS.length; i++) {
 			if (HSL_VARS[i].equals(name)) {
-				if (requiresHslUpdate) {
-					HDUtils.getSouthWesternMostTileColor(hsl, tile);
-					requiresHslUpdate = false;
-				}
+				updateHsl();
 				return hsl[i];
 			}
 		}
 
 		throw new IllegalArgumentException("Undefined variable '" + name + "'");
 	}
+
+	@Override
+	public float[] getSlots(String[] slotNames) {
+		if (slotNames != HSL_VARS)
+			return null;
+		updateHsl();
+		return hslSlots;
+	}
 }
@@ -263,6 +263,20 @@ public class CommandBuffer {
 		cmd[writeHead++] = (long) indirectOffset * Integer.BYTES;
 	}
 
+	/**
+	 * Record a multi draw of commands which have already been written to the indirect buffer, starting at the
+	 * given int offset.
+	 */
+	public void MultiDrawArraysIndirect(int mode, int indirectOffset, int drawCount) {
+		assert (mode & DRAW_MODE_MASK) == mode;
+		if (drawCount == 0)
+			return;
+
+		ensureCapacity(2);
+		cmd[writeHead++] = GL_MULTI_DRAW_ARRAYS_INDIRECT_TYPE & 0xFF | (long) mode << 8 | (long) drawCount << 32;
+		cmd[writeHead++] = (long) indirectOffset * Integer.BYTES;
+	}
+
 	public void Enable(int capability) {
 		Toggle(capability, true);
 	}
@@ -280,6 +294,9 @@ public class CommandBuffer {
 	public void execute() {
 		// Force VAO state to reapply to ensure it is in sync with the render state
 		renderState.vao.invalidate();
+		// Textures may have been bound outside of command buffers since the last top-level execution
+		if (CALL_STACK.get().isEmpty())
+			renderState.invalidateTextureBindings();
 
 		if (frameTimer != null)
 			frameTimer.begin(Timer.EXECUTE_COMMAND_BUFFER);
@@ -327,8 +344,7 @@ public class CommandBuffer {
 						int texUnit = (int) (packed >> 32);
 						int texId = (int) packed;
 
-						glActiveTexture(texUnit);
-						glBindTexture(texType, texId);
+						renderState.bindTextureUnit(texType, texId, texUnit);
 						break;
 					}
 					case GL_USE_PROGRAM: {
@@ -440,6 +456,40 @@ public class CommandBuffer {
 			frameTimer.end(Timer.EXECUTE_COMMAND_BUFFER);
 	}
 
+	/**
+	 * Shift the indirect buffer offsets of all recorded indirect draw calls. This is needed when the indirect commands
+	 * were written to a separate buffer, which later gets appended to the one that will be bound during execution.
+	 */
+	public void offsetIndirectDraws(long byteOffset) {
+		int readHead = 0;
+		while (readHead < writeHead) {
+			long data = cmd[readHead++];
+			int type = (int) data & 0xFF;
+			switch (type) {
+				case GL_DRAW_ARRAYS_INDIRECT_TYPE:
+				case GL_DRAW_ELEMENTS_INDIRECT_TYPE:
+				case GL_MULTI_DRAW_ARRAYS_INDIRECT_TYPE:
+					cmd[readHead++] += byteOffset;
+					break;
+				case GL_MULTI_DRAW_ARRAYS_TYPE:
+					readHead += (int) (data >> 32);
+					break;
+				case GL_DRAW_ARRAYS_TYPE:
+				case GL_DRAW_ELEMENTS_TYPE:
+				case GL_BIND_VERTEX_ARRAY_TYPE:
+				case GL_BIND_TEXTURE_UNIT_TYPE:
+				case GL_TOGGLE_TYPE:
+				case GL_FENCE_SYNC:
+					readHead++;
+					break;
+				case GL_EXECUTE_SUB_COMMAND_BUFFER:
+					// Sub command buffers may be shared, so they must be offset separately if needed
+				default:
+					break;
+			}
+		}
+	}
+
 	private int writeObject(Object obj) {
 		if (obj == null)
 			return -1;
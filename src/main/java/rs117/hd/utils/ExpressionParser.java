@@ -86,6 +86,57 @@ public class ExpressionParser {
 		return vars -> object;
 	}
 
+	/**
+	 * A compiled numeric expression, which reads variables from slots resolved at compile time, without boxing.
+	 */
+	@FunctionalInterface
+	public interface FloatExpression {
+		float evaluate(float[] slots);
+	}
+
+	/**
+	 * A compiled boolean expression, which reads variables from slots resolved at compile time, without boxing.
+	 * Boolean variables are stored in slots as 1 or 0.
+	 */
+	@FunctionalInterface
+	public interface BooleanExpression {
+		boolean evaluate(float[] slots);
+	}
+
+	public static class CompiledPredicate implements ExpressionPredicate {
+		public final String[] slotNames;
+		public final BooleanExpression expression;
+
+		CompiledPredicate(String[] slotNames, BooleanExpression expression) {
+			this.slotNames = slotNames;
+			this.expression = expression;
+		}
+
+		public boolean test(float[] slots) {
+			return expression.evaluate(slots);
+		}
+
+		@Override
+		public boolean test(VariableSupplier vars) {
+			var slots = vars.getSlots(slotNames);
+			if (slots == null) {
+				// Fall back to looking up each variable by name
+				slots = new float[slotNames.length];
+				for (int i = 0; i < slots.length; i++)
+					slots[i] = toSlotValue(slotNames[i], vars.get(slotNames[i]));
+			}
+			return expression.evaluate(slots);
+		}
+	}
+
+	public static float toSlotValue(String name, Object value) {
+		if (value instanceof Number)
+			return ((Number) value).floatValue();
+		if (value instanceof Boolean)
+			return (boolean) value ? 1 : 0;
+		throw new IllegalArgumentException("Undefined variable '" + name + "'");
+	}
+
 	public static class SerializableExpressionPredicate implements ExpressionPredicate {
 		public final Expression expression;
 		public final ExpressionPredicate predicate;
@@ -620,6 +671,24 @@ public class ExpressionParser {
 			return vars -> (boolean) func.apply(vars);
 		}
 
+		/**
+		 * Compile the expression into a predicate which evaluates without allocating, given the values of each
+		 * variable in the order of the specified slot names.
+		 */
+		public CompiledPredicate compilePredicate(String... slotNames) {
+			if (!isBoolean())
+				throw new IllegalArgumentException("Expression does not result in a boolean");
+			return new CompiledPredicate(slotNames, compileBooleanNode(this, slotNames));
+		}
+
+		/**
+		 * Compile the expression into a numeric function which evaluates without allocating, given the values of each
+		 * variable in the order of the specified slot names.
+		 */
+		public FloatExpression compileFloat(String... slotNames) {
+			return compileFloatNode(this, slotNames);
+		}
+
 		boolean isBoolean() {
 			if (op == null)
 				return isPossiblyBoolean(left);
@@ -660,6 +729,141 @@ public class ExpressionParser {
 		}
 	}
 
+	private static int slotIndex(String variable, String[] slotNames) {
+		for (int i = 0; i < slotNames.length; i++)
+			if (slotNames[i].equals(variable))
+				return i;
+		throw new IllegalArgumentException("No slot for variable '" + variable + "'");
+	}
+
+	private static FloatExpression compileFloatNode(Object node, String[] slotNames) {
+		if (node instanceof Float) {
+			float value = (float) node;
+			return slots -> value;
+		}
+
+		if (node instanceof String) {
+			int slot = slotIndex((String) node, slotNames);
+			return slots -> slots[slot];
+		}
+
+		if (!(node instanceof Expression))
+			throw new IllegalArgumentException("Expected a number, got '" + node + "'");
+
+		var expr = (Expression) node;
+		if (expr.op == null)
+			return compileFloatNode(expr.left, slotNames);
+
+		switch (expr.op) {
+			case TERNARY:
+				var condition = compileBooleanNode(expr.ternary, slotNames);
+				var ifTrue = compileFloatNode(expr.left, slotNames);
+				var ifFalse = compileFloatNode(expr.right, slotNames);
+				return slots -> condition.evaluate(slots) ? ifTrue.evaluate(slots) : ifFalse.evaluate(slots);
+			case ADD:
+			case SUB:
+			case MUL:
+			case DIV:
+			case MOD:
+				break;
+			default:
+				throw new IllegalArgumentException("Expression does not result in a number: '" + expr + "'");
+		}
+
+		var l = compileFloatNode(expr.left, slotNames);
+		var r = compileFloatNode(expr.right, slotNames);
+		switch (expr.op) {
+			case ADD:
+				return slots -> l.evaluate(slots) + r.evaluate(slots);
+			case SUB:
+				return slots -> l.evaluate(slots) - r.evaluate(slots);
+			case MUL:
+				return slots -> l.evaluate(slots) * r.evaluate(slots);
+			case DIV:
+				return slots -> l.evaluate(slots) / r.evaluate(slots);
+			default:
+				return slots -> l.evaluate(slots) % r.evaluate(slots);
+		}
+	}
+
+	private static BooleanExpression compileBooleanNode(Object node, String[] slotNames) {
+		if (node instanceof Boolean)
+			return (boolean) node ? slots -> true : slots -> false;
+
+		if (node instanceof String) {
+			int slot = slotIndex((String) node, slotNames);
+			return slots -> slots[slot] != 0;
+		}
+
+		if (!(node instanceof Expression))
+			throw new IllegalArgumentException("Expected a boolean, got '" + node + "'");
+
+		var expr = (Expression) node;
+		if (expr.op == null)
+			return compileBooleanNode(expr.left, slotNames);
+
+		switch (expr.op) {
+			case TERNARY: {
+				var condition = compileBooleanNode(expr.ternary, slotNames);
+				var ifTrue = compileBooleanNode(expr.left, slotNames);
+				var ifFalse = compileBooleanNode(expr.right, slotNames);
+				return slots -> condition.evaluate(slots) ? ifTrue.evaluate(slots) : ifFalse.evaluate(slots);
+			}
+			case NOT: {
+				var r = compileBooleanNode(expr.right, slotNames);
+				return slots -> !r.evaluate(slots);
+			}
+			case AND: {
+				var l = compileBooleanNode(expr.left, slotNames);
+				var r = compileBooleanNode(expr.right, slotNames);
+				return slots -> l.evaluate(slots) && r.evaluate(slots);
+			}
+			case OR: {
+				var l = compileBooleanNode(expr.left, slotNames);
+				var r = compileBooleanNode(expr.right, slotNames);
+				return slots -> l.evaluate(slots) || r.evaluate(slots);
+			}
+			case EQUAL:
+			case NOTEQUAL: {
+				boolean isBoolean =
+					expr.left instanceof Boolean || expr.left instanceof Expression && ((Expression) expr.left).isBoolean() ||
+					expr.right instanceof Boolean || expr.right instanceof Expression && ((Expression) expr.right).isBoolean();
+				if (isBoolean) {
+					var l = compileBooleanNode(expr.left, slotNames);
+					var r = compileBooleanNode(expr.right, slotNames);
+					return expr.op == Operator.EQUAL ?
+						slots -> l.evaluate(slots) == r.evaluate(slots) :
+						slots -> l.evaluate(slots) != r.evaluate(slots);
+				}
+				var l = compileFloatNode(expr.left, slotNames);
+				var r = compileFloatNode(expr.right, slotNames);
+				return expr.op == Operator.EQUAL ?
+					slots -> l.evaluate(slots) == r.evaluate(slots) :
+					slots -> l.evaluate(slots) != r.evaluate(slots);
+			}
+			case GEQUAL:
+			case GREATER:
+			case LEQUAL:
+			case LESS:
+				break;
+			default:
+				throw new IllegalArgumentException("Expression does not result in a boolean: '" + expr + "'");
+		}
+
+		var l = compileFloatNode(expr.left, slotNames);
+		var r = compileFloatNode(expr.right, slotNames);
+		switch (expr.op) {
+			case GEQUAL:
+				return slots -> l.evaluate(slots) >= r.evaluate(slots);
+			case GREATER:
+				return slots -> l.evaluate(slots) > r.evaluate(slots);
+			case LEQUAL:
+				return slots -> l.evaluate(slots) <= r.evaluate(slots);
+			default:
+				return slots -> l.evaluate(slots) < r.evaluate(slots);
+		}
+	}
+
 	private static Object parseExpression(String expression, int startIndex, int endIndex) {
 		return parseExpression(new ParserContext(expression, startIndex, endIndex, true, 0));
 	}
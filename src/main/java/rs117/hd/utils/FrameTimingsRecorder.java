@@ -73,6 +73,8 @@ public class FrameTimingsRecorder implements FrameTimer.Listener {
 			public long memoryTotal;
 			public long memoryFree;
 			public long memoryMax;
+			public long stagingBytes;
+			public long stagingAllocations;
 			public LinkedHashMap<String, Long> cpu;
 			public LinkedHashMap<String, Long> gpu;
 
@@ -151,6 +153,8 @@ public class FrameTimingsRecorder implements FrameTimer.Listener {
 		frame.drawnStatic = plugin.getDrawnStaticRenderableCount();
 		frame.drawnDynamic = plugin.getDrawnDynamicRenderableCount();
 		frame.npcDisplacementCacheSize = npcDisplacementCache.size();
+		frame.stagingBytes = plugin.getStagedByteCount();
+		frame.stagingAllocations = plugin.getStagingAllocationCount();
 		snapshot.frames.add(frame);
 	}
 
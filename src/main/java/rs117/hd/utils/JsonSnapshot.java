@@ -0,0 +1,356 @@
+package rs117.hd.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import rs117.hd.HdPlugin;
+
+import static rs117.hd.HdPlugin.PROCESSOR_COUNT;
+import static rs117.hd.utils.MathUtils.*;
+
+/**
+ * Caches parsed JSON configs in a compact binary format, keyed by a hash of the JSON content.
+ * Strings are deduplicated into a table, and numbers are stored pre-parsed, so later loads of unchanged configs
+ * read the snapshot and skip the text parsing entirely. Whenever the content hash differs, or the snapshot turns out to
+ * be corrupt, the JSON is parsed as usual, and the snapshot is rewritten.
+ */
+@Slf4j
+public class JsonSnapshot {
+	private static final ResourcePath SNAPSHOTS_PATH = HdPlugin.PLUGIN_DIR.resolve("config-snapshots");
+	private static final boolean DISABLED = Props.getBoolean("rlhd.disable-config-snapshots");
+
+	private static final int MAGIC = 0x31314A53; // SJ11
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+	private static final byte TOKEN_NULL = 0;
+	private static final byte TOKEN_FALSE = 1;
+	private static final byte TOKEN_TRUE = 2;
+	private static final byte TOKEN_INT = 3;
+	private static final byte TOKEN_DOUBLE = 4;
+	private static final byte TOKEN_STRING = 5;
+	private static final byte TOKEN_ARRAY = 6;
+	private static final byte TOKEN_OBJECT = 7;
+	private static final byte TOKEN_LONG = 8;
+
+	private static final Map<String, Future<JsonElement>> PRELOADED = new ConcurrentHashMap<>();
+	private static final Map<String, Long> CONTENT_HASHES = new ConcurrentHashMap<>();
+
+	public static <T> T loadJson(Gson gson, ResourcePath path, Class<T> type) throws IOException {
+		return gson.fromJson(load(path), type);
+	}
+
+	/**
+	 * Begin loading the specified configs in parallel on a temporary thread pool, ahead of their managers requesting
+	 * them during startup. Configs are only loaded into JSON trees here, since binding them to objects may depend on
+	 * other configs, so that still happens in order as each manager starts up.
+	 */
+	public static void preload(ResourcePath... paths) {
+		var executor = Executors.newFixedThreadPool(max(1, min(paths.length, PROCESSOR_COUNT - 1)), runnable -> {
+			var thread = new Thread(runnable, "117 HD - Config loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (var path : paths)
+			PRELOADED.put(path.toString(), executor.submit(() -> loadNow(path)));
+		// Let the submitted tasks finish, then terminate the threads
+		executor.shutdown();
+	}
+
+	/**
+	 * @return a hash of the content of the specified config as it was last loaded, or 0 if it hasn't been loaded yet
+	 */
+	public static long getContentHash(ResourcePath path) {
+		return CONTENT_HASHES.getOrDefault(path.toString(), 0L);
+	}
+
+	public static void clearPreloaded() {
+		for (var future : PRELOADED.values())
+			future.cancel(false);
+		PRELOADED.clear();
+	}
+
+	public static JsonElement load(ResourcePath path) throws IOException {
+		var preloaded = PRELOADED.remove(path.toString());
+		if (preloaded == null)
+			return loadNow(path);
+
+		long start = System.nanoTime();
+		try {
+			var json = preloaded.get();
+			log.debug("Waited {} ms for preloaded config: {}", String.format("%.2f", (System.nanoTime() - start) / 1e6), path);
+			return json;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading: " + path, ex);
+		} catch (ExecutionException ex) {
+			var cause = ex.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException("Failed to load: " + path, cause);
+		}
+	}
+
+	private static JsonElement loadNow(ResourcePath path) throws IOException {
+		long start = System.nanoTime();
+		byte[] bytes;
+		try (var is = path.toInputStream()) {
+			bytes = is.readAllBytes();
+		}
+
+		long hash = hash(bytes);
+		CONTENT_HASHES.put(path.toString(), hash);
+
+		if (DISABLED) {
+			var json = parse(bytes);
+			logLoadTime(path, "JSON", start);
+			return json;
+		}
+
+		var snapshotPath = SNAPSHOTS_PATH.resolve(path.setExtension("snapshot").getFilename());
+		try {
+			var snapshot = readSnapshot(snapshotPath.toPath(), hash);
+			if (snapshot != null) {
+				logLoadTime(path, "snapshot", start);
+				return snapshot;
+			}
+		} catch (Exception | StackOverflowError ex) {
+			// Any failure to read the snapshot is treated as a cache miss
+			log.warn("Discarding invalid config snapshot: {}", snapshotPath, ex);
+		}
+
+		var json = parse(bytes);
+		logLoadTime(path, "JSON", start);
+		try {
+			writeSnapshot(snapshotPath, hash, json);
+		} catch (IOException ex) {
+			log.warn("Unable to write config snapshot: {}", snapshotPath, ex);
+		}
+		return json;
+	}
+
+	private static void logLoadTime(ResourcePath path, String source, long startNanos) {
+		log.debug(
+			"Parsed {} from {} in {} ms on {}",
+			path.getFilename(),
+			source,
+			String.format("%.2f", (System.nanoTime() - startNanos) / 1e6),
+			Thread.currentThread().getName()
+		);
+	}
+
+	private static JsonElement parse(byte[] bytes) {
+		return JsonParser.parseReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+	}
+
+	static long hash(byte[] bytes) {
+		var buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		long hash = 0x9E3779B97F4A7C15L ^ bytes.length;
+		while (buffer.remaining() >= 8)
+			hash = Long.rotateLeft(hash ^ mix(buffer.getLong()), 27) * 0x100000001B3L;
+		while (buffer.hasRemaining())
+			hash = (hash ^ buffer.get()) * 0x100000001B3L;
+		return mix(hash);
+	}
+
+	private static long mix(long x) {
+		x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+		x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+		return x ^ (x >>> 31);
+	}
+
+	@Nullable
+	private static JsonElement readSnapshot(Path path, long hash) throws IOException {
+		if (!Files.exists(path))
+			return null;
+
+		// Read onto the heap rather than memory-mapping, since a mapping keeps the file locked on Windows until it's GC'd
+		var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		if (buffer.remaining() < HEADER_SIZE)
+			return null;
+
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != hash)
+			return null;
+
+		// Each string is prefixed by its length
+		String[] strings = new String[readCount(buffer, 4)];
+		byte[] utf8 = new byte[256];
+		for (int i = 0; i < strings.length; i++) {
+			int length = readCount(buffer, 1);
+			if (utf8.length < length)
+				utf8 = new byte[length * 2];
+			buffer.get(utf8, 0, length);
+			strings[i] = new String(utf8, 0, length, StandardCharsets.UTF_8);
+		}
+
+		return readElement(buffer, strings);
+	}
+
+	/**
+	 * Read a count of items which are each at least the specified number of bytes long, and validate it against the
+	 * remaining bytes, so a corrupt snapshot can't trigger huge allocations.
+	 */
+	private static int readCount(ByteBuffer buffer, int minItemBytes) throws IOException {
+		int count = buffer.getInt();
+		if (count < 0 || count > buffer.remaining() / minItemBytes)
+			throw new IOException("Invalid count " + count + " at " + (buffer.position() - 4));
+		return count;
+	}
+
+	private static JsonElement readElement(ByteBuffer buffer, String[] strings) throws IOException {
+		byte token = buffer.get();
+		switch (token) {
+			case TOKEN_NULL:
+				return JsonNull.INSTANCE;
+			case TOKEN_FALSE:
+				return new JsonPrimitive(false);
+			case TOKEN_TRUE:
+				return new JsonPrimitive(true);
+			case TOKEN_INT:
+				return new JsonPrimitive(buffer.getInt());
+			case TOKEN_LONG:
+				return new JsonPrimitive(buffer.getLong());
+			case TOKEN_DOUBLE:
+				return new JsonPrimitive(buffer.getDouble());
+			case TOKEN_STRING:
+				return new JsonPrimitive(strings[buffer.getInt()]);
+			case TOKEN_ARRAY: {
+				// Each element is at least a token
+				int size = readCount(buffer, 1);
+				var array = new JsonArray(size);
+				for (int i = 0; i < size; i++)
+					array.add(readElement(buffer, strings));
+				return array;
+			}
+			case TOKEN_OBJECT: {
+				// Each entry is at least a key index and a token
+				int size = readCount(buffer, 5);
+				var object = new JsonObject();
+				for (int i = 0; i < size; i++) {
+					var key = strings[buffer.getInt()];
+					object.add(key, readElement(buffer, strings));
+				}
+				return object;
+			}
+			default:
+				throw new IOException("Unexpected token " + token + " at " + (buffer.position() - 1));
+		}
+	}
+
+	private static void writeSnapshot(ResourcePath path, long hash, JsonElement json) throws IOException {
+		var strings = new HashMap<String, Integer>();
+		var body = new ByteArrayOutputStream(1 << 16);
+		writeElement(new DataOutputStream(body), json, strings);
+
+		String[] table = new String[strings.size()];
+		for (var entry : strings.entrySet())
+			table[entry.getValue()] = entry.getKey();
+
+		var bytes = new ByteArrayOutputStream(HEADER_SIZE + body.size() + strings.size() * 16);
+		var out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(hash);
+		out.writeInt(table.length);
+		for (var string : table) {
+			byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		}
+		body.writeTo(out);
+		out.flush();
+
+		// Write to a temporary file first, so a partially written snapshot is never picked up
+		SNAPSHOTS_PATH.mkdirs();
+		var target = path.toPath();
+		var tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		try {
+			Files.write(tempFile, bytes.toByteArray());
+			try {
+				Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private static void writeElement(DataOutputStream out, JsonElement element, Map<String, Integer> strings) throws IOException {
+		if (element.isJsonNull()) {
+			out.writeByte(TOKEN_NULL);
+		} else if (element.isJsonArray()) {
+			var array = element.getAsJsonArray();
+			out.writeByte(TOKEN_ARRAY);
+			out.writeInt(array.size());
+			for (var child : array)
+				writeElement(out, child, strings);
+		} else if (element.isJsonObject()) {
+			var object = element.getAsJsonObject();
+			out.writeByte(TOKEN_OBJECT);
+			out.writeInt(object.size());
+			for (var entry : object.entrySet()) {
+				out.writeInt(strings.computeIfAbsent(entry.getKey(), k -> strings.size()));
+				writeElement(out, entry.getValue(), strings);
+			}
+		} else {
+			var primitive = element.getAsJsonPrimitive();
+			if (primitive.isBoolean()) {
+				out.writeByte(primitive.getAsBoolean() ? TOKEN_TRUE : TOKEN_FALSE);
+			} else if (primitive.isNumber()) {
+				writeNumber(out, primitive);
+			} else {
+				out.writeByte(TOKEN_STRING);
+				out.writeInt(strings.computeIfAbsent(primitive.getAsString(), k -> strings.size()));
+			}
+		}
+	}
+
+	private static void writeNumber(DataOutputStream out, JsonPrimitive primitive) throws IOException {
+		double value = primitive.getAsDouble();
+		// Integral values are kept exact, since a double can't represent every long, while negative zero stays a double
+		if (!(value == 0 && 1 / value < 0)) {
+			try {
+				long integral = primitive.getAsBigDecimal().longValueExact();
+				if (integral == (int) integral) {
+					out.writeByte(TOKEN_INT);
+					out.writeInt((int) integral);
+				} else {
+					out.writeByte(TOKEN_LONG);
+					out.writeLong(integral);
+				}
+				return;
+			} catch (ArithmeticException | NumberFormatException ignored) {
+				// Fractional, out of range for a long, or not finite
+			}
+		}
+		out.writeByte(TOKEN_DOUBLE);
+		out.writeDouble(value);
+	}
+}
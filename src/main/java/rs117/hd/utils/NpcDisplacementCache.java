@@ -40,9 +40,10 @@ public class NpcDisplacementCache {
 	public void initialize() {
 		HashSet<Integer> idsToIgnore = new HashSet<>();
 		for (var substringToIgnore : ANIM_IGNORE_LIST)
-			for (var entry : gamevalManager.getAnims().entrySet())
-				if (entry.getKey().contains(substringToIgnore))
-					idsToIgnore.add(entry.getValue());
+			gamevalManager.getAnims().forEach((name, id) -> {
+				if (name.contains(substringToIgnore))
+					idsToIgnore.add(id);
+			});
 		ANIM_ID_IGNORE_LIST = Set.copyOf(idsToIgnore);
 	}
 
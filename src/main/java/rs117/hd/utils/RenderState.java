@@ -1,7 +1,6 @@
 package rs117.hd.utils;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.function.Supplier;
 import rs117.hd.opengl.GLState;
 import rs117.hd.opengl.shader.ShaderProgram;
@@ -10,7 +9,15 @@ import static org.lwjgl.opengl.GL33C.*;
 import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
 
 public final class RenderState {
-	private final List<GLState> states = new ArrayList<>();
+	private static final int MAX_TEXTURE_UNITS = 32;
+
+	private final GLState.Group group = new GLState.Group();
+	private GLState[] states = new GLState[0];
+
+	// Texture bindings are tracked separately, since they are bound immediately rather than before each draw call
+	private final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+	private final int[] boundTextureTypes = new int[MAX_TEXTURE_UNITS];
+	private int activeTextureUnit;
 
 	public final GLFramebuffer framebuffer = addState(GLFramebuffer::new);
 	public final GLFramebufferTextureLayer framebufferTextureLayer = addState(GLFramebufferTextureLayer::new);
@@ -27,19 +34,74 @@ public final class RenderState {
 	public final GLEnable enable = addState(GLEnable::new);
 	public final GLDisable disable = addState(GLDisable::new);
 
+	/**
+	 * Apply pending state changes, only visiting states which have been marked as dirty since the last call.
+	 */
 	public void apply() {
-		for (GLState state : states)
-			state.apply();
+		int dirtyBits = group.dirtyBits;
+		if (dirtyBits == 0)
+			return;
+
+		group.dirtyBits = 0;
+		do {
+			states[Integer.numberOfTrailingZeros(dirtyBits)].apply();
+			dirtyBits &= dirtyBits - 1;
+		} while (dirtyBits != 0);
 	}
 
 	public void reset() {
 		for (GLState state : states)
 			state.reset();
+		group.dirtyBits = 0;
+		invalidateTextureBindings();
+	}
+
+	/**
+	 * Bind a texture to the specified texture unit, skipping the GL calls if it's already bound.
+	 * Bindings made outside of this method must be followed by a call to {@link #invalidateTextureBindings()}.
+	 */
+	public void bindTextureUnit(int type, int texId, int texUnit) {
+		int unit = texUnit - GL_TEXTURE0;
+		boolean isTracked = unit >= 0 && unit < MAX_TEXTURE_UNITS;
+		if (isTracked && boundTextureTypes[unit] == type && boundTextures[unit] == texId) {
+			// Skip both glActiveTexture and glBindTexture
+			group.eliminatedCalls += 2;
+			return;
+		}
+
+		if (activeTextureUnit != texUnit) {
+			glActiveTexture(texUnit);
+			activeTextureUnit = texUnit;
+		} else {
+			group.eliminatedCalls++;
+		}
+		glBindTexture(type, texId);
+
+		if (isTracked) {
+			boundTextures[unit] = texId;
+			boundTextureTypes[unit] = type;
+		}
+	}
+
+	public void invalidateTextureBindings() {
+		activeTextureUnit = 0;
+		Arrays.fill(boundTextureTypes, 0);
+	}
+
+	/**
+	 * @return the number of redundant GL calls which have been skipped since the last call
+	 */
+	public int takeEliminatedCallCount() {
+		int count = group.eliminatedCalls;
+		group.eliminatedCalls = 0;
+		return count;
 	}
 
 	private <T extends GLState> T addState(Supplier<T> supplier) {
 		T state = supplier.get();
-		states.add(state);
+		state.attach(group, states.length);
+		states = Arrays.copyOf(states, states.length + 1);
+		states[states.length - 1] = state;
 		return state;
 	}
 
@@ -91,15 +153,28 @@ public final class RenderState {
 		public void setVaoAndEbo(int vao, int ebo) {
 			this.vao = vao;
 			this.ebo = ebo;
-			hasValue = true;
+			markPending();
 		}
 
 		@Override
 		protected void internalApply() {
-			if (!hasApplied || vao != appliedVao)
+			boolean vaoChanged = !hasApplied || vao != appliedVao;
+			if (vaoChanged) {
 				glBindVertexArray(vao);
-			if (ebo != 0 && (!hasApplied || ebo != appliedEbo))
-				glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
+				appliedVao = vao;
+			} else {
+				markEliminated();
+			}
+
+			// The element buffer binding is part of the VAO's state, so it must be rebound whenever the VAO changes
+			if (ebo != 0) {
+				if (vaoChanged || ebo != appliedEbo) {
+					glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
+				} else {
+					markEliminated();
+				}
+			}
+			appliedEbo = ebo;
 		}
 	}
 
@@ -0,0 +1,129 @@
+package rs117.hd.utils;
+
+import javax.annotation.Nullable;
+
+/**
+ * Accumulates a 64-bit hash which is stable across sessions, for keying data persisted to disk. Unlike the
+ * {@code h * 31 + v} hashes used for in-memory lookups, every input is fully mixed before being combined, so
+ * structured inputs such as model geometry can't cancel each other out, and null is kept distinct from empty.
+ * Arrays are consumed in 64-bit words, to keep hashing large models cheap.
+ */
+public final class StableHasher {
+	private static final long SEED = 0x9E3779B97F4A7C15L;
+	private static final long PRIME = 0x100000001B3L;
+
+	private long hash = SEED;
+
+	public StableHasher reset() {
+		hash = SEED;
+		return this;
+	}
+
+	public StableHasher add(long value) {
+		hash = Long.rotateLeft(hash ^ mix(value), 27) * PRIME;
+		return this;
+	}
+
+	public StableHasher add(boolean value) {
+		return add(value ? 1 : 0);
+	}
+
+	public StableHasher add(@Nullable Enum<?> value) {
+		return add(value == null ? -1 : value.ordinal());
+	}
+
+	public StableHasher add(@Nullable String value) {
+		if (value == null)
+			return add(-1);
+		int length = value.length();
+		add(length);
+		int i = 0;
+		for (; i + 3 < length; i += 4)
+			add(
+				(long) value.charAt(i) << 48 |
+				(long) value.charAt(i + 1) << 32 |
+				(long) value.charAt(i + 2) << 16 |
+				value.charAt(i + 3)
+			);
+		for (; i < length; i++)
+			add(value.charAt(i));
+		return this;
+	}
+
+	public StableHasher add(@Nullable int[] a) {
+		return add(a, a == null ? 0 : a.length);
+	}
+
+	public StableHasher add(@Nullable int[] a, int length) {
+		if (a == null)
+			return add(-1);
+		add(length);
+		int i = 0;
+		for (; i + 1 < length; i += 2)
+			add((long) a[i] << 32 | a[i + 1] & 0xFFFFFFFFL);
+		if (i < length)
+			add(a[i]);
+		return this;
+	}
+
+	public StableHasher add(@Nullable float[] a, int length) {
+		if (a == null)
+			return add(-1);
+		add(length);
+		int i = 0;
+		for (; i + 1 < length; i += 2)
+			add((long) Float.floatToRawIntBits(a[i]) << 32 | Float.floatToRawIntBits(a[i + 1]) & 0xFFFFFFFFL);
+		if (i < length)
+			add(Float.floatToRawIntBits(a[i]));
+		return this;
+	}
+
+	public StableHasher add(@Nullable short[] a) {
+		if (a == null)
+			return add(-1);
+		int length = a.length;
+		add(length);
+		int i = 0;
+		for (; i + 3 < length; i += 4)
+			add(
+				(long) a[i] << 48 |
+				(a[i + 1] & 0xFFFFL) << 32 |
+				(a[i + 2] & 0xFFFFL) << 16 |
+				a[i + 3] & 0xFFFFL
+			);
+		for (; i < length; i++)
+			add(a[i]);
+		return this;
+	}
+
+	public StableHasher add(@Nullable byte[] a) {
+		if (a == null)
+			return add(-1);
+		int length = a.length;
+		add(length);
+		int i = 0;
+		for (; i + 7 < length; i += 8) {
+			long word = 0;
+			for (int j = 0; j < 8; j++)
+				word = word << 8 | a[i + j] & 0xFFL;
+			add(word);
+		}
+		for (; i < length; i++)
+			add(a[i]);
+		return this;
+	}
+
+	public long get() {
+		return mix(hash);
+	}
+
+	/**
+	 * Stafford's variant 13 of the MurmurHash3 64-bit finalizer, which flips each output bit with roughly even
+	 * probability for any single bit flipped in the input.
+	 */
+	public static long mix(long x) {
+		x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+		x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+		return x ^ (x >>> 31);
+	}
+}
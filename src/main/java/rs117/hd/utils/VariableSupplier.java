@@ -6,6 +6,16 @@ import java.util.Map;
 public interface VariableSupplier {
 	Object get(String name);
 
+	/**
+	 * Optionally provide the values of the specified variables directly, for evaluating compiled expressions.
+	 *
+	 * @param slotNames the names of the variables, in the order they should be stored in
+	 * @return the slot values, or null if the variables should be looked up by name instead
+	 */
+	default float[] getSlots(String[] slotNames) {
+		return null;
+	}
+
 	default VariableSupplier proxy(VariableSupplier proxy) {
 		return name -> {
 			var value = proxy.get(name);
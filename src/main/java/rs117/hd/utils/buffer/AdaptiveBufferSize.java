@@ -0,0 +1,60 @@
+package rs117.hd.utils.buffer;
+
+import lombok.Getter;
+import rs117.hd.utils.HDUtils;
+
+import static rs117.hd.utils.MathUtils.*;
+
+/**
+ * Picks a power-of-two buffer size from a decaying high-water mark of the bytes written each frame.
+ * Growing happens as soon as the high-water mark gets close to the capacity, ahead of the buffer overflowing,
+ * while shrinking only happens once it has stayed well below the capacity for a while, so sizes don't flip-flop.
+ */
+public class AdaptiveBufferSize {
+	// Fraction of the high-water mark retained from one frame to the next
+	static final double DECAY = 0.99;
+	// Grow once the high-water mark exceeds this fraction of the size
+	static final double GROW_THRESHOLD = .75;
+	// Shrink once the high-water mark has stayed below this fraction of the size for SHRINK_DELAY_FRAMES
+	static final double SHRINK_THRESHOLD = .25;
+	static final int SHRINK_DELAY_FRAMES = 300;
+
+	private final long minSize;
+	@Getter
+	private long size;
+	@Getter
+	private long highWaterMark;
+	private int framesBelowShrinkThreshold;
+
+	public AdaptiveBufferSize(long initialSize, long minSize) {
+		this.minSize = HDUtils.ceilPow2(minSize);
+		this.size = max(this.minSize, HDUtils.ceilPow2(initialSize));
+	}
+
+	/**
+	 * Record the number of bytes written during a frame.
+	 *
+	 * @return the size the buffer should have for the next frame
+	 */
+	public long update(long writtenBytes) {
+		highWaterMark = max(writtenBytes, (long) (highWaterMark * DECAY));
+
+		if (highWaterMark > size * GROW_THRESHOLD) {
+			size = targetSize();
+			framesBelowShrinkThreshold = 0;
+		} else if (highWaterMark < size * SHRINK_THRESHOLD) {
+			if (++framesBelowShrinkThreshold >= SHRINK_DELAY_FRAMES) {
+				size = targetSize();
+				framesBelowShrinkThreshold = 0;
+			}
+		} else {
+			framesBelowShrinkThreshold = 0;
+		}
+
+		return size;
+	}
+
+	private long targetSize() {
+		return max(minSize, HDUtils.ceilPow2((long) (highWaterMark / GROW_THRESHOLD) + 1));
+	}
+}
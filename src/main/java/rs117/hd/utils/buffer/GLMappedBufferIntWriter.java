@@ -3,78 +3,177 @@ package rs117.hd.utils.buffer;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import org.lwjgl.BufferUtils;
 import rs117.hd.utils.Destructible;
 import rs117.hd.utils.DestructibleHandler;
 
+import static rs117.hd.utils.MathUtils.*;
 import static rs117.hd.utils.buffer.GLBuffer.MAP_INVALIDATE;
 import static rs117.hd.utils.buffer.GLBuffer.MAP_UNSYNCHRONIZED;
 import static rs117.hd.utils.buffer.GLBuffer.MAP_WRITE;
 
+/**
+ * Hands out views into a mapped buffer to any number of threads at once. Reservations are made by bumping an atomic
+ * write offset, without taking any locks. Reservations which don't fit in the mapped region are staged in pooled
+ * buffers, and copied into the buffer after growing it when flushing.
+ */
 @RequiredArgsConstructor
 public class GLMappedBufferIntWriter implements Destructible {
 	public static final boolean DEBUG_STAGING = false;
+	// Number of free views each thread takes from the shared pool at once
+	private static final int VIEW_BATCH_SIZE = 16;
 
 	private final GLBuffer buffer;
 	private GLBuffer stagingBuffer;
-
-	private final ArrayDeque<ReservedView> freeViews = new ArrayDeque<>();
-	private final ArrayDeque<ReservedView> usedStagingViews = new ArrayDeque<>();
-	private final ArrayList<ReservedView> usedMappedViews = new ArrayList<>();
+	@Getter
+	private final IntStagingArena stagingArena = new IntStagingArena();
+	// Flushes which had to copy staged reservations
+	private final LongAdder stagedFlushes = new LongAdder();
+
+	private final ConcurrentLinkedQueue<ReservedView> freeViews = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<ArrayDeque<ReservedView>> threadFreeViews = ThreadLocal.withInitial(ArrayDeque::new);
+	private final ConcurrentLinkedQueue<ReservedView> usedStagingViews = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<ReservedView> usedMappedViews = new ConcurrentLinkedQueue<>();
+	// Every pooled view, including those cached by other threads, so they can all be cleared on destroy
+	private final ConcurrentLinkedQueue<ReservedView> allViews = new ConcurrentLinkedQueue<>();
 
 	private GLMappedBuffer mappedBuffer;
-	private int writtenMappedInts;
-	private int writtenStagingInts;
+	private volatile ByteBuffer mappedBytes;
+	private volatile int mappedCapacityInts;
+	// Offset of the next reservation, continuing past the end of the mapped region once it's full
+	private final AtomicInteger writtenInts = new AtomicInteger();
+	// Offset of the first staged reservation, or Integer.MAX_VALUE if nothing has been staged
+	private final AtomicInteger stagingOffsetInts = new AtomicInteger(Integer.MAX_VALUE);
 
 	public int getWrittenInts() {
-		return writtenMappedInts + writtenStagingInts;
+		return writtenInts.get();
+	}
+
+	/**
+	 * @return the number of flushes which had to copy staged reservations since the last call
+	 */
+	public long takeStagedFlushes() {
+		return stagedFlushes.sumThenReset();
 	}
 
 	public void map(boolean sync) {
 		mappedBuffer = buffer.map(MAP_WRITE | MAP_INVALIDATE | (sync ? 0 : MAP_UNSYNCHRONIZED));
+		beginWriting(mappedBuffer.byteView());
+	}
+
+	/**
+	 * Start handing out reservations from the beginning of the specified mapped memory.
+	 * This doesn't touch OpenGL, so the writer can also be used with plain buffers.
+	 */
+	public void beginWriting(ByteBuffer mappedBytes) {
+		writtenInts.set(0);
+		stagingOffsetInts.set(Integer.MAX_VALUE);
+		mappedCapacityInts = mappedBytes.capacity() / Integer.BYTES;
+		this.mappedBytes = mappedBytes;
 	}
 
-	public synchronized ReservedView reserve(int sizeInts) {
-		assert mappedBuffer.isMapped();
+	public ReservedView reserve(int sizeInts) {
+		final ByteBuffer backing = mappedBytes;
+		assert backing != null : "reserve called while not mapped";
 
-		// Need staging if we've already staged or mapped buffer has no space
-		if (writtenStagingInts > 0 || mappedBuffer.intView().remaining() < sizeInts || DEBUG_STAGING) {
-			ReservedView view = new ReservedView();
-			view.buffer = BufferUtils.createIntBuffer(sizeInts);
-			view.bufferOffsetInts = writtenMappedInts + writtenStagingInts;
-			writtenStagingInts += sizeInts;
+		final int offset = writtenInts.getAndAdd(sizeInts);
+
+		// Offsets only increase, so once a reservation doesn't fit, neither will any of the following ones
+		if (offset + sizeInts > mappedCapacityInts || DEBUG_STAGING) {
+			stagingOffsetInts.accumulateAndGet(offset, Math::min);
+			ReservedView view = pollFreeView();
+			// Staged views have no backing, since their offset isn't relative to the mapped buffer
+			view.backing = null;
+			view.buffer = stagingArena.acquire(sizeInts);
+			view.bufferOffsetInts = offset;
 			usedStagingViews.add(view);
 			return view;
 		}
 
-		ReservedView view = freeViews.poll();
-		if (view == null)
-			view = new ReservedView();
-
-		if (view.backing != mappedBuffer.byteView()) {
-			view.backing = mappedBuffer.byteView();
-			view.buffer = view.backing.asIntBuffer();
+		ReservedView view = pollFreeView();
+		if (view.backing != backing) {
+			view.backing = backing;
+			view.buffer = backing.asIntBuffer();
 		}
 
 		view.buffer.clear();
-		view.buffer.position(writtenMappedInts);
-		view.buffer.limit(writtenMappedInts + sizeInts);
-		view.bufferOffsetInts = writtenMappedInts;
-
-		writtenMappedInts += sizeInts;
-		mappedBuffer.intView().position(writtenMappedInts);
+		view.buffer.position(offset);
+		view.buffer.limit(offset + sizeInts);
+		view.bufferOffsetInts = offset;
 
 		usedMappedViews.add(view);
 		return view;
 	}
 
+	private ReservedView pollFreeView() {
+		final ArrayDeque<ReservedView> localViews = threadFreeViews.get();
+		ReservedView view = localViews.poll();
+		if (view != null)
+			return view;
+
+		for (int i = 0; i < VIEW_BATCH_SIZE && (view = freeViews.poll()) != null; i++)
+			localViews.add(view);
+
+		view = localViews.poll();
+		if (view == null) {
+			view = new ReservedView();
+			allViews.add(view);
+		}
+		return view;
+	}
+
+	/**
+	 * @return the offset at which staged reservations begin, which is also the number of ints written to the mapped region
+	 */
+	public int getStagingOffsetInts() {
+		return min(stagingOffsetInts.get(), writtenInts.get());
+	}
+
+	/**
+	 * Copy all staged reservations into the destination buffer, which should start at {@link #getStagingOffsetInts()}.
+	 * Reservations can be made in any order across threads, so each one is placed at its own offset.
+	 */
+	public void copyStagedInts(IntBuffer dst) {
+		final int stagingOffset = getStagingOffsetInts();
+		int end = dst.position();
+		ReservedView view;
+		while ((view = usedStagingViews.poll()) != null) {
+			view.buffer.flip();
+			dst.position(view.bufferOffsetInts - stagingOffset);
+			dst.put(view.buffer);
+			end = max(end, dst.position());
+			stagingArena.release(view.buffer);
+			view.buffer = null;
+			freeViews.add(view);
+		}
+		dst.position(end);
+	}
+
+	/**
+	 * Return all reservations to the pool, once they've been copied to the buffer.
+	 *
+	 * @return the number of bytes written since the writer was mapped
+	 */
+	public long endWriting() {
+		ReservedView view;
+		while ((view = usedMappedViews.poll()) != null)
+			freeViews.add(view);
+
+		long writtenBytes = (long) writtenInts.get() * Integer.BYTES;
+		writtenInts.set(0);
+		stagingOffsetInts.set(Integer.MAX_VALUE);
+		mappedBytes = null;
+		return writtenBytes;
+	}
+
 	@Override
 	@SuppressWarnings("deprecation")
 	protected void finalize() {
-		if (!usedStagingViews.isEmpty() || !usedMappedViews.isEmpty() || !freeViews.isEmpty())
+		if (!usedStagingViews.isEmpty() || !allViews.isEmpty())
 			DestructibleHandler.queueLeakedDestruction(this);
 	}
 
@@ -83,61 +182,47 @@ public class GLMappedBufferIntWriter implements Destructible {
 		if (mappedBuffer != null && mappedBuffer.isMapped())
 			mappedBuffer.unmap();
 		mappedBuffer = null;
+		mappedBytes = null;
 
 		if (stagingBuffer != null)
 			stagingBuffer.destroy();
 		stagingBuffer = null;
 
-		for (ReservedView view : freeViews) {
+		for (ReservedView view : allViews) {
 			view.backing = null;
 			view.buffer = null;
 		}
+		allViews.clear();
 		freeViews.clear();
-
-		for (ReservedView view : usedMappedViews) {
-			view.backing = null;
-			view.buffer = null;
-		}
 		usedMappedViews.clear();
 
-		for (ReservedView view : usedStagingViews) {
-			view.backing = null;
+		for (ReservedView view : usedStagingViews)
 			view.buffer = null;
-		}
 		usedStagingViews.clear();
+		stagingArena.destroy();
 	}
 
-	public synchronized long flush() {
-		mappedBuffer.setPositionBytes(writtenMappedInts * Integer.BYTES);
+	public long flush() {
+		final int stagingOffset = getStagingOffsetInts();
+		mappedBuffer.setPositionBytes(stagingOffset * Integer.BYTES);
 		mappedBuffer.unmap();
 
 		if (!usedStagingViews.isEmpty()) {
+			stagedFlushes.increment();
 			final GLBuffer owner = mappedBuffer.getOwner();
-			final long mappedSize = (long) writtenMappedInts * Integer.BYTES;
-			final long stagingCapacity = (long) writtenStagingInts * Integer.BYTES;
+			final long mappedSize = (long) stagingOffset * Integer.BYTES;
+			final long stagingCapacity = (long) (writtenInts.get() - stagingOffset) * Integer.BYTES;
 
 			owner.ensureCapacity(mappedSize, stagingCapacity);
 			mappedBuffer = owner.map(MAP_WRITE, mappedSize, stagingCapacity);
 
-			final IntBuffer intView = owner.mapped().intView().clear();
-			ReservedView view;
-			while ((view = usedStagingViews.poll()) != null) {
-				view.buffer.flip();
-				intView.put(view.buffer);
-				view.buffer = null;
-			}
+			copyStagedInts(owner.mapped().intView().clear());
 
 			mappedBuffer.syncViews();
 			mappedBuffer.unmap();
 		}
 
-		freeViews.addAll(usedMappedViews);
-		usedMappedViews.clear();
-
-		long writtenBytes = (long) (writtenMappedInts + writtenStagingInts) * Integer.BYTES;
-		writtenMappedInts = 0;
-		writtenStagingInts = 0;
-		return writtenBytes;
+		return endWriting();
 	}
 
 	public static final class ReservedView {
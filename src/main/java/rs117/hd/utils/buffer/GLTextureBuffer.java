@@ -7,6 +7,7 @@ import static org.lwjgl.opengl.GL33C.*;
 public class GLTextureBuffer extends GLBuffer {
 	@Getter
 	private int texId;
+	private int internalFormat = GL_RGB32I;
 
 	public GLTextureBuffer(String name, int usage) {
 		this(name, usage, 0);
@@ -16,6 +17,12 @@ public class GLTextureBuffer extends GLBuffer {
 		super(name, GL_TEXTURE_BUFFER, usage, storageFlags);
 	}
 
+	public GLTextureBuffer setInternalFormat(int internalFormat) {
+		assert texId == 0 : "The format must be set before initialization";
+		this.internalFormat = internalFormat;
+		return this;
+	}
+
 	@Override
 	public GLTextureBuffer initialize(long initialCapacity) {
 		super.initialize(initialCapacity);
@@ -24,8 +31,8 @@ public class GLTextureBuffer extends GLBuffer {
 		texId = glGenTextures();
 		glBindTexture(target, texId);
 
-		// RGB32 signed integer texture buffer
-		glTexBuffer(target, GL_RGB32I, id);
+		// RGB32 signed integer texture buffer by default
+		glTexBuffer(target, internalFormat, id);
 
 		glBindTexture(target, 0);
 		return this;
@@ -37,7 +44,7 @@ public class GLTextureBuffer extends GLBuffer {
 		boolean resized = super.ensureCapacity(byteOffset, numBytes);
 		if (oldId != id) {
 			glBindTexture(target, texId);
-			glTexBuffer(target, GL_RGB32I, id);
+			glTexBuffer(target, internalFormat, id);
 			glBindTexture(target, 0);
 		}
 		return resized;
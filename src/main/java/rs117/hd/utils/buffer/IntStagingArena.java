@@ -0,0 +1,109 @@
+package rs117.hd.utils.buffer;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.lwjgl.BufferUtils;
+import rs117.hd.utils.Destructible;
+
+import static rs117.hd.utils.MathUtils.*;
+
+/**
+ * Pool of off-heap int buffers in power-of-two size classes, for staging data which is copied elsewhere shortly after.
+ * Buffers are recycled instead of dropped, so busy frames don't keep allocating direct memory and leaving it for the
+ * garbage collector to reclaim. Each size class only keeps a limited number of free buffers, so a single spike
+ * doesn't keep a large amount of memory alive indefinitely.
+ * Acquiring and releasing buffers is lock-free.
+ */
+public class IntStagingArena implements Destructible {
+	private static final int MIN_CLASS_SHIFT = 8;
+	private static final int MAX_CLASS_SHIFT = 20;
+	private static final int MAX_FREE_BUFFERS_PER_CLASS = 16;
+	private static final long MAX_FREE_BYTES_PER_CLASS = 8 * MiB;
+
+	@SuppressWarnings("unchecked")
+	private final ConcurrentLinkedQueue<IntBuffer>[] freeBuffers = new ConcurrentLinkedQueue[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+	// May briefly exceed the number of buffers in each queue, but never falls below it
+	private final AtomicIntegerArray freeBufferCounts = new AtomicIntegerArray(freeBuffers.length);
+
+	private final LongAdder stagedBytes = new LongAdder();
+	private final LongAdder allocations = new LongAdder();
+
+	public IntStagingArena() {
+		for (int i = 0; i < freeBuffers.length; i++)
+			freeBuffers[i] = new ConcurrentLinkedQueue<>();
+	}
+
+	private static int sizeClass(int sizeInts) {
+		int shift = 32 - Integer.numberOfLeadingZeros(Math.max(sizeInts, 1) - 1);
+		return Math.max(shift, MIN_CLASS_SHIFT) - MIN_CLASS_SHIFT;
+	}
+
+	private static int maxFreeBuffers(int sizeClass) {
+		long classBytes = (long) Integer.BYTES << sizeClass + MIN_CLASS_SHIFT;
+		return (int) Math.max(1, Math.min(MAX_FREE_BUFFERS_PER_CLASS, MAX_FREE_BYTES_PER_CLASS / classBytes));
+	}
+
+	/**
+	 * @return the number of bytes staged since the last call
+	 */
+	public long takeStagedBytes() {
+		return stagedBytes.sumThenReset();
+	}
+
+	/**
+	 * @return the number of buffers which had to be allocated since the last call
+	 */
+	public long takeAllocations() {
+		return allocations.sumThenReset();
+	}
+
+	/**
+	 * @return a buffer with room for exactly the requested number of ints, which must be released once copied
+	 */
+	public IntBuffer acquire(int sizeInts) {
+		stagedBytes.add((long) sizeInts * Integer.BYTES);
+
+		int sizeClass = sizeClass(sizeInts);
+		IntBuffer buffer;
+		if (sizeClass < freeBuffers.length) {
+			buffer = freeBuffers[sizeClass].poll();
+			if (buffer != null) {
+				freeBufferCounts.decrementAndGet(sizeClass);
+			} else {
+				buffer = BufferUtils.createIntBuffer(1 << sizeClass + MIN_CLASS_SHIFT);
+				allocations.increment();
+			}
+		} else {
+			// Too large to be worth keeping around
+			buffer = BufferUtils.createIntBuffer(sizeInts);
+			allocations.increment();
+		}
+
+		buffer.clear();
+		buffer.limit(sizeInts);
+		return buffer;
+	}
+
+	public void release(IntBuffer buffer) {
+		int sizeClass = sizeClass(buffer.capacity());
+		if (sizeClass >= freeBuffers.length || buffer.capacity() != 1 << sizeClass + MIN_CLASS_SHIFT)
+			return;
+
+		// Leave the buffer for the garbage collector if enough of them are already being kept around
+		if (freeBufferCounts.incrementAndGet(sizeClass) > maxFreeBuffers(sizeClass)) {
+			freeBufferCounts.decrementAndGet(sizeClass);
+			return;
+		}
+		freeBuffers[sizeClass].add(buffer);
+	}
+
+	@Override
+	public void destroy() {
+		for (int i = 0; i < freeBuffers.length; i++) {
+			freeBuffers[i].clear();
+			freeBufferCounts.set(i, 0);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package rs117.hd.utils.buffer;
+
+import java.util.Arrays;
+
+/**
+ * Staging stats gathered from every staging buffer once per frame, on the client thread.
+ */
+public final class StagingStats {
+	public static final int FLUSH_WINDOW_SECONDS = 10;
+
+	// Bytes staged, staging buffers allocated, and flushes which had to copy in staged data, since the stats were last reset
+	public long stagedBytes;
+	public long allocations;
+	public long stagedFlushes;
+
+	// Staged flushes per second, indexed by the second modulo the window length
+	private final long[] flushesPerSecond = new long[FLUSH_WINDOW_SECONDS];
+	private long lastSecond;
+
+	public void reset() {
+		stagedBytes = 0;
+		allocations = 0;
+		stagedFlushes = 0;
+	}
+
+	public void add(IntStagingArena arena) {
+		stagedBytes += arena.takeStagedBytes();
+		allocations += arena.takeAllocations();
+	}
+
+	public void add(GLMappedBufferIntWriter writer) {
+		add(writer.getStagingArena());
+		stagedFlushes += writer.takeStagedFlushes();
+	}
+
+	/**
+	 * Count the staged flushes since the last reset towards the current second, and forget seconds which have left
+	 * the window.
+	 *
+	 * @return the number of staged flushes over the last {@value #FLUSH_WINDOW_SECONDS} seconds
+	 */
+	public long updateFlushWindow(long timeMillis) {
+		long second = timeMillis / 1000;
+		long elapsed = second - lastSecond;
+		if (elapsed < 0 || elapsed >= FLUSH_WINDOW_SECONDS) {
+			Arrays.fill(flushesPerSecond, 0);
+		} else {
+			for (long s = lastSecond + 1; s <= second; s++)
+				flushesPerSecond[(int) (s % FLUSH_WINDOW_SECONDS)] = 0;
+		}
+		lastSecond = second;
+		flushesPerSecond[(int) (second % FLUSH_WINDOW_SECONDS)] += stagedFlushes;
+
+		long total = 0;
+		for (long count : flushesPerSecond)
+			total += count;
+		return total;
+	}
+}
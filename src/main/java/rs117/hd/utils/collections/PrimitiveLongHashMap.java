@@ -0,0 +1,155 @@
+package rs117.hd.utils.collections;
+
+import java.util.Arrays;
+
+import static rs117.hd.utils.HDUtils.ceilPow2;
+
+/**
+ * Open-addressing hash map from primitive long keys to objects, stored in parallel arrays.
+ * Lookups never allocate. Uses linear probing with backward-shift deletion, so there are no tombstones.
+ * Not thread-safe.
+ */
+public final class PrimitiveLongHashMap<V> {
+	private static final float MAX_LOAD_FACTOR = .5f;
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+	private int resizeThreshold;
+
+	public PrimitiveLongHashMap() {
+		this(64);
+	}
+
+	public PrimitiveLongHashMap(int expectedSize) {
+		allocate(ceilPow2(Math.max(16, (int) (expectedSize / MAX_LOAD_FACTOR))));
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+	}
+
+	private static int mix(long key) {
+		// Stafford variant 13 of the MurmurHash3 64-bit finalizer
+		key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+		key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+		return (int) (key ^ (key >>> 31));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int i = mix(key) & mask;
+		Object value;
+		while ((value = values[i]) != null) {
+			if (keys[i] == key)
+				return (V) value;
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		assert value != null : "null values are not supported";
+		int i = mix(key) & mask;
+		Object prev;
+		while ((prev = values[i]) != null) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return (V) prev;
+			}
+			i = (i + 1) & mask;
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		if (++size > resizeThreshold)
+			rehash(keys.length * 2);
+		return null;
+	}
+
+	/**
+	 * Remove the entry for the specified key, only if it's currently mapped to the specified value.
+	 */
+	public boolean remove(long key, V value) {
+		int i = mix(key) & mask;
+		Object current;
+		while ((current = values[i]) != null) {
+			if (keys[i] == key) {
+				if (current != value)
+					return false;
+				removeAt(i);
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int i = mix(key) & mask;
+		Object current;
+		while ((current = values[i]) != null) {
+			if (keys[i] == key) {
+				removeAt(i);
+				return (V) current;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	private void removeAt(int hole) {
+		size--;
+		// Shift back any subsequent entries in the probe chain which would become unreachable
+		int i = hole;
+		while (true) {
+			i = (i + 1) & mask;
+			if (values[i] == null)
+				break;
+			int home = mix(keys[i]) & mask;
+			// Move the entry if its home slot isn't cyclically within (hole, i]
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				keys[hole] = keys[i];
+				values[hole] = values[i];
+				hole = i;
+			}
+		}
+		values[hole] = null;
+	}
+
+	public void clear() {
+		if (size == 0)
+			return;
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	private void rehash(int newCapacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(newCapacity);
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] == null)
+				continue;
+			int i = mix(oldKeys[j]) & mask;
+			while (values[i] != null)
+				i = (i + 1) & mask;
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+}
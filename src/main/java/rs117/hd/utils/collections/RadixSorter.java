@@ -0,0 +1,125 @@
+package rs117.hd.utils.collections;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import static rs117.hd.utils.HDUtils.ceilPow2;
+
+/**
+ * Stable LSD radix sort of list elements by an int key, which is computed only once per element.
+ * Scratch arrays are reused between sorts, so sorting doesn't allocate once they've grown large enough.
+ * Not thread-safe.
+ */
+public final class RadixSorter {
+	private static final int RADIX_BITS = 8;
+	private static final int RADIX = 1 << RADIX_BITS;
+	private static final int RADIX_MASK = RADIX - 1;
+	// Below this size, insertion sort beats the fixed cost of the histogram passes
+	private static final int INSERTION_SORT_THRESHOLD = 64;
+
+	private final int[] counts = new int[RADIX];
+	private int[] keys = new int[0];
+	private int[] tmpKeys = new int[0];
+	private int[] indices = new int[0];
+	private int[] tmpIndices = new int[0];
+	private Object[] elements = new Object[0];
+
+	private void ensureCapacity(int size) {
+		if (keys.length >= size)
+			return;
+		size = ceilPow2(size);
+		keys = new int[size];
+		tmpKeys = new int[size];
+		indices = new int[size];
+		tmpIndices = new int[size];
+		elements = new Object[size];
+	}
+
+	/**
+	 * Sort the list in descending order of the keys returned by the key function.
+	 * Elements with equal keys retain their relative order.
+	 */
+	public <T> void sortDescending(List<T> list, ToIntFunction<? super T> keyFunction) {
+		final int size = list.size();
+		if (size < 2)
+			return;
+
+		ensureCapacity(size);
+		boolean sorted = true;
+		for (int i = 0; i < size; i++) {
+			// Map the signed key to an unsigned key in reverse order, so an ascending sort yields descending keys
+			keys[i] = keyFunction.applyAsInt(list.get(i)) ^ Integer.MAX_VALUE;
+			indices[i] = i;
+			if (i > 0 && Integer.compareUnsigned(keys[i - 1], keys[i]) > 0)
+				sorted = false;
+		}
+
+		// The order rarely changes much between frames, so it's often still sorted
+		if (sorted)
+			return;
+
+		if (size < INSERTION_SORT_THRESHOLD) {
+			insertionSort(size);
+		} else {
+			radixSort(size);
+		}
+
+		for (int i = 0; i < size; i++)
+			elements[i] = list.get(i);
+		for (int i = 0; i < size; i++) {
+			@SuppressWarnings("unchecked")
+			T element = (T) elements[indices[i]];
+			list.set(i, element);
+		}
+		Arrays.fill(elements, 0, size, null);
+	}
+
+	private void insertionSort(int size) {
+		for (int i = 1; i < size; i++) {
+			int key = keys[i];
+			int index = indices[i];
+			int j = i - 1;
+			while (j >= 0 && Integer.compareUnsigned(keys[j], key) > 0) {
+				keys[j + 1] = keys[j];
+				indices[j + 1] = indices[j];
+				j--;
+			}
+			keys[j + 1] = key;
+			indices[j + 1] = index;
+		}
+	}
+
+	private void radixSort(int size) {
+		for (int shift = 0; shift < Integer.SIZE; shift += RADIX_BITS) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < size; i++)
+				counts[keys[i] >>> shift & RADIX_MASK]++;
+
+			// Skip passes where every key shares the same digit, which is common for the high bits of small keys
+			if (counts[keys[0] >>> shift & RADIX_MASK] == size)
+				continue;
+
+			int offset = 0;
+			for (int i = 0; i < RADIX; i++) {
+				int count = counts[i];
+				counts[i] = offset;
+				offset += count;
+			}
+
+			for (int i = 0; i < size; i++) {
+				int key = keys[i];
+				int dst = counts[key >>> shift & RADIX_MASK]++;
+				tmpKeys[dst] = key;
+				tmpIndices[dst] = indices[i];
+			}
+
+			int[] swap = keys;
+			keys = tmpKeys;
+			tmpKeys = swap;
+			swap = indices;
+			indices = tmpIndices;
+			tmpIndices = swap;
+		}
+	}
+}
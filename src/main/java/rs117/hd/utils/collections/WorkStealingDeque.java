@@ -0,0 +1,96 @@
+package rs117.hd.utils.collections;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static rs117.hd.utils.HDUtils.ceilPow2;
+
+/**
+ * Fixed-capacity Chase-Lev work-stealing deque.
+ * The owning thread pushes and pops from the bottom (LIFO), while any other thread may steal from the top (FIFO).
+ * Pushing never allocates, and {@link #size()} is exact at the time of the call.
+ */
+public final class WorkStealingDeque<T> {
+	private final AtomicReferenceArray<T> buffer;
+	private final AtomicLong top = new AtomicLong();
+	private final int mask;
+	private volatile long bottom;
+
+	public WorkStealingDeque(int capacity) {
+		capacity = ceilPow2(capacity);
+		buffer = new AtomicReferenceArray<>(capacity);
+		mask = capacity - 1;
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	public int size() {
+		long t = top.get();
+		long b = bottom;
+		return (int) Math.max(0, b - t);
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Push an item onto the bottom of the deque. May only be called by the owning thread.
+	 *
+	 * @return false if the deque is full, in which case the caller is responsible for queueing the item elsewhere
+	 */
+	public boolean push(T item) {
+		long b = bottom;
+		if (b - top.get() > mask)
+			return false;
+		buffer.lazySet((int) b & mask, item);
+		bottom = b + 1; // Publishes the item to thieves
+		return true;
+	}
+
+	/**
+	 * Pop the most recently pushed item from the bottom of the deque. May only be called by the owning thread.
+	 */
+	public T pop() {
+		long b = bottom - 1;
+		bottom = b; // The volatile write must be ordered before reading top
+		long t = top.get();
+		if (t > b) {
+			// Empty
+			bottom = b + 1;
+			return null;
+		}
+
+		final int idx = (int) b & mask;
+		T item = buffer.get(idx);
+		if (t == b) {
+			// Last item, race against any thieves for it
+			if (!top.compareAndSet(t, t + 1))
+				item = null;
+			bottom = b + 1;
+		} else {
+			// Thieves can't reach this slot until it's pushed to again, so it's safe to clear
+			buffer.lazySet(idx, null);
+		}
+		return item;
+	}
+
+	/**
+	 * Steal the oldest item from the top of the deque. Safe to call from any thread.
+	 *
+	 * @return the stolen item, or null if the deque was empty or another thread won the race
+	 */
+	public T steal() {
+		long t = top.get();
+		long b = bottom;
+		if (t >= b)
+			return null;
+
+		T item = buffer.get((int) t & mask);
+		if (!top.compareAndSet(t, t + 1))
+			return null;
+		return item;
+	}
+}
@@ -167,10 +167,12 @@ final class JobHandle extends AbstractQueuedSynchronizer {
 				if (VALIDATE)
 					log.debug("Handle [{}] Adding: [{}] to queue", this, dep);
 
-				if (dep.isHighPriority()) {
-					worker.localWorkQueue.addFirst(dep);
+				if (worker != null) {
+					worker.pushLocal(dep);
+				} else if (dep.isHighPriority()) {
+					JOB_SYSTEM.workQueue.addFirst(dep);
 				} else {
-					worker.localWorkQueue.addLast(dep);
+					JOB_SYSTEM.workQueue.addLast(dep);
 				}
 
 				queuedWork++;
@@ -235,6 +237,16 @@ final class JobHandle extends AbstractQueuedSynchronizer {
 			await();
 	}
 
+	/**
+	 * Cancel the handle only if no worker has started running it yet, without ever interrupting a running worker.
+	 */
+	synchronized boolean cancelIfQueued() throws InterruptedException {
+		if (!isInQueue())
+			return false;
+		cancel(false);
+		return true;
+	}
+
 	boolean isReleased() { return isIdle() && refCounter.get() == 0; }
 	boolean isIdle() { return jobState.get() == STATE_NONE; }
 	boolean isInQueue() { return jobState.get() == STATE_QUEUED; }
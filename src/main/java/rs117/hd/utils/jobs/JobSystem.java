@@ -4,6 +4,9 @@ import com.google.inject.Injector;
 import java.util.HashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import lombok.Getter;
@@ -13,6 +16,7 @@ import net.runelite.client.callback.ClientThread;
 import rs117.hd.HdPlugin;
 import rs117.hd.config.CpuUsageLimit;
 import rs117.hd.overlays.FrameTimer;
+import rs117.hd.utils.collections.WorkStealingDeque;
 
 import static rs117.hd.HdPlugin.PROCESSOR_COUNT;
 import static rs117.hd.utils.MathUtils.*;
@@ -88,14 +92,25 @@ public final class JobSystem {
 
 	private void cancelAllWork(ConcurrentLinkedDeque<JobHandle> queue) {
 		JobHandle handle;
-		while ((handle = queue.poll()) != null) {
-			try {
-				handle.cancel(false);
-				handle.setCompleted();
-			} catch (InterruptedException e) {
-				log.warn("Interrupted while shutting down worker", e);
-				throw new RuntimeException(e);
-			}
+		while ((handle = queue.poll()) != null)
+			cancelQueuedWork(handle);
+	}
+
+	private void cancelAllWork(WorkStealingDeque<JobHandle> queue) {
+		JobHandle handle;
+		while (!queue.isEmpty()) {
+			if ((handle = queue.steal()) != null)
+				cancelQueuedWork(handle);
+		}
+	}
+
+	private void cancelQueuedWork(JobHandle handle) {
+		try {
+			handle.cancel(false);
+			handle.setCompleted();
+		} catch (InterruptedException e) {
+			log.warn("Interrupted while shutting down worker", e);
+			throw new RuntimeException(e);
 		}
 	}
 
@@ -162,6 +177,57 @@ public final class JobSystem {
 			worker.printState();
 	}
 
+	/**
+	 * Run the task once for each index in [0, count), spread across the calling thread and idle workers.
+	 * Indices are claimed dynamically, and the calling thread works through them as well, so this still completes
+	 * if no worker is free to help. Returns once every index has been processed, rethrowing the first failure.
+	 */
+	public void parallelFor(String context, int count, IntConsumer task) {
+		int helperCount = active ? min(count - 1, workerCount - (isWorker() ? 1 : 0)) : 0;
+		if (helperCount <= 0) {
+			for (int i = 0; i < count; i++)
+				task.accept(i);
+			return;
+		}
+
+		final AtomicInteger nextIndex = new AtomicInteger();
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final Runnable claimIndices = () -> {
+			int i;
+			while ((i = nextIndex.getAndIncrement()) < count) {
+				try {
+					task.accept(i);
+				} catch (Throwable ex) {
+					error.compareAndSet(null, ex);
+					// Stop handing out the remaining indices
+					nextIndex.set(count);
+				}
+			}
+		};
+
+		GenericJob[] helpers = new GenericJob[helperCount];
+		for (int i = 0; i < helperCount; i++)
+			helpers[i] = GenericJob.build(context, job -> claimIndices.run()).queue(true);
+		claimIndices.run();
+		for (GenericJob helper : helpers) {
+			// Helpers which haven't started yet would have nothing left to claim, so don't wait for a worker to free up
+			try {
+				if (helper.handle != null)
+					helper.handle.cancelIfQueued();
+			} catch (InterruptedException ex) {
+				log.warn("Interrupted while cancelling helper job {}", helper);
+				throw new RuntimeException(ex);
+			}
+			helper.waitForCompletion(true);
+		}
+
+		Throwable ex = error.get();
+		if (ex instanceof RuntimeException)
+			throw (RuntimeException) ex;
+		if (ex instanceof Error)
+			throw (Error) ex;
+	}
+
 	void queue(Job item, boolean highPriority, Job... dependencies) {
 		if (!item.executeAsync) {
 			try {
@@ -1,11 +1,11 @@
 package rs117.hd.utils.jobs;
 
 import java.util.ArrayDeque;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import rs117.hd.utils.collections.WorkStealingDeque;
 
 import static rs117.hd.utils.HDUtils.getThreadStackTrace;
 import static rs117.hd.utils.MathUtils.*;
@@ -15,6 +15,7 @@ import static rs117.hd.utils.jobs.JobSystem.VALIDATE;
 @RequiredArgsConstructor
 public final class Worker {
 	private static final long SLEEP_TIME_NANOS = TimeUnit.MICROSECONDS.convert(1, TimeUnit.NANOSECONDS);
+	static final int LOCAL_QUEUE_CAPACITY = 4096;
 
 	String name, pausedName;
 	Thread thread;
@@ -23,7 +24,7 @@ public final class Worker {
 
 	final JobSystem jobSystem;
 	final int workerIdx;
-	final ConcurrentLinkedDeque<JobHandle> localWorkQueue = new ConcurrentLinkedDeque<>();
+	final WorkStealingDeque<JobHandle> localWorkQueue = new WorkStealingDeque<>(LOCAL_QUEUE_CAPACITY);
 	final ArrayDeque<JobHandle> localStalledWork = new ArrayDeque<>();
 	final AtomicBoolean inflight = new AtomicBoolean();
 
@@ -50,7 +51,7 @@ public final class Worker {
 		pausedName = name + " [Paused]";
 		while (jobSystem.active) {
 			// Check local work queue
-			handle = (localStalledWork.isEmpty() ? localWorkQueue : localStalledWork).poll();
+			handle = localStalledWork.isEmpty() ? localWorkQueue.pop() : localStalledWork.poll();
 
 			long waitStart = handle == null ? System.nanoTime() : 0;
 			while (handle == null) {
@@ -59,14 +60,11 @@ public final class Worker {
 					int stealCount = max(1, victim.localWorkQueue.size() / jobSystem.workers.length);
 
 					JobHandle stolenHandle;
-					while (stealCount-- > 0 && (stolenHandle = victim.localWorkQueue.poll()) != null) {
+					while (stealCount-- > 0 && (stolenHandle = victim.localWorkQueue.steal()) != null) {
 						if (handle == null) {
 							handle = stolenHandle;
 						} else {
-							if (handle.highPriority)
-								localWorkQueue.addFirst(stolenHandle);
-							else
-								localWorkQueue.addLast(stolenHandle);
+							pushLocal(stolenHandle);
 						}
 					}
 				}
@@ -106,6 +104,15 @@ public final class Worker {
 		log.trace("Shutdown");
 	}
 
+	/**
+	 * Push a handle onto this worker's local queue. Must only be called from this worker's thread.
+	 * Low priority work, and any work which doesn't fit in the local queue, goes to the back of the shared queue instead.
+	 */
+	void pushLocal(JobHandle handle) {
+		if (!handle.highPriority || !localWorkQueue.push(handle))
+			jobSystem.workQueue.addLast(handle);
+	}
+
 	void processHandle() throws InterruptedException {
 		boolean requeued = false;
 		try {
@@ -119,7 +126,8 @@ public final class Worker {
 						handle.item.ranToCompletion.set(true);
 					}
 				} else {
-					// Requeue into stalled work queue, since adding to ConcurrentLinkedDeque continuously is costly
+					// Requeue into the private stalled work queue instead of pushing back onto the Chase-Lev WorkStealingDeque,
+					// where other workers would keep stealing a job which can't start yet
 					localStalledWork.addLast(handle);
 					requeued = true;
 				}
@@ -42,6 +42,7 @@
 uniform sampler2DArray textureArray;
 uniform sampler2D shadowMap;
 uniform usampler2DArray tiledLightingArray;
+uniform usamplerBuffer clusteredLights;
 
 // general HD settings
 
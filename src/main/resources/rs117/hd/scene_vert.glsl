@@ -38,7 +38,7 @@ layout (location = 0) in vec3 vPosition;
     layout (location = 2) in vec4 vNormal;
     layout (location = 3) in int vTextureFaceIdx;
     layout (location = 6) in int vWorldViewId;
-    layout (location = 7) in ivec2 vSceneBase;
+    layout (location = 7) in ivec3 vSceneBase;
 
     uniform isamplerBuffer textureFaces;
 #else
@@ -90,7 +90,7 @@ layout (location = 0) in vec3 vPosition;
             materialData = texelFetch(textureFaces, vTextureFaceIdx + 1)[vertex];
         }
 
-        vec3 sceneOffset = vec3(vSceneBase.x, 0, vSceneBase.y);
+        vec3 sceneOffset = vec3(vSceneBase);
         vec3 worldNormal = vNormal.xyz;
         vec3 worldPosition = sceneOffset + vPosition;
         if (vWorldViewId != -1) {
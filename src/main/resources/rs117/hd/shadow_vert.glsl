@@ -37,7 +37,7 @@ layout (location = 0) in vec3 vPosition;
     layout (location = 1) in vec4 vUv;
     layout (location = 3) in int vTextureFaceIdx;
     layout (location = 6) in int vWorldViewId;
-    layout (location = 7) in ivec2 vSceneBase;
+    layout (location = 7) in ivec3 vSceneBase;
 
     uniform isamplerBuffer textureFaces;
 
@@ -94,7 +94,7 @@ layout (location = 0) in vec3 vPosition;
 
         int shouldCastShadow = isShadowDisabled ? 0 : 1;
 
-        vec3 sceneOffset = vec3(vSceneBase.x, 0, vSceneBase.y);
+        vec3 sceneOffset = vec3(vSceneBase);
         vec3 worldPosition = sceneOffset + vPosition;
         if (vWorldViewId != -1) {
             mat4x3 worldViewProjection = mat4x3(getWorldViewProjection(vWorldViewId));
@@ -71,4 +71,10 @@
 #include TILED_LIGHTING_LAYER_COUNT
 #include TILED_LIGHTING_TILE_SIZE
 #define TILED_LIGHTING_MAX_TILE_LIGHT_COUNT (TILED_LIGHTING_LAYER_COUNT * 4 * 2)
+#include CLUSTERED_LIGHTING
+#include LIGHT_CLUSTER_GRID_X
+#include LIGHT_CLUSTER_GRID_Y
+#include LIGHT_CLUSTER_GRID_Z
+#include LIGHT_CLUSTER_DEPTH_NEAR
+#include LIGHT_CLUSTER_DEPTH_FAR
 #include WINDOWS_HDR_CORRECTION
@@ -64,6 +64,27 @@ void calculateLighting(
             PROCESS_TILED_LIGHT_COMPONENT(2);
             PROCESS_TILED_LIGHT_COMPONENT(3);
         }
+    #elif CLUSTERED_LIGHTING
+        // Must match LightClusters on the CPU
+        ivec2 tileXY = clamp(
+            ivec2(gl_FragCoord.xy / sceneResolution * vec2(LIGHT_CLUSTER_GRID_X, LIGHT_CLUSTER_GRID_Y)),
+            ivec2(0), ivec2(LIGHT_CLUSTER_GRID_X - 1, LIGHT_CLUSTER_GRID_Y - 1));
+        float depth = 1 / gl_FragCoord.w;
+        int slice = 0;
+        if (depth > LIGHT_CLUSTER_DEPTH_NEAR) {
+            slice = int(log(depth / LIGHT_CLUSTER_DEPTH_NEAR) *
+                (LIGHT_CLUSTER_GRID_Z / log(LIGHT_CLUSTER_DEPTH_FAR / LIGHT_CLUSTER_DEPTH_NEAR)));
+            slice = min(slice, LIGHT_CLUSTER_GRID_Z - 1);
+        }
+
+        int cluster = (slice * LIGHT_CLUSTER_GRID_Y + tileXY.y) * LIGHT_CLUSTER_GRID_X + tileXY.x;
+        int offset = int(texelFetch(clusteredLights, cluster * 2).r);
+        int count = int(texelFetch(clusteredLights, cluster * 2 + 1).r);
+        for (int i = 0; i < count; i++)
+            calculateLight(int(texelFetch(clusteredLights, offset + i).r),
+                position, normals, viewDir,
+                texBlend, specularGloss, specularStrength,
+                pointLightsOut, pointLightsSpecularOut);
     #else
         for (int lightIdx = 0; lightIdx < pointLightsCount; lightIdx++)
             calculateLight(lightIdx, position, normals, viewDir,
@@ -0,0 +1,62 @@
+package rs117.hd.tests;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.utils.buffer.AdaptiveBufferSize;
+
+import static rs117.hd.utils.MathUtils.*;
+
+public class AdaptiveBufferSizeTest {
+	@Test
+	public void testGrowsAheadOfDemand() {
+		var size = new AdaptiveBufferSize(MiB, MiB);
+		Random random = new Random(1337);
+
+		// A noisy but steady load should settle on a size which it never exceeds, and never changes again
+		long settledSize = 0;
+		for (int frame = 0; frame < 2000; frame++) {
+			long written = (long) (20 * MiB * (0.9 + 0.1 * random.nextDouble()));
+			long before = size.getSize();
+			long after = size.update(written);
+			if (frame > 10) {
+				Assert.assertTrue("Buffer overflowed on frame " + frame, written <= before);
+				if (settledSize == 0)
+					settledSize = after;
+				Assert.assertEquals(settledSize, after);
+			}
+		}
+		Assert.assertEquals(32 * MiB, settledSize);
+	}
+
+	@Test
+	public void testShrinksWithHysteresis() {
+		var size = new AdaptiveBufferSize(MiB, MiB);
+
+		// A single spike grows the buffer immediately
+		long spikeSize = size.update(60 * MiB);
+		Assert.assertTrue(spikeSize >= 60 * MiB);
+
+		// Shrinking only happens once the load has stayed low for a while
+		int framesUntilShrink = 0;
+		while (size.update(4 * MiB) == spikeSize)
+			framesUntilShrink++;
+		Assert.assertTrue("Shrunk too early, after " + framesUntilShrink + " frames", framesUntilShrink >= 300);
+
+		// Eventually it settles on a small size, without oscillating
+		for (int frame = 0; frame < 3000; frame++)
+			size.update(4 * MiB);
+		long settledSize = size.getSize();
+		Assert.assertEquals(8 * MiB, settledSize);
+		for (int frame = 0; frame < 1000; frame++)
+			Assert.assertEquals(settledSize, size.update(4 * MiB));
+	}
+
+	@Test
+	public void testNeverShrinksBelowMinimum() {
+		var size = new AdaptiveBufferSize(8 * MiB, 2 * MiB);
+		for (int frame = 0; frame < 5000; frame++)
+			size.update(0);
+		Assert.assertEquals(2 * MiB, size.getSize());
+	}
+}
@@ -0,0 +1,34 @@
+package rs117.hd.tests;
+
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.config.ConfigDependencies;
+
+import static rs117.hd.HdPluginConfig.*;
+import static rs117.hd.config.ConfigDependencies.Artifact.*;
+
+public class ConfigDependenciesTest {
+	@Test
+	public void testMinimalRebuilds() {
+		Assert.assertEquals(EnumSet.of(TEXTURE_FILTERING), ConfigDependencies.getAffected(List.of(KEY_ANISOTROPIC_FILTERING_LEVEL)));
+		Assert.assertEquals(EnumSet.of(TILE_OVERRIDES, TERRAIN), ConfigDependencies.getAffected(List.of(KEY_GROUND_BLENDING)));
+		Assert.assertEquals(EnumSet.of(MODEL_OVERRIDES, MODELS), ConfigDependencies.getAffected(List.of(KEY_HIDE_VANILLA_WATER_EFFECTS)));
+		Assert.assertEquals(EnumSet.of(SHADERS), ConfigDependencies.getAffected(List.of(KEY_COLOR_BLINDNESS)));
+		Assert.assertTrue(ConfigDependencies.getAffected(List.of("someUnknownKey")).isEmpty());
+	}
+
+	@Test
+	public void testImpliedArtifacts() {
+		var artifacts = ConfigDependencies.getAffected(List.of(KEY_MODEL_TEXTURES));
+		Assert.assertTrue(artifacts.containsAll(EnumSet.of(TEXTURES_AND_MATERIALS, MODEL_OVERRIDES, SHADERS, TERRAIN, MODELS)));
+		Assert.assertFalse(artifacts.contains(RESTART_PLUGIN));
+
+		// Direct dependencies shouldn't include implied artifacts
+		Assert.assertEquals(EnumSet.of(TEXTURES_AND_MATERIALS), ConfigDependencies.get(KEY_MODEL_TEXTURES));
+
+		var combined = ConfigDependencies.getAffected(List.of(KEY_GROUND_BLENDING, KEY_SHADOW_MODE));
+		Assert.assertEquals(EnumSet.of(TILE_OVERRIDES, SHADERS, SHADOW_MAP_FBO, TERRAIN), combined);
+	}
+}
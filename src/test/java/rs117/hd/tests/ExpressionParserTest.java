@@ -1,11 +1,14 @@
 package rs117.hd.tests;
 
 import java.util.LinkedHashMap;
+import java.util.Random;
 import org.junit.Assert;
 import org.junit.Test;
 import rs117.hd.config.SeasonalTheme;
+import rs117.hd.utils.ExpressionParser;
 import rs117.hd.utils.VariableSupplier;
 
+import static rs117.hd.utils.ExpressionParser.asExpression;
 import static rs117.hd.utils.ExpressionParser.parseExpression;
 import static rs117.hd.utils.ExpressionParser.parseFunction;
 import static rs117.hd.utils.ExpressionParser.parsePredicate;
@@ -75,6 +78,121 @@ public class ExpressionParserTest {
 		}
 	}
 
+	@Test
+	public void testCompiledExpressions() {
+		String[] slotNames = { "h", "s", "l", "blending", "textures" };
+		String[] predicates = {
+			"h != 0",
+			"s == 0 || h <= 10 && s < 2",
+			"h == 8 && (s == 3 || s == 4) && l >= 20",
+			"h > 3 && (s < 9 || l < 19)",
+			"h == 5 ? s > 3 : s > 15",
+			"h == s || h == l",
+			"blending || textures",
+			"!blending && h % 4 == 1",
+			"blending == (h > 30)",
+			"textures != false",
+			"(h * 2 + s) / 3 - l * .5 >= -10",
+			"l < 64 ? h > 3 : s > 2",
+			"!(h > 3) || s != l",
+			"true"
+		};
+		String[] functions = {
+			"h + s * l",
+			"(h - 10) / (s + 1)",
+			"h % 7 - l * -1.5",
+			"blending ? h * 2 : l - s",
+			"2 * 8 / 2 * (2 + 2)"
+		};
+
+		Random random = new Random(1337);
+		Object[] values = new Object[slotNames.length];
+		VariableSupplier vars = name -> {
+			for (int i = 0; i < slotNames.length; i++)
+				if (slotNames[i].equals(name))
+					return values[i];
+			return null;
+		};
+		float[] slots = new float[slotNames.length];
+
+		for (int i = 0; i < 10000; i++) {
+			values[0] = random.nextInt(64);
+			values[1] = random.nextInt(8);
+			values[2] = random.nextInt(128);
+			values[3] = random.nextBoolean();
+			values[4] = random.nextBoolean();
+			for (int j = 0; j < slots.length; j++)
+				slots[j] = ExpressionParser.toSlotValue(slotNames[j], values[j]);
+
+			for (var expr : predicates) {
+				boolean expected = parsePredicate(expr).test(vars);
+				var compiled = asExpression(parseExpression(expr)).compilePredicate(slotNames);
+				Assert.assertEquals(expr, expected, compiled.test(slots));
+				Assert.assertEquals(expr, expected, compiled.test(vars));
+			}
+
+			for (var expr : functions) {
+				float expected = (float) parseFunction(expr).apply(vars);
+				float actual = asExpression(parseExpression(expr)).compileFloat(slotNames).evaluate(slots);
+				Assert.assertEquals(expr, expected, actual, 0);
+			}
+		}
+
+		assertThrows(() -> asExpression(parseExpression("h + 1")).compilePredicate(slotNames));
+		assertThrows(() -> asExpression(parseExpression("unknown > 1")).compilePredicate(slotNames));
+		assertThrows(() -> asExpression(parseExpression("h > 1")).compileFloat(slotNames));
+	}
+
+	@Test
+	public void testCompiledPerformance() {
+		final int iterations = 5000000;
+		String[] slotNames = { "h", "s", "l" };
+		String expr = "h > 3 && (s < 9 || l < 19) && (h * 2 + s) % 5 == 1";
+		var predicate = parsePredicate(expr);
+		var compiled = asExpression(parseExpression(expr)).compilePredicate(slotNames);
+
+		int[] hsl = new int[3];
+		VariableSupplier vars = name -> {
+			for (int i = 0; i < slotNames.length; i++)
+				if (slotNames[i].equals(name))
+					return hsl[i];
+			return null;
+		};
+		float[] slots = new float[3];
+
+		long interpretedNanos = 0;
+		long compiledNanos = 0;
+		int matches = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			// The first pass warms up both implementations
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				hsl[0] = i & 63;
+				hsl[1] = i >> 6 & 7;
+				hsl[2] = i >> 9 & 127;
+				if (predicate.test(vars))
+					matches++;
+			}
+			interpretedNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				slots[0] = i & 63;
+				slots[1] = i >> 6 & 7;
+				slots[2] = i >> 9 & 127;
+				if (compiled.test(slots))
+					matches--;
+			}
+			compiledNanos = System.nanoTime() - start;
+		}
+		Assert.assertEquals(0, matches);
+
+		System.out.printf("Evaluating '%s' %,d times\n\n", expr, iterations);
+		System.out.printf("Interpreted:\t%,.3f ms\n", interpretedNanos / 1e6);
+		System.out.printf("Compiled:   \t%,.3f ms\n", compiledNanos / 1e6);
+		System.out.printf("Improvement =\t%.2f%%\n\n", (double) (interpretedNanos - compiledNanos) / interpretedNanos * 100);
+	}
+
 	private static void assertThrows(Runnable runnable) {
 		try {
 			runnable.run();
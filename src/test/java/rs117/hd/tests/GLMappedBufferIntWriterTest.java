@@ -0,0 +1,134 @@
+package rs117.hd.tests;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.utils.buffer.GLMappedBufferIntWriter;
+
+public class GLMappedBufferIntWriterTest {
+	private static final int RESERVATIONS_PER_THREAD = 2000;
+	private static final int MAX_RESERVATION_INTS = 64;
+
+	private static final class Reservation {
+		final int offset, size, tag;
+
+		Reservation(int offset, int size, int tag) {
+			this.offset = offset;
+			this.size = size;
+			this.tag = tag;
+		}
+	}
+
+	private static ByteBuffer allocateMapped(int capacityInts) {
+		// A plain direct buffer stands in for the mapped GL buffer
+		return ByteBuffer.allocateDirect(capacityInts * Integer.BYTES).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Reserve and fill views from many threads at once, tagging each reservation so overlaps can be detected.
+	 */
+	private static List<Reservation> reserveConcurrently(GLMappedBufferIntWriter writer, int threadCount) throws InterruptedException {
+		List<Reservation> reservations = new ArrayList<>();
+		List<List<Reservation>> perThread = new ArrayList<>();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[threadCount];
+
+		for (int t = 0; t < threadCount; t++) {
+			final int threadIdx = t;
+			final List<Reservation> local = new ArrayList<>(RESERVATIONS_PER_THREAD);
+			perThread.add(local);
+			threads[t] = new Thread(() -> {
+				try {
+					Random random = new Random(1337 + threadIdx);
+					start.await();
+					for (int i = 0; i < RESERVATIONS_PER_THREAD; i++) {
+						int size = 1 + random.nextInt(MAX_RESERVATION_INTS);
+						int tag = threadIdx << 16 | i;
+						var view = writer.reserve(size);
+						IntBuffer buffer = view.getBuffer();
+						for (int j = 0; j < size; j++)
+							buffer.put(tag);
+						Assert.assertEquals(view.getBufferOffsetInts() + size, view.getEndOffsetInts());
+						local.add(new Reservation(view.getBufferOffsetInts(), size, tag));
+					}
+				} catch (Throwable ex) {
+					failure.compareAndSet(null, ex);
+				}
+			});
+			threads[t].start();
+		}
+
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		if (failure.get() != null)
+			throw new AssertionError(failure.get());
+
+		for (var local : perThread)
+			reservations.addAll(local);
+		return reservations;
+	}
+
+	private static void verify(GLMappedBufferIntWriter writer, ByteBuffer mapped, List<Reservation> reservations) {
+		int totalInts = 0;
+		for (var r : reservations)
+			totalInts += r.size;
+		Assert.assertEquals(totalInts, writer.getWrittenInts());
+
+		int stagingOffset = writer.getStagingOffsetInts();
+		Assert.assertTrue(stagingOffset <= mapped.capacity() / Integer.BYTES);
+
+		int[] result = new int[totalInts];
+		mapped.asIntBuffer().get(result, 0, stagingOffset);
+
+		IntBuffer staged = IntBuffer.allocate(totalInts - stagingOffset);
+		writer.copyStagedInts(staged);
+		staged.flip();
+		Assert.assertEquals(totalInts - stagingOffset, staged.remaining());
+		staged.get(result, stagingOffset, staged.remaining());
+
+		// Since the reservations add up to exactly the written size, intact tags also mean nothing overlaps or is missing
+		for (var r : reservations)
+			for (int i = r.offset; i < r.offset + r.size; i++)
+				Assert.assertEquals(r.tag, result[i]);
+
+		Assert.assertEquals((long) totalInts * Integer.BYTES, writer.endWriting());
+		Assert.assertEquals(0, writer.getWrittenInts());
+	}
+
+	@Test
+	public void testConcurrentReservations() throws InterruptedException {
+		int threadCount = Math.max(4, Runtime.getRuntime().availableProcessors());
+		var writer = new GLMappedBufferIntWriter(null);
+
+		// Run multiple rounds to also cover pooled views, and switching to a different mapped buffer
+		for (int round = 0; round < 3; round++) {
+			var mapped = allocateMapped(round == 2 ? 1 << 20 : 1 << 22);
+			writer.beginWriting(mapped);
+			verify(writer, mapped, reserveConcurrently(writer, threadCount));
+		}
+		writer.destroy();
+	}
+
+	@Test
+	public void testStagingFallback() throws InterruptedException {
+		int threadCount = Math.max(4, Runtime.getRuntime().availableProcessors());
+		var writer = new GLMappedBufferIntWriter(null);
+
+		// Only a fraction of the reservations fit, so most of them end up staged
+		var mapped = allocateMapped(threadCount * RESERVATIONS_PER_THREAD * MAX_RESERVATION_INTS / 8);
+		writer.beginWriting(mapped);
+		var reservations = reserveConcurrently(writer, threadCount);
+		Assert.assertTrue(writer.getStagingOffsetInts() < writer.getWrittenInts());
+		verify(writer, mapped, reservations);
+		writer.destroy();
+	}
+}
@@ -0,0 +1,74 @@
+package rs117.hd.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.opengl.GLState;
+
+public class GLStateTest {
+	private static class CountingInt extends GLState.Int {
+		int calls;
+
+		@Override
+		protected void applyValue(int value) {
+			calls++;
+		}
+	}
+
+	private static class CountingIntArray extends GLState.IntArray {
+		int calls;
+
+		CountingIntArray() {
+			super(2);
+		}
+
+		@Override
+		protected void applyValues(int[] values) {
+			calls++;
+		}
+	}
+
+	@Test
+	public void testDirtyBits() {
+		var group = new GLState.Group();
+		var a = new CountingInt();
+		var b = new CountingIntArray();
+		a.attach(group, 0);
+		b.attach(group, 5);
+
+		a.set(1);
+		Assert.assertEquals(1, group.dirtyBits);
+		b.set(1, 2);
+		Assert.assertEquals(1 | 1 << 5, group.dirtyBits);
+
+		a.apply();
+		b.apply();
+		Assert.assertEquals(1, a.calls);
+		Assert.assertEquals(1, b.calls);
+		Assert.assertEquals(0, group.eliminatedCalls);
+
+		// Setting the applied value again shouldn't mark the state as dirty
+		group.dirtyBits = 0;
+		a.set(1);
+		Assert.assertEquals(0, group.dirtyBits);
+
+		// Setting a different value and then reverting it should be eliminated when applied
+		a.set(2);
+		a.set(1);
+		Assert.assertEquals(1, group.dirtyBits);
+		a.apply();
+		Assert.assertEquals(1, a.calls);
+		Assert.assertEquals(1, group.eliminatedCalls);
+
+		// Arrays are compared when applied
+		b.set(1, 2);
+		b.apply();
+		Assert.assertEquals(1, b.calls);
+		Assert.assertEquals(2, group.eliminatedCalls);
+
+		// Resetting should force the next value to be applied
+		a.reset();
+		a.set(1);
+		a.apply();
+		Assert.assertEquals(2, a.calls);
+	}
+}
@@ -0,0 +1,113 @@
+package rs117.hd.tests;
+
+import com.google.gson.JsonObject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.scene.gamevals.GamevalTable;
+
+public class GamevalTableTest {
+	private static final int QUERIES = 200000;
+
+	private final Random random = new Random(1337);
+
+	private long accumulator;
+
+	/**
+	 * Generate gamevals similar to those in gamevals.json, with a few names sharing the same ID.
+	 */
+	private Map<String, Integer> generateGamevals(int count) {
+		Map<String, Integer> gamevals = new HashMap<>(count * 2);
+		for (int i = 0; i < count; i++) {
+			int id = random.nextInt(8) == 0 ? random.nextInt(i + 1) : i;
+			gamevals.put("gameval_" + Integer.toString(random.nextInt(), 36) + "_" + i, id);
+		}
+		return gamevals;
+	}
+
+	private static GamevalTable toTable(Map<String, Integer> gamevals) {
+		var json = new JsonObject();
+		for (var entry : gamevals.entrySet())
+			json.addProperty(entry.getKey(), entry.getValue());
+		return GamevalTable.fromJson(json);
+	}
+
+	// Resolve duplicate IDs the same way as the table, for a stable comparison
+	private static String linearReverseLookup(Map<String, Integer> gamevals, int id) {
+		String result = null;
+		for (var entry : gamevals.entrySet())
+			if (entry.getValue() == id && (result == null || entry.getKey().compareTo(result) < 0))
+				result = entry.getKey();
+		return result;
+	}
+
+	@Test
+	public void testMatchesMap() {
+		for (int count : new int[] { 0, 1, 2, 100, 5000 }) {
+			var gamevals = generateGamevals(count);
+			var table = toTable(gamevals);
+			Assert.assertEquals(gamevals.size(), table.size());
+
+			for (var entry : gamevals.entrySet()) {
+				Assert.assertEquals((int) entry.getValue(), table.getId(entry.getKey()));
+				Assert.assertTrue(table.containsName(entry.getKey()));
+			}
+			Assert.assertEquals(-1, table.getId("missing"));
+			Assert.assertFalse(table.containsName("missing"));
+
+			for (int id = -1; id <= count; id++)
+				Assert.assertEquals(linearReverseLookup(gamevals, id), table.getName(id));
+
+			Map<String, Integer> iterated = new HashMap<>();
+			String[] previous = { null };
+			table.forEach((name, id) -> {
+				Assert.assertTrue(previous[0] == null || previous[0].compareTo(name) < 0);
+				previous[0] = name;
+				iterated.put(name, id);
+			});
+			Assert.assertEquals(gamevals, iterated);
+		}
+	}
+
+	@Test
+	public void testReverseLookupPerformance() {
+		var gamevals = generateGamevals(50000);
+		var table = toTable(gamevals);
+		final int queries = QUERIES / 1000;
+
+		long streamNanos = 0;
+		long tableNanos = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			// The first pass warms up both implementations
+			long start = System.nanoTime();
+			for (int i = 0; i < queries; i++) {
+				int id = i * 31 % 50000;
+				var name = gamevals.entrySet().stream()
+					.filter(e -> e.getValue() == id)
+					.map(Map.Entry::getKey)
+					.findFirst()
+					.orElse(null);
+				if (name != null)
+					accumulator += name.length();
+			}
+			streamNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < QUERIES; i++) {
+				var name = table.getName(i * 31 % 50000);
+				if (name != null)
+					accumulator += name.length();
+			}
+			tableNanos = System.nanoTime() - start;
+		}
+
+		double streamPerQuery = (double) streamNanos / queries;
+		double tablePerQuery = (double) tableNanos / QUERIES;
+		System.out.printf("Stream reverse lookup:\t%,.1f ns/query\n", streamPerQuery);
+		System.out.printf("GamevalTable lookup:\t%,.1f ns/query\n", tablePerQuery);
+		System.out.printf("Improvement =\t%.2f%%\n\n", (streamPerQuery - tablePerQuery) / streamPerQuery * 100);
+		System.out.println("Accumulator: " + accumulator);
+	}
+}
@@ -0,0 +1,39 @@
+package rs117.hd.tests;
+
+import java.nio.IntBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.utils.buffer.IntStagingArena;
+
+public class IntStagingArenaTest {
+	private static void acquireAndRelease(IntStagingArena arena, int count, int sizeInts) {
+		IntBuffer[] buffers = new IntBuffer[count];
+		for (int i = 0; i < count; i++) {
+			buffers[i] = arena.acquire(sizeInts);
+			Assert.assertEquals(sizeInts, buffers[i].remaining());
+		}
+		for (var buffer : buffers)
+			arena.release(buffer);
+	}
+
+	@Test
+	public void testFreeBuffersAreCapped() {
+		var arena = new IntStagingArena();
+
+		// Small buffers are capped by count
+		acquireAndRelease(arena, 100, 200);
+		Assert.assertEquals(100, arena.takeAllocations());
+		acquireAndRelease(arena, 100, 200);
+		Assert.assertEquals(100 - 16, arena.takeAllocations());
+
+		// Large buffers are capped by size, so a spike doesn't keep many MiB alive
+		final int largeInts = 1 << 20;
+		acquireAndRelease(arena, 8, largeInts);
+		Assert.assertEquals(8, arena.takeAllocations());
+		acquireAndRelease(arena, 8, largeInts);
+		Assert.assertEquals(8 - 2, arena.takeAllocations());
+
+		Assert.assertEquals((100 * 200L + 8 * largeInts) * 2 * Integer.BYTES, arena.takeStagedBytes());
+		arena.destroy();
+	}
+}
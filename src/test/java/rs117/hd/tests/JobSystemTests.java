@@ -1,13 +1,19 @@
 package rs117.hd.tests;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import rs117.hd.config.CpuUsageLimit;
+import rs117.hd.utils.collections.WorkStealingDeque;
 import rs117.hd.utils.jobs.GenericJob;
 import rs117.hd.utils.jobs.JobSystem;
 
@@ -526,6 +532,148 @@ public class JobSystemTests {
 		Assert.assertEquals(1, order.size());
 	}
 
+	@Test
+	public void testWorkStealingDequeOrdering() {
+		WorkStealingDeque<Integer> deque = new WorkStealingDeque<>(4);
+		Assert.assertNull(deque.pop());
+		Assert.assertNull(deque.steal());
+
+		for (int i = 0; i < 4; i++)
+			Assert.assertTrue(deque.push(i));
+		Assert.assertFalse("Push beyond capacity should fail", deque.push(4));
+		Assert.assertEquals(4, deque.size());
+
+		// Owner is LIFO, thieves are FIFO
+		Assert.assertEquals(3, (int) deque.pop());
+		Assert.assertEquals(0, (int) deque.steal());
+		Assert.assertEquals(2, deque.size());
+
+		// Wrap around the ring buffer
+		Assert.assertTrue(deque.push(5));
+		Assert.assertTrue(deque.push(6));
+		Assert.assertFalse(deque.push(7));
+		Assert.assertEquals(1, (int) deque.steal());
+		Assert.assertEquals(2, (int) deque.steal());
+		Assert.assertEquals(6, (int) deque.pop());
+		Assert.assertEquals(5, (int) deque.pop());
+		Assert.assertNull(deque.pop());
+		Assert.assertEquals(0, deque.size());
+	}
+
+	@Test
+	public void testWorkStealingDequeContention() throws Exception {
+		final int itemCount = 2_000_000;
+		final int thiefCount = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+
+		WorkStealingDeque<Integer> deque = new WorkStealingDeque<>(1024);
+		AtomicIntegerArray consumed = new AtomicIntegerArray(itemCount);
+		AtomicBoolean producing = new AtomicBoolean(true);
+		CountDownLatch start = new CountDownLatch(1);
+
+		Thread[] thieves = new Thread[thiefCount];
+		for (int i = 0; i < thiefCount; i++) {
+			thieves[i] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException ignored) {
+					return;
+				}
+				Integer item;
+				while (producing.get() || !deque.isEmpty()) {
+					if ((item = deque.steal()) != null)
+						consumed.incrementAndGet(item);
+				}
+			});
+			thieves[i].start();
+		}
+
+		start.countDown();
+		Integer item;
+		for (int i = 0; i < itemCount; i++) {
+			while (!deque.push(i)) {
+				// Help drain the queue from the owner's end when it's full
+				if ((item = deque.pop()) != null)
+					consumed.incrementAndGet(item);
+			}
+			if ((i & 3) == 0 && (item = deque.pop()) != null)
+				consumed.incrementAndGet(item);
+		}
+		while ((item = deque.pop()) != null)
+			consumed.incrementAndGet(item);
+		producing.set(false);
+
+		for (Thread thief : thieves)
+			thief.join();
+
+		Assert.assertEquals(0, deque.size());
+		for (int i = 0; i < itemCount; i++)
+			Assert.assertEquals("Item " + i + " should be consumed exactly once", 1, consumed.get(i));
+	}
+
+	@Test
+	public void testWorkStealingDequeThroughput() throws Exception {
+		final int itemCount = 1 << 20;
+		final int iterations = 10;
+		final Integer[] items = new Integer[itemCount];
+		for (int i = 0; i < itemCount; i++)
+			items[i] = i;
+
+		long linkedDequeNanos = Long.MAX_VALUE;
+		long stealingDequeNanos = Long.MAX_VALUE;
+		for (int i = 0; i < iterations; i++) {
+			ConcurrentLinkedDeque<Integer> linkedDeque = new ConcurrentLinkedDeque<>();
+			linkedDequeNanos = Math.min(linkedDequeNanos, timeContended(
+				() -> {
+					for (Integer item : items) {
+						linkedDeque.addFirst(item);
+						if ((item & 1) == 0)
+							linkedDeque.poll();
+					}
+				},
+				linkedDeque::isEmpty,
+				linkedDeque::pollLast
+			));
+
+			WorkStealingDeque<Integer> stealingDeque = new WorkStealingDeque<>(itemCount);
+			stealingDequeNanos = Math.min(stealingDequeNanos, timeContended(
+				() -> {
+					for (Integer item : items) {
+						stealingDeque.push(item);
+						if ((item & 1) == 0)
+							stealingDeque.pop();
+					}
+				},
+				stealingDeque::isEmpty,
+				stealingDeque::steal
+			));
+		}
+
+		log.info(
+			"Owner push/pop with {} thief: ConcurrentLinkedDeque {} ms, WorkStealingDeque {} ms ({}x)",
+			1,
+			linkedDequeNanos / 1e6,
+			stealingDequeNanos / 1e6,
+			String.format("%.2f", (double) linkedDequeNanos / stealingDequeNanos)
+		);
+	}
+
+	private static long timeContended(Runnable owner, BooleanSupplier isEmpty, Runnable thief)
+		throws InterruptedException
+	{
+		AtomicBoolean running = new AtomicBoolean(true);
+		Thread thiefThread = new Thread(() -> {
+			while (running.get() || !isEmpty.getAsBoolean())
+				thief.run();
+		});
+		thiefThread.start();
+
+		long start = System.nanoTime();
+		owner.run();
+		running.set(false);
+		thiefThread.join();
+		return System.nanoTime() - start;
+	}
+
 	private static void busyWork(GenericJob task, long millis) throws InterruptedException {
 		final long start = System.nanoTime();
 		final long durationNanos = millis * 1_000_000L;
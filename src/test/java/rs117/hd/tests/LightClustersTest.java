@@ -0,0 +1,145 @@
+package rs117.hd.tests;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.scene.lights.LightClusters;
+import rs117.hd.utils.Mat4;
+
+import static rs117.hd.scene.lights.LightClusters.*;
+
+public class LightClustersTest {
+	private static float[] viewProj(float[] projection, float x, float y, float z, float yaw, float pitch) {
+		var view = Mat4.rotateX(pitch);
+		Mat4.mul(view, Mat4.rotateY(yaw));
+		Mat4.mul(view, Mat4.translate(-x, -y, -z));
+		var viewProj = Mat4.identity();
+		Mat4.mul(viewProj, projection);
+		Mat4.mul(viewProj, view);
+		return viewProj;
+	}
+
+	/**
+	 * Find the cluster a point falls into, in the same way as the fragment shader, or -1 if it isn't on-screen.
+	 */
+	private static int getCluster(float[] viewProj, boolean orthographic, float x, float y, float z) {
+		float[] clip = new float[4];
+		Mat4.mulVec(clip, viewProj, new float[] { x, y, z, 1 });
+		if (clip[3] <= DEPTH_NEAR && !orthographic)
+			return -1;
+		float ndcX = clip[0] / clip[3];
+		float ndcY = clip[1] / clip[3];
+		if (Math.abs(ndcX) >= 1 || Math.abs(ndcY) >= 1)
+			return -1;
+		int tileX = Math.min(GRID_X - 1, (int) ((ndcX + 1) / 2 * GRID_X));
+		int tileY = Math.min(GRID_Y - 1, (int) ((ndcY + 1) / 2 * GRID_Y));
+		return getClusterIndex(tileX, tileY, getDepthSlice(clip[3]));
+	}
+
+	private static boolean contains(LightClusters clusters, int cluster, int lightIndex) {
+		int offset = clusters.getClusterOffset(cluster);
+		int count = clusters.getClusterLightCount(cluster);
+		for (int i = 0; i < count; i++)
+			if (clusters.getData()[offset + i] == lightIndex)
+				return true;
+		return false;
+	}
+
+	private static void testAgainstSamples(float[] projection, boolean orthographic) {
+		var random = new Random(1234);
+		var clusters = new LightClusters();
+		int hits = 0;
+		for (int frame = 0; frame < 10; frame++) {
+			float camX = random.nextFloat() * 10000;
+			float camY = -1000 - random.nextFloat() * 2000;
+			float camZ = random.nextFloat() * 10000;
+			float yaw = random.nextFloat() * 2 * (float) Math.PI;
+			float pitch = .2f + random.nextFloat();
+			var viewProj = viewProj(projection, camX, camY, camZ, yaw, pitch);
+
+			// Few enough lights that no cluster should hit the limit
+			int lightCount = 20;
+			float[][] lights = new float[lightCount][];
+			clusters.prepare(viewProj, lightCount);
+			for (int i = 0; i < lightCount; i++) {
+				lights[i] = new float[] {
+					camX + (random.nextFloat() * 2 - 1) * 6000,
+					random.nextFloat() * -500,
+					camZ + (random.nextFloat() * 2 - 1) * 6000,
+					50 + random.nextFloat() * 1000
+				};
+				clusters.setLight(i, lights[i][0], lights[i][1], lights[i][2], lights[i][3]);
+			}
+			clusters.bin();
+
+			// Check the cluster layout
+			int end = CLUSTER_COUNT * 2;
+			for (int c = 0; c < CLUSTER_COUNT; c++) {
+				Assert.assertEquals(end, clusters.getClusterOffset(c));
+				int count = clusters.getClusterLightCount(c);
+				Assert.assertTrue(count <= MAX_LIGHTS_PER_CLUSTER);
+				// Lights should retain their input order, without any duplicates
+				for (int i = 1; i < count; i++)
+					Assert.assertTrue(clusters.getData()[end + i - 1] < clusters.getData()[end + i]);
+				end += count;
+			}
+			Assert.assertEquals(end, clusters.getDataLength());
+
+			// Compare against brute-force sampling of points within each light
+			for (int i = 0; i < lightCount; i++) {
+				float[] l = lights[i];
+				for (int s = 0; s < 500; s++) {
+					float dx, dy, dz;
+					do {
+						dx = random.nextFloat() * 2 - 1;
+						dy = random.nextFloat() * 2 - 1;
+						dz = random.nextFloat() * 2 - 1;
+					} while (dx * dx + dy * dy + dz * dz > 1);
+
+					int cluster = getCluster(viewProj, orthographic, l[0] + dx * l[3], l[1] + dy * l[3], l[2] + dz * l[3]);
+					if (cluster == -1)
+						continue;
+					Assert.assertTrue("Light " + i + " is missing from cluster " + cluster, contains(clusters, cluster, i));
+					hits++;
+				}
+			}
+		}
+		Assert.assertTrue("No lights were on-screen", hits > 0);
+	}
+
+	@Test
+	public void testPerspective() {
+		testAgainstSamples(Mat4.perspectiveInfiniteReverseZ(1920, 1080, DEPTH_NEAR), false);
+	}
+
+	@Test
+	public void testOrthographic() {
+		testAgainstSamples(Mat4.orthographic(16000, 9000, -40000), true);
+	}
+
+	@Test
+	public void testLimit() {
+		var clusters = new LightClusters();
+		var viewProj = viewProj(Mat4.perspectiveInfiniteReverseZ(1920, 1080, DEPTH_NEAR), 0, 0, 0, 0, 0);
+
+		// Overlapping lights directly in front of the camera
+		int lightCount = MAX_LIGHTS_PER_CLUSTER * 2;
+		clusters.prepare(viewProj, lightCount);
+		for (int i = 0; i < lightCount; i++)
+			clusters.setLight(i, 0, 0, 1000, 10);
+		clusters.bin();
+
+		int cluster = getCluster(viewProj, false, 0, 0, 1000);
+		Assert.assertNotEquals(-1, cluster);
+		Assert.assertEquals(MAX_LIGHTS_PER_CLUSTER, clusters.getClusterLightCount(cluster));
+		// The lights which came first should be kept
+		for (int i = 0; i < MAX_LIGHTS_PER_CLUSTER; i++)
+			Assert.assertTrue(contains(clusters, cluster, i));
+
+		// Lights behind the camera shouldn't be binned at all
+		clusters.prepare(viewProj, 1);
+		clusters.setLight(0, 0, 0, -1000, 10);
+		clusters.bin();
+		Assert.assertEquals(CLUSTER_COUNT * 2, clusters.getDataLength());
+	}
+}
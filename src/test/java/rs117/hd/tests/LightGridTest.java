@@ -0,0 +1,101 @@
+package rs117.hd.tests;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.scene.lights.Light;
+import rs117.hd.scene.lights.LightDefinition;
+import rs117.hd.scene.lights.LightGrid;
+
+import static net.runelite.api.Perspective.*;
+
+public class LightGridTest {
+	private static Light light(float x, float z, int radius) {
+		var def = new LightDefinition();
+		def.radius = radius;
+		var light = new Light(def);
+		light.pos[0] = x;
+		light.pos[2] = z;
+		return light;
+	}
+
+	@Test
+	public void testQuery() {
+		var random = new Random(1234);
+		var grid = new LightGrid();
+		var lights = new ArrayList<Light>();
+		for (int i = 0; i < 5000; i++) {
+			// Include lights outside the extended scene, which should be clamped to the edges
+			var light = light(
+				(random.nextFloat() * 3 - 1) * 184 * LOCAL_TILE_SIZE,
+				(random.nextFloat() * 3 - 1) * 184 * LOCAL_TILE_SIZE,
+				random.nextInt(2000)
+			);
+			lights.add(light);
+			grid.add(light);
+		}
+		Assert.assertEquals(lights.size(), grid.size());
+
+		float distance = 25 * LOCAL_TILE_SIZE;
+		for (int i = 0; i < 100; i++) {
+			float x = (random.nextFloat() * 3 - 1) * 184 * LOCAL_TILE_SIZE;
+			float z = (random.nextFloat() * 3 - 1) * 184 * LOCAL_TILE_SIZE;
+
+			var result = new HashSet<Light>();
+			var list = new ArrayList<Light>();
+			grid.query(x, z, distance, null, 0, new int[2], list);
+			result.addAll(list);
+			Assert.assertEquals("Lights should only be returned once", list.size(), result.size());
+
+			// Every light which may reach within the distance must be included
+			for (var light : lights) {
+				float dx = light.pos[0] - x;
+				float dz = light.pos[2] - z;
+				float reach = distance + light.maxRadius;
+				if (dx * dx + dz * dz < reach * reach)
+					Assert.assertTrue(result.contains(light));
+			}
+			Assert.assertTrue("Distant lights should be skipped", list.size() < lights.size());
+		}
+
+		grid.remove(lights.get(0));
+		Assert.assertEquals(-1, lights.get(0).gridBucket);
+		Assert.assertEquals(lights.size() - 1, grid.size());
+
+		grid.clear();
+		Assert.assertEquals(0, grid.size());
+		for (var light : lights)
+			Assert.assertEquals(-1, light.gridBucket);
+	}
+
+	@Test
+	public void testSelectNearest() {
+		var random = new Random(4321);
+		for (int n : new int[] { 0, 1, 2, 10, 100, 1000 }) {
+			for (int k : new int[] { 0, 1, 5, 50, 2000 }) {
+				var lights = new ArrayList<Light>();
+				for (int i = 0; i < n; i++) {
+					var light = light(0, 0, 100);
+					// Include duplicate distances
+					light.distanceSquared = random.nextInt(n / 2 + 1);
+					lights.add(light);
+				}
+
+				var expected = new ArrayList<>(lights);
+				expected.sort(Comparator.comparingDouble(l -> l.distanceSquared));
+
+				int selected = Light.selectNearest(lights, k);
+				Assert.assertEquals(Math.min(n, k), selected);
+				Assert.assertEquals(n, new HashSet<>(lights).size());
+				for (int i = 0; i < selected; i++)
+					Assert.assertEquals(expected.get(i).distanceSquared, lights.get(i).distanceSquared, 0);
+				if (selected > 0)
+					for (int i = selected; i < n; i++)
+						Assert.assertTrue(lights.get(i).distanceSquared >= lights.get(selected - 1).distanceSquared);
+			}
+		}
+	}
+}
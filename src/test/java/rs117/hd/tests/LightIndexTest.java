@@ -0,0 +1,81 @@
+package rs117.hd.tests;
+
+import net.runelite.api.*;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.scene.lights.Light;
+import rs117.hd.scene.lights.LightDefinition;
+import rs117.hd.scene.lights.LightIndex;
+
+import static org.mockito.Mockito.*;
+
+public class LightIndexTest {
+	private static Light light(TileObject tileObject, int tileObjectId) {
+		var light = new Light(new LightDefinition());
+		light.tileObject = tileObject;
+		light.tileObjectId = tileObjectId;
+		return light;
+	}
+
+	@Test
+	public void testTileObjects() {
+		var index = new LightIndex();
+		var a = mock(GameObject.class);
+		var b = mock(WallObject.class);
+		var a1 = light(a, 1);
+		var a2 = light(a, 1);
+		var b1 = light(b, 2);
+		index.add(a1);
+		index.add(a2);
+		index.add(b1);
+
+		Assert.assertEquals(2, index.getOwnerCount());
+		Assert.assertEquals(2, index.get(a).size());
+		Assert.assertSame(b1, index.get(b).get(0));
+		// Lookups are by identity, so other mocks with the same properties shouldn't match
+		Assert.assertTrue(index.get(mock(GameObject.class)).isEmpty());
+
+		index.remove(a1);
+		Assert.assertEquals(1, index.get(a).size());
+		Assert.assertSame(a2, index.get(a).get(0));
+
+		// Removing a light which isn't indexed shouldn't affect other lights
+		index.remove(light(a, 1));
+		Assert.assertEquals(1, index.get(a).size());
+
+		index.remove(a2);
+		Assert.assertTrue(index.get(a).isEmpty());
+		Assert.assertEquals(1, index.getOwnerCount());
+
+		index.clear();
+		Assert.assertTrue(index.get(b).isEmpty());
+		Assert.assertEquals(0, index.getOwnerCount());
+	}
+
+	@Test
+	public void testActorsAndProjectiles() {
+		var index = new LightIndex();
+		var npc = mock(NPC.class);
+		var projectile = mock(Projectile.class);
+
+		var npcLight = new Light(new LightDefinition());
+		npcLight.actor = npc;
+		var projectileLight = new Light(new LightDefinition());
+		projectileLight.projectile = projectile;
+		// Lights without an owner, like world lights, aren't indexed
+		var worldLight = new Light(new LightDefinition());
+
+		index.add(npcLight);
+		index.add(projectileLight);
+		index.add(worldLight);
+
+		Assert.assertEquals(2, index.getOwnerCount());
+		Assert.assertSame(npcLight, index.get(npc).get(0));
+		Assert.assertSame(projectileLight, index.get(projectile).get(0));
+
+		index.remove(worldLight);
+		index.remove(npcLight);
+		Assert.assertTrue(index.get(npc).isEmpty());
+		Assert.assertEquals(1, index.getOwnerCount());
+	}
+}
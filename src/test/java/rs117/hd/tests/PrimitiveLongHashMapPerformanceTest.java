@@ -0,0 +1,137 @@
+package rs117.hd.tests;
+
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.model.ModelHasher;
+import rs117.hd.utils.collections.PrimitiveLongHashMap;
+
+public class PrimitiveLongHashMapPerformanceTest {
+	private static final int KEY_COUNT = 20000;
+	private static final int LOOKUPS = 20000000;
+	private static final int EVICTION_WINDOW = KEY_COUNT / 2;
+
+	private final Random random = new Random(1337);
+	private final Object value = new Object();
+
+	private long accumulator;
+
+	/**
+	 * Generate keys the same way ModelHasher does for model vertex data, with a subset of models sharing identical
+	 * data, as is common with duplicated scenery.
+	 */
+	private long[] generateModelHashes() {
+		long[] hashes = new long[KEY_COUNT];
+		int[] data = new int[512];
+		for (int i = 0; i < KEY_COUNT; i++) {
+			int length = 32 + random.nextInt(data.length - 32);
+			for (int j = 0; j < length; j++)
+				data[j] = random.nextInt(1 << 16) - (1 << 15);
+			hashes[i] = ModelHasher.fastHash(data, length);
+		}
+		return hashes;
+	}
+
+	/**
+	 * Sequential keys with poorly distributed low bits, to check the map doesn't rely on well-mixed input.
+	 */
+	private long[] generateStridedKeys() {
+		long[] keys = new long[KEY_COUNT];
+		for (int i = 0; i < KEY_COUNT; i++)
+			keys[i] = (long) i << 20;
+		return keys;
+	}
+
+	private long runHashMap(long[] keys) {
+		HashMap<Long, Object> map = new HashMap<>();
+		long start = System.nanoTime();
+		for (long key : keys)
+			map.put(key, value);
+		for (int i = 0; i < LOOKUPS; i++) {
+			long key = keys[random.nextInt(KEY_COUNT)];
+			if (map.get(key) != null)
+				accumulator += key;
+		}
+		// Mimic FIFO eviction and reinsertion
+		for (int i = 0; i < EVICTION_WINDOW; i++) {
+			map.remove(keys[i], value);
+			map.put(keys[i], value);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private long runPrimitiveMap(long[] keys) {
+		PrimitiveLongHashMap<Object> map = new PrimitiveLongHashMap<>();
+		long start = System.nanoTime();
+		for (long key : keys)
+			map.put(key, value);
+		for (int i = 0; i < LOOKUPS; i++) {
+			long key = keys[random.nextInt(KEY_COUNT)];
+			if (map.get(key) != null)
+				accumulator += key;
+		}
+		for (int i = 0; i < EVICTION_WINDOW; i++) {
+			map.remove(keys[i], value);
+			map.put(keys[i], value);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private double percentageDifference(long original, long changed) {
+		return (double) (original - changed) / original * 100;
+	}
+
+	@Test
+	public void testCorrectness() {
+		long[] keys = generateModelHashes();
+		HashMap<Long, Integer> expected = new HashMap<>();
+		PrimitiveLongHashMap<Integer> map = new PrimitiveLongHashMap<>(16);
+		for (int i = 0; i < keys.length; i++) {
+			expected.put(keys[i], i);
+			map.put(keys[i], i);
+		}
+		Assert.assertEquals(expected.size(), map.size());
+
+		// Remove a random half, including entries in the middle of probe chains
+		for (int i = 0; i < keys.length; i += 2) {
+			Integer value = expected.remove(keys[i]);
+			if (value != null)
+				Assert.assertTrue(map.remove(keys[i], value));
+			Assert.assertFalse(map.remove(keys[i], i));
+		}
+		Assert.assertEquals(expected.size(), map.size());
+
+		for (long key : keys)
+			Assert.assertEquals(expected.get(key), map.get(key));
+
+		map.clear();
+		Assert.assertEquals(0, map.size());
+		Assert.assertNull(map.get(keys[1]));
+	}
+
+	@Test
+	public void testLookupPerformance() {
+		System.out.printf("Comparing long-keyed map lookups with %,d keys and %,d lookups\n\n", KEY_COUNT, LOOKUPS);
+
+		// Warm up both implementations
+		long[] keys = generateModelHashes();
+		runHashMap(keys);
+		runPrimitiveMap(keys);
+
+		long hashMapResult = runHashMap(keys);
+		System.out.printf("HashMap<Long, T> model hashes:   \t%,.3f seconds\n", hashMapResult / 1e9);
+		long primitiveResult = runPrimitiveMap(keys);
+		System.out.printf("PrimitiveLongHashMap model hashes:\t%,.3f seconds\n", primitiveResult / 1e9);
+		System.out.printf("Improvement =\t%.2f%%\n\n", percentageDifference(hashMapResult, primitiveResult));
+
+		keys = generateStridedKeys();
+		hashMapResult = runHashMap(keys);
+		System.out.printf("HashMap<Long, T> strided keys:   \t%,.3f seconds\n", hashMapResult / 1e9);
+		primitiveResult = runPrimitiveMap(keys);
+		System.out.printf("PrimitiveLongHashMap strided keys:\t%,.3f seconds\n", primitiveResult / 1e9);
+		System.out.printf("Improvement =\t%.2f%%\n\n", percentageDifference(hashMapResult, primitiveResult));
+
+		System.out.println("Accumulator: " + accumulator);
+	}
+}
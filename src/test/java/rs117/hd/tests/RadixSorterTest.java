@@ -0,0 +1,141 @@
+package rs117.hd.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.utils.collections.RadixSorter;
+
+public class RadixSorterTest {
+	private static final class Model {
+		final int x, y, z;
+		final int id;
+
+		Model(int x, int y, int z, int id) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.id = id;
+		}
+	}
+
+	private static final class DistancePredicate implements ToIntFunction<Model> {
+		int cx, cy, cz;
+
+		@Override
+		public int applyAsInt(Model m) {
+			return (m.x - cx) * (m.x - cx) + (m.y - cy) * (m.y - cy) + (m.z - cz) * (m.z - cz);
+		}
+	}
+
+	private final Random random = new Random(1337);
+
+	/**
+	 * Generate models spread across a zone, similar to the local positions of alpha models.
+	 */
+	private List<Model> generateModels(int count) {
+		List<Model> models = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			models.add(new Model(
+				random.nextInt(1024),
+				-random.nextInt(2048),
+				random.nextInt(1024),
+				i
+			));
+		}
+		return models;
+	}
+
+	@Test
+	public void testMatchesListSort() {
+		RadixSorter sorter = new RadixSorter();
+		DistancePredicate pred = new DistancePredicate();
+		Comparator<Model> comparator = Comparator.comparingInt(pred).reversed();
+
+		for (int count : new int[] { 0, 1, 2, 5, 63, 64, 65, 100, 500, 5000 }) {
+			for (int i = 0; i < 10; i++) {
+				pred.cx = random.nextInt(8192) - 4096;
+				pred.cy = -random.nextInt(4096);
+				pred.cz = random.nextInt(8192) - 4096;
+
+				List<Model> expected = generateModels(count);
+				// Introduce duplicate positions to check that the sort is stable
+				for (int j = 1; j < count; j += 7)
+					expected.set(j, new Model(expected.get(j - 1).x, expected.get(j - 1).y, expected.get(j - 1).z, j));
+				List<Model> actual = new ArrayList<>(expected);
+
+				expected.sort(comparator);
+				sorter.sortDescending(actual, pred);
+
+				for (int j = 0; j < count; j++)
+					Assert.assertSame("Mismatch at index " + j + " of " + count, expected.get(j), actual.get(j));
+			}
+		}
+	}
+
+	@Test
+	public void testNegativeKeys() {
+		List<Integer> values = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+			values.add(random.nextInt());
+		List<Integer> expected = new ArrayList<>(values);
+		expected.sort(Comparator.reverseOrder());
+
+		new RadixSorter().sortDescending(values, Integer::intValue);
+		Assert.assertEquals(expected, values);
+	}
+
+	@Test
+	public void testSortPerformance() {
+		final int iterations = 20000;
+		RadixSorter sorter = new RadixSorter();
+		DistancePredicate pred = new DistancePredicate();
+		Comparator<Model> comparator = Comparator.comparingInt(pred).reversed();
+
+		System.out.printf("Comparing alpha model sorting over %,d iterations\n\n", iterations);
+		for (int count : new int[] { 16, 64, 256, 1024 }) {
+			List<Model> models = generateModels(count);
+			List<Model> listSorted = new ArrayList<>(count);
+			List<Model> radixSorted = new ArrayList<>(count);
+
+			long listSortNanos = 0;
+			long radixSortNanos = 0;
+			for (int pass = 0; pass < 2; pass++) {
+				// The first pass warms up both implementations
+				listSortNanos = 0;
+				radixSortNanos = 0;
+				for (int i = 0; i < iterations; i++) {
+					// Move the camera slightly each frame, like during normal gameplay
+					pred.cx = 512 + (i & 127);
+					pred.cy = -1024;
+					pred.cz = 512 - (i & 63);
+
+					// Sort independent copies of the same unsorted input, so neither sorter benefits from the other's work
+					Collections.shuffle(models, random);
+					listSorted.clear();
+					listSorted.addAll(models);
+					radixSorted.clear();
+					radixSorted.addAll(models);
+
+					long start = System.nanoTime();
+					listSorted.sort(comparator);
+					listSortNanos += System.nanoTime() - start;
+
+					start = System.nanoTime();
+					sorter.sortDescending(radixSorted, pred);
+					radixSortNanos += System.nanoTime() - start;
+
+					Assert.assertEquals(listSorted, radixSorted);
+				}
+			}
+
+			System.out.printf("List.sort %4d models:  \t%,.3f ms\n", count, listSortNanos / 1e6);
+			System.out.printf("RadixSorter %4d models:\t%,.3f ms\n", count, radixSortNanos / 1e6);
+			System.out.printf("Improvement =\t%.2f%%\n\n", (double) (listSortNanos - radixSortNanos) / listSortNanos * 100);
+		}
+	}
+}
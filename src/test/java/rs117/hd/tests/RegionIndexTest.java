@@ -0,0 +1,120 @@
+package rs117.hd.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.scene.areas.AABB;
+import rs117.hd.scene.areas.RegionIndex;
+
+public class RegionIndexTest {
+	private static final int QUERIES = 2000000;
+
+	private final Random random = new Random(1337);
+
+	private long accumulator;
+
+	/**
+	 * Generate AABBs similar to those found in areas and overrides, ranging from single tiles to multiple regions,
+	 * with a few unbounded ones mixed in.
+	 */
+	private List<AABB> generateAabbs(int count) {
+		List<AABB> aabbs = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int kind = random.nextInt(20);
+			if (kind == 0) {
+				aabbs.add(new AABB(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+				continue;
+			}
+
+			int x = 1024 + random.nextInt(3072);
+			int y = 2048 + random.nextInt(2048);
+			int size = kind < 10 ? random.nextInt(8) : random.nextInt(kind < 18 ? 128 : 1024);
+			if (kind % 3 == 0) {
+				int plane = random.nextInt(4);
+				aabbs.add(new AABB(x, y, plane, x + size, y + random.nextInt(size + 1), plane));
+			} else {
+				aabbs.add(new AABB(x, y, x + size, y + random.nextInt(size + 1)));
+			}
+		}
+		return aabbs;
+	}
+
+	private int[] randomPoint() {
+		return new int[] { 1000 + random.nextInt(3200), 2000 + random.nextInt(2200), random.nextInt(4) };
+	}
+
+	private static Integer linearScan(List<AABB> aabbs, int[] point) {
+		for (int i = 0; i < aabbs.size(); i++)
+			if (aabbs.get(i).contains(point))
+				return i;
+		return null;
+	}
+
+	private static RegionIndex<Integer> buildIndex(List<AABB> aabbs) {
+		var index = new RegionIndex<Integer>();
+		for (int i = 0; i < aabbs.size(); i++)
+			index.add(aabbs.get(i), i);
+		return index;
+	}
+
+	@Test
+	public void testMatchesLinearScan() {
+		for (int count : new int[] { 0, 1, 8, 9, 50, 500, 5000 }) {
+			List<AABB> aabbs = generateAabbs(count);
+			var index = buildIndex(aabbs);
+			Assert.assertEquals(count, index.size());
+
+			for (int i = 0; i < 20000; i++) {
+				int[] point = randomPoint();
+				Assert.assertEquals(linearScan(aabbs, point), index.findFirst(point));
+				// Also check queries without a plane
+				int[] point2d = { point[0], point[1] };
+				Assert.assertEquals(linearScan(aabbs, point2d), index.findFirst(point2d));
+			}
+
+			// Points outside the map should only match unbounded entries
+			int[] outside = { -100, 1 << 20, 0 };
+			Assert.assertEquals(linearScan(aabbs, outside), index.findFirst(outside));
+		}
+	}
+
+	@Test
+	public void testLookupPerformance() {
+		System.out.printf("Comparing point queries over %,d queries\n\n", QUERIES);
+		for (int count : new int[] { 16, 128, 1024 }) {
+			List<AABB> aabbs = generateAabbs(count);
+			var index = buildIndex(aabbs);
+			int[][] points = new int[4096][];
+			for (int i = 0; i < points.length; i++)
+				points[i] = randomPoint();
+
+			long linearNanos = 0;
+			long indexNanos = 0;
+			for (int pass = 0; pass < 2; pass++) {
+				// The first pass warms up both implementations
+				long start = System.nanoTime();
+				for (int i = 0; i < QUERIES; i++) {
+					Integer match = linearScan(aabbs, points[i & 4095]);
+					if (match != null)
+						accumulator += match;
+				}
+				linearNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (int i = 0; i < QUERIES; i++) {
+					Integer match = index.findFirst(points[i & 4095]);
+					if (match != null)
+						accumulator += match;
+				}
+				indexNanos = System.nanoTime() - start;
+			}
+
+			System.out.printf("Linear scan %4d AABBs:\t%,.3f ms\n", count, linearNanos / 1e6);
+			System.out.printf("RegionIndex %4d AABBs:\t%,.3f ms\n", count, indexNanos / 1e6);
+			System.out.printf("Improvement =\t%.2f%%\n\n", (double) (linearNanos - indexNanos) / linearNanos * 100);
+		}
+		System.out.println("Accumulator: " + accumulator);
+	}
+}
@@ -0,0 +1,98 @@
+package rs117.hd.tests;
+
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.scene.SceneChanges;
+import rs117.hd.scene.areas.Area;
+
+import static rs117.hd.scene.tile_overrides.TileOverride.OVERLAY_FLAG;
+
+public class SceneChangesTest {
+	private static void assertDiff(String[] before, String[] after, int start, int endBefore, int endAfter) {
+		Assert.assertArrayEquals(new int[] { start, endBefore, endAfter }, SceneChanges.diff(before, after));
+	}
+
+	@Test
+	public void testDiff() {
+		String[] entries = { "a", "b", "c", "d", "e" };
+
+		// Unchanged
+		assertDiff(entries, entries.clone(), 5, 5, 5);
+		// Edited
+		assertDiff(entries, new String[] { "a", "b", "x", "d", "e" }, 2, 3, 3);
+		// Inserted
+		assertDiff(entries, new String[] { "a", "b", "x", "c", "d", "e" }, 2, 2, 3);
+		assertDiff(entries, new String[] { "x", "a", "b", "c", "d", "e" }, 0, 0, 1);
+		assertDiff(entries, new String[] { "a", "b", "c", "d", "e", "x" }, 5, 5, 6);
+		// Removed
+		assertDiff(entries, new String[] { "a", "c", "d", "e" }, 1, 2, 1);
+		// Reordered entries affect precedence, so everything in between counts as changed
+		assertDiff(entries, new String[] { "a", "d", "c", "b", "e" }, 1, 4, 4);
+		// Duplicate entries shouldn't be matched twice
+		assertDiff(new String[] { "a", "a" }, new String[] { "a" }, 1, 2, 1);
+		assertDiff(new String[0], entries, 0, 0, 5);
+	}
+
+	@Test
+	public void testTileChanges() {
+		var changes = new SceneChanges();
+		Assert.assertTrue(changes.isEmpty());
+		Assert.assertFalse(changes.hasTileChanges());
+
+		changes.addTiles(Area.NONE, null);
+		Assert.assertTrue(changes.isEmpty());
+
+		changes.addTiles(new Area("ANY", 3200, 3200, 3263, 3263), null);
+		changes.addTiles(new Area("IDS", 3000, 3000, 3063, 3063), new int[] { OVERLAY_FLAG | 5, 12 });
+		Assert.assertTrue(changes.hasTileChanges());
+		Assert.assertFalse(changes.hasObjectChanges());
+
+		Assert.assertTrue(changes.affectsTile(new int[] { 3210, 3220, 0 }, OVERLAY_FLAG, 0));
+		Assert.assertFalse(changes.affectsTile(new int[] { 3100, 3100, 0 }, OVERLAY_FLAG | 5, 12));
+		Assert.assertTrue(changes.affectsTile(new int[] { 3010, 3010, 1 }, OVERLAY_FLAG | 5, 0));
+		Assert.assertTrue(changes.affectsTile(new int[] { 3010, 3010, 1 }, OVERLAY_FLAG, 12));
+		// Underlay IDs shouldn't match overlays with the same ID
+		Assert.assertFalse(changes.affectsTile(new int[] { 3010, 3010, 1 }, OVERLAY_FLAG | 12, 5));
+	}
+
+	@Test
+	public void testObjectChanges() {
+		var changes = new SceneChanges();
+		changes.addObjects(null);
+		Assert.assertTrue(changes.isEmpty());
+
+		changes.addObjects(Set.of(1, 2, 3));
+		Assert.assertFalse(changes.isEmpty());
+		Assert.assertFalse(changes.hasTileChanges());
+		Assert.assertTrue(changes.affectsObject(2));
+		Assert.assertFalse(changes.affectsObject(4));
+		Assert.assertFalse(changes.affectsTile(new int[] { 3210, 3220, 0 }, OVERLAY_FLAG, 0));
+	}
+
+	@Test
+	public void testAll() {
+		var changes = SceneChanges.all();
+		Assert.assertTrue(changes.isAll());
+		Assert.assertFalse(changes.isEmpty());
+		Assert.assertTrue(changes.affectsObject(123));
+		Assert.assertTrue(changes.affectsTile(new int[] { 0, 0, 0 }, OVERLAY_FLAG, 0));
+	}
+
+	@Test
+	public void testTerrainAndModels() {
+		var terrain = SceneChanges.terrain();
+		Assert.assertFalse(terrain.isAll());
+		Assert.assertTrue(terrain.hasTileChanges());
+		Assert.assertFalse(terrain.hasObjectChanges());
+		Assert.assertTrue(terrain.affectsTile(new int[] { 0, 0, 0 }, 0, 0));
+		Assert.assertFalse(terrain.affectsObject(123));
+
+		var models = SceneChanges.models();
+		Assert.assertFalse(models.isAll());
+		Assert.assertFalse(models.hasTileChanges());
+		Assert.assertTrue(models.hasObjectChanges());
+		Assert.assertTrue(models.affectsObject(123));
+		Assert.assertFalse(models.affectsTile(new int[] { 0, 0, 0 }, 0, 0));
+	}
+}
@@ -0,0 +1,195 @@
+package rs117.hd.tests;
+
+import java.nio.IntBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.renderer.zone.StaticMeshStore;
+
+import static rs117.hd.renderer.zone.StaticMeshStore.TEXTURE_INTS_PER_FACE;
+import static rs117.hd.renderer.zone.StaticMeshStore.VERTEX_INTS_PER_FACE;
+
+public class StaticMeshStoreTest {
+	private static final int VERTEX_INTS = VERTEX_INTS_PER_FACE / 3;
+
+	// Pack faces the way SceneUploader does, with texture face indices counting from the start of the mesh
+	private static IntBuffer packVertices(int faceCount, int seed) {
+		IntBuffer buffer = IntBuffer.allocate(faceCount * VERTEX_INTS_PER_FACE);
+		for (int f = 0; f < faceCount; f++) {
+			for (int v = 0; v < 3; v++) {
+				for (int i = 0; i < VERTEX_INTS - 1; i++)
+					buffer.put(seed + f);
+				buffer.put(f * 3);
+			}
+		}
+		return buffer;
+	}
+
+	private static IntBuffer packFaces(int faceCount, int seed) {
+		IntBuffer buffer = IntBuffer.allocate(faceCount * TEXTURE_INTS_PER_FACE);
+		for (int i = 0; i < faceCount * TEXTURE_INTS_PER_FACE; i++)
+			buffer.put(seed + i);
+		return buffer;
+	}
+
+	private static StaticMeshStore.Mesh store(StaticMeshStore store, long key, int faceCount) {
+		return store.store(key, packVertices(faceCount, (int) key), packFaces(faceCount, (int) key));
+	}
+
+	@Test
+	public void testMeshesAreOnlyStoredOnceSeenTwice() {
+		var store = new StaticMeshStore();
+		Assert.assertFalse(store.markSeen(1));
+		Assert.assertTrue(store.markSeen(1));
+		Assert.assertTrue(store.markSeen(1));
+
+		store.reject(2);
+		Assert.assertFalse(store.markSeen(2));
+		Assert.assertFalse(store.markSeen(2));
+
+		store.resetSightings();
+		Assert.assertFalse(store.markSeen(1));
+		Assert.assertFalse(store.markSeen(2));
+		Assert.assertTrue(store.markSeen(2));
+		store.destroy();
+	}
+
+	@Test
+	public void testTextureFaceIndicesAreRebased() {
+		var store = new StaticMeshStore(64);
+		var first = store(store, 1, 20);
+		var second = store(store, 2, 10);
+		Assert.assertNotNull(first);
+		Assert.assertNotNull(second);
+		Assert.assertSame(first.getPage(), second.getPage());
+		Assert.assertEquals(0, first.getFirstVertex());
+		Assert.assertEquals(20 * 3, second.getFirstVertex());
+		Assert.assertEquals(10 * 3, second.getVertexCount());
+		Assert.assertEquals(30, second.getPage().getFaceCount());
+
+		int[] vertices = second.getPendingVertices();
+		Assert.assertNotNull(vertices);
+		Assert.assertEquals(10 * VERTEX_INTS_PER_FACE, vertices.length);
+		for (int f = 0; f < 10; f++) {
+			for (int v = 0; v < 3; v++) {
+				int vertex = (f * 3 + v) * VERTEX_INTS;
+				Assert.assertEquals(2 + f, vertices[vertex]);
+				Assert.assertEquals((20 + f) * 3, vertices[vertex + VERTEX_INTS - 1]);
+			}
+		}
+		Assert.assertArrayEquals(packFaces(10, 2).array(), second.getPendingFaces());
+
+		// Storing the same key again returns the existing mesh
+		Assert.assertSame(second, store(store, 2, 10));
+		Assert.assertSame(second, store.get(2));
+		Assert.assertEquals(2, store.getMeshCount());
+		store.destroy();
+	}
+
+	@Test
+	public void testPagesRollOver() {
+		var store = new StaticMeshStore(64);
+		var a = store(store, 1, 40);
+		var b = store(store, 2, 30);
+		var c = store(store, 3, 24);
+		Assert.assertNotNull(a);
+		Assert.assertNotNull(b);
+		Assert.assertNotNull(c);
+		Assert.assertNotSame(a.getPage(), b.getPage());
+		Assert.assertSame(b.getPage(), c.getPage());
+		Assert.assertEquals(0, b.getFirstVertex());
+		Assert.assertEquals(30 * 3, c.getFirstVertex());
+		Assert.assertEquals(2, store.getPageCount());
+
+		// Meshes which don't fit in a page, and empty meshes, aren't stored
+		Assert.assertNull(store(store, 4, 65));
+		Assert.assertNull(store(store, 5, 0));
+		Assert.assertNull(store.get(4));
+		Assert.assertEquals(2, store.getPageCount());
+		store.destroy();
+	}
+
+	@Test
+	public void testInstancesAreSortedAndMerged() {
+		var store = new StaticMeshStore(64);
+		var a = store(store, 1, 20);
+		var b = store(store, 2, 10);
+
+		var list = new StaticMeshStore.InstanceList();
+		Assert.assertTrue(list.add(b, 1, 2, 3));
+		Assert.assertTrue(list.add(a, 4, 5, 6));
+		Assert.assertTrue(list.add(b, 7, 8, 9));
+		Assert.assertEquals(2, list.endSegment());
+
+		// An empty segment doesn't add any commands
+		Assert.assertEquals(2, list.endSegment());
+
+		Assert.assertTrue(list.add(a, 10, 11, 12));
+		var instances = list.build();
+		Assert.assertNotNull(instances);
+		Assert.assertEquals(4, instances.size());
+		Assert.assertEquals(3, instances.getCommandCount());
+
+		Assert.assertArrayEquals(
+			new int[] {
+				20 * 3, 1, 0, 1,
+				10 * 3, 2, 20 * 3, 2,
+				20 * 3, 1, 0, 4
+			},
+			instances.getCommands()
+		);
+		Assert.assertArrayEquals(
+			new int[] { 4, 5, 6, 1, 2, 3, 7, 8, 9, 10, 11, 12 },
+			instances.getPositions()
+		);
+		for (int c = 0; c < instances.getCommandCount(); c++)
+			Assert.assertSame(a.getPage(), instances.getPage(c));
+
+		// Each list acquires the page once, and hands it over when built
+		Assert.assertEquals(1, a.getPage().getRefCount());
+		Assert.assertNull(list.build());
+		instances.release();
+		Assert.assertEquals(0, a.getPage().getRefCount());
+		store.destroy();
+	}
+
+	@Test
+	public void testUnreferencedFullPagesAreCollected() {
+		var store = new StaticMeshStore(32);
+		var a = store(store, 1, 20);
+		var b = store(store, 2, 20);
+		Assert.assertNotNull(a);
+		Assert.assertNotNull(b);
+
+		var list = new StaticMeshStore.InstanceList();
+		Assert.assertTrue(list.add(a, 0, 0, 0));
+		var instances = list.build();
+		Assert.assertNotNull(instances);
+
+		// The first page is full, but still referenced
+		store.collect();
+		Assert.assertEquals(2, store.getPageCount());
+		Assert.assertSame(a, store.get(1));
+
+		instances.release();
+		store.collect();
+		Assert.assertTrue(a.getPage().isFreed());
+		Assert.assertNull(store.get(1));
+		Assert.assertEquals(1, store.getPageCount());
+
+		// The open page is never collected
+		Assert.assertFalse(b.getPage().isFreed());
+		Assert.assertSame(b, store.get(2));
+
+		// Instances of meshes on freed pages can't be added anymore
+		Assert.assertFalse(list.add(a, 0, 0, 0));
+		Assert.assertNull(list.build());
+
+		// A reset drops the pages of instances which weren't built
+		Assert.assertTrue(list.add(b, 0, 0, 0));
+		Assert.assertEquals(1, b.getPage().getRefCount());
+		list.reset();
+		Assert.assertEquals(0, b.getPage().getRefCount());
+		Assert.assertNull(list.build());
+		store.destroy();
+	}
+}
@@ -0,0 +1,132 @@
+package rs117.hd.tests;
+
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import rs117.hd.scene.VertexTerrainData;
+import rs117.hd.scene.materials.Material;
+
+import static rs117.hd.scene.VertexTerrainData.*;
+import static rs117.hd.utils.HDUtils.fastVertexHash;
+
+public class VertexTerrainDataTest {
+	private static final int[] DEFAULT_NORMALS = { 0, -1, 0 };
+
+	private final Random random = new Random(1337);
+
+	/**
+	 * Generate vertex keys the same way as for tile corners, including keys shared by neighbouring tiles.
+	 */
+	private int[] generateVertexKeys(int size) {
+		int[] keys = new int[size * size];
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+				keys[x * size + y] = fastVertexHash(new int[] { x * 128, y * 128, -random.nextInt(2000) });
+		return keys;
+	}
+
+	@Test
+	public void testMatchesHashMaps() {
+		int[] keys = generateVertexKeys(200);
+		var colors = new HashMap<Integer, Integer>();
+		var depths = new HashMap<Integer, Integer>();
+		var normals = new HashMap<Integer, int[]>();
+		var flags = new HashMap<Integer, Integer>();
+		// Start small, to also exercise rehashing
+		var data = new VertexTerrainData(16);
+
+		for (int i = 0; i < keys.length * 2; i++) {
+			int key = keys[random.nextInt(keys.length)];
+			switch (random.nextInt(4)) {
+				case 0:
+					int color = random.nextInt(0xFFFF);
+					colors.put(key, color);
+					data.setColor(key, color);
+					break;
+				case 1:
+					int depth = random.nextInt(1000);
+					depths.put(key, depth);
+					data.setUnderwaterDepth(key, depth);
+					break;
+				case 2:
+					int[] n = { random.nextInt(100), random.nextInt(100), random.nextInt(100) };
+					normals.merge(key, n.clone(), (a, b) -> new int[] { a[0] + b[0], a[1] + b[1], a[2] + b[2] });
+					data.addNormals(key, n);
+					break;
+				default:
+					int flag = 1 << random.nextInt(5);
+					flags.merge(key, flag, (a, b) -> a | b);
+					data.addFlags(key, flag);
+					break;
+			}
+		}
+
+		for (int key : keys) {
+			Assert.assertEquals((int) colors.getOrDefault(key, -1), data.getColor(key, -1));
+			Assert.assertEquals(colors.containsKey(key), data.hasColor(key));
+			Assert.assertEquals((int) depths.getOrDefault(key, 0), data.getUnderwaterDepth(key, 0));
+			Assert.assertArrayEquals(normals.getOrDefault(key, DEFAULT_NORMALS), data.getNormals(key, DEFAULT_NORMALS));
+			Assert.assertFalse(data.hasMaterial(key));
+			Assert.assertSame(Material.NONE, data.getMaterial(key, Material.NONE));
+			int f = flags.getOrDefault(key, 0);
+			for (int mask : new int[] { FLAG_WATER, FLAG_LAND, FLAG_WATER | FLAG_LAND, FLAG_OVERLAY | FLAG_UNDERLAY, FLAG_HIGH_PRIORITY_COLOR })
+				Assert.assertEquals((f & mask) == mask, data.hasFlags(key, mask));
+		}
+	}
+
+	@Test
+	public void testLookupPerformance() {
+		final int iterations = 20;
+		int[] keys = generateVertexKeys(256);
+
+		long mapNanos = 0;
+		long dataNanos = 0;
+		long accumulator = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			// The first pass warms up both implementations
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				var colors = new HashMap<Integer, Integer>();
+				var isWater = new HashMap<Integer, Boolean>();
+				var isLand = new HashMap<Integer, Boolean>();
+				for (int j = 0; j < keys.length; j++) {
+					colors.put(keys[j], j);
+					if ((j & 3) == 0)
+						isWater.put(keys[j], true);
+					if ((j & 5) == 0)
+						isLand.put(keys[j], true);
+				}
+				for (int key : keys) {
+					accumulator += colors.getOrDefault(key, 0);
+					if (isWater.containsKey(key) && isLand.containsKey(key))
+						accumulator++;
+				}
+			}
+			mapNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				var data = new VertexTerrainData(keys.length);
+				for (int j = 0; j < keys.length; j++) {
+					data.setColor(keys[j], j);
+					if ((j & 3) == 0)
+						data.addFlags(keys[j], FLAG_WATER);
+					if ((j & 5) == 0)
+						data.addFlags(keys[j], FLAG_LAND);
+				}
+				for (int key : keys) {
+					accumulator += data.getColor(key, 0);
+					if (data.hasFlags(key, FLAG_WATER | FLAG_LAND))
+						accumulator++;
+				}
+			}
+			dataNanos = System.nanoTime() - start;
+		}
+
+		System.out.printf("HashMaps %,d vertices:         \t%,.3f ms\n", keys.length, mapNanos / 1e6);
+		System.out.printf("VertexTerrainData %,d vertices:\t%,.3f ms\n", keys.length, dataNanos / 1e6);
+		System.out.printf("Improvement =\t%.2f%%\n\n", (double) (mapNanos - dataNanos) / mapNanos * 100);
+		System.out.println("Accumulator: " + accumulator);
+	}
+}